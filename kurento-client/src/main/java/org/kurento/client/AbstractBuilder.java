@@ -24,6 +24,9 @@ import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.jsonrpc.Props;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * Kurento Media Builder base interface. Builds a {@code <T>} object, either synchronously using
  * {@link #build} or asynchronously using {@link #buildAsync}
@@ -106,6 +109,34 @@ public class AbstractBuilder<T> {
 
   }
 
+  /**
+   * Builds an object asynchronously using the builder design pattern.
+   * </p>
+   * The returned future is completed with the object when it is ready, or with the cause of the
+   * failure if an error occurs.
+   *
+   * @return a future for the object being built
+   *
+   **/
+  public ListenableFuture<T> buildAsync() {
+
+    final SettableFuture<T> future = SettableFuture.create();
+
+    buildAsync(new Continuation<T>() {
+      @Override
+      public void onSuccess(T result) {
+        future.set(result);
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        future.setException(cause);
+      }
+    });
+
+    return future;
+  }
+
   public AbstractBuilder<T> withProperties(Properties properties) {
     genericProperties.getMap().putAll(properties.getMap());
     return this;
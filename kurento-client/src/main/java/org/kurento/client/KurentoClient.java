@@ -19,23 +19,40 @@ package org.kurento.client;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PreDestroy;
 
 import org.kurento.client.internal.KmsUrlLoader;
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.EventDispatcher;
+import org.kurento.client.internal.client.RomClient;
 import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.StripedRomClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.client.AbstractJsonRpcClientWebSocket;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.kurento.jsonrpc.client.JsonRpcWSConnectionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.StandardSystemProperty;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Factory to create {@link MediaPipeline} in the media server.
@@ -61,42 +78,73 @@ public class KurentoClient {
   private long connectionTimeout =
       PropertiesManager.getProperty("kurento.client.connectionTimeout", 5000);
 
+  private long autoBatchingWindow =
+      PropertiesManager.getProperty("kurento.client.autoBatching.window", 0);
+
+  private int autoBatchingMaxOperations =
+      PropertiesManager.getProperty("kurento.client.autoBatching.maxOperations", 50);
+
+  private boolean pipelinedCreation =
+      PropertiesManager.getProperty("kurento.client.pipelinedCreation", false);
+
+  private boolean propertyCache =
+      PropertiesManager.getProperty("kurento.client.propertyCache", false);
+
+  private int connections = PropertiesManager.getProperty("kurento.client.connections", 1);
+
+  private static final boolean LAZY_CONNECT =
+      PropertiesManager.getProperty("kurento.client.lazyConnect", false);
+
+  private static final int CONNECT_THREADS =
+      PropertiesManager.getProperty("kurento.client.connectThreads", 8);
+
+  private static volatile ListeningExecutorService connectExec;
+
   private String id;
 
   private ServerManager serverManager;
 
   private JsonRpcClient client;
 
-  private static KmsUrlLoader kmsUrlLoader;
+  private List<JsonRpcClient> stripeClients = new ArrayList<>();
+
+  private static volatile KmsUrlLoader kmsUrlLoader;
 
   private String label;
 
-  public static synchronized String getKmsUrl(String id, Properties properties) {
+  public static String getKmsUrl(String id, Properties properties) {
 
     if (properties == null) {
       properties = new Properties();
     }
 
-    if (kmsUrlLoader == null) {
-
-      Path configFile =
-          Paths.get(StandardSystemProperty.USER_HOME.value(), ".kurento", "config.properties");
-
-      kmsUrlLoader = new KmsUrlLoader(configFile);
-    }
+    KmsUrlLoader loader = getKmsUrlLoader();
 
     Object load = properties.get("loadPoints");
     if (load == null) {
-      return kmsUrlLoader.getKmsUrl(id);
+      return loader.getKmsUrl(id);
     } else {
       if (load instanceof Number) {
-        return kmsUrlLoader.getKmsUrlLoad(id, ((Number) load).intValue());
+        return loader.getKmsUrlLoad(id, ((Number) load).intValue());
       } else {
-        return kmsUrlLoader.getKmsUrlLoad(id, Integer.parseInt(load.toString()));
+        return loader.getKmsUrlLoad(id, Integer.parseInt(load.toString()));
       }
     }
   }
 
+  private static synchronized KmsUrlLoader getKmsUrlLoader() {
+
+    if (kmsUrlLoader == null) {
+
+      Path configFile =
+          Paths.get(StandardSystemProperty.USER_HOME.value(), ".kurento", "config.properties");
+
+      kmsUrlLoader = new KmsUrlLoader(configFile);
+    }
+
+    return kmsUrlLoader;
+  }
+
   private void setId(String id) {
     this.id = id;
   }
@@ -123,6 +171,78 @@ public class KurentoClient {
     return new KurentoClient(client);
   }
 
+  /**
+   * Creates a client without waiting for the connection to the media server. The connection is
+   * established in background and the returned future is completed when it has finished. Clients
+   * are connected by a pool of {@code kurento.client.connectThreads} threads (8 by default), and
+   * the client is destroyed if it can't connect.
+   *
+   * @param websocketUrl
+   *          url of the media server
+   * @return future completed with the connected client, or with the error if it couldn't connect
+   */
+  public static ListenableFuture<KurentoClient> createAsync(final String websocketUrl) {
+
+    log.debug("Connecting asynchronously to KMS in {}", websocketUrl);
+    JsonRpcClientNettyWebSocket client = new JsonRpcClientNettyWebSocket(websocketUrl);
+    configureJsonRpcClient(client);
+
+    final KurentoClient kurentoClient = new KurentoClient(client, true);
+
+    return getConnectExecutor().submit(new Callable<KurentoClient>() {
+      @Override
+      public KurentoClient call() throws Exception {
+        try {
+          kurentoClient.connect();
+          return kurentoClient;
+        } catch (Exception e) {
+          // Nobody receives the client, so its connection and heartbeat are released here
+          try {
+            kurentoClient.destroy();
+          } catch (Exception e2) {
+            log.debug("Exception destroying client not connected to KMS in {}", websocketUrl, e2);
+          }
+          throw e;
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates a client for each media server, connecting to all of them concurrently.
+   *
+   * @param websocketUrls
+   *          urls of the media servers
+   * @return a future for each url, in the same order, completed when the corresponding client has
+   *         connected
+   */
+  public static Map<String, ListenableFuture<KurentoClient>> createAsync(
+      Collection<String> websocketUrls) {
+
+    Map<String, ListenableFuture<KurentoClient>> clients = new LinkedHashMap<>();
+    for (String websocketUrl : websocketUrls) {
+      clients.put(websocketUrl, createAsync(websocketUrl));
+    }
+    return clients;
+  }
+
+  private static ListeningExecutorService getConnectExecutor() {
+    if (connectExec == null) {
+      synchronized (KurentoClient.class) {
+        if (connectExec == null) {
+          // Connections exceeding the number of threads wait in the queue for their turn
+          ThreadPoolExecutor executor = new ThreadPoolExecutor(CONNECT_THREADS, CONNECT_THREADS,
+              60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+              new ThreadFactoryBuilder().setNameFormat("KurentoClient-connectExec-t%d")
+                  .setDaemon(true).build());
+          executor.allowCoreThreadTimeOut(true);
+          connectExec = MoreExecutors.listeningDecorator(executor);
+        }
+      }
+    }
+    return connectExec;
+  }
+
   protected static void configureJsonRpcClient(AbstractJsonRpcClientWebSocket client) {
     client.enableHeartbeat(KEEPALIVE_TIME);
     client.setTryReconnectingForever(true);
@@ -156,6 +276,17 @@ public class KurentoClient {
       final ReconnectedHandler reconnectedHandler, Long tryReconnectingMaxTime,
       Long connectionTimeout) {
 
+    return create(kmsWsUri, properties, connectedHandler, connectionFailedHandler,
+        reconnectingHandler, disconnectedHandler, reconnectedHandler, tryReconnectingMaxTime,
+        connectionTimeout, null);
+  }
+
+  protected static KurentoClient create(String kmsWsUri, Properties properties,
+      final Handler connectedHandler, final Handler connectionFailedHandler,
+      final Handler reconnectingHandler, final Handler disconnectedHandler,
+      final ReconnectedHandler reconnectedHandler, Long tryReconnectingMaxTime,
+      Long connectionTimeout, Boolean lazyConnect) {
+
     String clientId = null;
     if (kmsWsUri == null) {
       clientId = UUID.randomUUID().toString();
@@ -223,7 +354,8 @@ public class KurentoClient {
       client.setTryReconnectingMaxTime(tryReconnectingMaxTime);
     }
 
-    kurentoClient = new KurentoClient(client);
+    kurentoClient =
+        new KurentoClient(client, lazyConnect != null ? lazyConnect.booleanValue() : LAZY_CONNECT);
 
     if (clientId != null) {
       kurentoClient.setId(clientId);
@@ -233,16 +365,51 @@ public class KurentoClient {
   }
 
   protected KurentoClient(JsonRpcClient client) {
+    this(client, LAZY_CONNECT);
+  }
+
+  /**
+   * Creates a client using the given JSON-RPC client. If {@code lazyConnect} is true, the
+   * connection to the media server is not established until the first request is sent.
+   */
+  protected KurentoClient(JsonRpcClient client, boolean lazyConnect) {
     this.client = client;
-    this.manager = new RomManager(new RomClientJsonRpcClient(client));
+    this.manager = new RomManager(createRomClient(client));
     client.setRequestTimeout(requesTimeout);
     client.setConnectionTimeout((int) connectionTimeout);
+    this.manager.setPipelinedCreation(pipelinedCreation);
+    this.manager.setPropertyCacheEnabled(propertyCache);
+    if (autoBatchingWindow > 0) {
+      this.manager.enableAutoBatching(autoBatchingWindow, autoBatchingMaxOperations);
+    }
     if (client instanceof AbstractJsonRpcClientWebSocket) {
       ((AbstractJsonRpcClientWebSocket) client).enableHeartbeat(KEEPALIVE_TIME);
     }
+    if (EventDispatcher.getDefault().isAsync()) {
+      // Events are queued in order in the websocket thread and dispatched by the EventDispatcher
+      disableConcurrentServerRequests(client);
+      for (JsonRpcClient stripeClient : stripeClients) {
+        disableConcurrentServerRequests(stripeClient);
+      }
+    }
+    if (!lazyConnect) {
+      connect();
+    }
+  }
+
+  private static void disableConcurrentServerRequests(JsonRpcClient client) {
+    if (client instanceof AbstractJsonRpcClientWebSocket) {
+      ((AbstractJsonRpcClientWebSocket) client).setConcurrentServerRequest(false);
+    }
+  }
+
+  private void connect() {
     try {
       long start = System.currentTimeMillis();
       client.connect();
+      for (JsonRpcClient stripeClient : stripeClients) {
+        stripeClient.connect();
+      }
       long duration = System.currentTimeMillis() - start;
 
       if (duration > WARN_CONNECTION_TIME) {
@@ -254,6 +421,79 @@ public class KurentoClient {
     }
   }
 
+  /**
+   * Creates the client used to send operations to the media server. If more than one connection is
+   * configured (property {@code kurento.client.connections}), additional connections are opened to
+   * the same media server and the operations are spread among them, keeping all the operations of a
+   * pipeline in the same connection. Connection events are only notified for the main connection.
+   * Additional connections reconnect by themselves, and the pipelines routed to one of them are
+   * forgotten if it reconnects to a different media server.
+   */
+  private RomClient createRomClient(JsonRpcClient client) {
+
+    RomClientJsonRpcClient romClient = new RomClientJsonRpcClient(client);
+
+    if (connections <= 1) {
+      return romClient;
+    }
+
+    if (!(client instanceof AbstractJsonRpcClientWebSocket)) {
+      log.warn("Only WebSocket clients can open several connections to KMS. Using one connection");
+      return romClient;
+    }
+
+    String kmsWsUri = ((AbstractJsonRpcClientWebSocket) client).getUri().toString();
+
+    List<RomClient> stripes = new ArrayList<>();
+    stripes.add(romClient);
+
+    for (int i = 1; i < connections; i++) {
+      JsonRpcClientNettyWebSocket stripeClient =
+          new JsonRpcClientNettyWebSocket(kmsWsUri, createStripeConnectionListener(i));
+      configureJsonRpcClient(stripeClient);
+      stripeClient.setRequestTimeout(requesTimeout);
+      stripeClient.setConnectionTimeout((int) connectionTimeout);
+      stripeClients.add(stripeClient);
+      stripes.add(new RomClientJsonRpcClient(stripeClient));
+    }
+
+    log.debug("Using {} connections to KMS in {}", connections, kmsWsUri);
+
+    return new StripedRomClient(stripes);
+  }
+
+  private JsonRpcWSConnectionListener createStripeConnectionListener(final int stripeIndex) {
+    return new JsonRpcWSConnectionListener() {
+
+      @Override
+      public void reconnected(boolean sameServer) {
+        RomClient romClient = manager.getRomClient();
+        if (!sameServer && romClient instanceof StripedRomClient) {
+          ((StripedRomClient) romClient).stripeReset(stripeIndex);
+        }
+      }
+
+      @Override
+      public void reconnecting() {
+        log.warn("{} Connection {} to KMS lost. Reconnecting", label, stripeIndex);
+      }
+
+      @Override
+      public void disconnected() {
+        log.debug("{} Connection {} to KMS closed", label, stripeIndex);
+      }
+
+      @Override
+      public void connectionFailed() {
+        log.warn("{} Connection {} to KMS failed", label, stripeIndex);
+      }
+
+      @Override
+      public void connected() {
+      }
+    };
+  }
+
   /**
    * Creates a new {@link MediaPipeline} in the media server.
    *
@@ -277,6 +517,15 @@ public class KurentoClient {
     new AbstractBuilder<MediaPipeline>(MediaPipeline.class, manager).buildAsync(cont);
   }
 
+  /**
+   * Creates a new {@link MediaPipeline} in the media server.
+   *
+   * @return A future that will be completed with the media pipeline when it has been created
+   */
+  public ListenableFuture<MediaPipeline> createMediaPipelineAsync() {
+    return new AbstractBuilder<MediaPipeline>(MediaPipeline.class, manager).buildAsync();
+  }
+
   public MediaPipeline createMediaPipeline(Transaction tx) {
     return new AbstractBuilder<MediaPipeline>(MediaPipeline.class, manager).build(tx);
   }
@@ -333,6 +582,69 @@ public class KurentoClient {
     return new KurentoClient(jsonRpcClient);
   }
 
+  /**
+   * Enables the automatic batching of asynchronous operations. Operations invoked with a
+   * {@link Continuation} within {@code windowMillis} are sent to the media server in a single
+   * request, as soon as the window expires or {@code maxOperations} are pending. The result of each
+   * operation is delivered to its own continuation. Synchronous operations flush the pending batch
+   * before being sent, so they are never reordered with previous asynchronous ones.
+   *
+   * @param windowMillis
+   *          time in milliseconds an operation can wait for others to be batched with
+   * @param maxOperations
+   *          maximum number of operations sent in the same batch
+   */
+  public void enableAutoBatching(long windowMillis, int maxOperations) {
+    manager.enableAutoBatching(windowMillis, maxOperations);
+  }
+
+  public void disableAutoBatching() {
+    manager.disableAutoBatching();
+  }
+
+  /**
+   * Enables the pipelined creation of objects. When enabled, builders return the new object
+   * immediately, without waiting for the media server to create it. Synchronous operations on the
+   * object wait until it has been created, and asynchronous ones are queued and sent as soon as the
+   * media server returns its reference. If the object cannot be created, the error is propagated to
+   * all the operations invoked on it.
+   *
+   * @param pipelinedCreation
+   *          true to create objects without waiting for the media server
+   */
+  public void setPipelinedCreation(boolean pipelinedCreation) {
+    manager.setPipelinedCreation(pipelinedCreation);
+  }
+
+  /**
+   * Enables the client side cache of object properties. Final properties are cached once read,
+   * properties set by the client are cached until the next write, and state properties (like
+   * {@code mediaState}) are cached while there is a listener for their change event, which keeps
+   * them updated.
+   *
+   * @param propertyCache
+   *          true to cache property values in the client
+   */
+  public void setPropertyCacheEnabled(boolean propertyCache) {
+    manager.setPropertyCacheEnabled(propertyCache);
+  }
+
+  /**
+   * Returns the number of remote objects known by this client, by remote class.
+   */
+  public Map<String, Long> getObjectsCountByType() {
+    return manager.getObjectManager().getObjectsCountByType();
+  }
+
+  /**
+   * Returns the number of remote objects created by this client that have been garbage collected
+   * without being released, by remote class. Their resources in the media server are probably
+   * leaked.
+   */
+  public Map<String, Long> getLeakedObjectsCountByType() {
+    return manager.getObjectManager().getLeakedObjectsCountByType();
+  }
+
   public Transaction beginTransaction() {
     return new TransactionImpl(manager);
   }
@@ -349,12 +661,16 @@ public class KurentoClient {
   }
 
   public String getSessionId() {
-    return client.getSession().getSessionId();
+    // There is no session until the first connection in lazy mode
+    return client.getSession() != null ? client.getSession().getSessionId() : null;
   }
 
   public void setLabel(String label) {
     this.label = label;
     updateLabel(client, label);
+    for (JsonRpcClient stripeClient : stripeClients) {
+      updateLabel(stripeClient, label);
+    }
   }
 
   public String getLabel() {
@@ -14,6 +14,7 @@ public class KurentoClientBuilder {
 
   private Long tryReconnectingMaxTime;
   private Long connectionTimeout;
+  private Boolean lazyConnect;
 
   public KurentoClientBuilder() {
   }
@@ -63,10 +64,19 @@ public class KurentoClientBuilder {
     return this;
   }
 
+  /**
+   * If true, the client doesn't connect to the media server until the first request is sent. By
+   * default, the property {@code kurento.client.lazyConnect} is used.
+   */
+  public KurentoClientBuilder setLazyConnect(boolean lazyConnect) {
+    this.lazyConnect = lazyConnect;
+    return this;
+  }
+
   public KurentoClient connect() {
     return KurentoClient.create(kmsWsUri, properties, connectedHandler, connectionFailedHandler,
         reconnectingHandler, disconnectedHandler, reconnectedHandler, tryReconnectingMaxTime,
-        connectionTimeout);
+        connectionTimeout, lazyConnect);
   }
 
 }
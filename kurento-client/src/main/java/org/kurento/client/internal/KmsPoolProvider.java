@@ -0,0 +1,404 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.client.ServerManager;
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link KmsProvider} that distributes clients among a pool of media servers. It keeps a
+ * {@link KurentoClient} connected to each media server to sample periodically its load (CPU,
+ * memory and number of pipelines), and places each new client in the least loaded one, or in the
+ * least loaded of two random ones ("power of two choices"), which scales better with many media
+ * servers. Load points reserved by clients are accounted in each media server, so it can't receive
+ * more load points than its capacity.
+ *
+ * <p>
+ * It is configured with the following properties:
+ * <ul>
+ * <li>{@code kms.pool.urls}: comma separated list of media server urls.</li>
+ * <li>{@code kms.pool.selection}: {@code least_loaded} (default) or
+ * {@code power_of_two_choices}.</li>
+ * <li>{@code kms.pool.loadPoints}: load points each media server can hold (100 by default).</li>
+ * <li>{@code kms.pool.defaultLoadPoints}: load points of clients not specifying them (1 by
+ * default).</li>
+ * <li>{@code kms.pool.maxPipelines}: number of pipelines considered full load (0, the default,
+ * ignores the number of pipelines).</li>
+ * <li>{@code kms.pool.maxMemory}: used memory in KiB considered full load (0, the default, ignores
+ * the memory).</li>
+ * <li>{@code kms.pool.maxLoad}: load (between 0 and 1) above which a media server doesn't receive
+ * new clients (0.9 by default).</li>
+ * <li>{@code kms.pool.samplingPeriod}: millis between load samples (5000 by default).</li>
+ * <li>{@code kms.pool.cpuSamplingInterval}: millis used to measure CPU usage (500 by
+ * default).</li>
+ * </ul>
+ */
+public class KmsPoolProvider implements ConcurrentKmsProvider {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsPoolProvider.class);
+
+  public static final String KMS_POOL_URLS_PROPERTY = "kms.pool.urls";
+
+  public enum Selection {
+    LEAST_LOADED, POWER_OF_TWO_CHOICES
+  }
+
+  private static final int MAX_SAMPLING_THREADS = 4;
+
+  public static class KmsNode {
+
+    private final String url;
+    private final int capacity;
+
+    private final AtomicInteger reservedPoints = new AtomicInteger();
+
+    private volatile KurentoClient kurentoClient;
+    private volatile double sampledLoad;
+    private volatile boolean available;
+
+    public KmsNode(String url, int capacity) {
+      this.url = url;
+      this.capacity = capacity;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public int getReservedPoints() {
+      return reservedPoints.get();
+    }
+
+    public double getSampledLoad() {
+      return sampledLoad;
+    }
+
+    public boolean isAvailable() {
+      return available;
+    }
+
+    /**
+     * Load of the media server between 0 and 1. It is the maximum of the load measured in the
+     * media server and the load points reserved in it.
+     */
+    public double getLoad() {
+      return Math.max(sampledLoad, (double) reservedPoints.get() / capacity);
+    }
+
+    private boolean tryReserve(int loadPoints) {
+      while (true) {
+        int current = reservedPoints.get();
+        if (current + loadPoints > capacity) {
+          return false;
+        }
+        if (reservedPoints.compareAndSet(current, current + loadPoints)) {
+          return true;
+        }
+      }
+    }
+
+    private void release(int loadPoints) {
+      reservedPoints.addAndGet(-loadPoints);
+    }
+
+    @Override
+    public String toString() {
+      return "KmsNode [url=" + url + ", load=" + getLoad() + ", reservedPoints="
+          + reservedPoints.get() + ", available=" + available + "]";
+    }
+  }
+
+  private static class Reservation {
+
+    private final KmsNode node;
+    private final int loadPoints;
+
+    public Reservation(KmsNode node, int loadPoints) {
+      this.node = node;
+      this.loadPoints = loadPoints;
+    }
+  }
+
+  /**
+   * Load of a node at a given moment. Nodes are sorted by snapshots of their load, as the load
+   * changes while sorting when other threads reserve or release points.
+   */
+  private static final class NodeLoad {
+
+    private final KmsNode node;
+    private final double load;
+
+    private NodeLoad(KmsNode node) {
+      this.node = node;
+      this.load = node.getLoad();
+    }
+  }
+
+  private static final Comparator<NodeLoad> LOAD_COMPARATOR = new Comparator<NodeLoad>() {
+    @Override
+    public int compare(NodeLoad n1, NodeLoad n2) {
+      return Double.compare(n1.load, n2.load);
+    }
+  };
+
+  private final List<KmsNode> nodes;
+  private final ConcurrentMap<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+  private final Selection selection;
+
+  private final int defaultLoadPoints =
+      PropertiesManager.getProperty("kms.pool.defaultLoadPoints", 1);
+  private final int maxPipelines = PropertiesManager.getProperty("kms.pool.maxPipelines", 0);
+  private final long maxMemory = PropertiesManager.getProperty("kms.pool.maxMemory", 0L);
+  private final double maxLoad = PropertiesManager.getProperty("kms.pool.maxLoad", 0.9);
+  private final int cpuSamplingInterval =
+      PropertiesManager.getProperty("kms.pool.cpuSamplingInterval", 500);
+
+  private final ScheduledExecutorService samplingExec;
+
+  public KmsPoolProvider() {
+    this(getPoolUrls(), PropertiesManager.getProperty("kms.pool.loadPoints", 100),
+        PropertiesManager.getProperty("kms.pool.selection", Selection.LEAST_LOADED),
+        PropertiesManager.getProperty("kms.pool.samplingPeriod", 5000L));
+  }
+
+  public KmsPoolProvider(List<String> urls, int capacity, Selection selection,
+      long samplingPeriod) {
+
+    if (urls.isEmpty()) {
+      throw new IllegalArgumentException("At least one KMS url is needed in the pool");
+    }
+
+    this.selection = selection;
+
+    List<KmsNode> poolNodes = new ArrayList<>();
+    for (String url : urls) {
+      poolNodes.add(new KmsNode(url, capacity));
+    }
+    this.nodes = Collections.unmodifiableList(poolNodes);
+
+    this.samplingExec = Executors.newScheduledThreadPool(
+        Math.min(nodes.size(), MAX_SAMPLING_THREADS), new ThreadFactoryBuilder()
+            .setNameFormat("KmsPoolProvider-samplingExec-t%d").setDaemon(true).build());
+
+    for (final KmsNode node : nodes) {
+      samplingExec.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          sample(node);
+        }
+      }, 0, samplingPeriod, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static List<String> getPoolUrls() {
+    String urls = PropertiesManager.getProperty(KMS_POOL_URLS_PROPERTY);
+    if (urls == null) {
+      throw new IllegalStateException(
+          "Property " + KMS_POOL_URLS_PROPERTY + " is needed to use " + KmsPoolProvider.class);
+    }
+    List<String> poolUrls = new ArrayList<>();
+    for (String url : urls.split(",")) {
+      if (!url.trim().isEmpty()) {
+        poolUrls.add(url.trim());
+      }
+    }
+    return poolUrls;
+  }
+
+  public List<KmsNode> getNodes() {
+    return nodes;
+  }
+
+  @Override
+  public String reserveKms(String id) throws NotEnoughResourcesException {
+    return reserveKms(id, defaultLoadPoints);
+  }
+
+  @Override
+  public String reserveKms(String id, int loadPoints) throws NotEnoughResourcesException {
+
+    KmsNode node = null;
+
+    if (selection == Selection.POWER_OF_TWO_CHOICES) {
+      node = reserveInRandomNodes(loadPoints);
+    }
+
+    if (node == null) {
+      node = reserveInLeastLoadedNode(loadPoints);
+    }
+
+    if (node == null) {
+      throw new NotEnoughResourcesException(
+          "There is no KMS in the pool with " + loadPoints + " load points available");
+    }
+
+    Reservation oldReservation = reservations.put(id, new Reservation(node, loadPoints));
+    if (oldReservation != null) {
+      oldReservation.node.release(oldReservation.loadPoints);
+    }
+
+    log.debug("Reserved {} load points for client {} in {}", loadPoints, id, node);
+
+    return node.getUrl();
+  }
+
+  @Override
+  public void releaseKms(String id) throws NotEnoughResourcesException {
+    Reservation reservation = reservations.remove(id);
+    if (reservation != null) {
+      reservation.node.release(reservation.loadPoints);
+      log.debug("Released {} load points of client {} in {}", reservation.loadPoints, id,
+          reservation.node);
+    }
+  }
+
+  public void close() {
+    samplingExec.shutdownNow();
+    for (KmsNode node : nodes) {
+      KurentoClient kurentoClient = node.kurentoClient;
+      if (kurentoClient != null) {
+        kurentoClient.destroy();
+      }
+    }
+  }
+
+  private KmsNode reserveInRandomNodes(int loadPoints) {
+
+    List<KmsNode> candidates = getAvailableNodes();
+    if (candidates.size() < 2) {
+      return null;
+    }
+
+    int first = nextRandomIndex(candidates.size());
+    int second = nextRandomIndex(candidates.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+
+    KmsNode node1 = candidates.get(first);
+    KmsNode node2 = candidates.get(second);
+    if (node2.getLoad() < node1.getLoad()) {
+      KmsNode aux = node1;
+      node1 = node2;
+      node2 = aux;
+    }
+
+    if (node1.tryReserve(loadPoints)) {
+      return node1;
+    } else if (node2.tryReserve(loadPoints)) {
+      return node2;
+    } else {
+      return null;
+    }
+  }
+
+  private KmsNode reserveInLeastLoadedNode(int loadPoints) {
+
+    List<KmsNode> availableNodes = getAvailableNodes();
+
+    List<NodeLoad> candidates = new ArrayList<>(availableNodes.size());
+    for (KmsNode node : availableNodes) {
+      candidates.add(new NodeLoad(node));
+    }
+    Collections.sort(candidates, LOAD_COMPARATOR);
+
+    for (NodeLoad candidate : candidates) {
+      if (candidate.node.tryReserve(loadPoints)) {
+        return candidate.node;
+      }
+    }
+
+    return null;
+  }
+
+  private List<KmsNode> getAvailableNodes() {
+    List<KmsNode> availableNodes = new ArrayList<>(nodes.size());
+    for (KmsNode node : nodes) {
+      if (node.available && node.sampledLoad < maxLoad) {
+        availableNodes.add(node);
+      }
+    }
+    return availableNodes;
+  }
+
+  private void sample(KmsNode node) {
+    try {
+      node.sampledLoad = measureLoad(node);
+      node.available = true;
+      log.trace("Sampled load of {}", node);
+    } catch (Exception e) {
+      if (node.available) {
+        log.warn("Exception sampling load of KMS {}. It will not receive new clients", node.url,
+            e);
+      }
+      node.available = false;
+    }
+  }
+
+  /**
+   * Returns a random index between 0 (inclusive) and the bound (exclusive), used to choose the
+   * candidates in the power of two choices selection.
+   */
+  protected int nextRandomIndex(int bound) {
+    return ThreadLocalRandom.current().nextInt(bound);
+  }
+
+  /**
+   * Measures the load of the media server, between 0 and 1.
+   */
+  protected double measureLoad(KmsNode node) throws Exception {
+
+    KurentoClient kurentoClient = node.kurentoClient;
+    if (kurentoClient == null || kurentoClient.isClosed()) {
+      kurentoClient = KurentoClient.create(node.url);
+      node.kurentoClient = kurentoClient;
+    }
+
+    ServerManager serverManager = kurentoClient.getServerManager();
+
+    double load = serverManager.getUsedCpu(cpuSamplingInterval) / 100;
+
+    if (maxPipelines > 0) {
+      load = Math.max(load, (double) serverManager.getPipelines().size() / maxPipelines);
+    }
+
+    if (maxMemory > 0) {
+      load = Math.max(load, (double) serverManager.getUsedMemory() / maxMemory);
+    }
+
+    return load;
+  }
+}
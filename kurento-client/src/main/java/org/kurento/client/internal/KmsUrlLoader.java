@@ -57,9 +57,19 @@ public class KmsUrlLoader extends UrlServiceLoader<KmsProvider> {
     }
   }
 
-  private synchronized String loadKmsUrlFromProvider(String id, int loadPoints) {
-    log.debug("Executing loadKmsUrlFromProvider({},{}) in KmsUrlLoader", id, loadPoints);
+  private String loadKmsUrlFromProvider(String id, int loadPoints) {
     KmsProvider kmsProvider = getServiceProvider();
+    if (kmsProvider instanceof ConcurrentKmsProvider) {
+      return reserveKms(kmsProvider, id, loadPoints);
+    } else {
+      synchronized (this) {
+        return reserveKms(kmsProvider, id, loadPoints);
+      }
+    }
+  }
+
+  private String reserveKms(KmsProvider kmsProvider, String id, int loadPoints) {
+    log.debug("Executing loadKmsUrlFromProvider({},{}) in KmsUrlLoader", id, loadPoints);
     if (loadPoints == -1) {
       String kmsUrl = kmsProvider.reserveKms(id);
       log.debug("Executed reserveKms({}) in serviceProvider with result={}", id, kmsUrl);
@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the getters and setters of a remote class property, as declared in the module
+ * descriptor. This information is used by the client to decide whether the value of the property
+ * can be cached.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RemoteProperty {
+
+  /**
+   * Name of the property.
+   */
+  String value();
+
+  /**
+   * The property cannot be set by the client, but its value may change in the server.
+   */
+  boolean readOnly() default false;
+
+  /**
+   * The property has a fixed value during the whole life of the object.
+   */
+  boolean constant() default false;
+
+}
@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes the listeners of the events received from the media server. By default, listeners are
+ * executed in the thread receiving the events. When a pool is configured, each remote object has
+ * its own serial queue, so its events are processed in the order they were received (ICE
+ * candidates, state changes...), but events of different objects are processed in parallel in a
+ * pool shared by all the clients of the JVM.
+ *
+ * <p>
+ * It is configured with the following properties:
+ * </p>
+ * <ul>
+ * <li>{@code kurento.client.eventDispatcher.threads}: threads of the pool (0 by default). With 0
+ * threads, listeners are executed in the thread receiving the event.</li>
+ * <li>{@code kurento.client.eventDispatcher.queueLimit}: maximum number of pending events per
+ * object when a pool is used (1000 by default).</li>
+ * </ul>
+ *
+ * <p>
+ * Events received when the queue of their object is full are discarded, so a blocked listener
+ * can't exhaust the memory of the client. Discarded events are counted in
+ * {@link #getDiscardedEvents()} and logged at most once every 10 seconds.
+ * </p>
+ */
+public class EventDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+  // Events processed in a row before letting other queues use the thread
+  private static final int MAX_EVENTS_PER_TURN = 32;
+
+  private static final long DISCARDED_EVENTS_LOG_INTERVAL_MILLIS = 10000;
+
+  private static volatile EventDispatcher defaultDispatcher;
+
+  public class EventQueue implements Runnable {
+
+    private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private EventQueue() {
+    }
+
+    /**
+     * Adds the event to the queue. Returns false if it has been discarded because the queue is
+     * full.
+     */
+    public boolean submit(Runnable event) {
+
+      if (executor == null) {
+        runEvent(event);
+        return true;
+      }
+
+      if (pending.get() >= queueLimit) {
+        eventDiscarded();
+        return false;
+      }
+
+      events.add(event);
+
+      if (pending.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+
+      return true;
+    }
+
+    @Override
+    public void run() {
+      int processed = 0;
+      do {
+        try {
+          runEvent(events.poll());
+        } catch (Throwable t) {
+          // An Error thrown by a listener kills this thread. The event is consumed, and the rest
+          // of the queue is handed to another thread so it doesn't stall forever
+          if (pending.decrementAndGet() > 0) {
+            executor.execute(this);
+          }
+          throw t;
+        }
+        processed++;
+        if (processed == MAX_EVENTS_PER_TURN && pending.get() > 1) {
+          pending.decrementAndGet();
+          executor.execute(this);
+          return;
+        }
+      } while (pending.decrementAndGet() > 0);
+    }
+
+    public int getPendingEvents() {
+      return pending.get();
+    }
+  }
+
+  private final ExecutorService executor;
+  private final int queueLimit;
+
+  private final AtomicLong discardedEvents = new AtomicLong();
+  private final AtomicLong lastDiscardLogTime = new AtomicLong();
+
+  public EventDispatcher(int threads, int queueLimit) {
+    this.queueLimit = queueLimit;
+    if (threads > 0) {
+      this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setNameFormat("EventDispatcher-t%d").setDaemon(true).build());
+    } else {
+      this.executor = null;
+    }
+  }
+
+  public static EventDispatcher getDefault() {
+    if (defaultDispatcher == null) {
+      synchronized (EventDispatcher.class) {
+        if (defaultDispatcher == null) {
+          defaultDispatcher = new EventDispatcher(
+              PropertiesManager.getProperty("kurento.client.eventDispatcher.threads",
+                  0),
+              PropertiesManager.getProperty("kurento.client.eventDispatcher.queueLimit", 1000));
+        }
+      }
+    }
+    return defaultDispatcher;
+  }
+
+  public EventQueue newQueue() {
+    return new EventQueue();
+  }
+
+  /**
+   * Returns true if listeners are executed in the pool instead of in the thread receiving the
+   * events.
+   */
+  public boolean isAsync() {
+    return executor != null;
+  }
+
+  /**
+   * Returns the number of events discarded because the queue of their object was full.
+   */
+  public long getDiscardedEvents() {
+    return discardedEvents.get();
+  }
+
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void eventDiscarded() {
+
+    long discarded = discardedEvents.incrementAndGet();
+
+    long now = System.currentTimeMillis();
+    long lastLogTime = lastDiscardLogTime.get();
+    if (now - lastLogTime >= DISCARDED_EVENTS_LOG_INTERVAL_MILLIS
+        && lastDiscardLogTime.compareAndSet(lastLogTime, now)) {
+      log.warn("Event discarded because {} events of the same object are pending. {} events "
+          + "discarded in total", queueLimit, discarded);
+    }
+  }
+
+  private void runEvent(Runnable event) {
+    try {
+      event.run();
+    } catch (Exception e) {
+      log.error("Exception processing event", e);
+    }
+  }
+}
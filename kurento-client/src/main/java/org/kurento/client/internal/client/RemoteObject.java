@@ -17,9 +17,14 @@
 
 package org.kurento.client.internal.client;
 
+import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 
@@ -36,27 +41,26 @@ import org.kurento.client.internal.client.operation.ReleaseOperation;
 import org.kurento.client.internal.client.operation.SubscriptionOperation;
 import org.kurento.client.internal.client.operation.UnsubscriptionOperation;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.Prop;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-
 public class RemoteObject {
 
   public enum ObjectStatus {
-    NOT_COMMITED, ROLLBACK, CREATED
+    NOT_COMMITED, ROLLBACK, CREATED, CREATING, CREATION_FAILED
   }
 
   private static Logger log = LoggerFactory.getLogger(RemoteObject.class);
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
-  private String objectRef;
+  // Changes from a placeholder to the real reference when a pipelined creation finishes
+  private volatile String objectRef;
   private final String type;
-  private ObjectStatus objectStatus;
+  private volatile ObjectStatus objectStatus;
   private final RomManager manager;
 
   private KurentoObject kurentoObject;
@@ -65,22 +69,34 @@ public class RemoteObject {
   private Continuation<Object> whenContinuation;
   private Executor executor;
 
-  private final ArrayListMultimap<String, RemoteObjectEventListener> multi = ArrayListMultimap
-      .create();
-  private final Multimap<String, RemoteObjectEventListener> listeners = Multimaps
-      .synchronizedMultimap(multi);
+  // Listeners of each event type. Arrays are never modified, but replaced by updated copies, so
+  // events are fired without locking or copying them
+  private final ConcurrentMap<String, RemoteObjectEventListener[]> listeners =
+      new ConcurrentHashMap<>();
 
   private TransactionExecutionException transactionException;
 
+  private volatile RemotePropertyCache propertyCache;
+
+  private volatile EventDispatcher.EventQueue eventQueue;
+
+  private Throwable creationError;
+  private List<Runnable> creationTasks;
+
   public RemoteObject(String objectRef, String type, RomManager manager) {
     this(objectRef, type, true, manager);
   }
 
   public RemoteObject(String objectRef, String type, boolean created, RomManager manager) {
+    this(objectRef, type, created ? ObjectStatus.CREATED : ObjectStatus.NOT_COMMITED, manager);
+  }
+
+  public RemoteObject(String objectRef, String type, ObjectStatus objectStatus,
+      RomManager manager) {
     this.objectRef = objectRef;
     this.manager = manager;
     this.type = type;
-    this.objectStatus = created ? ObjectStatus.CREATED : ObjectStatus.NOT_COMMITED;
+    this.objectStatus = objectStatus;
 
     this.manager.registerObject(objectRef, this);
   }
@@ -89,6 +105,101 @@ public class RemoteObject {
     return objectStatus == ObjectStatus.CREATED;
   }
 
+  /**
+   * Returns true if this object has been created in pipelined mode and the media server has not
+   * answered yet with its real reference.
+   */
+  public boolean isCreating() {
+    return objectStatus == ObjectStatus.CREATING;
+  }
+
+  /**
+   * Executes the task when the pipelined creation of this object has finished, either successfully
+   * or with an error. If the object is not being created, the task is executed immediately.
+   */
+  public void whenCreated(Runnable task) {
+    synchronized (this) {
+      if (objectStatus == ObjectStatus.CREATING) {
+        if (creationTasks == null) {
+          creationTasks = new ArrayList<>();
+        }
+        creationTasks.add(task);
+        return;
+      }
+    }
+    task.run();
+  }
+
+  /**
+   * Executes the task when all the objects have finished their pipelined creation.
+   */
+  public static void whenCreated(final List<RemoteObject> objects, final Runnable task) {
+    if (objects.isEmpty()) {
+      task.run();
+    } else {
+      objects.get(0).whenCreated(new Runnable() {
+        @Override
+        public void run() {
+          whenCreated(objects.subList(1, objects.size()), task);
+        }
+      });
+    }
+  }
+
+  /**
+   * Blocks the caller while this object is being created in pipelined mode. Throws the creation
+   * error if the media server couldn't create it.
+   */
+  public void waitCreated() {
+    if (objectStatus == ObjectStatus.CREATING) {
+      try {
+        waitCommited();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new KurentoException("Interrupted while waiting creation of object of type '"
+            + type + "'", e);
+      }
+    }
+    if (objectStatus == ObjectStatus.CREATION_FAILED) {
+      throw new KurentoException("Object of type '" + type + "' couldn't be created",
+          creationError);
+    }
+  }
+
+  /**
+   * Obtains the objects being created in pipelined mode that are referenced in the params.
+   */
+  public static List<RemoteObject> getCreatingObjects(Props params) {
+    List<RemoteObject> creatingObjects = new ArrayList<>();
+    if (params != null) {
+      for (Prop prop : params) {
+        collectCreatingObjects(prop.getValue(), creatingObjects);
+      }
+    }
+    return creatingObjects;
+  }
+
+  private static void collectCreatingObjects(Object value, List<RemoteObject> creatingObjects) {
+    if (value instanceof KurentoObject && Proxy.isProxyClass(value.getClass())) {
+      RemoteObject remoteObject = RemoteObjectInvocationHandler.getFor(value).getRemoteObject();
+      if (remoteObject.isCreating()) {
+        creatingObjects.add(remoteObject);
+      }
+    } else if (value instanceof List<?>) {
+      for (Object element : (List<?>) value) {
+        collectCreatingObjects(element, creatingObjects);
+      }
+    } else if (value instanceof Map<?, ?>) {
+      for (Object element : ((Map<?, ?>) value).values()) {
+        collectCreatingObjects(element, creatingObjects);
+      }
+    } else if (value instanceof Props) {
+      for (Prop prop : (Props) value) {
+        collectCreatingObjects(prop.getValue(), creatingObjects);
+      }
+    }
+  }
+
   public void waitCommited() throws InterruptedException {
     createReadyLatchIfNecessary();
     readyLatch.await();
@@ -141,6 +252,17 @@ public class RemoteObject {
     }
   }
 
+  public RemotePropertyCache getPropertyCache() {
+    if (propertyCache == null) {
+      synchronized (this) {
+        if (propertyCache == null) {
+          propertyCache = new RemotePropertyCache(this);
+        }
+      }
+    }
+    return propertyCache;
+  }
+
   public KurentoObject getKurentoObject() {
     return kurentoObject;
   }
@@ -197,7 +319,20 @@ public class RemoteObject {
   }
 
   @SuppressWarnings("rawtypes")
-  public void invoke(String method, Props params, final Type type, final Continuation cont) {
+  public void invoke(final String method, final Props params, final Type type,
+      final Continuation cont) {
+
+    if (isCreating() || !getCreatingObjects(params).isEmpty()) {
+      List<RemoteObject> dependencies = getCreatingObjects(params);
+      dependencies.add(this);
+      whenCreated(dependencies, new CreatedTask(cont) {
+        @Override
+        protected void execute() {
+          invoke(method, params, type, cont);
+        }
+      });
+      return;
+    }
 
     checkCreated();
 
@@ -230,6 +365,16 @@ public class RemoteObject {
 
   public void release(final Continuation<Void> cont) {
 
+    if (isCreating()) {
+      whenCreated(new CreatedTask(cont) {
+        @Override
+        protected void execute() {
+          release(cont);
+        }
+      });
+      return;
+    }
+
     checkCreated();
 
     manager.release(objectRef, new DefaultContinuation<Void>(cont) {
@@ -251,7 +396,8 @@ public class RemoteObject {
 
     String subscription = manager.subscribe(objectRef, eventType);
 
-    listeners.put(eventType, listener);
+    addListener(eventType, listener);
+    onSubscribed(eventType);
 
     return new ListenerSubscriptionImpl(subscription, eventType, listener);
   }
@@ -267,33 +413,74 @@ public class RemoteObject {
   public void addEventListener(final String eventType, final RemoteObjectEventListener listener,
       final Continuation<ListenerSubscriptionImpl> cont) {
 
+    if (isCreating()) {
+      whenCreated(new CreatedTask(cont) {
+        @Override
+        protected void execute() {
+          addEventListener(eventType, listener, cont);
+        }
+      });
+      return;
+    }
+
     checkCreated();
 
-    listeners.put(eventType, listener);
+    addListener(eventType, listener);
 
     manager.subscribe(objectRef, eventType, new DefaultContinuation<String>(cont) {
       @Override
       public void onSuccess(String subscription) {
 
+        onSubscribed(eventType);
+
         try {
           cont.onSuccess(new ListenerSubscriptionImpl(subscription, eventType, listener));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
       }
+
+      @Override
+      public void onError(Throwable cause) {
+        removeListener(eventType, listener);
+        super.onError(cause);
+      }
     });
   }
 
+  /**
+   * Tells the property cache that the server has confirmed a subscription to the event, so the
+   * state property it carries can be kept updated from now on.
+   */
+  private void onSubscribed(String eventType) {
+    if (manager.isPropertyCacheEnabled()) {
+      getPropertyCache().onSubscribed(eventType);
+    }
+  }
+
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription) {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription.getListener());
+    removeLocalListener(listenerSubscription);
 
     manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
 
   }
 
+  /**
+   * Stops firing events to the listener of the subscription. It is also invoked when an
+   * unsubscription executed in a transaction is committed.
+   */
+  public void removeLocalListener(ListenerSubscriptionImpl listenerSubscription) {
+
+    removeListener(listenerSubscription.getType(), listenerSubscription.getListener());
+
+    if (propertyCache != null) {
+      propertyCache.onUnsubscribe(listenerSubscription.getType());
+    }
+  }
+
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription, Transaction tx) {
     TransactionImpl txImpl = (TransactionImpl) tx;
     UnsubscriptionOperation op = new UnsubscriptionOperation(getKurentoObject(),
@@ -306,7 +493,7 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription);
+    removeLocalListener(listenerSubscription);
 
     manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId(),
         new DefaultContinuation<Void>(cont) {
@@ -323,16 +510,40 @@ public class RemoteObject {
         });
   }
 
+  /**
+   * Queues the event to be fired in the {@link EventDispatcher}, after the previous events of this
+   * object. Returns false if the event has been discarded because there are too many pending
+   * events.
+   */
+  public boolean dispatchEvent(final String type, final Props data) {
+    return getEventQueue().submit(new Runnable() {
+      @Override
+      public void run() {
+        fireEvent(type, data);
+      }
+    });
+  }
+
+  private EventDispatcher.EventQueue getEventQueue() {
+    if (eventQueue == null) {
+      synchronized (this) {
+        if (eventQueue == null) {
+          eventQueue = EventDispatcher.getDefault().newQueue();
+        }
+      }
+    }
+    return eventQueue;
+  }
+
   public void fireEvent(String type, Props data) {
 
-    Collection<RemoteObjectEventListener> typeListeners;
-    synchronized (this.listeners) {
-      typeListeners = new ArrayList<>(this.listeners.get(type));
-      log.debug("Listeners found in object {}:{} for event {}: {}", super.hashCode(),
-          this.getObjectRef(), type, typeListeners);
+    if (propertyCache != null) {
+      propertyCache.onEvent(type, data);
     }
 
-    if (typeListeners.isEmpty()) {
+    RemoteObjectEventListener[] typeListeners = listeners.get(type);
+
+    if (typeListeners == null) {
 
       log.warn(
           "Received event with data {} in object {} but there is no listener registered for it",
@@ -350,11 +561,52 @@ public class RemoteObject {
     }
   }
 
+  private void addListener(String eventType, RemoteObjectEventListener listener) {
+    while (true) {
+      RemoteObjectEventListener[] current = listeners.get(eventType);
+      if (current == null) {
+        RemoteObjectEventListener[] created = new RemoteObjectEventListener[] { listener };
+        if (listeners.putIfAbsent(eventType, created) == null) {
+          return;
+        }
+      } else {
+        RemoteObjectEventListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        if (listeners.replace(eventType, current, updated)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void removeListener(String eventType, RemoteObjectEventListener listener) {
+    while (true) {
+      RemoteObjectEventListener[] current = listeners.get(eventType);
+      int index = current != null ? Arrays.asList(current).indexOf(listener) : -1;
+      if (index < 0) {
+        return;
+      }
+      if (current.length == 1) {
+        if (listeners.remove(eventType, current)) {
+          return;
+        }
+      } else {
+        RemoteObjectEventListener[] updated = new RemoteObjectEventListener[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        if (listeners.replace(eventType, current, updated)) {
+          return;
+        }
+      }
+    }
+  }
+
   public Transaction beginTransaction() {
     return new TransactionImpl(manager);
   }
 
   private void checkCreated() {
+    waitCreated();
     if (objectStatus == ObjectStatus.NOT_COMMITED) {
       throw new TransactionNotCommitedException();
     } else if (objectStatus == ObjectStatus.ROLLBACK) {
@@ -362,48 +614,99 @@ public class RemoteObject {
     }
   }
 
+  /**
+   * Remote objects are compared by identity. The object manager keeps only one remote object per
+   * reference, and the reference of an object changes when its pipelined creation finishes, so it
+   * can't be used as hash code of objects stored in sets or maps.
+   */
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + (objectRef == null ? 0 : objectRef.hashCode());
-    return result;
+    return super.hashCode();
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (this == obj) {
-      return true;
-    }
-    if (obj == null) {
-      return false;
-    }
-    if (getClass() != obj.getClass()) {
-      return false;
-    }
-    RemoteObject other = (RemoteObject) obj;
-    if (objectRef == null) {
-      if (other.objectRef != null) {
-        return false;
-      }
-    } else if (!objectRef.equals(other.objectRef)) {
-      return false;
-    }
-    return true;
+    return this == obj;
   }
 
   public void setCreatedObjectRef(String objectRef) {
+    String oldObjectRef = this.objectRef;
     this.objectRef = objectRef;
-    this.objectStatus = ObjectStatus.CREATED;
+    manager.getObjectManager().updateObjectRef(oldObjectRef, objectRef, this);
+    List<Runnable> tasks;
+    synchronized (this) {
+      this.objectStatus = ObjectStatus.CREATED;
+      tasks = takeCreationTasks();
+    }
     createReadyLatchIfNecessary();
     readyLatch.countDown();
     if (whenContinuation != null) {
       execWhenCommited();
     }
+    runCreationTasks(tasks);
+  }
+
+  public void creationFailed(Throwable cause) {
+    List<Runnable> tasks;
+    synchronized (this) {
+      this.creationError = cause;
+      this.objectStatus = ObjectStatus.CREATION_FAILED;
+      tasks = takeCreationTasks();
+    }
+    manager.getObjectManager().releaseObject(objectRef, this);
+    createReadyLatchIfNecessary();
+    readyLatch.countDown();
+    runCreationTasks(tasks);
+  }
+
+  private List<Runnable> takeCreationTasks() {
+    List<Runnable> tasks = creationTasks;
+    creationTasks = null;
+    return tasks;
+  }
+
+  private void runCreationTasks(List<Runnable> tasks) {
+    if (tasks != null) {
+      for (Runnable task : tasks) {
+        try {
+          task.run();
+        } catch (Exception e) {
+          log.warn("Exception executing operation queued on object {}", objectRef, e);
+        }
+      }
+    }
   }
 
   public void rollbackTransaction(TransactionExecutionException transactionException) {
     this.objectStatus = ObjectStatus.ROLLBACK;
     this.transactionException = transactionException;
   }
+
+  /**
+   * Operation queued until the pipelined creation of the objects it depends on has finished. If
+   * any of them could not be created, the error is propagated to the continuation.
+   */
+  private abstract static class CreatedTask implements Runnable {
+
+    private final Continuation<?> cont;
+
+    public CreatedTask(Continuation<?> cont) {
+      this.cont = cont;
+    }
+
+    @Override
+    public void run() {
+      try {
+        execute();
+      } catch (Exception e) {
+        try {
+          cont.onError(e);
+        } catch (Exception ex) {
+          log.warn("[Continuation] error invoking onError implemented by client", ex);
+        }
+      }
+    }
+
+    protected abstract void execute();
+  }
 }
@@ -33,6 +33,7 @@ import org.kurento.client.EventListener;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.RemoteProperty;
 import org.kurento.client.internal.server.EventSubscription;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.jsonrpc.Props;
@@ -40,11 +41,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 
   private static final Logger log = LoggerFactory.getLogger(RemoteObjectInvocationHandler.class);
 
+  private static final String ASYNC_SUFFIX = "Async";
+
   private static final Set<String> REMOTE_OBJECT_METHODS = ImmutableSet.of("isCommited",
       "waitCommited", "whenCommited", "beginTransaction");
 
@@ -85,6 +90,10 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 
     log.trace("Invoking method {} on object {}", method, proxy);
 
+    if (method.getReturnType() == ListenableFuture.class && methodName.endsWith(ASYNC_SUFFIX)) {
+      return invokeWithFuture(method, args);
+    }
+
     Continuation<?> cont = null;
     Transaction tx = null;
     List<String> paramNames = Collections.emptyList();
@@ -124,12 +133,84 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
         throw new IllegalStateException("Method " + methodName + " undefined for events");
       }
 
+    } else if (method.getAnnotation(RemoteProperty.class) != null
+        && manager.isPropertyCacheEnabled()) {
+
+      return invokeProperty(method.getAnnotation(RemoteProperty.class), method, paramNames, args,
+          cont, tx);
+
     } else {
 
       return invoke(method, paramNames, args, cont, tx);
     }
   }
 
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Object invokeProperty(final RemoteProperty property, Method method,
+      List<String> paramNames, final Object[] args, final Continuation<?> cont, Transaction tx) {
+
+    final RemotePropertyCache cache = remoteObject.getPropertyCache();
+
+    if (tx != null) {
+      cache.invalidate(property.value());
+      return invoke(method, paramNames, args, cont, tx);
+    }
+
+    if (!method.getName().startsWith("get")) {
+
+      cache.invalidate(property.value());
+
+      if (cont == null) {
+        Object result = invoke(method, paramNames, args, null, null);
+        cache.written(property, args[0]);
+        return result;
+      }
+
+      Props props = ParamAnnotationUtils.extractProps(paramNames, args);
+      remoteObject.invoke(method.getName(), props, Void.class, new DefaultContinuation<Void>(cont) {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          cache.written(property, args[0]);
+          ((Continuation) cont).onSuccess(null);
+        }
+      });
+      return null;
+    }
+
+    if (cont == null) {
+
+      Object value = cache.get(property, method.getGenericReturnType());
+      if (value == RemotePropertyCache.MISSING) {
+        value = invoke(method, paramNames, args, null, null);
+        cache.read(property, value);
+      }
+      return value;
+    }
+
+    Type[] paramTypes = method.getGenericParameterTypes();
+    ParameterizedType contType = (ParameterizedType) paramTypes[paramTypes.length - 1];
+    Type returnType = contType.getActualTypeArguments()[0];
+
+    Object value = cache.get(property, returnType);
+    if (value != RemotePropertyCache.MISSING) {
+      try {
+        ((Continuation) cont).onSuccess(value);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+      return null;
+    }
+
+    remoteObject.invoke(method.getName(), null, returnType, new DefaultContinuation<Object>(cont) {
+      @Override
+      public void onSuccess(Object result) throws Exception {
+        cache.read(property, result);
+        ((Continuation) cont).onSuccess(result);
+      }
+    });
+    return null;
+  }
+
   private Object invoke(Method method, List<String> paramNames, Object[] args, Continuation<?> cont,
       Transaction tx) {
 
@@ -161,6 +242,47 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     }
   }
 
+  /**
+   * Invokes the operation {@code xxx} for a method {@code xxxAsync}. The returned future is
+   * completed directly from the continuation of the request, in the thread that receives the
+   * response.
+   */
+  private ListenableFuture<Object> invokeWithFuture(Method method, Object[] args) {
+
+    String methodName = method.getName();
+    String operationName = methodName.substring(0, methodName.length() - ASYNC_SUFFIX.length());
+
+    List<String> paramNames = Collections.emptyList();
+    if (args != null && args.length > 0) {
+      paramNames = ParamAnnotationUtils.getParamNames(method);
+    }
+
+    Props props = ParamAnnotationUtils.extractProps(paramNames, args);
+
+    ParameterizedType futureType = (ParameterizedType) method.getGenericReturnType();
+    Type returnType = futureType.getActualTypeArguments()[0];
+
+    final SettableFuture<Object> future = SettableFuture.create();
+
+    try {
+      remoteObject.invoke(operationName, props, returnType, new Continuation<Object>() {
+        @Override
+        public void onSuccess(Object result) {
+          future.set(result);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          future.setException(cause);
+        }
+      });
+    } catch (Exception e) {
+      future.setException(e);
+    }
+
+    return future;
+  }
+
   @SuppressWarnings("unchecked")
   private Object release(Continuation<?> cont, Transaction tx) {
     if (cont != null) {
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.internal.RemoteProperty;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Client side cache of the properties of a {@link RemoteObject}. The caching policy is driven by
+ * the property metadata ({@link RemoteProperty}):
+ * <ul>
+ * <li>Constant properties are cached forever once read.</li>
+ * <li>Writable properties are cached with the value set by the client, until the next write.</li>
+ * <li>Read-only properties with a state change event ({@code <Property>Changed} with a
+ * {@code newState} field, like {@code MediaStateChanged}) are cached while the server has confirmed
+ * a subscription of the object to that event, and refreshed with each event received.</li>
+ * </ul>
+ * Other read-only properties are never cached, as their value can change in the server without
+ * notice.
+ */
+public class RemotePropertyCache {
+
+  public static final Object MISSING = new Object();
+
+  private static final Object NULL = new Object();
+
+  private static final String STATE_EVENT_SUFFIX = "Changed";
+  private static final String STATE_EVENT_VALUE = "newState";
+
+  private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
+
+  private final RemoteObject remoteObject;
+
+  private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Object> stateValues = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> subscriptions = new ConcurrentHashMap<>();
+
+  public RemotePropertyCache(RemoteObject remoteObject) {
+    this.remoteObject = remoteObject;
+  }
+
+  /**
+   * Returns the cached value of the property, or {@link #MISSING} if it is not cached.
+   */
+  public Object get(RemoteProperty property, Type type) {
+
+    String name = property.value();
+
+    if (property.readOnly() && !property.constant()) {
+
+      if (!isSubscribedToState(name)) {
+        return MISSING;
+      }
+
+      Object stateValue = stateValues.get(name);
+      if (stateValue == null) {
+        return MISSING;
+      }
+      return FLATTENER.unflattenValue("return", type, fromCache(stateValue),
+          remoteObject.getRomManager());
+    }
+
+    Object value = values.get(name);
+    return value == null ? MISSING : fromCache(value);
+  }
+
+  /**
+   * Stores the value read from the server, if the policy of the property allows it. State
+   * properties are only stored if there is a subscription to their change event to keep them
+   * updated.
+   */
+  public void read(RemoteProperty property, Object value) {
+    if (property.constant()) {
+      values.put(property.value(), toCache(value));
+    } else if (property.readOnly() && isSubscribedToState(property.value())) {
+      Object flattenedValue = FLATTENER.flattenParams(new Props("value", value)).getProp("value");
+      stateValues.putIfAbsent(property.value(), toCache(flattenedValue));
+    }
+  }
+
+  /**
+   * Stores the value written by the client in a writable property.
+   */
+  public void written(RemoteProperty property, Object value) {
+    if (!property.readOnly() && !property.constant()) {
+      values.put(property.value(), toCache(value));
+    }
+  }
+
+  public void invalidate(String propertyName) {
+    values.remove(propertyName);
+    stateValues.remove(propertyName);
+  }
+
+  /**
+   * Refreshes the state property associated with the event, if any.
+   */
+  public void onEvent(String eventType, Props data) {
+    if (eventType.endsWith(STATE_EVENT_SUFFIX) && data != null
+        && data.getProp(STATE_EVENT_VALUE) != null) {
+      String name = eventType.substring(0, eventType.length() - STATE_EVENT_SUFFIX.length());
+      name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+      stateValues.put(name, toCache(data.getProp(STATE_EVENT_VALUE)));
+    }
+  }
+
+  /**
+   * Records a subscription to the event confirmed by the server. It must not be called before the
+   * subscribe request succeeds, as state changes happening before it would be missed.
+   */
+  public void onSubscribed(String eventType) {
+    if (!eventType.endsWith(STATE_EVENT_SUFFIX)) {
+      return;
+    }
+    AtomicInteger count = subscriptions.get(eventType);
+    if (count == null) {
+      AtomicInteger created = new AtomicInteger();
+      count = subscriptions.putIfAbsent(eventType, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  public void onUnsubscribe(String eventType) {
+    if (!eventType.endsWith(STATE_EVENT_SUFFIX)) {
+      return;
+    }
+    AtomicInteger count = subscriptions.get(eventType);
+    if (count == null) {
+      return;
+    }
+    while (true) {
+      int current = count.get();
+      if (current == 0) {
+        break;
+      }
+      if (count.compareAndSet(current, current - 1)) {
+        if (current > 1) {
+          return;
+        }
+        break;
+      }
+    }
+    String name = eventType.substring(0, eventType.length() - STATE_EVENT_SUFFIX.length());
+    stateValues.remove(Character.toLowerCase(name.charAt(0)) + name.substring(1));
+  }
+
+  private boolean isSubscribedToState(String propertyName) {
+    AtomicInteger count = subscriptions.get(
+        Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1)
+            + STATE_EVENT_SUFFIX);
+    return count != null && count.get() > 0;
+  }
+
+  private static Object toCache(Object value) {
+    return value == null ? NULL : value;
+  }
+
+  private static Object fromCache(Object value) {
+    return value == NULL ? null : value;
+  }
+}
@@ -59,6 +59,10 @@ public interface RomClient {
 
   // Other methods --------------------------------------
 
+  public abstract void enableAutoBatching(long windowMillis, int maxOperations);
+
+  public abstract void disableAutoBatching();
+
   public abstract void addRomEventHandler(RomEventHandler eventHandler);
 
   public abstract void destroy();
@@ -17,20 +17,88 @@
 
 package org.kurento.client.internal.client;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.MapMaker;
-
+/**
+ * Registry of the remote objects known by the client. Objects are weakly referenced, so they can
+ * be garbage collected when the application doesn't use them anymore. Collected entries are
+ * purged eagerly through a {@link ReferenceQueue}. Objects created by this client that are
+ * collected without having been released are reported, as their resources in the media server
+ * are probably leaked. The elements of a pipeline are released with it, so an element collected
+ * while its pipeline is registered is only reported if the pipeline is collected without being
+ * released too.
+ */
 public class RomClientObjectManager implements RomEventHandler, ObjectRefsManager {
 
   private static final Logger log = LoggerFactory.getLogger(RomClientObjectManager.class);
 
-  private final ConcurrentMap<String, RemoteObject> objects = new MapMaker().weakValues().makeMap();
+  private static final String UNKNOWN_TYPE = "Unknown";
+
+  private static final char PIPELINE_SEPARATOR = '/';
+
+  private static class RemoteObjectReference extends WeakReference<RemoteObject> {
+
+    private final String objectRef;
+    private final String pipelineRef;
+    private final String type;
+    private volatile boolean owned;
+
+    public RemoteObjectReference(String objectRef, RemoteObject remoteObject, boolean owned,
+        ReferenceQueue<RemoteObject> queue) {
+      super(remoteObject, queue);
+      this.objectRef = objectRef;
+      // Refs of pipeline objects are prefixed with the ref of their pipeline
+      int index = objectRef.indexOf(PIPELINE_SEPARATOR);
+      this.pipelineRef = index == -1 ? null : objectRef.substring(0, index);
+      this.type = remoteObject.getType() != null ? remoteObject.getType() : UNKNOWN_TYPE;
+      this.owned = owned;
+    }
+  }
+
+  /**
+   * Objects registered in a pipeline. Guarded by itself, and removed from the index when its
+   * pipeline is released or collected, or when it becomes empty.
+   */
+  private static class PipelineObjects {
+
+    private final Set<RemoteObjectReference> registered = new HashSet<>();
+
+    // Owned objects collected while the pipeline was registered
+    private final List<RemoteObjectReference> collected = new ArrayList<>();
+
+    private boolean removed;
+
+    private boolean isEmpty() {
+      return registered.isEmpty() && collected.isEmpty();
+    }
+  }
+
+  private final ConcurrentMap<String, RemoteObjectReference> objects = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, PipelineObjects> objectsByPipeline =
+      new ConcurrentHashMap<>();
+
+  private final ReferenceQueue<RemoteObject> collectedObjects = new ReferenceQueue<>();
+
+  private final ConcurrentMap<String, AtomicLong> liveObjectsByType = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, AtomicLong> leakedObjectsByType = new ConcurrentHashMap<>();
 
   private final RomClient client;
 
@@ -45,34 +113,283 @@ public class RomClientObjectManager implements RomEventHandler, ObjectRefsManage
   @Override
   public void processEvent(String objectRef, String subscription, String type, Props data) {
 
-    RemoteObject object = objects.get(objectRef);
+    RemoteObject object = getRemoteObject(objectRef);
 
     if (object == null) {
       log.error(
           "Trying to propagate a event with type={} and data={} to object {}, "
-              + "but that doesn't exist in the client. Objects are={}",
-          type, data, objectRef, objects);
+              + "but that doesn't exist in the client. Number of objects in the client={}",
+          type, data, objectRef, objects.size());
       return;
     }
 
-    object.fireEvent(type, data);
+    if (!object.dispatchEvent(type, data)) {
+      // The dispatcher counts discarded events and logs them periodically
+      log.debug("Too many pending events in object {}. Event {} discarded", objectRef, type);
+    }
   }
 
   public void registerObject(String objectRef, RemoteObject remoteObject) {
-    this.objects.put(objectRef, remoteObject);
+    registerObject(objectRef, remoteObject, false);
+  }
+
+  /**
+   * Registers an object. Owned objects are the ones created by this client, and they are expected
+   * to be released before being garbage collected.
+   */
+  public void registerObject(String objectRef, RemoteObject remoteObject, boolean owned) {
+    purgeCollectedObjects();
+    RemoteObjectReference reference = new RemoteObjectReference(objectRef, remoteObject, owned,
+        collectedObjects);
+    RemoteObjectReference oldReference = this.objects.put(objectRef, reference);
+    if (oldReference != null) {
+      oldReference.clear();
+      decrement(liveObjectsByType, oldReference.type);
+      removeFromPipeline(oldReference);
+    }
+    increment(liveObjectsByType, reference.type);
+    addToPipeline(reference);
+  }
+
+  /**
+   * Marks an already registered object as created by this client.
+   */
+  public void setOwned(String objectRef) {
+    RemoteObjectReference reference = this.objects.get(objectRef);
+    if (reference != null) {
+      reference.owned = true;
+    }
+  }
+
+  /**
+   * Registers the object with its new reference, keeping its ownership.
+   */
+  public void updateObjectRef(String oldObjectRef, String newObjectRef,
+      RemoteObject remoteObject) {
+    RemoteObjectReference oldReference = this.objects.get(oldObjectRef);
+    boolean owned = false;
+    if (oldReference != null && oldReference.get() == remoteObject) {
+      owned = oldReference.owned;
+      removeReference(oldReference);
+    }
+    registerObject(newObjectRef, remoteObject, owned);
   }
 
+  /**
+   * Removes an object released in the media server. The objects contained in it (the elements of a
+   * released pipeline, whose references are prefixed by the reference of the pipeline) are released
+   * by the media server too, so they are removed as well and not reported as leaked when collected.
+   */
   public void releaseObject(String objectRef) {
-    this.objects.remove(objectRef);
+    purgeCollectedObjects();
+    RemoteObjectReference reference = this.objects.get(objectRef);
+    if (reference != null) {
+      removeReference(reference);
+    }
+    if (objectRef.indexOf(PIPELINE_SEPARATOR) == -1) {
+      for (RemoteObjectReference child : takePipelineObjects(objectRef, false)) {
+        removeReference(child);
+      }
+    }
+  }
+
+  public void releaseObject(String objectRef, RemoteObject remoteObject) {
+    RemoteObjectReference reference = this.objects.get(objectRef);
+    if (reference != null && reference.get() == remoteObject) {
+      removeReference(reference);
+    }
   }
 
   public RemoteObject getRemoteObject(String objectRef) {
-    return this.objects.get(objectRef);
+    purgeCollectedObjects();
+    RemoteObjectReference reference = this.objects.get(objectRef);
+    return reference != null ? reference.get() : null;
   }
 
   @Override
   public Object getObject(String objectRef) {
-    return this.objects.get(objectRef);
+    return getRemoteObject(objectRef);
+  }
+
+  /**
+   * Returns the number of objects registered in the client.
+   */
+  public int getObjectsCount() {
+    purgeCollectedObjects();
+    return objects.size();
+  }
+
+  /**
+   * Returns the number of objects registered in the client by remote class.
+   */
+  public Map<String, Long> getObjectsCountByType() {
+    purgeCollectedObjects();
+    return snapshot(liveObjectsByType);
+  }
+
+  /**
+   * Returns the number of objects created by this client that have been garbage collected without
+   * being released, by remote class.
+   */
+  public Map<String, Long> getLeakedObjectsCountByType() {
+    purgeCollectedObjects();
+    return snapshot(leakedObjectsByType);
+  }
+
+  private void removeReference(RemoteObjectReference reference) {
+    if (this.objects.remove(reference.objectRef, reference)) {
+      reference.clear();
+      decrement(liveObjectsByType, reference.type);
+      removeFromPipeline(reference);
+    }
+  }
+
+  private void purgeCollectedObjects() {
+
+    RemoteObjectReference reference;
+    while ((reference = (RemoteObjectReference) collectedObjects.poll()) != null) {
+
+      if (!this.objects.remove(reference.objectRef, reference)) {
+        // Already released or replaced
+        continue;
+      }
+
+      decrement(liveObjectsByType, reference.type);
+
+      if (reference.pipelineRef == null) {
+        // The pipeline has not been released, so neither have the elements collected before it
+        for (RemoteObjectReference child : takePipelineObjects(reference.objectRef, true)) {
+          reportLeaked(child);
+        }
+        if (reference.owned) {
+          reportLeaked(reference);
+        }
+      } else if (!removeCollectedFromPipeline(reference) && reference.owned) {
+        reportLeaked(reference);
+      }
+    }
+  }
+
+  private void reportLeaked(RemoteObjectReference reference) {
+    increment(leakedObjectsByType, reference.type);
+    log.warn("Remote object {} of type {} has been garbage collected without being released. "
+        + "Its resources in the media server may be leaked", reference.objectRef, reference.type);
+  }
+
+  private void addToPipeline(RemoteObjectReference reference) {
+
+    if (reference.pipelineRef == null) {
+      return;
+    }
+
+    while (true) {
+      PipelineObjects pipelineObjects = objectsByPipeline.get(reference.pipelineRef);
+      if (pipelineObjects == null) {
+        PipelineObjects newPipelineObjects = new PipelineObjects();
+        pipelineObjects = objectsByPipeline.putIfAbsent(reference.pipelineRef, newPipelineObjects);
+        if (pipelineObjects == null) {
+          pipelineObjects = newPipelineObjects;
+        }
+      }
+      synchronized (pipelineObjects) {
+        // The objects could have been removed from the index while they were empty
+        if (!pipelineObjects.removed) {
+          pipelineObjects.registered.add(reference);
+          return;
+        }
+      }
+    }
+  }
+
+  private void removeFromPipeline(RemoteObjectReference reference) {
+
+    if (reference.pipelineRef == null) {
+      return;
+    }
+
+    PipelineObjects pipelineObjects = objectsByPipeline.get(reference.pipelineRef);
+    if (pipelineObjects != null) {
+      synchronized (pipelineObjects) {
+        pipelineObjects.registered.remove(reference);
+        removeIfEmpty(reference.pipelineRef, pipelineObjects);
+      }
+    }
+  }
+
+  /**
+   * Removes a collected object from the index of its pipeline. Owned objects are kept in the index
+   * while their pipeline is registered, to be reported only if it is not released.
+   *
+   * @return true if the object has been kept in the index of its pipeline
+   */
+  private boolean removeCollectedFromPipeline(RemoteObjectReference reference) {
+
+    PipelineObjects pipelineObjects = objectsByPipeline.get(reference.pipelineRef);
+    if (pipelineObjects == null) {
+      return false;
+    }
+
+    synchronized (pipelineObjects) {
+      pipelineObjects.registered.remove(reference);
+      if (reference.owned && !pipelineObjects.removed
+          && this.objects.containsKey(reference.pipelineRef)) {
+        pipelineObjects.collected.add(reference);
+        return true;
+      }
+      removeIfEmpty(reference.pipelineRef, pipelineObjects);
+      return false;
+    }
+  }
+
+  private void removeIfEmpty(String pipelineRef, PipelineObjects pipelineObjects) {
+    if (!pipelineObjects.removed && pipelineObjects.isEmpty()) {
+      pipelineObjects.removed = true;
+      objectsByPipeline.remove(pipelineRef, pipelineObjects);
+    }
+  }
+
+  /**
+   * Removes the pipeline from the index, returning its registered objects, or its collected ones.
+   */
+  private List<RemoteObjectReference> takePipelineObjects(String pipelineRef,
+      boolean collected) {
+
+    PipelineObjects pipelineObjects = objectsByPipeline.remove(pipelineRef);
+    if (pipelineObjects == null) {
+      return new ArrayList<>();
+    }
+
+    synchronized (pipelineObjects) {
+      pipelineObjects.removed = true;
+      return new ArrayList<>(collected ? pipelineObjects.collected : pipelineObjects.registered);
+    }
+  }
+
+  private static void increment(ConcurrentMap<String, AtomicLong> counters, String type) {
+    AtomicLong counter = counters.get(type);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = counters.putIfAbsent(type, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.incrementAndGet();
+  }
+
+  private static void decrement(ConcurrentMap<String, AtomicLong> counters, String type) {
+    AtomicLong counter = counters.get(type);
+    if (counter != null) {
+      counter.decrementAndGet();
+    }
+  }
+
+  private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+    Map<String, Long> snapshot = new HashMap<>();
+    for (Entry<String, AtomicLong> entry : counters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    return snapshot;
   }
 
 }
@@ -19,10 +19,12 @@ package org.kurento.client.internal.client;
 
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject.ObjectStatus;
 import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
 import org.kurento.client.internal.client.operation.Operation;
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
@@ -40,6 +42,12 @@ public class RomManager implements ObjectRefsManager {
   private final RomClientObjectManager manager;
   private final RomClient client;
 
+  private final AtomicLong pendingRefs = new AtomicLong();
+
+  private volatile boolean pipelinedCreation;
+
+  private volatile boolean propertyCacheEnabled;
+
   public RomManager(RomClient client) {
     this.client = client;
     this.manager = new RomClientObjectManager(client);
@@ -53,7 +61,9 @@ public class RomManager implements ObjectRefsManager {
       Props genericProps) {
     String objectRef = client.create(remoteClassName, constructorParams, genericProps);
 
-    return new RemoteObject(objectRef, remoteClassName, this);
+    RemoteObject remoteObject = new RemoteObject(objectRef, remoteClassName, this);
+    manager.setOwned(objectRef);
+    return remoteObject;
   }
 
   public synchronized RemoteObject create(String remoteClassName, Props constructorParams,
@@ -63,6 +73,7 @@ public class RomManager implements ObjectRefsManager {
 
     RemoteObject remoteObject = new RemoteObject(txImpl.nextObjectRef(), remoteClassName, false,
         this);
+    manager.setOwned(remoteObject.getObjectRef());
 
     MediaObjectCreationOperation op = new MediaObjectCreationOperation(remoteClassName,
         constructorParams, genericProps, remoteObject);
@@ -73,18 +84,82 @@ public class RomManager implements ObjectRefsManager {
 
   }
 
+  /**
+   * Creates the object without waiting for the media server. The returned object has a placeholder
+   * reference until the real one is received. Operations invoked on it in the meantime are queued
+   * (asynchronous ones) or wait for the creation (synchronous ones). If the object cannot be
+   * created, the error is propagated to all of them.
+   */
+  public RemoteObject createPipelined(final String remoteClassName, final Props constructorParams,
+      final Props genericProps) {
+
+    final RemoteObject remoteObject = new RemoteObject("pending:" + pendingRefs.incrementAndGet(),
+        remoteClassName, ObjectStatus.CREATING, this);
+    manager.setOwned(remoteObject.getObjectRef());
+
+    final List<RemoteObject> dependencies = RemoteObject.getCreatingObjects(constructorParams);
+    dependencies.addAll(RemoteObject.getCreatingObjects(genericProps));
+
+    RemoteObject.whenCreated(dependencies, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          client.create(remoteClassName, constructorParams, genericProps,
+              new Continuation<String>() {
+                @Override
+                public void onSuccess(String objectRef) {
+                  remoteObject.setCreatedObjectRef(objectRef);
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                  remoteObject.creationFailed(cause);
+                }
+              });
+        } catch (Exception e) {
+          remoteObject.creationFailed(e);
+        }
+      }
+    });
+
+    return remoteObject;
+  }
+
   public synchronized RemoteObject create(String remoteClassName) {
     return create(remoteClassName, (Props) null, null);
   }
 
-  public synchronized void create(final String remoteClassName, final Props constructorParams,
-      Props genericProps, final Continuation<RemoteObject> cont) {
+  public void create(final String remoteClassName, final Props constructorParams,
+      final Props genericProps, final Continuation<RemoteObject> cont) {
+
+    List<RemoteObject> dependencies = RemoteObject.getCreatingObjects(constructorParams);
+    dependencies.addAll(RemoteObject.getCreatingObjects(genericProps));
+
+    if (!dependencies.isEmpty()) {
+      RemoteObject.whenCreated(dependencies, new Runnable() {
+        @Override
+        public void run() {
+          try {
+            create(remoteClassName, constructorParams, genericProps, cont);
+          } catch (Exception e) {
+            try {
+              cont.onError(e);
+            } catch (Exception ex) {
+              log.warn("[Continuation] error invoking onError implemented by client", ex);
+            }
+          }
+        }
+      });
+      return;
+    }
 
     client.create(remoteClassName, constructorParams, genericProps, new Continuation<String>() {
       @Override
       public void onSuccess(String objectRef) {
+        RemoteObject remoteObject = new RemoteObject(objectRef, remoteClassName, RomManager.this);
+        manager.setOwned(objectRef);
         try {
-          cont.onSuccess(new RemoteObject(objectRef, remoteClassName, RomManager.this));
+          cont.onSuccess(remoteObject);
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
@@ -231,6 +306,42 @@ public class RomManager implements ObjectRefsManager {
     });
   }
 
+  /**
+   * Coalesces the asynchronous operations issued within {@code windowMillis}, or up to
+   * {@code maxOperations}, into a single transaction request.
+   */
+  public void enableAutoBatching(long windowMillis, int maxOperations) {
+    client.enableAutoBatching(windowMillis, maxOperations);
+  }
+
+  public void disableAutoBatching() {
+    client.disableAutoBatching();
+  }
+
+  public boolean isPipelinedCreation() {
+    return pipelinedCreation;
+  }
+
+  /**
+   * When enabled, objects created synchronously don't wait for the media server to answer. See
+   * {@link #createPipelined(String, Props, Props)}.
+   */
+  public void setPipelinedCreation(boolean pipelinedCreation) {
+    this.pipelinedCreation = pipelinedCreation;
+  }
+
+  public boolean isPropertyCacheEnabled() {
+    return propertyCacheEnabled;
+  }
+
+  /**
+   * When enabled, property values are cached in the client following the policy described in
+   * {@link RemotePropertyCache}.
+   */
+  public void setPropertyCacheEnabled(boolean propertyCacheEnabled) {
+    this.propertyCacheEnabled = propertyCacheEnabled;
+  }
+
   public RomClient getRomClient() {
     return client;
   }
@@ -246,10 +357,14 @@ public class RomManager implements ObjectRefsManager {
     return remoteObject;
   }
 
-  public synchronized RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
-      Props genericProps) {
+  public RemoteObject createWithKurentoObject(Class<?> clazz, Props props, Props genericProps) {
 
-    RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
+    RemoteObject remoteObject;
+    if (pipelinedCreation) {
+      remoteObject = this.createPipelined(clazz.getSimpleName(), props, genericProps);
+    } else {
+      remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
+    }
 
     RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
 
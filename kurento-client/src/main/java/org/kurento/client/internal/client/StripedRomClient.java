@@ -0,0 +1,341 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.jsonrpc.Prop;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link RomClient} that spreads the operations over several connections to the same media server.
+ * All the operations on the objects of a pipeline are routed to the same connection, so they are
+ * executed in the same order they are invoked. Objects not related to any pipeline are distributed
+ * among all connections. The connection of a pipeline is chosen when it is created, and pipelines
+ * not created by this client are assigned by the hash of their reference. Events received in any
+ * connection are delivered to the same {@link RomEventHandler}. Connections are not closed until
+ * the client is destroyed.
+ */
+public class StripedRomClient implements RomClient {
+
+  private static final Logger log = LoggerFactory.getLogger(StripedRomClient.class);
+
+  private static final char PIPELINE_SEPARATOR = '/';
+
+  private final List<RomClient> stripes;
+
+  private final AtomicInteger nextStripe = new AtomicInteger();
+
+  private final ConcurrentMap<String, RomClient> pipelineStripes = new ConcurrentHashMap<>();
+
+  public StripedRomClient(List<? extends RomClient> stripes) {
+    if (stripes.isEmpty()) {
+      throw new IllegalArgumentException("At least one client is needed");
+    }
+    this.stripes = new ArrayList<>(stripes);
+  }
+
+  public int getStripesCount() {
+    return stripes.size();
+  }
+
+  @Override
+  public String create(String remoteClassName, Props constructorParams, Props genericProps) {
+
+    String parentRef = getParamsObjectRef(constructorParams);
+    if (parentRef != null) {
+      return getStripe(parentRef).create(remoteClassName, constructorParams, genericProps);
+    }
+
+    RomClient stripe = nextStripe();
+    String objectRef = stripe.create(remoteClassName, constructorParams, genericProps);
+    assignStripe(objectRef, stripe);
+    return objectRef;
+  }
+
+  @Override
+  public String create(String remoteClassName, Props constructorParams, Props genericProps,
+      final Continuation<String> cont) {
+
+    String parentRef = getParamsObjectRef(constructorParams);
+    if (parentRef != null) {
+      return getStripe(parentRef).create(remoteClassName, constructorParams, genericProps, cont);
+    }
+
+    final RomClient stripe = nextStripe();
+    return stripe.create(remoteClassName, constructorParams, genericProps,
+        new DefaultContinuation<String>(cont) {
+          @Override
+          public void onSuccess(String objectRef) throws Exception {
+            assignStripe(objectRef, stripe);
+            cont.onSuccess(objectRef);
+          }
+        });
+  }
+
+  @Override
+  public <E> E invoke(String objectRef, String methodName, Props params, Class<E> clazz) {
+    return getStripe(objectRef).invoke(objectRef, methodName, params, clazz);
+  }
+
+  @Override
+  public Object invoke(String objectRef, String operationName, Props operationParams, Type type) {
+    return getStripe(objectRef).invoke(objectRef, operationName, operationParams, type);
+  }
+
+  @Override
+  public Object invoke(String objectRef, String operationName, Props operationParams, Type type,
+      Continuation<?> cont) {
+    return getStripe(objectRef).invoke(objectRef, operationName, operationParams, type, cont);
+  }
+
+  @Override
+  public void release(String objectRef) {
+    getStripe(objectRef).release(objectRef);
+    pipelineStripes.remove(objectRef);
+  }
+
+  @Override
+  public void release(final String objectRef, final Continuation<Void> cont) {
+    getStripe(objectRef).release(objectRef, new DefaultContinuation<Void>(cont) {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        pipelineStripes.remove(objectRef);
+        cont.onSuccess(result);
+      }
+    });
+  }
+
+  @Override
+  public String subscribe(String objectRef, String eventType) {
+    return getStripe(objectRef).subscribe(objectRef, eventType);
+  }
+
+  @Override
+  public String subscribe(String objectRef, String type, Continuation<String> cont) {
+    return getStripe(objectRef).subscribe(objectRef, type, cont);
+  }
+
+  @Override
+  public void unsubscribe(String objectRef, String listenerSubscription) {
+    getStripe(objectRef).unsubscribe(objectRef, listenerSubscription);
+  }
+
+  @Override
+  public void unsubscribe(String objectRef, String listenerSubscription,
+      Continuation<Void> cont) {
+    getStripe(objectRef).unsubscribe(objectRef, listenerSubscription, cont);
+  }
+
+  @Override
+  public void transaction(List<Operation> operations) {
+
+    String objectRef = getTransactionObjectRef(operations);
+    if (objectRef != null) {
+      getStripe(objectRef).transaction(operations);
+      return;
+    }
+
+    RomClient stripe = nextStripe();
+    stripe.transaction(operations);
+    assignTransactionStripe(operations, stripe);
+  }
+
+  @Override
+  public void transaction(final List<Operation> operations,
+      final Continuation<Void> continuation) {
+
+    String objectRef = getTransactionObjectRef(operations);
+    if (objectRef != null) {
+      getStripe(objectRef).transaction(operations, continuation);
+      return;
+    }
+
+    final RomClient stripe = nextStripe();
+    stripe.transaction(operations, new DefaultContinuation<Void>(continuation) {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        assignTransactionStripe(operations, stripe);
+        continuation.onSuccess(result);
+      }
+    });
+  }
+
+  @Override
+  public void enableAutoBatching(long windowMillis, int maxOperations) {
+    for (RomClient stripe : stripes) {
+      stripe.enableAutoBatching(windowMillis, maxOperations);
+    }
+  }
+
+  @Override
+  public void disableAutoBatching() {
+    for (RomClient stripe : stripes) {
+      stripe.disableAutoBatching();
+    }
+  }
+
+  @Override
+  public void addRomEventHandler(RomEventHandler eventHandler) {
+    for (RomClient stripe : stripes) {
+      stripe.addRomEventHandler(eventHandler);
+    }
+  }
+
+  @Override
+  public void destroy() {
+
+    RuntimeException exception = null;
+
+    for (RomClient stripe : stripes) {
+      try {
+        stripe.destroy();
+      } catch (RuntimeException e) {
+        log.warn("Exception destroying connection to media server", e);
+        if (exception == null) {
+          exception = e;
+        }
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * The client is closed when all its connections are. Each connection reconnects by itself when
+   * it is lost, so a lost connection doesn't affect the pipelines routed to the other ones.
+   */
+  @Override
+  public boolean isClosed() {
+    for (RomClient stripe : stripes) {
+      if (!stripe.isClosed()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Notifies that a connection has been re-established with a media server that doesn't have the
+   * pipelines routed to it. Those pipelines are forgotten, and the other connections are not
+   * affected.
+   *
+   * @param index
+   *          index of the connection, in the order they were given to the constructor
+   */
+  public void stripeReset(int index) {
+
+    RomClient stripe = stripes.get(index);
+
+    int lostPipelines = 0;
+    Iterator<RomClient> it = pipelineStripes.values().iterator();
+    while (it.hasNext()) {
+      if (it.next() == stripe) {
+        it.remove();
+        lostPipelines++;
+      }
+    }
+
+    log.warn("Connection {} to media server reconnected to a new server. {} pipelines routed to"
+        + " it have been lost", index, lostPipelines);
+  }
+
+  private RomClient nextStripe() {
+    return stripes.get((nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.size());
+  }
+
+  private RomClient getStripe(String objectRef) {
+
+    if (objectRef == null) {
+      return nextStripe();
+    }
+
+    // Refs of pipeline objects are prefixed with the ref of their pipeline
+    int index = objectRef.indexOf(PIPELINE_SEPARATOR);
+    String pipelineRef = index == -1 ? objectRef : objectRef.substring(0, index);
+
+    RomClient stripe = pipelineStripes.get(pipelineRef);
+    if (stripe != null) {
+      return stripe;
+    }
+
+    return stripes.get((pipelineRef.hashCode() & Integer.MAX_VALUE) % stripes.size());
+  }
+
+  private void assignStripe(String objectRef, RomClient stripe) {
+    if (objectRef != null && objectRef.indexOf(PIPELINE_SEPARATOR) == -1) {
+      pipelineStripes.put(objectRef, stripe);
+    }
+  }
+
+  private void assignTransactionStripe(List<Operation> operations, RomClient stripe) {
+    for (Operation op : operations) {
+      if (op instanceof MediaObjectCreationOperation && op.getTargetObject() == null) {
+        assignStripe(((MediaObjectCreationOperation) op).getRemoteObject().getObjectRef(), stripe);
+      }
+    }
+  }
+
+  private static String getParamsObjectRef(Props params) {
+    if (params != null) {
+      for (Prop prop : params) {
+        RemoteObject remoteObject = getRemoteObject(prop.getValue());
+        if (remoteObject != null) {
+          remoteObject.waitCreated();
+          return remoteObject.getObjectRef();
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String getTransactionObjectRef(List<Operation> operations) {
+    for (Operation op : operations) {
+      RemoteObject remoteObject = getRemoteObject(op.getTargetObject());
+      // Objects created in the transaction have no ref yet
+      if (remoteObject != null && remoteObject.isCommited()) {
+        return remoteObject.getObjectRef();
+      }
+    }
+    return null;
+  }
+
+  private static RemoteObject getRemoteObject(Object value) {
+    if (value instanceof KurentoObject && Proxy.isProxyClass(value.getClass())) {
+      return RemoteObjectInvocationHandler.getFor(value).getRemoteObject();
+    } else if (value instanceof RemoteObject) {
+      return (RemoteObject) value;
+    }
+    return null;
+  }
+}
@@ -62,6 +62,11 @@ public class InvokeOperation extends Operation {
     }
   }
 
+  @Override
+  public Object getTargetObject() {
+    return kurentoObject;
+  }
+
   @Override
   public String getDescription() {
     return "Invoking method '" + method + "' in object " + getObjectRef(kurentoObject)
@@ -17,10 +17,12 @@
 
 package org.kurento.client.internal.client.operation;
 
+import org.kurento.client.KurentoObject;
 import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.kurento.jsonrpc.Prop;
 import org.kurento.jsonrpc.Props;
 
 public class MediaObjectCreationOperation extends Operation {
@@ -38,6 +40,10 @@ public class MediaObjectCreationOperation extends Operation {
     this.remoteObject = remoteObject;
   }
 
+  public RemoteObject getRemoteObject() {
+    return remoteObject;
+  }
+
   @Override
   public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
     return romClientJsonRpcClient.createCreateRequest(className, constructorParams, genericProps,
@@ -49,6 +55,18 @@ public class MediaObjectCreationOperation extends Operation {
     remoteObject.setCreatedObjectRef((String) response);
   }
 
+  @Override
+  public Object getTargetObject() {
+    if (constructorParams != null) {
+      for (Prop prop : constructorParams) {
+        if (prop.getValue() instanceof KurentoObject) {
+          return prop.getValue();
+        }
+      }
+    }
+    return null;
+  }
+
   @Override
   public String getDescription() {
     return "Object creation of type '" + className + "' with params " + constructorParams;
@@ -62,6 +62,14 @@ public abstract class Operation {
     }
   }
 
+  /**
+   * Returns the object this operation is executed on, or the first object received as param if
+   * the operation creates a new one. It can be null if the operation is not related to any object.
+   */
+  public Object getTargetObject() {
+    return null;
+  }
+
   public abstract String getDescription();
 
   public abstract void processResponse(Object response);
@@ -40,6 +40,11 @@ public class ReleaseOperation extends Operation {
     manager.release(getObjectRef(kurentoObject));
   }
 
+  @Override
+  public Object getTargetObject() {
+    return kurentoObject;
+  }
+
   @Override
   public String getDescription() {
     return "Release object '" + getObjectRef(kurentoObject) + "'";
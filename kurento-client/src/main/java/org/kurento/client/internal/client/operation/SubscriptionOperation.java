@@ -55,6 +55,11 @@ public class SubscriptionOperation extends Operation {
     getRemoteObject(kurentoObject).addEventListener(eventType, listener);
   }
 
+  @Override
+  public Object getTargetObject() {
+    return kurentoObject;
+  }
+
   @Override
   public String getDescription() {
     return "Event subscription of type " + eventType + " in object '" + getObjectRef(kurentoObject)
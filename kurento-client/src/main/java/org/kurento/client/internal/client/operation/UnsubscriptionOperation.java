@@ -50,7 +50,12 @@ public class UnsubscriptionOperation extends Operation {
 
   @Override
   public void processResponse(Object response) {
-    // There is nothing to do here.
+    getRemoteObject(kurentoObject).removeLocalListener(listenerSubscription);
+  }
+
+  @Override
+  public Object getTargetObject() {
+    return kurentoObject;
   }
 
   @Override
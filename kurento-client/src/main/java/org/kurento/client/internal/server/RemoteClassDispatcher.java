@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+import com.google.common.primitives.Primitives;
+
+/**
+ * Dispatch table of a remote class used by {@link RomServer}. The constructor and the methods of
+ * the class are resolved once, and each of them is compiled to an {@link Invoker} that holds the
+ * param names and types needed to unflatten the params and a method handle to call it.
+ */
+final class RemoteClassDispatcher {
+
+  private static final ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
+
+  static final class Invoker {
+
+    private final String name;
+    private final String[] paramNames;
+    private final Type[] paramTypes;
+    private final Class<?>[] paramClasses;
+    private final MethodHandle handle;
+    private final boolean isConstructor;
+
+    private Invoker(String name, List<String> paramNames, Type[] paramTypes, MethodHandle handle,
+        boolean isConstructor) {
+      this.name = name;
+      this.paramNames = paramNames.toArray(new String[paramNames.size()]);
+      this.paramTypes = paramTypes;
+      this.paramClasses = new Class<?>[paramTypes.length];
+      for (int i = 0; i < paramTypes.length; i++) {
+        paramClasses[i] = toRawClass(paramTypes[i]);
+      }
+      this.handle = handle;
+      this.isConstructor = isConstructor;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    private Object[] unflattenParams(Props params, ObjectRefsManager manager) {
+      Object[] args = new Object[paramTypes.length];
+      if (params != null) {
+        for (int i = 0; i < args.length; i++) {
+          if (paramNames[i] != null) {
+            args[i] = toParamType(paramTypes[i], FLATTENER.unflattenValue(paramNames[i],
+                paramTypes[i], params.getProp(paramNames[i]), manager));
+          }
+        }
+      }
+      checkArgs(args);
+      return args;
+    }
+
+    /**
+     * Checks the args before invoking the handle, so wrong params are reported as protocol errors
+     * instead of failing in the conversions of the handle as if the method had thrown them.
+     */
+    private void checkArgs(Object[] args) {
+      for (int i = 0; i < args.length; i++) {
+        Class<?> paramClass = paramClasses[i];
+        if (args[i] == null ? paramClass.isPrimitive()
+            : !Primitives.wrap(paramClass).isInstance(args[i])) {
+          throw new ProtocolException("Param '" + paramNames[i] + "' of '" + name
+              + "' must be of type " + paramClass.getSimpleName() + ", but it is "
+              + (args[i] == null ? "null" : args[i].getClass().getSimpleName()));
+        }
+      }
+    }
+
+    private static Class<?> toRawClass(Type type) {
+      if (type instanceof Class) {
+        return (Class<?>) type;
+      } else if (type instanceof ParameterizedType) {
+        return toRawClass(((ParameterizedType) type).getRawType());
+      } else {
+        return Object.class;
+      }
+    }
+
+    /**
+     * Converts numbers to the type of the param. Method handles don't widen boxed values as
+     * reflection does, and numbers in json params are unflattened to the narrowest type.
+     */
+    private static Object toParamType(Type type, Object value) {
+      if (value instanceof Number) {
+        Number number = (Number) value;
+        if (type == long.class || type == Long.class) {
+          return number.longValue();
+        } else if (type == int.class || type == Integer.class) {
+          return number.intValue();
+        } else if (type == double.class || type == Double.class) {
+          return number.doubleValue();
+        } else if (type == float.class || type == Float.class) {
+          return number.floatValue();
+        } else if (type == short.class || type == Short.class) {
+          return number.shortValue();
+        } else if (type == byte.class || type == Byte.class) {
+          return number.byteValue();
+        }
+      } else if (type == char.class || type == Character.class) {
+        if (value instanceof String && ((String) value).length() == 1) {
+          return ((String) value).charAt(0);
+        }
+      }
+      return value;
+    }
+
+    /**
+     * Invokes the method in the target object, or the constructor if target is null.
+     */
+    public Object invoke(Object target, Props params, ObjectRefsManager manager)
+        throws InvocationTargetException {
+
+      Object[] args = unflattenParams(params, manager);
+
+      try {
+        if (isConstructor) {
+          return (Object) handle.invokeExact(args);
+        } else {
+          return (Object) handle.invokeExact(target, args);
+        }
+      } catch (WrongMethodTypeException e) {
+        // The handle doesn't match its call site, so the method hasn't been called
+        throw new ProtocolException("Method handle of '" + name + "' can't be invoked", e);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+  private final Class<?> remoteClass;
+  private final Invoker constructor;
+  private final Map<String, Invoker> methods;
+
+  RemoteClassDispatcher(Class<?> remoteClass) {
+
+    if (remoteClass.getAnnotation(RemoteClass.class) == null) {
+      throw new ProtocolException("Remote classes must be annotated with @RemoteClass");
+    }
+
+    this.remoteClass = remoteClass;
+
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    try {
+
+      Constructor<?>[] constructors = remoteClass.getConstructors();
+      if (constructors.length > 0) {
+        Constructor<?> constructor = constructors[0];
+        constructor.setAccessible(true);
+        int numParams = constructor.getParameterTypes().length;
+        MethodHandle handle = lookup.unreflectConstructor(constructor)
+            .asType(MethodType.genericMethodType(numParams)).asSpreader(Object[].class, numParams);
+        this.constructor = new Invoker(remoteClass.getSimpleName(),
+            ParamAnnotationUtils.getParamNames(constructor),
+            constructor.getGenericParameterTypes(), handle, true);
+      } else {
+        this.constructor = null;
+      }
+
+      // As before, the first method with the name is used if there are several
+      Map<String, Invoker> classMethods = new HashMap<>();
+      for (Method method : remoteClass.getMethods()) {
+        if (method.getDeclaringClass() == Object.class
+            || classMethods.containsKey(method.getName())) {
+          continue;
+        }
+        method.setAccessible(true);
+        int numParams = method.getParameterTypes().length;
+        MethodHandle handle = lookup.unreflect(method)
+            .asType(MethodType.genericMethodType(numParams + 1))
+            .asSpreader(Object[].class, numParams);
+        classMethods.put(method.getName(), new Invoker(method.getName(),
+            ParamAnnotationUtils.getParamNames(method), method.getGenericParameterTypes(), handle,
+            false));
+      }
+      this.methods = classMethods;
+
+    } catch (IllegalAccessException e) {
+      throw new ProtocolException("Remote class '" + remoteClass.getSimpleName()
+          + "' cannot be accessed", e);
+    }
+  }
+
+  public Invoker getConstructor() {
+    if (constructor == null) {
+      throw new ProtocolException(
+          "Remote class '" + remoteClass.getSimpleName() + "' has no public constructor");
+    }
+    return constructor;
+  }
+
+  public Invoker getMethod(String methodName) {
+    Invoker method = methods.get(methodName);
+    if (method == null) {
+      throw new ProtocolException("Method '" + methodName + "' not found in class '"
+          + remoteClass.getSimpleName() + "'");
+    }
+    return method;
+  }
+}
@@ -62,7 +62,7 @@ public class RemoteObjectManager implements ObjectRefsManager {
   private SecretGenerator secretGenerator = new SecretGenerator();
   private BiMap<String, ObjectHolder> remoteObjects = HashBiMap.create();
 
-  public String putObject(Object object) {
+  public synchronized String putObject(Object object) {
     String nextSecret;
     do {
       nextSecret = secretGenerator.nextSecret();
@@ -73,16 +73,24 @@ public class RemoteObjectManager implements ObjectRefsManager {
     return nextSecret;
   }
 
+  public synchronized void putObject(String objectRef, Object object) {
+    if (remoteObjects.containsKey(objectRef)) {
+      throw new ProtocolException("There is already an object with reference " + objectRef);
+    }
+    remoteObjects.put(objectRef, new ObjectHolder(object));
+  }
+
   @Override
-  public Object getObject(String objectRef) {
-    return remoteObjects.get(objectRef).getObject();
+  public synchronized Object getObject(String objectRef) {
+    ObjectHolder holder = remoteObjects.get(objectRef);
+    return holder != null ? holder.getObject() : null;
   }
 
-  public void releaseObject(String objectRef) {
+  public synchronized void releaseObject(String objectRef) {
     this.remoteObjects.remove(objectRef);
   }
 
-  public String getObjectRefFrom(Object object) {
+  public synchronized String getObjectRefFrom(Object object) {
     return remoteObjects.inverse().get(new ObjectHolder(object));
   }
 
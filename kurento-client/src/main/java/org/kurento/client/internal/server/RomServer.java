@@ -17,11 +17,10 @@
 
 package org.kurento.client.internal.server;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.Props;
@@ -35,6 +34,11 @@ public class RomServer {
   private final String packageName;
   private final String classSuffix;
 
+  private final ConcurrentMap<String, RemoteClassDispatcher> dispatchersByType =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Class<?>, RemoteClassDispatcher> dispatchersByClass =
+      new ConcurrentHashMap<>();
+
   public RomServer(String packageName, String classSuffix) {
     this.packageName = packageName;
     this.classSuffix = classSuffix;
@@ -44,21 +48,10 @@ public class RomServer {
 
     try {
 
-      Class<?> clazz = Class.forName(packageName + "." + remoteClassType + classSuffix);
-
-      if (clazz.getAnnotation(RemoteClass.class) == null) {
-        throw new ProtocolException("Remote classes must be annotated with @RemoteClass");
-      }
-
-      Constructor<?> constructor = clazz.getConstructors()[0];
-
-      Object[] unflattenedConstParams = FLATTENER.unflattenParams(
-          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(),
+      Object object = getDispatcher(remoteClassType).getConstructor().invoke(null,
           constructorParams, manager);
 
-      Object object = constructor.newInstance(unflattenedConstParams);
-
-      return manager.putObject(object);
+      return registerObject(remoteClassType, object);
 
     } catch (Exception e) {
       // TODO Improve exception reporting
@@ -84,12 +77,8 @@ public class RomServer {
 
     try {
 
-      Method method = getMethod(remoteObjClass, methodName);
-
-      Object[] unflattenParams = FLATTENER.unflattenParams(method.getParameterAnnotations(),
-          method.getGenericParameterTypes(), params, manager);
-
-      Object result = method.invoke(remoteObject, unflattenParams);
+      Object result = getDispatcher(remoteObjClass).getMethod(methodName).invoke(remoteObject,
+          params, manager);
 
       return FLATTENER.flattenResult(result, manager);
 
@@ -101,14 +90,40 @@ public class RomServer {
     }
   }
 
-  private Method getMethod(Class<?> remoteObjClass, String methodName) {
-    for (Method method : remoteObjClass.getMethods()) {
-      if (method.getName().equals(methodName)) {
-        return method;
+  private RemoteClassDispatcher getDispatcher(String remoteClassType)
+      throws ClassNotFoundException {
+
+    RemoteClassDispatcher dispatcher = dispatchersByType.get(remoteClassType);
+    if (dispatcher == null) {
+      dispatcher = getDispatcher(Class.forName(packageName + "." + remoteClassType + classSuffix));
+      dispatchersByType.putIfAbsent(remoteClassType, dispatcher);
+    }
+    return dispatcher;
+  }
+
+  private RemoteClassDispatcher getDispatcher(Class<?> remoteClass) {
+
+    RemoteClassDispatcher dispatcher = dispatchersByClass.get(remoteClass);
+    if (dispatcher == null) {
+      RemoteClassDispatcher newDispatcher = new RemoteClassDispatcher(remoteClass);
+      dispatcher = dispatchersByClass.putIfAbsent(remoteClass, newDispatcher);
+      if (dispatcher == null) {
+        dispatcher = newDispatcher;
       }
     }
-    throw new ProtocolException("Method '" + methodName + "' not found in class '"
-        + remoteObjClass.getClass().getSimpleName() + "'");
+    return dispatcher;
+  }
+
+  /**
+   * Stores a new object and returns its reference. Subclasses can override it to use references
+   * with a different format or to initialize the object once it has a reference.
+   */
+  protected String registerObject(String remoteClassType, Object object) {
+    return manager.putObject(object);
+  }
+
+  protected RemoteObjectManager getObjectManager() {
+    return manager;
   }
 
   public void release(String objectRef) {
@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.transport.jsonrpc;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.TimerService;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Coalesces asynchronous requests issued within a short time window into a single
+ * {@code transaction} request. The batch is sent when the window expires or when it reaches the
+ * maximum number of operations, whatever happens first. The response of each operation is
+ * delivered to the continuation of the request that originated it, so a failure in one operation
+ * doesn't affect the others. Flushes are scheduled in the timer service shared by all the clients
+ * ({@link JsonRpcClient#getTimerService()}), so batchers don't create threads.
+ */
+public class RequestBatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestBatcher.class);
+
+  @SuppressWarnings("serial")
+  private static final Type RESPONSES_TYPE = new TypeToken<List<Response<JsonElement>>>() {
+  }.getType();
+
+  private static class BatchedRequest {
+
+    private final Request<JsonObject> request;
+    private final Continuation<JsonElement> continuation;
+
+    public BatchedRequest(Request<JsonObject> request, Continuation<JsonElement> continuation) {
+      this.request = request;
+      this.continuation = continuation;
+    }
+  }
+
+  private final JsonRpcClient client;
+  private final long windowMillis;
+  private final int maxOperations;
+
+  private List<BatchedRequest> pending = new ArrayList<>();
+  private TimerService.Timeout flushTask;
+
+  public RequestBatcher(JsonRpcClient client, long windowMillis, int maxOperations) {
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("Batching window must be positive");
+    }
+    if (maxOperations < 1) {
+      throw new IllegalArgumentException("Max operations per batch must be at least 1");
+    }
+    this.client = client;
+    this.windowMillis = windowMillis;
+    this.maxOperations = maxOperations;
+  }
+
+  /**
+   * Enqueues a request in the current batch. The continuation is invoked when the response of this
+   * request is received, or when the whole batch fails.
+   */
+  public synchronized void add(Request<JsonObject> request,
+      Continuation<JsonElement> continuation) {
+
+    pending.add(new BatchedRequest(request, continuation));
+
+    if (pending.size() >= maxOperations) {
+      sendPending();
+    } else if (flushTask == null) {
+      flushTask = JsonRpcClient.getTimerService().schedule(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Sends immediately all the requests waiting in the current batch.
+   */
+  public synchronized void flush() {
+    sendPending();
+  }
+
+  public void close() {
+    flush();
+  }
+
+  /**
+   * Batches are sent while holding the lock, so a batch taken by one thread can't be overtaken by
+   * a newer one flushed from another thread. Sending is asynchronous, so the lock is held only
+   * while the request is written to the connection.
+   */
+  private void sendPending() {
+
+    if (flushTask != null) {
+      flushTask.cancel();
+      flushTask = null;
+    }
+
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    List<BatchedRequest> batch = pending;
+    pending = new ArrayList<>();
+    send(batch);
+  }
+
+  private void send(final List<BatchedRequest> batch) {
+
+    if (batch.size() == 1) {
+      BatchedRequest req = batch.get(0);
+      client.sendRequest(req.request.getMethod(), req.request.getParams(), req.continuation);
+      return;
+    }
+
+    JsonArray opJsons = new JsonArray();
+    int numReq = 0;
+    for (BatchedRequest req : batch) {
+      req.request.setId(numReq++);
+      opJsons.add(JsonUtils.toJsonElement(req.request));
+    }
+
+    JsonObject params = new JsonObject();
+    params.add(TRANSACTION_OPERATIONS, opJsons);
+
+    log.debug("Sending batch of {} operations", batch.size());
+
+    client.sendRequest(TRANSACTION_METHOD, params, new Continuation<JsonElement>() {
+
+      @Override
+      public void onSuccess(JsonElement result) {
+
+        List<Response<JsonElement>> responses;
+        try {
+          responses = JsonResponseUtils.convertFromResult(result, RESPONSES_TYPE);
+        } catch (Exception e) {
+          onError(e);
+          return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+          Continuation<JsonElement> cont = batch.get(i).continuation;
+          try {
+            if (responses == null || i >= responses.size()) {
+              cont.onError(new IllegalStateException(
+                  "No response received for operation " + i + " of the batch"));
+            } else if (responses.get(i).isError()) {
+              cont.onError(new JsonRpcErrorException(responses.get(i).getError()));
+            } else {
+              cont.onSuccess(responses.get(i).getResult());
+            }
+          } catch (Exception e) {
+            log.warn("Exception processing response of operation {} of the batch", i, e);
+          }
+        }
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        for (BatchedRequest req : batch) {
+          try {
+            req.continuation.onError(cause);
+          } catch (Exception e) {
+            log.warn("Exception notifying batch error", e);
+          }
+        }
+      }
+    });
+  }
+
+}
@@ -88,10 +88,29 @@ public class RomClientJsonRpcClient implements RomClient {
 
   private final JsonRpcClient client;
 
+  private volatile RequestBatcher batcher;
+
   public RomClientJsonRpcClient(JsonRpcClient client) {
     this.client = client;
   }
 
+  @Override
+  public synchronized void enableAutoBatching(long windowMillis, int maxOperations) {
+    RequestBatcher oldBatcher = batcher;
+    batcher = new RequestBatcher(client, windowMillis, maxOperations);
+    if (oldBatcher != null) {
+      oldBatcher.close();
+    }
+  }
+
+  @Override
+  public synchronized void disableAutoBatching() {
+    if (batcher != null) {
+      batcher.close();
+      batcher = null;
+    }
+  }
+
   // Operations
 
   @Override
@@ -209,6 +228,7 @@ public class RomClientJsonRpcClient implements RomClient {
   @Override
   public void destroy() {
     log.debug("Destroying RomClientJsonRpc");
+    disableAutoBatching();
     try {
       client.close();
     } catch (IOException e) {
@@ -220,16 +240,23 @@ public class RomClientJsonRpcClient implements RomClient {
   private <P, R> R sendRequest(Request<JsonObject> request, final Type responseType,
       final Function<P, R> processor, final Continuation<R> cont) {
 
+    RequestBatcher currentBatcher = batcher;
+
     try {
 
       if (cont == null) {
 
+        // Pending batched operations must reach the server before this one
+        if (currentBatcher != null) {
+          currentBatcher.flush();
+        }
+
         return processReqResult(responseType, processor,
             client.sendRequest(request.getMethod(), request.getParams(), JsonElement.class));
 
       }
 
-      client.sendRequest(request.getMethod(), request.getParams(),
+      org.kurento.jsonrpc.client.Continuation<JsonElement> reqCont =
           new org.kurento.jsonrpc.client.Continuation<JsonElement>() {
 
             @SuppressWarnings({ "rawtypes" })
@@ -252,7 +279,16 @@ public class RomClientJsonRpcClient implements RomClient {
                 log.warn("[Continuation] error invoking onError implemented by client", e);
               }
             }
-          });
+          };
+
+      if (currentBatcher != null && !TRANSACTION_METHOD.equals(request.getMethod())) {
+        currentBatcher.add(request, reqCont);
+      } else {
+        if (currentBatcher != null) {
+          currentBatcher.flush();
+        }
+        client.sendRequest(request.getMethod(), request.getParams(), reqCont);
+      }
 
       return null;
 
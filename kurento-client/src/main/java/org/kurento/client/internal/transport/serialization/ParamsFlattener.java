@@ -204,6 +204,9 @@ public class ParamsFlattener {
 
   private Object flattenRemoteObject(RemoteObject remoteObject, boolean inTx) {
     Object processedParam;
+    // Objects created in pipelined mode only have a placeholder ref until the media server answers,
+    // also inside transactions. Objects created in the transaction itself are not waited for.
+    remoteObject.waitCreated();
     if (!remoteObject.isCommited() && !inTx) {
       throw new TransactionNotCommitedException(
           "Trying to invoke an operation with a non commited object of type '"
@@ -328,7 +331,8 @@ public class ParamsFlattener {
 
   private boolean isPrimitive(Object param) {
     return param instanceof String || param instanceof Boolean || param instanceof Integer
-        || param instanceof Float || param instanceof Double || param instanceof Long;
+        || param instanceof Float || param instanceof Double || param instanceof Long
+        || param instanceof Short || param instanceof Byte || param instanceof Character;
   }
 
   public Object[] unflattenParams(Annotation[][] paramAnnotations, Type[] paramTypes, Props params,
@@ -422,7 +426,9 @@ public class ParamsFlattener {
     return clazz == String.class || clazz == Boolean.class || clazz == Float.class
         || clazz == Integer.class || clazz == boolean.class || clazz == float.class
         || clazz == int.class || clazz == void.class || clazz == Void.class || clazz == double.class
-        || clazz == Double.class || clazz == long.class || clazz == Long.class;
+        || clazz == Double.class || clazz == long.class || clazz == Long.class
+        || clazz == short.class || clazz == Short.class || clazz == byte.class
+        || clazz == Byte.class || clazz == char.class || clazz == Character.class;
   }
 
   private Object unflattedComplexType(Class<?> clazz, Props props, ObjectRefsManager manager) {
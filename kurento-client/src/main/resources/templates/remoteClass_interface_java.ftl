@@ -16,22 +16,31 @@ public interface ${remoteClass.name} extends <#if remoteClass.extends??>${remote
 
    <#list remoteClass.properties as property>
      <@comment_set_get property.doc "Get"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      ${getJavaObjectType(property.type,false)} get${property.name?cap_first}();
 
      <@comment_set_get property.doc "Get"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      void get${property.name?cap_first}(Continuation<${getJavaObjectType(property.type,true)}> cont);
 
      <@comment_set_get property.doc "Get"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      TFuture<${getJavaObjectType(property.type,true)}> get${property.name?cap_first}(Transaction tx);
 
+     <@comment_set_get property.doc "Get"/>
+     com.google.common.util.concurrent.ListenableFuture<${getJavaObjectType(property.type,true)}> get${property.name?cap_first}Async();
+
      <#if !property.readOnly && !property.final>
      <@comment_set_get property.doc "Set"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      void set${property.name?cap_first}(@org.kurento.client.internal.server.Param("${property.name}") ${getJavaObjectType(property.type,false)} ${property.name});
 
      <@comment_set_get property.doc "Set"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      void set${property.name?cap_first}(@org.kurento.client.internal.server.Param("${property.name}") ${getJavaObjectType(property.type,false)} ${property.name}, Continuation<Void> cont);
 
      <@comment_set_get property.doc "Set"/>
+     @org.kurento.client.internal.RemoteProperty(value = "${property.name}", readOnly = ${property.readOnly?c}, constant = ${property.final?c})
      void set${property.name?cap_first}(@org.kurento.client.internal.server.Param("${property.name}") ${getJavaObjectType(property.type,false)} ${property.name}, Transaction tx);
      </#if>
    </#list>
@@ -58,6 +67,17 @@ done. If an error occurs, {@link Continuation#onError} is called.
     <#if type == "Void">void<#else>TFuture<${type}></#if> ${method.name}(Transaction tx<#rt>
     <#lt><#list method.params as param>, @org.kurento.client.internal.server.Param("${param.name}") ${getJavaObjectType(param.type,false)} ${param.name}</#list>);
 
+  <#assign doc>
+Asynchronous version of ${method.name}:
+The returned future is completed when the action is done, or
+with the cause of the failure if an error occurs.
+
+@see ${remoteClass.name}#${method.name}
+    </#assign>
+    <@comment doc method.params />
+    com.google.common.util.concurrent.ListenableFuture<${type}> ${method.name}Async(<#rt>
+    <#lt><#list method.params as param>@org.kurento.client.internal.server.Param("${param.name}") ${getJavaObjectType(param.type,false)} ${param.name}<#if param_has_next>, </#if></#list>);
+
     </#list>
   <#list remoteClass.events as event>
     /**
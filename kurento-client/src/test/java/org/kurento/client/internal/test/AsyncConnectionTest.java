@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.KurentoClientBuilder;
+import org.kurento.commons.exception.KurentoException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class AsyncConnectionTest {
+
+  private static final String UNREACHABLE_KMS1 = "ws://localhost:1/kurento";
+  private static final String UNREACHABLE_KMS2 = "ws://localhost:2/kurento";
+
+  @Test
+  public void lazyClientDoesNotConnectUntilFirstRequest() {
+
+    KurentoClient client =
+        new KurentoClientBuilder().setKmsWsUri(UNREACHABLE_KMS1).setLazyConnect(true).connect();
+
+    try {
+      assertNull(client.getSessionId());
+    } finally {
+      client.destroy();
+    }
+  }
+
+  @Test
+  public void asyncClientsReportConnectionErrorInFuture() throws Exception {
+
+    Map<String, ListenableFuture<KurentoClient>> clients =
+        KurentoClient.createAsync(Arrays.asList(UNREACHABLE_KMS1, UNREACHABLE_KMS2));
+
+    assertEquals(2, clients.size());
+
+    for (ListenableFuture<KurentoClient> client : clients.values()) {
+      try {
+        client.get(30, TimeUnit.SECONDS);
+        fail("Connection to an unreachable KMS should fail");
+      } catch (ExecutionException e) {
+        assertEquals(KurentoException.class, e.getCause().getClass());
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.client.internal.client.EventDispatcher;
+import org.kurento.client.internal.client.EventDispatcher.EventQueue;
+
+public class EventDispatcherTest {
+
+  private EventDispatcher dispatcher;
+
+  @After
+  public void shutdownDispatcher() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void eventsOfEachQueueAreProcessedInOrder() throws InterruptedException {
+
+    dispatcher = new EventDispatcher(4, 10000);
+
+    final int numEvents = 1000;
+    final CountDownLatch processed = new CountDownLatch(2 * numEvents);
+
+    List<List<Integer>> results = new ArrayList<>();
+
+    for (int q = 0; q < 2; q++) {
+
+      EventQueue queue = dispatcher.newQueue();
+      final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+      results.add(result);
+
+      for (int i = 0; i < numEvents; i++) {
+        final int event = i;
+        assertTrue(queue.submit(new Runnable() {
+          @Override
+          public void run() {
+            result.add(event);
+            processed.countDown();
+          }
+        }));
+      }
+    }
+
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+
+    for (List<Integer> result : results) {
+      for (int i = 0; i < numEvents; i++) {
+        assertEquals(i, (int) result.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void eventsAreRunInReceivingThreadWithoutPool() {
+
+    dispatcher = new EventDispatcher(0, 1);
+    assertFalse(dispatcher.isAsync());
+
+    final List<Thread> threads = new ArrayList<>();
+    Runnable event = new Runnable() {
+      @Override
+      public void run() {
+        threads.add(Thread.currentThread());
+      }
+    };
+
+    EventQueue queue = dispatcher.newQueue();
+
+    // The queue limit doesn't apply, as events are never pending
+    assertTrue(queue.submit(event));
+    assertTrue(queue.submit(event));
+
+    assertEquals(2, threads.size());
+    assertEquals(Thread.currentThread(), threads.get(0));
+    assertEquals(0, dispatcher.getDiscardedEvents());
+  }
+
+  @Test
+  public void eventsAreDiscardedWhenQueueIsFull() throws InterruptedException {
+
+    dispatcher = new EventDispatcher(1, 2);
+
+    final CountDownLatch blocked = new CountDownLatch(1);
+    Runnable blockingEvent = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    EventQueue queue = dispatcher.newQueue();
+
+    assertTrue(queue.submit(blockingEvent));
+    assertTrue(queue.submit(blockingEvent));
+    assertFalse(queue.submit(blockingEvent));
+    assertFalse(queue.submit(blockingEvent));
+
+    assertEquals(2, dispatcher.getDiscardedEvents());
+
+    blocked.countDown();
+  }
+
+  @Test
+  public void queueGoesOnAfterListenerThrowsError() throws InterruptedException {
+
+    dispatcher = new EventDispatcher(1, 10);
+
+    final CountDownLatch processed = new CountDownLatch(2);
+
+    Runnable event = new Runnable() {
+      @Override
+      public void run() {
+        processed.countDown();
+      }
+    };
+
+    EventQueue queue = dispatcher.newQueue();
+
+    assertTrue(queue.submit(new Runnable() {
+      @Override
+      public void run() {
+        throw new AssertionError("Listener failure");
+      }
+    }));
+    assertTrue(queue.submit(event));
+    assertTrue(queue.submit(event));
+
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 100 && queue.getPendingEvents() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, queue.getPendingEvents());
+
+    // The queue is able to schedule new events after the failure
+    final CountDownLatch later = new CountDownLatch(1);
+    assertTrue(queue.submit(new Runnable() {
+      @Override
+      public void run() {
+        later.countDown();
+      }
+    }));
+    assertTrue(later.await(10, TimeUnit.SECONDS));
+  }
+}
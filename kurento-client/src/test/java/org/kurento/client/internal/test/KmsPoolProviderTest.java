@@ -0,0 +1,195 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.KmsPoolProvider;
+import org.kurento.client.internal.NotEnoughResourcesException;
+
+public class KmsPoolProviderTest {
+
+  private static final String KMS1 = "ws://kms1:8888/kurento";
+  private static final String KMS2 = "ws://kms2:8888/kurento";
+  private static final String KMS3 = "ws://kms3:8888/kurento";
+
+  private KmsPoolProvider pool;
+
+  @Before
+  public void initPool() throws InterruptedException {
+
+    pool = new KmsPoolProvider(Arrays.asList(KMS1, KMS2), 10,
+        KmsPoolProvider.Selection.LEAST_LOADED, 60000) {
+      @Override
+      protected double measureLoad(KmsNode node) {
+        return KMS1.equals(node.getUrl()) ? 0.1 : 0.5;
+      }
+    };
+
+    for (KmsPoolProvider.KmsNode node : pool.getNodes()) {
+      while (!node.isAvailable()) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  @After
+  public void closePool() {
+    pool.close();
+  }
+
+  @Test
+  public void clientsArePlacedInLeastLoadedKms() {
+
+    assertEquals(KMS1, pool.reserveKms("c1", 4));
+    assertEquals(KMS1, pool.reserveKms("c2", 5));
+
+    // KMS1 has only one load point left
+    assertEquals(KMS2, pool.reserveKms("c3", 2));
+
+    pool.releaseKms("c2");
+
+    assertEquals(KMS1, pool.reserveKms("c4", 3));
+  }
+
+  @Test
+  public void reservationFailsWithoutCapacity() {
+
+    pool.reserveKms("c1", 10);
+    pool.reserveKms("c2", 10);
+
+    try {
+      pool.reserveKms("c3", 1);
+      fail("NotEnoughResourcesException should be thrown");
+    } catch (NotEnoughResourcesException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void lessLoadedOfTwoRandomKmsIsChosen() throws InterruptedException {
+
+    // Indexes chosen: KMS2 and then KMS3 (the second index skips the first one)
+    final Iterator<Integer> randomIndexes = Arrays.asList(1, 1, 1, 1).iterator();
+
+    KmsPoolProvider randomPool = new KmsPoolProvider(Arrays.asList(KMS1, KMS2, KMS3), 10,
+        KmsPoolProvider.Selection.POWER_OF_TWO_CHOICES, 60000) {
+      @Override
+      protected double measureLoad(KmsNode node) {
+        if (KMS1.equals(node.getUrl())) {
+          return 0.1;
+        }
+        return KMS2.equals(node.getUrl()) ? 0.5 : 0.3;
+      }
+
+      @Override
+      protected int nextRandomIndex(int bound) {
+        return randomIndexes.next();
+      }
+    };
+
+    try {
+
+      for (KmsPoolProvider.KmsNode node : randomPool.getNodes()) {
+        while (!node.isAvailable()) {
+          Thread.sleep(10);
+        }
+      }
+
+      // KMS1 is the least loaded, but it isn't one of the candidates
+      assertEquals(KMS3, randomPool.reserveKms("c1", 6));
+
+      // KMS3 is now more loaded than KMS2 with the reserved points
+      assertEquals(KMS2, randomPool.reserveKms("c2", 1));
+
+    } finally {
+      randomPool.close();
+    }
+  }
+
+  @Test
+  public void nodesAreSortedWhileLoadChanges() throws InterruptedException {
+
+    // Sorting checks the consistency of comparisons with more than 32 nodes
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      urls.add("ws://kms" + i + ":8888/kurento");
+    }
+
+    final KmsPoolProvider bigPool = new KmsPoolProvider(urls, 1000,
+        KmsPoolProvider.Selection.LEAST_LOADED, 60000) {
+      @Override
+      protected double measureLoad(KmsNode node) {
+        return 0;
+      }
+    };
+
+    try {
+
+      for (KmsPoolProvider.KmsNode node : bigPool.getNodes()) {
+        while (!node.isAvailable()) {
+          Thread.sleep(10);
+        }
+      }
+
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final String prefix = "t" + t + "-";
+        Thread thread = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < 2000; i++) {
+                bigPool.reserveKms(prefix + i, 1 + i % 5);
+                if (i >= 10) {
+                  bigPool.releaseKms(prefix + (i - 10));
+                }
+              }
+            } catch (Throwable e) {
+              error.compareAndSet(null, e);
+            }
+          }
+        };
+        threads.add(thread);
+        thread.start();
+      }
+
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertNull(error.get());
+
+    } finally {
+      bigPool.close();
+    }
+  }
+}
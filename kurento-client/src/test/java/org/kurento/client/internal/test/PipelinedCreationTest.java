@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+
+public class PipelinedCreationTest {
+
+  private RomManager manager;
+
+  /**
+   * Asynchronous creations held until they are released, as if the media server were slow to
+   * answer. Creations are sent immediately while it is null.
+   */
+  private volatile List<Runnable> heldCreations;
+
+  @Before
+  public void initFactory() {
+
+    final RomClient client = new RomClientJsonRpcClient(new JsonRpcClientLocal(
+        new RomServerJsonRpcHandler("org.kurento.client.internal.test.model", "Impl")));
+
+    RomClient delayedClient = (RomClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { RomClient.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, final Method method, final Object[] args)
+              throws Throwable {
+
+            if (method.getName().equals("create") && args.length == 4
+                && heldCreations != null) {
+              heldCreations.add(new Runnable() {
+                @Override
+                public void run() {
+                  invokeClient(client, method, args);
+                }
+              });
+              return null;
+            }
+
+            return invokeClient(client, method, args);
+          }
+        });
+
+    manager = new RomManager(delayedClient);
+    manager.setPipelinedCreation(true);
+  }
+
+  private static Object invokeClient(RomClient client, Method method, Object[] args) {
+    try {
+      return method.invoke(client, args);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new KurentoException(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new KurentoException(e);
+    }
+  }
+
+  private void holdCreations() {
+    heldCreations = new ArrayList<>();
+  }
+
+  private void releaseCreations() {
+    List<Runnable> creations = heldCreations;
+    heldCreations = null;
+    for (Runnable creation : creations) {
+      creation.run();
+    }
+  }
+
+  @Test
+  public void syncInvocationWaitsCreation() {
+
+    Sample2 obj = new Sample2.Builder("XXX", 33, manager).withAtt3(0.5f).att4().build();
+
+    assertEquals("XXX", obj.getAtt1());
+    assertEquals(33, obj.getAtt2());
+    assertTrue(obj.isCommited());
+  }
+
+  @Test
+  public void asyncInvocationsAreQueuedUntilCreation() throws InterruptedException {
+
+    holdCreations();
+
+    Sample2 obj = new Sample2.Builder("YYY", 44, manager).withAtt3(0.5f).att4().build();
+
+    RemoteObject remoteObject = RemoteObjectInvocationHandler.getFor(obj).getRemoteObject();
+    assertTrue(remoteObject.isCreating());
+
+    final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+    final CountDownLatch latch = new CountDownLatch(3);
+
+    Continuation<Object> cont = new Continuation<Object>() {
+      @Override
+      public void onSuccess(Object result) throws Exception {
+        results.add(result);
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        results.add(cause);
+        latch.countDown();
+      }
+    };
+
+    remoteObject.invoke("getAtt1", null, String.class, cont);
+    remoteObject.invoke("getAtt2", null, Integer.class, cont);
+    remoteObject.invoke("getAtt1", null, String.class, cont);
+
+    // Nothing can be sent with the placeholder ref
+    assertTrue(results.isEmpty());
+    assertTrue(remoteObject.isCreating());
+
+    releaseCreations();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertFalse(remoteObject.isCreating());
+    assertEquals(Arrays.<Object> asList("YYY", 44, "YYY"), results);
+  }
+
+  @Test
+  public void pipelinedObjectIsWaitedForInTransaction() throws InterruptedException {
+
+    holdCreations();
+
+    Sample2 obj = new Sample2.Builder("ZZZ", 55, manager).build();
+    final RemoteObject remoteObject = RemoteObjectInvocationHandler.getFor(obj).getRemoteObject();
+    String placeholderRef = remoteObject.getObjectRef();
+
+    Thread creator = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          return;
+        }
+        releaseCreations();
+      }
+    };
+    creator.start();
+
+    Props flatParams = ParamsFlattener.getInstance().flattenParams(new Props("param", obj), true);
+
+    creator.join();
+
+    assertFalse(remoteObject.isCreating());
+    assertFalse(placeholderRef.equals(flatParams.getProp("param")));
+    assertEquals(remoteObject.getObjectRef(), flatParams.getProp("param"));
+  }
+
+  @Test(expected = KurentoException.class)
+  public void failedPipelinedObjectCantBeUsedInTransaction() {
+
+    RemoteObject remoteObject = manager.createPipelined("NonExistentClass", null, null);
+
+    ParamsFlattener.getInstance().flattenParams(new Props("param", remoteObject), true);
+  }
+
+  @Test
+  public void objectIsFoundInCollectionsAfterCreation() {
+
+    RemoteObject remoteObject =
+        new RemoteObject("pending:test", "Sample2", RemoteObject.ObjectStatus.CREATING, manager);
+
+    Set<RemoteObject> set = new HashSet<>();
+    set.add(remoteObject);
+    Map<RemoteObject, String> map = new HashMap<>();
+    map.put(remoteObject, "value");
+
+    remoteObject.setCreatedObjectRef("createdRef");
+
+    assertEquals("createdRef", remoteObject.getObjectRef());
+    assertTrue(set.contains(remoteObject));
+    assertEquals("value", map.get(remoteObject));
+  }
+
+  @Test(expected = KurentoException.class)
+  public void creationErrorIsPropagated() {
+
+    RemoteObject remoteObject = manager.createPipelined("NonExistentClass", null, null);
+
+    remoteObject.waitCreated();
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.jsonrpc.Props;
+
+public class RemoteObjectListenersTest {
+
+  private static final String EVENT = "Error";
+
+  private final List<String> firedListeners = new ArrayList<>();
+
+  private final List<String> unsubscriptions = new ArrayList<>();
+
+  private boolean subscriptionFails;
+
+  private int subscriptions;
+
+  private RemoteObject remoteObject;
+
+  @Before
+  public void initRemoteObject() {
+
+    RomClient client = (RomClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { RomClient.class }, new InvocationHandler() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+              case "subscribe":
+                String subscription = "subscription" + subscriptions++;
+                if (args.length == 3) {
+                  Continuation<String> cont = (Continuation<String>) args[2];
+                  if (subscriptionFails) {
+                    cont.onError(new RuntimeException("Subscription failed"));
+                  } else {
+                    cont.onSuccess(subscription);
+                  }
+                }
+                return subscription;
+              case "unsubscribe":
+                unsubscriptions.add((String) args[1]);
+                if (args.length == 3) {
+                  ((Continuation<Void>) args[2]).onSuccess(null);
+                }
+                return null;
+              case "transaction":
+                for (Operation op : (List<Operation>) args[0]) {
+                  op.processResponse(null);
+                }
+                return null;
+              case "isClosed":
+                return false;
+              default:
+                return null;
+            }
+          }
+        });
+
+    RomManager manager = new RomManager(client);
+    remoteObject = new RemoteObject("1234_kurento.MediaPipeline", null, manager);
+    RemoteObjectInvocationHandler.newProxy(remoteObject, manager, KurentoObject.class);
+  }
+
+  private RemoteObjectEventListener listener(final String name) {
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, Props data) {
+        firedListeners.add(name);
+      }
+    };
+  }
+
+  private List<String> fireEvent() {
+    firedListeners.clear();
+    remoteObject.fireEvent(EVENT, new Props());
+    return new ArrayList<>(firedListeners);
+  }
+
+  @Test
+  public void listenersAreFiredInOrderUntilRemoved() {
+
+    ListenerSubscriptionImpl subscription1 = remoteObject.addEventListener(EVENT, listener("1"));
+    ListenerSubscriptionImpl subscription2 = remoteObject.addEventListener(EVENT, listener("2"));
+    ListenerSubscriptionImpl subscription3 = remoteObject.addEventListener(EVENT, listener("3"));
+
+    assertEquals("[1, 2, 3]", fireEvent().toString());
+
+    remoteObject.removeEventListener(subscription2);
+    assertEquals("[1, 3]", fireEvent().toString());
+
+    // Removing a listener twice has no effect
+    remoteObject.removeEventListener(subscription2);
+    assertEquals("[1, 3]", fireEvent().toString());
+
+    remoteObject.removeEventListener(subscription1);
+    remoteObject.removeEventListener(subscription3);
+    assertEquals("[]", fireEvent().toString());
+
+    assertEquals("[subscription1, subscription1, subscription0, subscription2]",
+        unsubscriptions.toString());
+  }
+
+  @Test
+  public void listenerAddedWhileFiringIsFiredFromNextEvent() {
+
+    remoteObject.addEventListener(EVENT, new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, Props data) {
+        firedListeners.add("1");
+        if (firedListeners.size() == 1 && subscriptions == 1) {
+          remoteObject.addEventListener(EVENT, listener("2"));
+        }
+      }
+    });
+
+    assertEquals("[1]", fireEvent().toString());
+    assertEquals("[1, 2]", fireEvent().toString());
+  }
+
+  @Test
+  public void listenerIsRemovedWithContinuation() {
+
+    final List<ListenerSubscriptionImpl> subscription = new ArrayList<>();
+
+    remoteObject.addEventListener(EVENT, listener("1"),
+        new Continuation<ListenerSubscriptionImpl>() {
+          @Override
+          public void onSuccess(ListenerSubscriptionImpl result) {
+            subscription.add(result);
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+          }
+        });
+
+    assertEquals("[1]", fireEvent().toString());
+
+    remoteObject.removeEventListener(subscription.get(0), new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+      }
+    });
+
+    assertEquals("[]", fireEvent().toString());
+    assertEquals("[subscription0]", unsubscriptions.toString());
+  }
+
+  @Test
+  public void listenerIsNotKeptIfSubscriptionFails() {
+
+    final List<Throwable> errors = new ArrayList<>();
+    subscriptionFails = true;
+
+    remoteObject.addEventListener(EVENT, listener("1"),
+        new Continuation<ListenerSubscriptionImpl>() {
+          @Override
+          public void onSuccess(ListenerSubscriptionImpl result) {
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            errors.add(cause);
+          }
+        });
+
+    assertEquals(1, errors.size());
+    assertEquals("[]", fireEvent().toString());
+  }
+
+  @Test
+  public void listenerRemovedInTransactionIsFiredUntilCommit() {
+
+    ListenerSubscriptionImpl subscription1 = remoteObject.addEventListener(EVENT, listener("1"));
+    remoteObject.addEventListener(EVENT, listener("2"));
+
+    TransactionImpl tx = (TransactionImpl) remoteObject.beginTransaction();
+    remoteObject.removeEventListener(subscription1, tx);
+
+    assertEquals("[1, 2]", fireEvent().toString());
+
+    tx.commit();
+
+    assertEquals("[2]", fireEvent().toString());
+  }
+
+  @Test
+  public void listenerAddedInTransactionIsFiredAfterCommit() {
+
+    TransactionImpl tx = (TransactionImpl) remoteObject.beginTransaction();
+    ListenerSubscriptionImpl subscription =
+        remoteObject.addEventListener(EVENT, listener("1"), tx);
+
+    assertNull(subscription.getSubscription());
+    assertEquals("[]", fireEvent().toString());
+
+    tx.commit();
+
+    assertEquals("[1]", fireEvent().toString());
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.RemoteProperty;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemotePropertyCache;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.jsonrpc.Props;
+
+public class RemotePropertyCacheTest {
+
+  private interface Properties {
+
+    @RemoteProperty(value = "name", constant = true)
+    String getName();
+
+    @RemoteProperty(value = "bandwidth")
+    int getBandwidth();
+
+    @RemoteProperty(value = "mediaState", readOnly = true)
+    String getMediaState();
+  }
+
+  private RemotePropertyCache cache;
+
+  @Before
+  public void initCache() {
+    RemoteObject remoteObject = new RemoteObject("xxx", null, new RomManager(null));
+    cache = remoteObject.getPropertyCache();
+  }
+
+  private static RemoteProperty property(String getter) throws NoSuchMethodException {
+    return Properties.class.getMethod(getter).getAnnotation(RemoteProperty.class);
+  }
+
+  @Test
+  public void constantPropertyIsCachedOnRead() throws Exception {
+
+    RemoteProperty name = property("getName");
+
+    assertSame(RemotePropertyCache.MISSING, cache.get(name, String.class));
+
+    cache.read(name, "endpoint");
+
+    assertEquals("endpoint", cache.get(name, String.class));
+  }
+
+  @Test
+  public void writablePropertyIsCachedOnWrite() throws Exception {
+
+    RemoteProperty bandwidth = property("getBandwidth");
+
+    cache.read(bandwidth, 100);
+    assertSame(RemotePropertyCache.MISSING, cache.get(bandwidth, int.class));
+
+    cache.written(bandwidth, 200);
+    assertEquals(200, cache.get(bandwidth, int.class));
+
+    cache.invalidate("bandwidth");
+    assertSame(RemotePropertyCache.MISSING, cache.get(bandwidth, int.class));
+  }
+
+  @Test
+  public void statePropertyNeedsSubscription() throws Exception {
+
+    RemoteProperty mediaState = property("getMediaState");
+
+    cache.read(mediaState, "CONNECTED");
+    cache.onEvent("MediaStateChanged", new Props("newState", "DISCONNECTED"));
+
+    assertSame(RemotePropertyCache.MISSING, cache.get(mediaState, String.class));
+  }
+
+  @Test
+  public void statePropertyIsRefreshedByEvents() throws Exception {
+
+    RemoteProperty mediaState = property("getMediaState");
+
+    cache.onSubscribed("MediaStateChanged");
+
+    cache.read(mediaState, "CONNECTED");
+    assertEquals("CONNECTED", cache.get(mediaState, String.class));
+
+    cache.onEvent("MediaStateChanged", new Props("newState", "DISCONNECTED"));
+    assertEquals("DISCONNECTED", cache.get(mediaState, String.class));
+
+    cache.read(mediaState, "CONNECTED");
+    assertEquals("DISCONNECTED", cache.get(mediaState, String.class));
+  }
+
+  @Test
+  public void statePropertyIsDroppedOnLastUnsubscribe() throws Exception {
+
+    RemoteProperty mediaState = property("getMediaState");
+
+    cache.onSubscribed("MediaStateChanged");
+    cache.onSubscribed("MediaStateChanged");
+    cache.read(mediaState, "CONNECTED");
+
+    cache.onUnsubscribe("MediaStateChanged");
+    assertEquals("CONNECTED", cache.get(mediaState, String.class));
+
+    cache.onUnsubscribe("MediaStateChanged");
+    assertSame(RemotePropertyCache.MISSING, cache.get(mediaState, String.class));
+
+    cache.onUnsubscribe("MediaStateChanged");
+    cache.read(mediaState, "CONNECTED");
+    assertSame(RemotePropertyCache.MISSING, cache.get(mediaState, String.class));
+  }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.transport.jsonrpc.RequestBatcher;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class RequestBatcherTest {
+
+  private static class BatchHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<JsonObject> received =
+        Collections.synchronizedList(new ArrayList<JsonObject>());
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if (!TRANSACTION_METHOD.equals(request.getMethod())) {
+        requests.incrementAndGet();
+        received.add(request.getParams());
+        transaction.sendResponse(request.getParams());
+        return;
+      }
+
+      transactions.incrementAndGet();
+
+      JsonArray responses = new JsonArray();
+      for (JsonElement element : request.getParams().getAsJsonArray(TRANSACTION_OPERATIONS)) {
+        Request<JsonObject> operation =
+            JsonUtils.fromJsonRequest((JsonObject) element, JsonObject.class);
+        received.add(operation.getParams());
+        if ("fail".equals(operation.getMethod())) {
+          responses.add(JsonUtils.toJsonElement(new Response<JsonElement>(operation.getId(),
+              new ResponseError(1, "Operation failed"))));
+        } else {
+          responses.add(JsonUtils
+              .toJsonElement(new Response<JsonElement>(operation.getId(), operation.getParams())));
+        }
+      }
+      transaction.sendResponse(responses);
+    }
+  }
+
+  private static class ResultCollector {
+
+    private final AtomicReferenceArray<JsonElement> results;
+    private final AtomicReferenceArray<Throwable> errors;
+    private final CountDownLatch latch;
+
+    ResultCollector(int numRequests) {
+      results = new AtomicReferenceArray<>(numRequests);
+      errors = new AtomicReferenceArray<>(numRequests);
+      latch = new CountDownLatch(numRequests);
+    }
+
+    Continuation<JsonElement> continuation(final int index) {
+      return new Continuation<JsonElement>() {
+        @Override
+        public void onSuccess(JsonElement result) {
+          results.set(index, result);
+          latch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          errors.set(index, cause);
+          latch.countDown();
+        }
+      };
+    }
+
+    void await() throws InterruptedException {
+      assertTrue("Not all responses received", latch.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  private BatchHandler handler;
+  private JsonRpcClient client;
+
+  @Before
+  public void createClient() {
+    handler = new BatchHandler();
+    client = new JsonRpcClientLocal(handler);
+  }
+
+  @After
+  public void closeClient() throws Exception {
+    client.close();
+  }
+
+  private static Request<JsonObject> createRequest(String method, int value) {
+    JsonObject params = new JsonObject();
+    params.addProperty("value", value);
+    return new Request<>(method, params);
+  }
+
+  private static Request<JsonObject> createRequest(String method, int sender, int value) {
+    Request<JsonObject> request = createRequest(method, value);
+    request.getParams().addProperty("sender", sender);
+    return request;
+  }
+
+  @Test
+  public void requestsAreCoalescedInOneTransaction() throws InterruptedException {
+
+    RequestBatcher batcher = new RequestBatcher(client, 60000, 3);
+    ResultCollector collector = new ResultCollector(3);
+
+    for (int i = 0; i < 3; i++) {
+      batcher.add(createRequest("echo", i), collector.continuation(i));
+    }
+
+    collector.await();
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(0, handler.requests.get());
+    for (int i = 0; i < 3; i++) {
+      assertNull(collector.errors.get(i));
+      assertEquals(i, collector.results.get(i).getAsJsonObject().get("value").getAsInt());
+    }
+  }
+
+  @Test
+  public void failedOperationOnlyFailsItsCaller() throws InterruptedException {
+
+    RequestBatcher batcher = new RequestBatcher(client, 60000, 10);
+    ResultCollector collector = new ResultCollector(3);
+
+    batcher.add(createRequest("echo", 0), collector.continuation(0));
+    batcher.add(createRequest("fail", 1), collector.continuation(1));
+    batcher.add(createRequest("echo", 2), collector.continuation(2));
+    batcher.flush();
+
+    collector.await();
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(0, collector.results.get(0).getAsJsonObject().get("value").getAsInt());
+    assertTrue(collector.errors.get(1) != null);
+    assertNull(collector.results.get(1));
+    assertEquals(2, collector.results.get(2).getAsJsonObject().get("value").getAsInt());
+  }
+
+  @Test
+  public void batchIsSentWhenWindowExpires() throws InterruptedException {
+
+    RequestBatcher batcher = new RequestBatcher(client, 50, 100);
+    ResultCollector collector = new ResultCollector(2);
+
+    batcher.add(createRequest("echo", 0), collector.continuation(0));
+    batcher.add(createRequest("echo", 1), collector.continuation(1));
+
+    collector.await();
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(1, collector.results.get(1).getAsJsonObject().get("value").getAsInt());
+  }
+
+  @Test
+  public void singleRequestIsNotWrappedInTransaction() throws InterruptedException {
+
+    RequestBatcher batcher = new RequestBatcher(client, 60000, 10);
+    ResultCollector collector = new ResultCollector(1);
+
+    batcher.add(createRequest("echo", 7), collector.continuation(0));
+    batcher.close();
+
+    collector.await();
+
+    assertEquals(0, handler.transactions.get());
+    assertEquals(1, handler.requests.get());
+    assertEquals(7, collector.results.get(0).getAsJsonObject().get("value").getAsInt());
+  }
+
+  @Test
+  public void requestsOfEachThreadAreSentInOrder() throws Exception {
+
+    final RequestBatcher batcher = new RequestBatcher(client, 60000, 5);
+
+    final int numSenders = 4;
+    final int numRequests = 500;
+    final ResultCollector collector = new ResultCollector(numSenders * numRequests);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numSenders; t++) {
+      final int sender = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < numRequests; i++) {
+              batcher.add(createRequest("echo", sender, i),
+                  collector.continuation(sender * numRequests + i));
+              if (i % 7 == 0) {
+                // As done by synchronous requests sent while batching
+                batcher.flush();
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    batcher.flush();
+
+    collector.await();
+
+    int[] nextValue = new int[numSenders];
+    synchronized (handler.received) {
+      assertEquals(numSenders * numRequests, handler.received.size());
+      for (JsonObject params : handler.received) {
+        int sender = params.get("sender").getAsInt();
+        assertEquals("Request of sender " + sender + " out of order", nextValue[sender]++,
+            params.get("value").getAsInt());
+      }
+    }
+  }
+}
@@ -120,4 +120,132 @@ public class RomClientWeakRemoteObjects {
       Assert.fail("Reference should be null");
     }
   }
+
+  @Test
+  public void testLeakedObjectsReported() throws InterruptedException {
+
+    RomManager manager = new RomManager(null);
+
+    new RemoteObject("released", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("released");
+    manager.getObjectManager().releaseObject("released");
+
+    new RemoteObject("leaked", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("leaked");
+
+    try {
+      @SuppressWarnings("unused")
+      Object[] ignored = new Object[(int) Runtime.getRuntime().maxMemory()];
+    } catch (Throwable e) {
+      // Ignore OME
+    }
+
+    // Collected references are enqueued asynchronously by the JVM
+    for (int i = 0; i < 50 && manager.getObjectManager().getObjectsCount() > 0; i++) {
+      Thread.sleep(100);
+    }
+
+    Assert.assertEquals(Long.valueOf(1),
+        manager.getObjectManager().getLeakedObjectsCountByType().get("WebRtcEndpoint"));
+    Assert.assertEquals(0, manager.getObjectManager().getObjectsCount());
+  }
+
+  @Test
+  public void testElementsOfReleasedPipelineNotReported() throws InterruptedException {
+
+    RomManager manager = new RomManager(null);
+
+    new RemoteObject("pipeline", "MediaPipeline", manager);
+    manager.getObjectManager().setOwned("pipeline");
+
+    new RemoteObject("pipeline/endpoint1", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline/endpoint1");
+    new RemoteObject("pipeline/endpoint2", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline/endpoint2");
+
+    // Elements of other pipelines are not affected
+    RemoteObject other = new RemoteObject("pipeline2/endpoint", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline2/endpoint");
+
+    manager.getObjectManager().releaseObject("pipeline");
+    Assert.assertEquals(1, manager.getObjectManager().getObjectsCount());
+
+    try {
+      @SuppressWarnings("unused")
+      Object[] ignored = new Object[(int) Runtime.getRuntime().maxMemory()];
+    } catch (Throwable e) {
+      // Ignore OME
+    }
+
+    for (int i = 0; i < 10; i++) {
+      Thread.sleep(100);
+      manager.getObjectManager().getObjectsCount();
+    }
+
+    Assert.assertNull(
+        manager.getObjectManager().getLeakedObjectsCountByType().get("WebRtcEndpoint"));
+    Assert.assertSame(other, manager.getObjectManager().getRemoteObject("pipeline2/endpoint"));
+  }
+
+  @Test
+  public void testElementCollectedBeforePipelineReleaseNotReported()
+      throws InterruptedException {
+
+    RomManager manager = new RomManager(null);
+
+    RemoteObject pipeline = new RemoteObject("pipeline", "MediaPipeline", manager);
+    manager.getObjectManager().setOwned("pipeline");
+
+    new RemoteObject("pipeline/endpoint", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline/endpoint");
+
+    collectGarbage();
+
+    for (int i = 0; i < 50 && manager.getObjectManager().getObjectsCount() > 1; i++) {
+      Thread.sleep(100);
+    }
+
+    // Only the pipeline is released, as usual
+    Assert.assertEquals(1, manager.getObjectManager().getObjectsCount());
+    Assert.assertSame(pipeline, manager.getObjectManager().getRemoteObject("pipeline"));
+    manager.getObjectManager().releaseObject("pipeline");
+
+    Assert.assertEquals(0, manager.getObjectManager().getObjectsCount());
+    Assert.assertTrue(manager.getObjectManager().getLeakedObjectsCountByType().isEmpty());
+  }
+
+  @Test
+  public void testElementsOfCollectedPipelineReported() throws InterruptedException {
+
+    RomManager manager = new RomManager(null);
+
+    new RemoteObject("pipeline", "MediaPipeline", manager);
+    manager.getObjectManager().setOwned("pipeline");
+
+    new RemoteObject("pipeline/endpoint1", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline/endpoint1");
+    new RemoteObject("pipeline/endpoint2", "WebRtcEndpoint", manager);
+    manager.getObjectManager().setOwned("pipeline/endpoint2");
+
+    collectGarbage();
+
+    for (int i = 0; i < 50 && manager.getObjectManager().getObjectsCount() > 0; i++) {
+      Thread.sleep(100);
+    }
+
+    Assert.assertEquals(0, manager.getObjectManager().getObjectsCount());
+    Assert.assertEquals(Long.valueOf(1),
+        manager.getObjectManager().getLeakedObjectsCountByType().get("MediaPipeline"));
+    Assert.assertEquals(Long.valueOf(2),
+        manager.getObjectManager().getLeakedObjectsCountByType().get("WebRtcEndpoint"));
+  }
+
+  private static void collectGarbage() {
+    try {
+      @SuppressWarnings("unused")
+      Object[] ignored = new Object[(int) Runtime.getRuntime().maxMemory()];
+    } catch (Throwable e) {
+      // Ignore OME
+    }
+  }
 }
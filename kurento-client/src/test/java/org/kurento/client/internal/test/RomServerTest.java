@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.server.RomServer;
+import org.kurento.jsonrpc.Props;
+
+public class RomServerTest {
+
+  private final RomServer server = new RomServer("org.kurento.client.internal.test.model.server",
+      "Impl");
+
+  @Test
+  public void methodsAreDispatchedByName() {
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", true).add("att3", 0.5f).add("att4", 22));
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("XXX", server.invoke(objectRef, "getAtt1", null, String.class));
+      assertEquals(22, (int) server.invoke(objectRef, "getAtt4", null, Integer.class));
+      assertEquals("CONSTANT_1",
+          server.invoke(objectRef, "echoEnum", new Props("param", "CONSTANT_1"), String.class));
+      assertEquals(objectRef,
+          server.invoke(objectRef, "echoObjectRef", new Props("param", objectRef), String.class));
+    }
+  }
+
+  @Test
+  public void unknownMethodsAreRejected() {
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", true).add("att3", 0.5f).add("att4", 22));
+
+    try {
+      server.invoke(objectRef, "unknownMethod", null, Object.class);
+      fail("ProtocolException should be thrown");
+    } catch (ProtocolException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void allPrimitiveParamsAreConverted() {
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", true).add("att3", 0.5f).add("att4", 22));
+
+    assertEquals(5, ((Number) server.invoke(objectRef, "echoShort", new Props("param", 5),
+        Object.class)).intValue());
+    assertEquals(-3, ((Number) server.invoke(objectRef, "echoByte", new Props("param", -3),
+        Object.class)).intValue());
+    assertEquals('x', server.invoke(objectRef, "echoChar", new Props("param", "x"),
+        Object.class));
+  }
+
+  @Test
+  public void wrongParamIsReportedAsProtocolError() {
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", true).add("att3", 0.5f).add("att4", 22));
+
+    try {
+      server.invoke(objectRef, "echoShort", new Props("param", "notANumber"), Object.class);
+      fail("ProtocolException should be thrown");
+    } catch (ProtocolException e) {
+      assertTrue(e.getCause() instanceof ProtocolException);
+    }
+
+    try {
+      server.invoke(objectRef, "echoShort", null, Object.class);
+      fail("ProtocolException should be thrown");
+    } catch (ProtocolException e) {
+      assertTrue(e.getCause() instanceof ProtocolException);
+    }
+  }
+
+  @Test
+  public void methodErrorIsReportedAsInvocationError() {
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", true).add("att3", 0.5f).add("att4", 22));
+
+    try {
+      server.invoke(objectRef, "fail", new Props("message", "Method failure"), Object.class);
+      fail("ProtocolException should be thrown");
+    } catch (ProtocolException e) {
+      assertTrue(e.getCause() instanceof InvocationTargetException);
+      assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+    }
+  }
+}
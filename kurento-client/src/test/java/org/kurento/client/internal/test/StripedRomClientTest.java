@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.StripedRomClient;
+
+public class StripedRomClientTest {
+
+  private static final String PIPELINE = "1234_kurento.MediaPipeline";
+
+  private final List<List<String>> calls = new ArrayList<>();
+
+  private final List<String> closedStripes = new ArrayList<>();
+
+  private int createdPipelines;
+
+  private StripedRomClient client;
+
+  @Before
+  public void initClient() {
+
+    List<RomClient> stripes = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+
+      final List<String> stripeCalls = new ArrayList<>();
+      calls.add(stripeCalls);
+      final String stripeName = "stripe" + i;
+
+      stripes.add((RomClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] { RomClient.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              switch (method.getName()) {
+                case "isClosed":
+                  return closedStripes.contains(stripeName);
+                case "destroy":
+                  if (!closedStripes.contains(stripeName)) {
+                    closedStripes.add(stripeName);
+                  }
+                  return null;
+                case "create":
+                  stripeCalls.add(method.getName() + ":" + args[0]);
+                  return createdPipelines++ + "_kurento.MediaPipeline";
+                default:
+                  stripeCalls.add(method.getName() + ":" + args[0]);
+                  return null;
+              }
+            }
+          }));
+    }
+
+    client = new StripedRomClient(stripes);
+  }
+
+  private int stripeOf(String call) {
+    for (int i = 0; i < calls.size(); i++) {
+      if (calls.get(i).contains(call)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  public void operationsOfPipelineUseTheSameConnection() {
+
+    String endpoint = PIPELINE + "/5678_kurento.WebRtcEndpoint";
+
+    client.invoke(PIPELINE, "getGstreamerDot", null, String.class);
+    client.subscribe(endpoint, "MediaStateChanged");
+    client.release(endpoint);
+
+    int stripe = stripeOf("invoke:" + PIPELINE);
+
+    assertEquals(stripe, stripeOf("subscribe:" + endpoint));
+    assertEquals(stripe, stripeOf("release:" + endpoint));
+  }
+
+  @Test
+  public void objectsWithoutPipelineAreDistributed() {
+
+    for (int i = 0; i < 4; i++) {
+      client.create("MediaPipeline", null, null);
+    }
+
+    for (List<String> stripeCalls : calls) {
+      assertEquals(1, stripeCalls.size());
+    }
+  }
+
+  @Test
+  public void createdPipelineKeepsItsConnection() {
+
+    // Pipelines are created in the connections in turn, not by the hash of their ref
+    for (int i = 0; i < 8; i++) {
+
+      String pipeline = client.create("MediaPipeline", null, null);
+      String endpoint = pipeline + "/5678_kurento.WebRtcEndpoint";
+
+      client.invoke(pipeline, "getGstreamerDot", null, String.class);
+      client.subscribe(endpoint, "MediaStateChanged");
+
+      assertEquals(i % calls.size(), stripeOf("invoke:" + pipeline));
+      assertEquals(i % calls.size(), stripeOf("subscribe:" + endpoint));
+    }
+  }
+
+  @Test
+  public void closedWhenAllConnectionsAreClosed() {
+
+    assertFalse(client.isClosed());
+
+    closedStripes.add("stripe2");
+
+    // Checking the state doesn't close the other connections
+    assertFalse(client.isClosed());
+    assertEquals(1, closedStripes.size());
+
+    client.destroy();
+
+    assertTrue(client.isClosed());
+    assertEquals(4, closedStripes.size());
+  }
+
+  @Test
+  public void resetConnectionOnlyForgetsItsPipelines() {
+
+    List<String> pipelines = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      pipelines.add(client.create("MediaPipeline", null, null));
+    }
+
+    client.stripeReset(1);
+
+    for (int i = 0; i < pipelines.size(); i++) {
+      if (i % calls.size() != 1) {
+        client.invoke(pipelines.get(i), "getGstreamerDot", null, String.class);
+        assertEquals(i % calls.size(), stripeOf("invoke:" + pipelines.get(i)));
+      }
+    }
+
+    assertFalse(client.isClosed());
+    assertTrue(closedStripes.isEmpty());
+  }
+}
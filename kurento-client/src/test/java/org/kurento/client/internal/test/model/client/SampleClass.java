@@ -30,6 +30,8 @@ import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.server.Param;
 import org.kurento.client.internal.test.model.client.events.SampleEvent;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 @RemoteClass
 public interface SampleClass extends KurentoObject {
 
@@ -37,6 +39,8 @@ public interface SampleClass extends KurentoObject {
 
   void getAtt1(Continuation<String> cont);
 
+  ListenableFuture<String> getAtt1Async();
+
   boolean getAtt2();
 
   void getAtt2(Continuation<Boolean> cont);
@@ -57,6 +61,8 @@ public interface SampleClass extends KurentoObject {
 
   void echoEnum(@Param("param") SampleEnum param, Continuation<SampleEnum> cont);
 
+  ListenableFuture<SampleEnum> echoEnumAsync(@Param("param") SampleEnum param);
+
   ComplexParam echoRegister(@Param("param") ComplexParam param);
 
   void echoRegister(@Param("param") ComplexParam param, Continuation<ComplexParam> cont);
@@ -90,4 +90,20 @@ public class SampleClassImpl {
     return param;
   }
 
+  public short echoShort(@Param("param") short param) {
+    return param;
+  }
+
+  public byte echoByte(@Param("param") byte param) {
+    return param;
+  }
+
+  public char echoChar(@Param("param") char param) {
+    return param;
+  }
+
+  public void fail(@Param("message") String message) {
+    throw new IllegalStateException(message);
+  }
+
 }
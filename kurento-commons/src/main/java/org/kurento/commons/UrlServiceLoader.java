@@ -119,7 +119,7 @@ public abstract class UrlServiceLoader<P> {
     }
   }
 
-  protected P getServiceProvider() {
+  protected synchronized P getServiceProvider() {
     if (serviceProvider == null) {
       serviceProvider = createUrlProvider();
     }
@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.Properties;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.server.config.JsonRpcConfiguration;
+import org.kurento.jsonrpc.server.JsonRpcConfigurer;
+import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Simulator of Kurento Media Server running in the JVM. It implements the Kurento protocol with
+ * lightweight MediaPipeline, WebRtcEndpoint and PassThrough objects that emit the same events as
+ * the real ones (ICE candidates, connection and media state changes, media flow), without
+ * processing any media. It allows to load test client applications in a single machine.
+ *
+ * <p>
+ * It can be started from tests, or as a standalone application listening in the port set in
+ * {@code kms.simulator.port} (8888 by default). Latency, faults and event rates are set with
+ * {@link KmsSimulatorConfig}.
+ * </p>
+ */
+public class KmsSimulator {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsSimulator.class);
+
+  public static final String KMS_SIMULATOR_PORT_PROPERTY = "kms.simulator.port";
+  public static final int KMS_SIMULATOR_PORT_DEFAULT = 8888;
+
+  public static final String KMS_SIMULATOR_PATH = "/kurento";
+
+  @Configuration
+  @Import(JsonRpcConfiguration.class)
+  @EnableAutoConfiguration
+  public static class SimulatorApplication implements JsonRpcConfigurer {
+
+    @Autowired
+    private KmsSimulatorHandler handler;
+
+    @Override
+    public void registerJsonRpcHandlers(JsonRpcHandlerRegistry registry) {
+      registry.addHandler(handler, KMS_SIMULATOR_PATH);
+    }
+  }
+
+  private final int port;
+  private final KmsSimulatorConfig config;
+
+  private KmsSimulatorHandler handler;
+  private ConfigurableApplicationContext context;
+
+  public KmsSimulator(int port, KmsSimulatorConfig config) {
+    this.port = port;
+    this.config = config;
+  }
+
+  public synchronized void start() {
+
+    if (context != null) {
+      return;
+    }
+
+    handler = new KmsSimulatorHandler(config);
+
+    Properties properties = new Properties();
+    properties.put("server.port", Integer.toString(port));
+
+    SpringApplication application = new SpringApplication(SimulatorApplication.class);
+    application.setDefaultProperties(properties);
+    application.addInitializers(
+        new ApplicationContextInitializer<ConfigurableApplicationContext>() {
+          @Override
+          public void initialize(ConfigurableApplicationContext applicationContext) {
+            applicationContext.getBeanFactory().registerSingleton("kmsSimulatorHandler", handler);
+          }
+        });
+
+    context = application.run();
+
+    log.info("KMS simulator listening in {}", getWsUri());
+  }
+
+  public synchronized void stop() {
+    if (context != null) {
+      context.close();
+      handler.shutdown();
+      context = null;
+    }
+  }
+
+  public String getWsUri() {
+    return "ws://localhost:" + port + KMS_SIMULATOR_PATH;
+  }
+
+  public KmsSimulatorConfig getConfig() {
+    return config;
+  }
+
+  public SimulatorRomServer getServer() {
+    return handler.getServer();
+  }
+
+  public static void main(String[] args) {
+    new KmsSimulator(
+        PropertiesManager.getProperty(KMS_SIMULATOR_PORT_PROPERTY, KMS_SIMULATOR_PORT_DEFAULT),
+        new KmsSimulatorConfig()).start();
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.kurento.commons.PropertiesManager;
+
+/**
+ * Configuration of the {@link KmsSimulator}. Default values are read from the following
+ * properties:
+ * <ul>
+ * <li>{@code kms.simulator.latency}: millis added to every response (0 by default).</li>
+ * <li>{@code kms.simulator.latencyJitter}: maximum random millis added to the latency (0 by
+ * default).</li>
+ * <li>{@code kms.simulator.errorRate}: fraction of requests answered with an error (0 by
+ * default).</li>
+ * <li>{@code kms.simulator.dropRate}: fraction of requests never answered (0 by default).</li>
+ * <li>{@code kms.simulator.iceCandidates}: ICE candidates found by each WebRtcEndpoint (4 by
+ * default).</li>
+ * <li>{@code kms.simulator.iceCandidateInterval}: millis between ICE candidates (20 by
+ * default).</li>
+ * <li>{@code kms.simulator.stateChangeDelay}: millis between the end of the ICE gathering and the
+ * connection and media state changes (100 by default).</li>
+ * <li>{@code kms.simulator.cpuPerElement}: CPU percentage used by each media element (1 by
+ * default).</li>
+ * <li>{@code kms.simulator.memoryPerElement}: memory in KiB used by each media element (10240 by
+ * default).</li>
+ * <li>{@code kms.simulator.threads}: threads used to answer requests and emit events (4 by
+ * default).</li>
+ * </ul>
+ */
+public class KmsSimulatorConfig {
+
+  private volatile long latency = PropertiesManager.getProperty("kms.simulator.latency", 0L);
+  private volatile long latencyJitter =
+      PropertiesManager.getProperty("kms.simulator.latencyJitter", 0L);
+  private volatile double errorRate = PropertiesManager.getProperty("kms.simulator.errorRate", 0.0);
+  private volatile double dropRate = PropertiesManager.getProperty("kms.simulator.dropRate", 0.0);
+  private volatile int iceCandidates =
+      PropertiesManager.getProperty("kms.simulator.iceCandidates", 4);
+  private volatile long iceCandidateInterval =
+      PropertiesManager.getProperty("kms.simulator.iceCandidateInterval", 20L);
+  private volatile long stateChangeDelay =
+      PropertiesManager.getProperty("kms.simulator.stateChangeDelay", 100L);
+  private volatile double cpuPerElement =
+      PropertiesManager.getProperty("kms.simulator.cpuPerElement", 1.0);
+  private volatile long memoryPerElement =
+      PropertiesManager.getProperty("kms.simulator.memoryPerElement", 10240L);
+  private volatile int threads = PropertiesManager.getProperty("kms.simulator.threads", 4);
+
+  public long getLatency() {
+    return latency;
+  }
+
+  public void setLatency(long latency) {
+    this.latency = latency;
+  }
+
+  public long getLatencyJitter() {
+    return latencyJitter;
+  }
+
+  public void setLatencyJitter(long latencyJitter) {
+    this.latencyJitter = latencyJitter;
+  }
+
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  public double getDropRate() {
+    return dropRate;
+  }
+
+  public void setDropRate(double dropRate) {
+    this.dropRate = dropRate;
+  }
+
+  public int getIceCandidates() {
+    return iceCandidates;
+  }
+
+  public void setIceCandidates(int iceCandidates) {
+    this.iceCandidates = iceCandidates;
+  }
+
+  public long getIceCandidateInterval() {
+    return iceCandidateInterval;
+  }
+
+  public void setIceCandidateInterval(long iceCandidateInterval) {
+    this.iceCandidateInterval = iceCandidateInterval;
+  }
+
+  public long getStateChangeDelay() {
+    return stateChangeDelay;
+  }
+
+  public void setStateChangeDelay(long stateChangeDelay) {
+    this.stateChangeDelay = stateChangeDelay;
+  }
+
+  public double getCpuPerElement() {
+    return cpuPerElement;
+  }
+
+  public void setCpuPerElement(double cpuPerElement) {
+    this.cpuPerElement = cpuPerElement;
+  }
+
+  public long getMemoryPerElement() {
+    return memoryPerElement;
+  }
+
+  public void setMemoryPerElement(long memoryPerElement) {
+    this.memoryPerElement = memoryPerElement;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  long nextLatency() {
+    if (latencyJitter <= 0) {
+      return latency;
+    }
+    return latency + ThreadLocalRandom.current().nextLong(latencyJitter + 1);
+  }
+
+  boolean nextIsError() {
+    return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+  }
+
+  boolean nextIsDropped() {
+    return dropRate > 0 && ThreadLocalRandom.current().nextDouble() < dropRate;
+  }
+}
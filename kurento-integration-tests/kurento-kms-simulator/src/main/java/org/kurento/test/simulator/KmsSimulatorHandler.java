@@ -0,0 +1,266 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_NAME;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_LISTENER;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_METHOD;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * JSON-RPC handler implementing the Kurento protocol on top of a {@link SimulatorRomServer}. It
+ * injects the latency and faults set in the {@link KmsSimulatorConfig}: requests can be answered
+ * later, answered with an error or never answered.
+ */
+public class KmsSimulatorHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsSimulatorHandler.class);
+
+  public static final int SIMULATED_ERROR_CODE = 40000;
+
+  private static final String NEW_REF_PREFIX = "newref:";
+
+  private final KmsSimulatorConfig config;
+  private final ScheduledExecutorService scheduler;
+  private final SimulatorRomServer server;
+
+  public KmsSimulatorHandler(KmsSimulatorConfig config) {
+    this.config = config;
+    this.scheduler = Executors.newScheduledThreadPool(config.getThreads(),
+        new ThreadFactoryBuilder().setNameFormat("KmsSimulator-t%d").setDaemon(true).build());
+    this.server = new SimulatorRomServer(config, scheduler);
+  }
+
+  public SimulatorRomServer getServer() {
+    return server;
+  }
+
+  @Override
+  public void afterConnectionEstablished(Session session) throws Exception {
+    server.addSession(session);
+  }
+
+  @Override
+  public void afterConnectionClosed(Session session, String status) throws Exception {
+    server.removeSession(session);
+  }
+
+  @Override
+  public void handleRequest(final Transaction transaction, final Request<JsonObject> request)
+      throws Exception {
+
+    if (config.nextIsDropped()) {
+      log.debug("Dropping request {}", request);
+      transaction.startAsync();
+      return;
+    }
+
+    long latency = config.nextLatency();
+    if (latency > 0) {
+      transaction.startAsync();
+      server.schedule(new Runnable() {
+        @Override
+        public void run() {
+          processRequest(transaction, request);
+        }
+      }, latency);
+    } else {
+      processRequest(transaction, request);
+    }
+  }
+
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private void processRequest(Transaction transaction, Request<JsonObject> request) {
+
+    try {
+
+      if (config.nextIsError()) {
+        transaction.sendError(SIMULATED_ERROR_CODE, "SIMULATED_ERROR",
+            "Simulated error processing request " + request.getMethod(), null);
+        return;
+      }
+
+      Object result = execute(transaction.getSession(), request.getMethod(), request.getParams(),
+          null);
+
+      if (!transaction.isNotification()) {
+        if (result == null) {
+          transaction.sendVoidResponse();
+        } else {
+          transaction.sendResponse(result);
+        }
+      }
+
+    } catch (Exception e) {
+      log.debug("Exception processing request {}", request, e);
+      try {
+        transaction.sendError(e);
+      } catch (IOException ex) {
+        log.warn("Exception while sending a response", ex);
+      }
+    }
+  }
+
+  /**
+   * Executes an operation. Inside a transaction, newRefs contains the references of the objects
+   * created by previous operations.
+   */
+  private Object execute(Session session, String method, JsonObject params,
+      Map<String, String> newRefs) {
+
+    if (params == null) {
+      throw new ProtocolException("There are no params in the request");
+    }
+
+    switch (method) {
+      case CREATE_METHOD:
+        String objectRef = server.create(getAsString(params, CREATE_TYPE),
+            JsonUtils.fromJson(params.getAsJsonObject(CREATE_CONSTRUCTOR_PARAMS), Props.class));
+        if (newRefs != null) {
+          newRefs.put(NEW_REF_PREFIX + newRefs.size(), objectRef);
+        }
+        return objectRef;
+      case INVOKE_METHOD:
+        return server.invoke(getAsString(params, INVOKE_OBJECT),
+            getAsString(params, INVOKE_OPERATION_NAME),
+            JsonUtils.fromJson(params.getAsJsonObject(INVOKE_OPERATION_PARAMS), Props.class),
+            Object.class);
+      case RELEASE_METHOD:
+        server.release(getAsString(params, RELEASE_OBJECT));
+        return null;
+      case SUBSCRIBE_METHOD:
+        return server.subscribe(session, getAsString(params, SUBSCRIBE_OBJECT),
+            getAsString(params, SUBSCRIBE_TYPE));
+      case UNSUBSCRIBE_METHOD:
+        server.unsubscribe(getAsString(params, UNSUBSCRIBE_LISTENER));
+        return null;
+      case TRANSACTION_METHOD:
+        return executeTransaction(session, params.getAsJsonArray(TRANSACTION_OPERATIONS));
+      default:
+        throw new ProtocolException("Unknown request method '" + method + "'");
+    }
+  }
+
+  private JsonArray executeTransaction(Session session, JsonArray operations) {
+
+    if (operations == null) {
+      throw new ProtocolException("There are no operations in the transaction");
+    }
+
+    Map<String, String> newRefs = new HashMap<>();
+    List<Response<Object>> responses = new ArrayList<>();
+
+    for (JsonElement element : operations) {
+
+      Request<JsonObject> operation = JsonUtils.fromJsonRequest((JsonObject) element,
+          JsonObject.class);
+
+      try {
+        JsonObject params = (JsonObject) resolveNewRefs(operation.getParams(), newRefs);
+        responses.add(new Response<Object>(operation.getId(),
+            execute(session, operation.getMethod(), params, newRefs)));
+      } catch (Exception e) {
+        responses.add(new Response<Object>(operation.getId(), ResponseError.newFromException(e)));
+        // Operations after the failed one are not executed
+        break;
+      }
+    }
+
+    JsonArray result = new JsonArray();
+    for (Response<Object> response : responses) {
+      result.add(JsonUtils.toJsonElement(response));
+    }
+    return result;
+  }
+
+  private JsonElement resolveNewRefs(JsonElement element, Map<String, String> newRefs) {
+
+    if (element == null || newRefs.isEmpty()) {
+      return element;
+    }
+
+    if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+      String newRef = newRefs.get(element.getAsString());
+      return newRef != null ? new JsonPrimitive(newRef) : element;
+    } else if (element.isJsonObject()) {
+      JsonObject object = new JsonObject();
+      for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        object.add(entry.getKey(), resolveNewRefs(entry.getValue(), newRefs));
+      }
+      return object;
+    } else if (element.isJsonArray()) {
+      JsonArray array = new JsonArray();
+      for (JsonElement item : element.getAsJsonArray()) {
+        array.add(resolveNewRefs(item, newRefs));
+      }
+      return array;
+    } else {
+      return element;
+    }
+  }
+
+  private String getAsString(JsonObject jsonObject, String propName) {
+    JsonElement element = jsonObject.get(propName);
+    if (element == null) {
+      throw new ProtocolException("It is necessary a property '" + propName + "'");
+    }
+    return element.getAsString();
+  }
+}
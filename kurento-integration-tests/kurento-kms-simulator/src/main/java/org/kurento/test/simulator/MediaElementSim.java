@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kurento.client.internal.server.Param;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Simulated media element. Media starts flowing into an element when it is connected to an element
+ * with media flowing in, or when a simulated endpoint establishes its connection with the peer.
+ */
+public abstract class MediaElementSim extends MediaObjectSim {
+
+  private static final List<String> MEDIA_TYPES = Arrays.asList("AUDIO", "VIDEO");
+
+  private final List<MediaElementSim> sinks = new CopyOnWriteArrayList<>();
+  private final List<MediaElementSim> sources = new CopyOnWriteArrayList<>();
+
+  private final AtomicBoolean mediaFlowingIn = new AtomicBoolean();
+
+  protected MediaElementSim(MediaPipelineSim mediaPipeline) {
+    super(mediaPipeline);
+  }
+
+  @Override
+  List<MediaObjectSim> release() {
+    for (MediaElementSim sink : sinks) {
+      sink.sources.remove(this);
+    }
+    for (MediaElementSim source : sources) {
+      source.sinks.remove(this);
+    }
+    return super.release();
+  }
+
+  public void connect(@Param("sink") MediaElementSim sink, @Param("mediaType") String mediaType,
+      @Param("sourceMediaDescription") String sourceMediaDescription,
+      @Param("sinkMediaDescription") String sinkMediaDescription) {
+
+    if (!sinks.contains(sink)) {
+      sinks.add(sink);
+      sink.sources.add(this);
+    }
+
+    for (String type : getMediaTypes(mediaType)) {
+      fireEvent("ElementConnected", new Props("sink", sink.getObjectRef()).add("mediaType", type)
+          .add("sourceMediaDescription", "default").add("sinkMediaDescription", "default"), 0);
+    }
+
+    if (mediaFlowingIn.get()) {
+      fireMediaFlowEvents("MediaFlowOutStateChange", "FLOWING");
+      sink.startMediaFlow();
+    }
+  }
+
+  public void disconnect(@Param("sink") MediaElementSim sink, @Param("mediaType") String mediaType,
+      @Param("sourceMediaDescription") String sourceMediaDescription,
+      @Param("sinkMediaDescription") String sinkMediaDescription) {
+
+    if (sinks.remove(sink)) {
+      sink.sources.remove(this);
+      for (String type : getMediaTypes(mediaType)) {
+        fireEvent("ElementDisconnected",
+            new Props("sink", sink.getObjectRef()).add("mediaType", type)
+                .add("sourceMediaDescription", "default").add("sinkMediaDescription", "default"),
+            0);
+      }
+    }
+  }
+
+  public boolean isMediaFlowingIn(@Param("mediaType") String mediaType) {
+    return mediaFlowingIn.get();
+  }
+
+  public boolean isMediaFlowingOut(@Param("mediaType") String mediaType) {
+    return mediaFlowingIn.get() && !sinks.isEmpty();
+  }
+
+  public Map<String, Props> getStats(@Param("mediaType") String mediaType) {
+
+    long now = System.currentTimeMillis();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    Props stats = new Props("__module__", "kurento").add("__type__", "ElementStats")
+        .add("id", getObjectRef()).add("type", "element").add("timestamp", now / 1000.0)
+        .add("timestampMillis", now).add("inputLatency", Arrays.asList())
+        .add("inputAudioLatency", mediaFlowingIn.get() ? 20 + random.nextDouble(10) : 0.0)
+        .add("inputVideoLatency", mediaFlowingIn.get() ? 40 + random.nextDouble(20) : 0.0);
+
+    Map<String, Props> result = new HashMap<>();
+    result.put(getObjectRef(), stats);
+    return result;
+  }
+
+  /**
+   * Starts the media flow in this element and in the elements connected to it.
+   */
+  protected void startMediaFlow() {
+
+    if (!mediaFlowingIn.compareAndSet(false, true)) {
+      return;
+    }
+
+    fireMediaFlowEvents("MediaFlowInStateChange", "FLOWING");
+
+    for (MediaElementSim sink : sinks) {
+      fireMediaFlowEvents("MediaFlowOutStateChange", "FLOWING");
+      sink.startMediaFlow();
+    }
+  }
+
+  private void fireMediaFlowEvents(String eventType, String state) {
+    for (String type : MEDIA_TYPES) {
+      fireEvent(eventType, new Props("state", state).add("padName", "default").add("mediaType",
+          type), 0);
+    }
+  }
+
+  private static List<String> getMediaTypes(String mediaType) {
+    return mediaType != null ? Arrays.asList(mediaType) : MEDIA_TYPES;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.kurento.client.internal.server.Param;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Base class of the simulated media objects. Public methods are invoked by clients through the
+ * {@link SimulatorRomServer}, so they follow the names and params of the Kurento API.
+ */
+public abstract class MediaObjectSim {
+
+  private final MediaObjectSim parent;
+  private final List<MediaObjectSim> children = new CopyOnWriteArrayList<>();
+  private final ConcurrentMap<String, String> tags = new ConcurrentHashMap<>();
+  private final int creationTime = (int) (System.currentTimeMillis() / 1000);
+
+  private volatile String objectRef;
+  private volatile String type;
+  private volatile String name;
+  private volatile SimulatorRomServer server;
+
+  protected MediaObjectSim(MediaObjectSim parent) {
+    this.parent = parent;
+    if (parent != null) {
+      parent.children.add(this);
+    }
+  }
+
+  void init(String objectRef, String type, SimulatorRomServer server) {
+    this.objectRef = objectRef;
+    this.type = type;
+    this.server = server;
+  }
+
+  /**
+   * Releases the object and returns its descendants, which are also released.
+   */
+  List<MediaObjectSim> release() {
+    if (parent != null) {
+      parent.children.remove(this);
+    }
+    List<MediaObjectSim> descendants = new ArrayList<>();
+    for (MediaObjectSim child : children) {
+      descendants.add(child);
+      descendants.addAll(child.release());
+    }
+    return descendants;
+  }
+
+  String getObjectRef() {
+    return objectRef;
+  }
+
+  protected SimulatorRomServer getServer() {
+    return server;
+  }
+
+  protected KmsSimulatorConfig getConfig() {
+    return server.getConfig();
+  }
+
+  protected void fireEvent(String eventType, Props data, long delay) {
+    server.fireEvent(this, eventType, data, delay);
+  }
+
+  public MediaObjectSim getParent() {
+    return parent;
+  }
+
+  public List<MediaObjectSim> getChildren() {
+    return new ArrayList<>(children);
+  }
+
+  public MediaPipelineSim getMediaPipeline() {
+    MediaObjectSim object = this;
+    while (object.parent != null) {
+      object = object.parent;
+    }
+    return (MediaPipelineSim) object;
+  }
+
+  public String getName() {
+    return name != null ? name : objectRef;
+  }
+
+  public void setName(@Param("name") String name) {
+    this.name = name;
+  }
+
+  public int getCreationTime() {
+    return creationTime;
+  }
+
+  public void addTag(@Param("key") String key, @Param("value") String value) {
+    tags.put(key, value);
+  }
+
+  public void removeTag(@Param("key") String key) {
+    tags.remove(key);
+  }
+
+  public String getTag(@Param("key") String key) {
+    return tags.get(key);
+  }
+
+  @Override
+  public String toString() {
+    return type + " [objectRef=" + objectRef + "]";
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.server.Param;
+
+@RemoteClass
+public class MediaPipelineSim extends MediaObjectSim {
+
+  private volatile boolean latencyStats;
+
+  public MediaPipelineSim() {
+    super(null);
+  }
+
+  public boolean getLatencyStats() {
+    return latencyStats;
+  }
+
+  public void setLatencyStats(@Param("latencyStats") boolean latencyStats) {
+    this.latencyStats = latencyStats;
+  }
+
+  public String getGstreamerDot(@Param("details") String details) {
+    return "digraph pipeline {}";
+  }
+
+  int getElementsCount() {
+    return getChildren().size();
+  }
+}
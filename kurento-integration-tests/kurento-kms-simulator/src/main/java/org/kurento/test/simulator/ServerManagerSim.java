@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.List;
+
+import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.server.Param;
+
+/**
+ * Simulated ServerManager. The CPU and memory used by the media server are proportional to the
+ * number of media elements.
+ */
+@RemoteClass
+public class ServerManagerSim {
+
+  private final SimulatorRomServer server;
+
+  public ServerManagerSim(SimulatorRomServer server) {
+    this.server = server;
+  }
+
+  public List<MediaPipelineSim> getPipelines() {
+    return server.getPipelines();
+  }
+
+  public List<String> getSessions() {
+    return server.getSessionIds();
+  }
+
+  public float getUsedCpu(@Param("interval") int interval) {
+    return (float) Math.min(100, getElementsCount() * server.getConfig().getCpuPerElement());
+  }
+
+  public long getUsedMemory() {
+    return getElementsCount() * server.getConfig().getMemoryPerElement();
+  }
+
+  private int getElementsCount() {
+    int elements = 0;
+    for (MediaPipelineSim pipeline : server.getPipelines()) {
+      elements += pipeline.getElementsCount();
+    }
+    return elements;
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.server.RomServer;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * {@link RomServer} hosting the simulated media objects. Objects get references with the same
+ * format used by Kurento Media Server ({@code pipelineId_kurento.MediaPipeline/elementId_kurento.
+ * WebRtcEndpoint}), and the events they emit are sent to the sessions subscribed to them.
+ */
+public class SimulatorRomServer extends RomServer {
+
+  private static final Logger log = LoggerFactory.getLogger(SimulatorRomServer.class);
+
+  public static final String SERVER_MANAGER_REF = "manager_ServerManager";
+
+  private static final String MODULE_NAME = "kurento";
+
+  private static class Subscription {
+
+    private final String id;
+    private final String objectRef;
+    private final String type;
+    private final Session session;
+
+    public Subscription(String id, String objectRef, String type, Session session) {
+      this.id = id;
+      this.objectRef = objectRef;
+      this.type = type;
+      this.session = session;
+    }
+  }
+
+  private final KmsSimulatorConfig config;
+  private final ScheduledExecutorService scheduler;
+
+  private final Set<MediaPipelineSim> pipelines =
+      Collections.newSetFromMap(new ConcurrentHashMap<MediaPipelineSim, Boolean>());
+  private final Set<String> sessionIds =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, List<Subscription>> subscriptionsByObject =
+      new ConcurrentHashMap<>();
+
+  public SimulatorRomServer(KmsSimulatorConfig config, ScheduledExecutorService scheduler) {
+    super(SimulatorRomServer.class.getPackage().getName(), "Sim");
+    this.config = config;
+    this.scheduler = scheduler;
+    getObjectManager().putObject(SERVER_MANAGER_REF, new ServerManagerSim(this));
+  }
+
+  public KmsSimulatorConfig getConfig() {
+    return config;
+  }
+
+  @Override
+  protected String registerObject(String remoteClassType, Object object) {
+
+    MediaObjectSim mediaObject = (MediaObjectSim) object;
+
+    String objectRef = UUID.randomUUID().toString() + "_" + MODULE_NAME + "." + remoteClassType;
+    if (mediaObject.getParent() != null) {
+      objectRef = mediaObject.getParent().getObjectRef() + "/" + objectRef;
+    }
+
+    getObjectManager().putObject(objectRef, mediaObject);
+    mediaObject.init(objectRef, remoteClassType, this);
+
+    if (mediaObject instanceof MediaPipelineSim) {
+      pipelines.add((MediaPipelineSim) mediaObject);
+    }
+
+    return objectRef;
+  }
+
+  @Override
+  public void release(String objectRef) {
+
+    Object object = getObjectManager().getObject(objectRef);
+    if (object == null) {
+      throw new ProtocolException("No object found with reference " + objectRef);
+    }
+
+    MediaObjectSim mediaObject = (MediaObjectSim) object;
+    for (MediaObjectSim child : mediaObject.release()) {
+      releaseRef(child.getObjectRef());
+    }
+    releaseRef(objectRef);
+
+    pipelines.remove(mediaObject);
+  }
+
+  private void releaseRef(String objectRef) {
+    List<Subscription> objectSubscriptions = subscriptionsByObject.remove(objectRef);
+    if (objectSubscriptions != null) {
+      for (Subscription subscription : objectSubscriptions) {
+        subscriptions.remove(subscription.id);
+      }
+    }
+    super.release(objectRef);
+  }
+
+  public String subscribe(Session session, String objectRef, String type) {
+
+    if (getObjectManager().getObject(objectRef) == null) {
+      throw new ProtocolException("No object found with reference " + objectRef);
+    }
+
+    Subscription subscription =
+        new Subscription(UUID.randomUUID().toString(), objectRef, type, session);
+
+    List<Subscription> objectSubscriptions = subscriptionsByObject.get(objectRef);
+    if (objectSubscriptions == null) {
+      List<Subscription> newSubscriptions = new CopyOnWriteArrayList<>();
+      objectSubscriptions = subscriptionsByObject.putIfAbsent(objectRef, newSubscriptions);
+      if (objectSubscriptions == null) {
+        objectSubscriptions = newSubscriptions;
+      }
+    }
+    objectSubscriptions.add(subscription);
+    subscriptions.put(subscription.id, subscription);
+
+    return subscription.id;
+  }
+
+  public void unsubscribe(String subscriptionId) {
+    Subscription subscription = subscriptions.remove(subscriptionId);
+    if (subscription != null) {
+      List<Subscription> objectSubscriptions = subscriptionsByObject.get(subscription.objectRef);
+      if (objectSubscriptions != null) {
+        objectSubscriptions.remove(subscription);
+      }
+    }
+  }
+
+  public void addSession(Session session) {
+    sessionIds.add(session.getSessionId());
+  }
+
+  public void removeSession(Session session) {
+    sessionIds.remove(session.getSessionId());
+    for (Subscription subscription : subscriptions.values()) {
+      if (subscription.session == session) {
+        unsubscribe(subscription.id);
+      }
+    }
+  }
+
+  public List<String> getSessionIds() {
+    return new ArrayList<>(sessionIds);
+  }
+
+  public List<MediaPipelineSim> getPipelines() {
+    return new ArrayList<>(pipelines);
+  }
+
+  /**
+   * Sends an event emitted by the object to the sessions subscribed to its type. Each session
+   * receives the event once, regardless the number of subscriptions it has.
+   */
+  public void fireEvent(final MediaObjectSim source, final String type, final Props data,
+      long delay) {
+
+    schedule(new Runnable() {
+      @Override
+      public void run() {
+        sendEvent(source, type, data);
+      }
+    }, delay);
+  }
+
+  public void schedule(Runnable task, long delay) {
+    if (delay > 0) {
+      scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    } else {
+      scheduler.execute(task);
+    }
+  }
+
+  private void sendEvent(MediaObjectSim source, String type, Props data) {
+
+    List<Subscription> objectSubscriptions = subscriptionsByObject.get(source.getObjectRef());
+    if (objectSubscriptions == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    data.add("source", source.getObjectRef());
+    data.add("type", type);
+    data.add("timestamp", Long.toString(now / 1000));
+    data.add("timestampMillis", Long.toString(now));
+    data.add("tags", new ArrayList<>());
+
+    JsonObject jsonData = JsonUtils.toJsonObject(data);
+
+    Set<Session> notifiedSessions = new HashSet<>();
+    for (Subscription subscription : objectSubscriptions) {
+      if (type.equals(subscription.type) && notifiedSessions.add(subscription.session)) {
+
+        JsonObject event = new JsonObject();
+        event.addProperty(RomJsonRpcConstants.ONEVENT_OBJECT, source.getObjectRef());
+        event.addProperty(RomJsonRpcConstants.ONEVENT_TYPE, type);
+        event.addProperty(RomJsonRpcConstants.ONEVENT_SUBSCRIPTION, subscription.id);
+        event.add(RomJsonRpcConstants.ONEVENT_DATA, jsonData);
+
+        JsonObject params = new JsonObject();
+        params.add("value", event);
+
+        try {
+          subscription.session.sendNotification(RomJsonRpcConstants.ONEVENT_METHOD, params);
+        } catch (IOException e) {
+          log.warn("Exception sending event {} of object {} to session {}", type,
+              source.getObjectRef(), subscription.session.getSessionId(), e);
+        }
+      }
+    }
+  }
+}
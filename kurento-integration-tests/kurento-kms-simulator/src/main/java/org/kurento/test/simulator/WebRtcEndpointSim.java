@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.server.Param;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Simulated WebRtcEndpoint. Gathering candidates emits the configured number of ICE candidates,
+ * and then the endpoint gets connected and media starts flowing into it.
+ */
+@RemoteClass
+public class WebRtcEndpointSim extends MediaElementSim {
+
+  private final AtomicBoolean gathering = new AtomicBoolean();
+  private final AtomicInteger remoteCandidates = new AtomicInteger();
+
+  private volatile String localSessionDescriptor;
+  private volatile String remoteSessionDescriptor;
+  private volatile String connectionState = "DISCONNECTED";
+
+  private volatile String stunServerAddress;
+  private volatile int stunServerPort;
+  private volatile String turnUrl;
+  private volatile int maxVideoSendBandwidth = 500;
+  private volatile int minVideoSendBandwidth = 100;
+  private volatile int maxVideoRecvBandwidth = 500;
+  private volatile int minVideoRecvBandwidth = 0;
+
+  public WebRtcEndpointSim(@Param("mediaPipeline") MediaPipelineSim mediaPipeline) {
+    super(mediaPipeline);
+  }
+
+  public String generateOffer() {
+    localSessionDescriptor = createSessionDescription();
+    return localSessionDescriptor;
+  }
+
+  public String processOffer(@Param("offer") String offer) {
+    remoteSessionDescriptor = offer;
+    localSessionDescriptor = createSessionDescription();
+    return localSessionDescriptor;
+  }
+
+  public String processAnswer(@Param("answer") String answer) {
+    remoteSessionDescriptor = answer;
+    return localSessionDescriptor;
+  }
+
+  public String getLocalSessionDescriptor() {
+    return localSessionDescriptor;
+  }
+
+  public String getRemoteSessionDescriptor() {
+    return remoteSessionDescriptor;
+  }
+
+  public void gatherCandidates() {
+
+    if (!gathering.compareAndSet(false, true)) {
+      return;
+    }
+
+    KmsSimulatorConfig config = getConfig();
+    long interval = config.getIceCandidateInterval();
+    int numCandidates = config.getIceCandidates();
+
+    for (int i = 0; i < numCandidates; i++) {
+      Props candidate = new Props("__module__", "kurento").add("__type__", "IceCandidate")
+          .add("candidate", createCandidate(i)).add("sdpMid", "0").add("sdpMLineIndex", 0);
+      fireEvent("IceCandidateFound", new Props("candidate", candidate), interval * (i + 1));
+    }
+
+    long gatheringTime = interval * (numCandidates + 1);
+    fireEvent("IceGatheringDone", new Props(), gatheringTime);
+
+    long connectionTime = gatheringTime + config.getStateChangeDelay();
+    fireEvent("IceComponentStateChange",
+        new Props("streamId", 0).add("componentId", 1).add("state", "CONNECTED"), connectionTime);
+
+    getServer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        connectionState = "CONNECTED";
+        fireEvent("ConnectionStateChanged",
+            new Props("oldState", "DISCONNECTED").add("newState", "CONNECTED"), 0);
+        fireEvent("MediaStateChanged",
+            new Props("oldState", "DISCONNECTED").add("newState", "CONNECTED"), 0);
+        startMediaFlow();
+      }
+    }, connectionTime);
+  }
+
+  public void addIceCandidate(@Param("candidate") Object candidate) {
+    remoteCandidates.incrementAndGet();
+  }
+
+  public String getConnectionState() {
+    return connectionState;
+  }
+
+  public String getMediaState() {
+    return connectionState;
+  }
+
+  public String getStunServerAddress() {
+    return stunServerAddress;
+  }
+
+  public void setStunServerAddress(@Param("stunServerAddress") String stunServerAddress) {
+    this.stunServerAddress = stunServerAddress;
+  }
+
+  public int getStunServerPort() {
+    return stunServerPort;
+  }
+
+  public void setStunServerPort(@Param("stunServerPort") int stunServerPort) {
+    this.stunServerPort = stunServerPort;
+  }
+
+  public String getTurnUrl() {
+    return turnUrl;
+  }
+
+  public void setTurnUrl(@Param("turnUrl") String turnUrl) {
+    this.turnUrl = turnUrl;
+  }
+
+  public int getMaxVideoSendBandwidth() {
+    return maxVideoSendBandwidth;
+  }
+
+  public void setMaxVideoSendBandwidth(@Param("maxVideoSendBandwidth") int bandwidth) {
+    this.maxVideoSendBandwidth = bandwidth;
+  }
+
+  public int getMinVideoSendBandwidth() {
+    return minVideoSendBandwidth;
+  }
+
+  public void setMinVideoSendBandwidth(@Param("minVideoSendBandwidth") int bandwidth) {
+    this.minVideoSendBandwidth = bandwidth;
+  }
+
+  public int getMaxVideoRecvBandwidth() {
+    return maxVideoRecvBandwidth;
+  }
+
+  public void setMaxVideoRecvBandwidth(@Param("maxVideoRecvBandwidth") int bandwidth) {
+    this.maxVideoRecvBandwidth = bandwidth;
+  }
+
+  public int getMinVideoRecvBandwidth() {
+    return minVideoRecvBandwidth;
+  }
+
+  public void setMinVideoRecvBandwidth(@Param("minVideoRecvBandwidth") int bandwidth) {
+    this.minVideoRecvBandwidth = bandwidth;
+  }
+
+  private String createSessionDescription() {
+    long sessionId = System.nanoTime();
+    return "v=0\r\n"
+        + "o=- " + sessionId + " " + sessionId + " IN IP4 0.0.0.0\r\n"
+        + "s=Kurento Media Server\r\n"
+        + "c=IN IP4 0.0.0.0\r\n"
+        + "t=0 0\r\n"
+        + "a=group:BUNDLE audio0 video0\r\n"
+        + "m=audio 1 UDP/TLS/RTP/SAVPF 96 0\r\n"
+        + "a=mid:audio0\r\n"
+        + "a=sendrecv\r\n"
+        + "a=rtcp-mux\r\n"
+        + "a=rtpmap:96 opus/48000/2\r\n"
+        + "a=rtpmap:0 PCMU/8000\r\n"
+        + "m=video 1 UDP/TLS/RTP/SAVPF 102\r\n"
+        + "a=mid:video0\r\n"
+        + "a=sendrecv\r\n"
+        + "a=rtcp-mux\r\n"
+        + "a=rtpmap:102 VP8/90000\r\n";
+  }
+
+  private String createCandidate(int index) {
+    return "candidate:" + (index + 1) + " 1 UDP " + (2015363327 - index) + " 10.0.0."
+        + (index % 254 + 1) + " " + (40000 + index) + " typ host";
+  }
+}
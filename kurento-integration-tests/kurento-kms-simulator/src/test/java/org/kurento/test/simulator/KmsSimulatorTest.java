@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.IceCandidateFoundEvent;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaFlowInStateChangeEvent;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.PassThrough;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.commons.exception.KurentoException;
+
+public class KmsSimulatorTest {
+
+  private KmsSimulator simulator;
+  private KmsSimulatorConfig config;
+  private KurentoClient kurentoClient;
+
+  @Before
+  public void startSimulator() {
+    config = new KmsSimulatorConfig();
+    config.setIceCandidates(3);
+    config.setStateChangeDelay(10);
+    simulator = new KmsSimulator(getPort(), config);
+    simulator.start();
+    kurentoClient = KurentoClient.create(simulator.getWsUri());
+  }
+
+  @After
+  public void stopSimulator() {
+    kurentoClient.destroy();
+    simulator.stop();
+  }
+
+  @Test
+  public void webRtcEndpointEmitsIceAndMediaFlowEvents() throws InterruptedException {
+
+    MediaPipeline pipeline = kurentoClient.createMediaPipeline();
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+    PassThrough passThrough = new PassThrough.Builder(pipeline).build();
+    webRtc.connect(passThrough);
+
+    final CountDownLatch candidates = new CountDownLatch(3);
+    webRtc.addIceCandidateFoundListener(new EventListener<IceCandidateFoundEvent>() {
+      @Override
+      public void onEvent(IceCandidateFoundEvent event) {
+        candidates.countDown();
+      }
+    });
+
+    final CountDownLatch mediaFlowing = new CountDownLatch(1);
+    passThrough.addMediaFlowInStateChangeListener(
+        new EventListener<MediaFlowInStateChangeEvent>() {
+          @Override
+          public void onEvent(MediaFlowInStateChangeEvent event) {
+            mediaFlowing.countDown();
+          }
+        });
+
+    assertNotNull(webRtc.processOffer("v=0"));
+    webRtc.gatherCandidates();
+
+    assertTrue(candidates.await(10, TimeUnit.SECONDS));
+    assertTrue(mediaFlowing.await(10, TimeUnit.SECONDS));
+
+    assertEquals(1, kurentoClient.getServerManager().getPipelines().size());
+
+    pipeline.release();
+
+    assertEquals(0, kurentoClient.getServerManager().getPipelines().size());
+  }
+
+  @Test
+  public void faultsAreInjected() {
+
+    config.setErrorRate(1);
+
+    try {
+      kurentoClient.createMediaPipeline();
+      fail("KurentoException should be thrown");
+    } catch (KurentoException e) {
+      // Expected
+    }
+  }
+
+  private static int getPort() {
+    String port = System.getProperty("http.port");
+    return port != null ? Integer.parseInt(port) : 7790;
+  }
+}
@@ -18,9 +18,16 @@
 package org.kurento.repository.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.Test;
@@ -31,12 +38,22 @@ import org.kurento.repository.internal.repoimpl.filesystem.ItemsMetadata;
 @Category(RepositoryApiTests.class)
 public class ItemsMetadataTest {
 
+  private static ItemsMetadata open(File folder) {
+    return new ItemsMetadata(folder, Collections.<String> emptyList());
+  }
+
+  private static Map<String, String> metadata(String key, String value) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(key, value);
+    return metadata;
+  }
+
   @Test
   public void test() throws IOException {
 
-    File tempFile = File.createTempFile("metadata", "");
+    File folder = Files.createTempDirectory("metadata").toFile();
 
-    ItemsMetadata itemsMetadata = new ItemsMetadata(tempFile);
+    ItemsMetadata itemsMetadata = open(folder);
 
     for (int i = 0; i < 10; i++) {
       Map<String, String> md1 = itemsMetadata.loadMetadata("o" + i);
@@ -46,7 +63,7 @@ public class ItemsMetadataTest {
 
     itemsMetadata.save();
 
-    itemsMetadata = new ItemsMetadata(tempFile);
+    itemsMetadata = open(folder);
 
     assertEquals(10, itemsMetadata.findByAttValue("sameAtt", "value").size());
     assertEquals(1, itemsMetadata.findByAttValue("differentAtt", "value1").size());
@@ -54,4 +71,84 @@ public class ItemsMetadataTest {
 
   }
 
+  @Test
+  public void journalIsReplayedOverSnapshot() throws IOException {
+
+    File folder = Files.createTempDirectory("metadata").toFile();
+
+    ItemsMetadata itemsMetadata = open(folder);
+    itemsMetadata.setMetadataForId("a", metadata("att", "1"));
+    itemsMetadata.setMetadataForId("b", metadata("att", "1"));
+    itemsMetadata.save();
+
+    // Changes after the snapshot are only in the journal
+    itemsMetadata.setMetadataForId("a", metadata("att", "2"));
+    itemsMetadata.removeMetadataForId("b");
+    itemsMetadata.setMetadataForId("c", metadata("att", "3"));
+
+    itemsMetadata = open(folder);
+
+    assertEquals("2", itemsMetadata.loadMetadata("a").get("att"));
+    assertTrue(itemsMetadata.findByAttValue("att", "1").isEmpty());
+    assertEquals("3", itemsMetadata.loadMetadata("c").get("att"));
+  }
+
+  @Test
+  public void tornAndCorruptRecordsAreDiscarded() throws IOException {
+
+    File folder = Files.createTempDirectory("metadata").toFile();
+    File journalFile = new File(folder, "metadata.journal");
+
+    ItemsMetadata itemsMetadata = open(folder);
+    itemsMetadata.setMetadataForId("a", metadata("att", "1"));
+    long validLength = journalFile.length();
+
+    // Record with a wrong checksum followed by a record partially written in a crash
+    Files.write(journalFile.toPath(),
+        "00000000 { \"id\" : \"b\" , \"metadata\" : { \"att\" : \"2\"}}\n7f3a"
+            .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    itemsMetadata = open(folder);
+
+    assertEquals("1", itemsMetadata.loadMetadata("a").get("att"));
+    assertTrue(itemsMetadata.findByAttValue("att", "2").isEmpty());
+    assertEquals(validLength, journalFile.length());
+
+    // New records are appended after the last valid one
+    itemsMetadata.setMetadataForId("c", metadata("att", "3"));
+
+    itemsMetadata = open(folder);
+
+    assertEquals("1", itemsMetadata.loadMetadata("a").get("att"));
+    assertEquals("3", itemsMetadata.loadMetadata("c").get("att"));
+  }
+
+  @Test
+  public void legacyMetadataFileIsMigrated() throws IOException {
+
+    File folder = Files.createTempDirectory("metadata").toFile();
+    File legacyFile = new File(folder, "metadata.json");
+
+    Files.write(legacyFile.toPath(),
+        "{ \"a\" : { \"att\" : \"1\"} , \"b\" : { \"att\" : \"2\"}}"
+            .getBytes(StandardCharsets.UTF_8));
+
+    ItemsMetadata itemsMetadata = open(folder);
+
+    assertEquals("1", itemsMetadata.loadMetadata("a").get("att"));
+    assertEquals("2", itemsMetadata.loadMetadata("b").get("att"));
+
+    assertFalse(legacyFile.exists());
+    assertTrue(new File(folder, "metadata.json.migrated").exists());
+    assertTrue(new File(folder, "metadata.snapshot").exists());
+
+    itemsMetadata.removeMetadataForId("a");
+
+    // The legacy file is not read again
+    itemsMetadata = open(folder);
+
+    assertTrue(itemsMetadata.findByAttValue("att", "1").isEmpty());
+    assertEquals("2", itemsMetadata.loadMetadata("b").get("att"));
+  }
+
 }
@@ -17,15 +17,34 @@
 
 package org.kurento.repository.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assume;
 import org.junit.Test;
 import org.kurento.repository.RepositoryHttpPlayer;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.RepositoryHttpServlet;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
 import org.kurento.repository.test.util.BaseRepositoryTest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +61,24 @@ public class RangeGetTest extends BaseRepositoryTest {
 
   private static final Logger log = LoggerFactory.getLogger(RangeGetTest.class);
 
+  private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+  /**
+   * Exposes the sendfile decision of the servlet, which only sets request attributes.
+   */
+  private static class SendfileServlet extends RepositoryHttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    boolean trySendfile(HttpServletRequest request, HttpServletResponse response,
+        RepositoryHttpEndpointImpl elem, long start, long end) {
+      return sendfile(request, response, elem, start, end);
+    }
+  }
+
   @Test
   public void test() throws Exception {
 
@@ -66,17 +103,141 @@ public class RangeGetTest extends BaseRepositoryTest {
 
     RestTemplate httpClient = getRestTemplate();
 
+    byte[] content = Files.readAllBytes(new File("test-files/" + id).toPath());
+
     acceptRanges(url, httpClient);
     log.debug("Accept ranges test passed");
 
     long fileLength = rangeFrom0(url, httpClient);
     log.debug("Range from 0 test passed");
 
-    randomRange(url, httpClient, fileLength);
+    randomRange(url, httpClient, fileLength, content);
     log.debug("Random range test passed");
+
+    multipleRanges(url, httpClient, content);
+    log.debug("Multiple ranges test passed");
+  }
+
+  @Test
+  public void testSendfile() throws Exception {
+
+    // Bigger than the minimum size sent with sendfile
+    byte[] content = new byte[200 * 1024 + 17];
+    new Random(0).nextBytes(content);
+
+    File file = new File("test-files/tmp/sendfile.bin");
+    Files.write(file.toPath(), content);
+
+    RepositoryItem item = getRepository().createRepositoryItem();
+    uploadFile(file, item);
+    item = getRepository().findRepositoryItemById(item.getId());
+
+    RepositoryHttpPlayer player = item.createRepositoryHttpPlayer();
+    player.setAutoTerminationTimeout(10000);
+
+    // The container sends these responses with sendfile, if it supports it
+    RestTemplate httpClient = getRestTemplate();
+
+    ResponseEntity<byte[]> response = httpClient.getForEntity(player.getURL(), byte[].class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertArrayEquals("The server doesn't send the content", content, response.getBody());
+
+    response = getRange(player.getURL(), httpClient, "bytes=1000-150999");
+    assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+    assertArrayEquals("The server doesn't send the requested bytes",
+        Arrays.copyOfRange(content, 1000, 151000), response.getBody());
+
+    multipleRanges(player.getURL(), httpClient, content);
+
+    player.stop();
+
+    Assume.assumeTrue("Only file items are sent with sendfile",
+        item instanceof FileRepositoryItem);
+
+    RepositoryHttpEndpointImpl elem = (RepositoryHttpEndpointImpl) player;
+    String fileName = ((FileRepositoryItem) item).getFile().getCanonicalPath();
+    SendfileServlet servlet = new SendfileServlet();
+
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getAttribute(SENDFILE_SUPPORTED_ATTR)).thenReturn(Boolean.TRUE);
+    HttpServletResponse servletResponse = mock(HttpServletResponse.class);
+
+    assertTrue("A big range should be sent with sendfile",
+        servlet.trySendfile(request, servletResponse, elem, 1000, 150999));
+    verify(request).setAttribute(SENDFILE_FILENAME_ATTR, fileName);
+    verify(request).setAttribute(SENDFILE_START_ATTR, 1000L);
+    // The end attribute is exclusive
+    verify(request).setAttribute(SENDFILE_END_ATTR, 151000L);
+
+    HttpServletRequest smallRangeRequest = mock(HttpServletRequest.class);
+    when(smallRangeRequest.getAttribute(SENDFILE_SUPPORTED_ATTR)).thenReturn(Boolean.TRUE);
+
+    assertFalse("A small range should be copied to the response",
+        servlet.trySendfile(smallRangeRequest, servletResponse, elem, 1000, 1999));
+    verify(smallRangeRequest, never()).setAttribute(anyString(), anyObject());
+
+    HttpServletRequest unsupportedRequest = mock(HttpServletRequest.class);
+
+    assertFalse("Content should be copied if the container doesn't support sendfile",
+        servlet.trySendfile(unsupportedRequest, servletResponse, elem, 1000, 150999));
+    verify(unsupportedRequest, never()).setAttribute(anyString(), anyObject());
+  }
+
+  private void multipleRanges(String url, RestTemplate httpClient, byte[] content) {
+
+    long[][] ranges = { { 0, 99 }, { 1000, 1999 },
+        { content.length - 500, content.length - 1 } };
+
+    StringBuilder rangeHeader = new StringBuilder("bytes=");
+    for (long[] range : ranges) {
+      if (range != ranges[0]) {
+        rangeHeader.append(',');
+      }
+      rangeHeader.append(range[0]).append('-').append(range[1]);
+    }
+
+    ResponseEntity<byte[]> response = getRange(url, httpClient, rangeHeader.toString());
+
+    log.debug("Response: " + response);
+
+    assertEquals("The server doesn't respond with http status code 206 to a request with ranges",
+        HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+    assertTrue("The server doesn't respond with multiple ranges",
+        response.getHeaders().getContentType().toString().startsWith("multipart/byteranges"));
+
+    // Each byte is a char in ISO-8859-1, so the parts can be found in the body as text
+    String body = new String(response.getBody(), StandardCharsets.ISO_8859_1);
+
+    for (long[] range : ranges) {
+
+      String partHeader =
+          "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + content.length + "\r\n\r\n";
+      int partStart = body.indexOf(partHeader);
+      assertTrue("The server doesn't send the range " + range[0] + "-" + range[1],
+          partStart >= 0);
+      partStart += partHeader.length();
+
+      byte[] part = Arrays.copyOfRange(response.getBody(), partStart,
+          partStart + (int) (range[1] - range[0] + 1));
+      assertArrayEquals("The server doesn't send the bytes of range " + range[0] + "-" + range[1],
+          Arrays.copyOfRange(content, (int) range[0], (int) range[1] + 1), part);
+    }
+  }
+
+  private ResponseEntity<byte[]> getRange(String url, RestTemplate httpClient, String range) {
+
+    HttpHeaders requestHeaders = new HttpHeaders();
+    requestHeaders.set("Range", range);
+
+    HttpEntity<MultiValueMap<String, String>> requestEntity =
+        new HttpEntity<MultiValueMap<String, String>>(new LinkedMultiValueMap<String, String>(),
+            requestHeaders);
+
+    return httpClient.exchange(url, HttpMethod.GET, requestEntity, byte[].class);
   }
 
-  private void randomRange(String url, RestTemplate httpClient, long fileLength) {
+  private void randomRange(String url, RestTemplate httpClient, long fileLength,
+      byte[] content) {
 
     HttpHeaders requestHeaders = new HttpHeaders();
 
@@ -104,6 +265,9 @@ public class RangeGetTest extends BaseRepositoryTest {
 
     assertEquals("The server doesn't send the requested bytes", responseContentLength,
         response.getBody().length);
+
+    assertArrayEquals("The server doesn't send the requested bytes",
+        Arrays.copyOfRange(content, (int) firstByte, (int) lastByte + 1), response.getBody());
   }
 
   private long rangeFrom0(String url, RestTemplate httpClient) {
@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.kurento.repository.KurentoRepositoryServerApp;
+import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
+
+/**
+ * Runs the tests of {@link RangePutTest} with the uploads received with non-blocking reads.
+ */
+public class RangePutAsyncIoTest extends RangePutTest {
+
+  @BeforeClass
+  public static void start() throws Exception {
+    System.setProperty(RepositoryApplicationContextConfiguration.KEY_HTTP_ASYNC_IO, "true");
+    repositoryServer = KurentoRepositoryServerApp.start();
+  }
+
+  @AfterClass
+  public static void stop() {
+    repositoryServer.close();
+    System.clearProperty(RepositoryApplicationContextConfiguration.KEY_HTTP_ASYNC_IO);
+  }
+}
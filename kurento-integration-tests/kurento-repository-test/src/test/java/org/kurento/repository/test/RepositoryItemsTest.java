@@ -20,6 +20,8 @@ package org.kurento.repository.test;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
 
 import org.junit.Test;
 import org.kurento.repository.RepositoryHttpRecorder;
@@ -56,4 +58,27 @@ public class RepositoryItemsTest extends BaseRepositoryTest {
     assertTrue(TestUtils.equalFiles(fileToUpload, downloadedFile));
   }
 
+  @Test
+  public void testLargeFileUploadWithPOSTAndDownload() throws Exception {
+
+    // Bigger than the buffers used to copy the content, so it is received in several reads
+    byte[] content = new byte[300 * 1024 + 17];
+    new Random(0).nextBytes(content);
+
+    File fileToUpload = new File("test-files/tmp/large.bin");
+    Files.write(fileToUpload.toPath(), content);
+
+    RepositoryItem repositoryItem = getRepository().createRepositoryItem();
+    RepositoryHttpRecorder recorder = repositoryItem.createRepositoryHttpRecorder();
+
+    uploadFileWithPOST(recorder.getURL(), fileToUpload);
+
+    recorder.stop();
+
+    File downloadedFile = downloadFromRepoItemId(repositoryItem.getId());
+
+    assertTrue("The uploaded file and downloaded one are different",
+        TestUtils.equalFiles(fileToUpload, downloadedFile));
+  }
+
 }
\ No newline at end of file
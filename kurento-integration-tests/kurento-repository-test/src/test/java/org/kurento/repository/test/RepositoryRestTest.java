@@ -18,6 +18,7 @@
 package org.kurento.repository.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.kurento.commons.PropertiesManager.getProperty;
 
@@ -25,7 +26,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,8 +47,10 @@ import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryApiConfiguration.RepoType;
 import org.kurento.repository.RepositoryClient;
 import org.kurento.repository.RepositoryClientProvider;
+import org.kurento.repository.RepositoryItem;
 import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
 import org.kurento.repository.internal.repoimpl.mongo.MongoRepository;
+import org.kurento.repository.service.pojo.RepositoryItemIdsPage;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
 import org.kurento.repository.test.util.TestUtils;
@@ -160,6 +166,10 @@ public class RepositoryRestTest {
 
     assertEquals("Ids don't match", itemRec.getId(), items.iterator().next());
 
+    RepositoryItemIdsPage page = restService.simpleFindItemsPage(metadata, 10, null);
+    assertEquals("Ids of the page don't match", Arrays.asList(itemRec.getId()), page.getIds());
+    assertNull("There should be only one page", page.getContinuation());
+
     if (RepoType.parseType(RepositoryApplicationContextConfiguration.REPO_TYPE).isMongoDB()) {
       Map<String, String> regexValues = new HashMap<>();
       regexValues.put("restKey", "restVal*");
@@ -199,6 +209,60 @@ public class RepositoryRestTest {
 
   }
 
+  @Test
+  public void paginatedSearch() throws IOException {
+
+    for (int i = 0; i < 6; i++) {
+      Map<String, String> metadata = new HashMap<>();
+      if (i < 5) {
+        metadata.put("pageKey", "pageValue");
+      }
+      if (i == 2 || i == 5) {
+        metadata.put("otherKey", "otherValue");
+      }
+      RepositoryItem item = repository.createRepositoryItem("page-item-" + i);
+      item.setMetadata(metadata);
+      try (OutputStream os = item.createOutputStreamToWrite()) {
+        os.write(i);
+      }
+    }
+
+    Map<String, String> searchValues = new HashMap<>();
+    searchValues.put("pageKey", "pageValue");
+
+    RepositoryItemIdsPage page = restService.simpleFindItemsPage(searchValues, 2, null);
+    assertEquals(Arrays.asList("page-item-0", "page-item-1"), page.getIds());
+    assertEquals("page-item-1", page.getContinuation());
+
+    page = restService.simpleFindItemsPage(searchValues, 2, page.getContinuation());
+    assertEquals(Arrays.asList("page-item-2", "page-item-3"), page.getIds());
+    assertEquals("page-item-3", page.getContinuation());
+
+    page = restService.simpleFindItemsPage(searchValues, 2, page.getContinuation());
+    assertEquals(Arrays.asList("page-item-4"), page.getIds());
+    assertNull("The last page should have no continuation", page.getContinuation());
+
+    // A full last page needs another request to know there are no more ids
+    page = restService.simpleFindItemsPage(searchValues, 5, null);
+    assertEquals(5, page.getIds().size());
+    page = restService.simpleFindItemsPage(searchValues, 5, page.getContinuation());
+    assertTrue(page.getIds().isEmpty());
+    assertNull(page.getContinuation());
+
+    page = restService.simpleFindItemsPage(searchValues, 10, "page-item-2");
+    assertEquals(Arrays.asList("page-item-3", "page-item-4"), page.getIds());
+
+    // Ids found by several attributes are returned once
+    searchValues.put("otherKey", "otherValue");
+
+    page = restService.simpleFindItemsPage(searchValues, 10, null);
+    assertEquals(Arrays.asList("page-item-0", "page-item-1", "page-item-2", "page-item-3",
+        "page-item-4", "page-item-5"), page.getIds());
+    assertNull(page.getContinuation());
+
+    assertEquals(new HashSet<>(page.getIds()), restService.simpleFindItems(searchValues));
+  }
+
   protected void uploadFileWithCURL(String uploadURL, File fileToUpload)
       throws FileNotFoundException, IOException {
 
@@ -30,13 +30,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.ThreadFactoryCreator;
-import org.kurento.commons.TimeoutReentrantLock;
 import org.kurento.commons.TimeoutRuntimeException;
 import org.kurento.jsonrpc.JsonRpcClientClosedException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
@@ -56,25 +56,28 @@ import org.slf4j.LoggerFactory;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
-  private static final int CONNECTION_LOCK_TIMEOUT = 25000;
-
   private static Logger log = LoggerFactory.getLogger(AbstractJsonRpcClientWebSocket.class);
 
-  protected static final long RECONNECT_DELAY_TIME_MILLIS = 5000;
-
   private long requestTimeout =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.timeout", 60000);
 
+  /**
+   * Time (in millis) that a thread waits for a connection being established by other thread.
+   */
+  protected int connectionWaitTimeout =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.connectionWaitTimeout", 25000);
+
   protected static final int maxPacketSize =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.packetSize", 1000000);
 
   private volatile ExecutorService reqResEventExec;
-  private volatile ScheduledExecutorService disconnectExec;
+  private volatile TimerService.Timeout reconnectTimeout;
 
   protected URI uri;
 
@@ -90,13 +93,30 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   private volatile boolean reconnecting;
 
-  private TimeoutReentrantLock lock;
+  /**
+   * Connection establishment in progress. Only the thread that creates it connects to the server;
+   * the rest of threads wait for its future to be completed.
+   */
+  private static class ConnectionAttempt {
+
+    private final Thread thread = Thread.currentThread();
+    private final SettableFuture<Void> future = SettableFuture.create();
+  }
+
+  private volatile boolean connected;
+
+  private final AtomicReference<ConnectionAttempt> connectionAttempt = new AtomicReference<>();
 
   private boolean sendCloseMessage;
 
   private boolean concurrentServerRequest = true;
 
   private boolean tryReconnectingForever;
+
+  private ReconnectPolicy reconnectPolicy = ReconnectPolicy.createDefault();
+  private final AtomicBoolean registeredInPolicy = new AtomicBoolean();
+  private volatile int reconnectAttempts;
+  private volatile long nextReconnectionTime;
   private long tryReconnectingMaxTime;
 
   private boolean retryingIfTimeoutToConnect;
@@ -110,8 +130,6 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   public AbstractJsonRpcClientWebSocket(String url,
       JsonRpcWSConnectionListener connectionListener) {
 
-    this.lock = new TimeoutReentrantLock(CONNECTION_LOCK_TIMEOUT, "Server " + url);
-
     try {
       this.uri = new URI(url);
     } catch (URISyntaxException e) {
@@ -125,6 +143,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     this.connectionListener = connectionListener;
 
+    registerInPolicy();
+
     rsHelper = new JsonRpcRequestSenderHelper() {
       @Override
       protected void internalSendRequest(Request<? extends Object> request,
@@ -143,6 +163,10 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   }
 
+  public URI getUri() {
+    return uri;
+  }
+
   /**
    * Configures the request timeout in this client. If a request doesn't receive a response before
    * this time (in millis), a TransportException will be thrown.
@@ -172,6 +196,19 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     return sendCloseMessage;
   }
 
+  /**
+   * Configures the delays between reconnection attempts and the limits to the attempts shared by
+   * all the clients in the JVM. By default, the policy is configured with the properties
+   * {@code jsonRpcClientWebSocket.reconnect.*}.
+   */
+  public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+    this.reconnectPolicy = reconnectPolicy;
+  }
+
+  public ReconnectPolicy getReconnectPolicy() {
+    return reconnectPolicy;
+  }
+
   public void setTryReconnectingForever(boolean tryReconnectingForever) {
     this.tryReconnectingForever = tryReconnectingForever;
   }
@@ -324,9 +361,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   protected void createExecServiceIfNecessary() {
 
-    if (reqResEventExec == null || disconnectExec == null || reqResEventExec.isShutdown()
-        || reqResEventExec.isTerminated() || disconnectExec.isShutdown()
-        || disconnectExec.isTerminated()) {
+    if (reqResEventExec == null || reqResEventExec.isShutdown()
+        || reqResEventExec.isTerminated()) {
 
       synchronized (executorsLock) {
 
@@ -335,12 +371,6 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
           reqResEventExec = Executors.newCachedThreadPool(
               ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-reqResEventExec"));
         }
-
-        if (disconnectExec == null || disconnectExec.isShutdown()
-            || disconnectExec.isTerminated()) {
-          disconnectExec = Executors.newScheduledThreadPool(1,
-              ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-disconnectExec"));
-        }
       }
     }
   }
@@ -394,8 +424,11 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     } catch (ExecutionException e) {
       throw new JsonRpcException(label + " This exception shouldn't be thrown", e);
     } catch (TimeoutException e) {
-      throw new JsonRpcException(label + " Timeout of " + requestTimeout
-          + " milliseconds waiting from response to request " + jsonMessage.trim(), e);
+      JsonRpcException timeoutException = new JsonRpcException(label + " Timeout of "
+          + requestTimeout + " milliseconds waiting from response to request "
+          + jsonMessage.trim(), e);
+      pendingRequests.cancelResponse(request.getId(), timeoutException);
+      throw timeoutException;
     }
   }
 
@@ -414,7 +447,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       }
 
       final boolean isPing;
-      String jsonMessage = request.toString();
+      final String jsonMessage = request.toString();
       if (METHOD_PING.equals(request.getMethod())) {
         isPing = true;
         log.trace("{} Req-> {}", label, jsonMessage.trim());
@@ -427,12 +460,23 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
       if (responseFuture != null) {
 
+        final TimerService.Timeout requestTimeoutTask = getTimerService().schedule(new Runnable() {
+          @Override
+          public void run() {
+            pendingRequests.cancelResponse(request.getId(),
+                new JsonRpcException(label + " Timeout of " + requestTimeout
+                    + " milliseconds waiting from response to request " + jsonMessage.trim()));
+          }
+        }, requestTimeout, TimeUnit.MILLISECONDS);
+
         createExecServiceIfNecessary();
 
         Futures.addCallback(responseFuture, new FutureCallback<Response<JsonElement>>() {
           @Override
           public void onSuccess(Response<JsonElement> responseJson) {
 
+            requestTimeoutTask.cancel();
+
             if (isPing) {
               log.trace("{} <-Res {}", label, responseJson.toString());
             } else {
@@ -457,6 +501,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
           @Override
           public void onFailure(Throwable thrown) {
+            requestTimeoutTask.cancel();
             continuation.onError(thrown);
           }
         }, reqResEventExec);
@@ -489,10 +534,21 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     this.closeClient("Session closed by JsonRpcClientWebsocket user");
 
+    if (registeredInPolicy.compareAndSet(true, false)) {
+      ReconnectPolicy.unregisterClient(uri);
+    }
+  }
+
+  private void registerInPolicy() {
+    if (registeredInPolicy.compareAndSet(false, true)) {
+      ReconnectPolicy.registerClient(uri);
+    }
   }
 
   protected synchronized void closeClient(String reason) {
 
+    connected = false;
+
     if (!reconnecting) {
       notifyDisconnection(reason, false);
     }
@@ -509,14 +565,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       reqResEventExec = null;
     }
 
-    if (disconnectExec != null) {
-      try {
-        disconnectExec.shutdownNow();
-      } catch (Exception e) {
-        log.debug("{} Could not properly shut down disconnect executor service. Reason: {}", label,
-            e.getMessage());
-      }
-      disconnectExec = null;
+    if (reconnectTimeout != null) {
+      reconnectTimeout.cancel();
+      reconnectTimeout = null;
     }
 
     if (heartbeating) {
@@ -589,6 +640,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   protected void handleReconnectDisconnection(final int statusCode, final String closeReason) {
 
+    connected = false;
+
     if (!isClosedByUser()) {
 
       log.debug("{}JsonRpcWsClient disconnected from {} because {}.", label, uri, closeReason);
@@ -606,7 +659,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   }
 
   private void reconnect(final String closeReason) {
-    reconnect(closeReason, 0, true);
+    reconnectAttempts = 0;
+    reconnect(closeReason, reconnectPolicy.getDelay(uri, 0), true);
   }
 
   private void reconnect(final String closeReason, final long delayMillis,
@@ -622,17 +676,35 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       disableHeartbeat();
     }
 
-    createExecServiceIfNecessary();
+    nextReconnectionTime = System.currentTimeMillis() + delayMillis;
 
-    disconnectExec.schedule(new Runnable() {
+    reconnectTimeout = getTimerService().schedule(new Runnable() {
       @Override
       public void run() {
+
+        if (!reconnectPolicy.tryStartAttempt(uri)) {
+
+          if (isReconnectionTimeExpired()) {
+            log.warn("{} Couldn't try to reconnect to server {}. Notifying disconnection", label,
+                uri);
+            notifyDisconnection(closeReason, true);
+          } else {
+            long delay = reconnectPolicy.getDelay(uri, reconnectAttempts);
+            log.debug("{} Reconnection to {} delayed {} millis", label, uri, delay);
+            reconnect(closeReason, delay, false);
+          }
+          return;
+        }
+
+        boolean reconnected = false;
+
         try {
 
           log.debug("{} JsonRpcWsClient reconnecting to {}. ", label, uri);
 
-          connectIfNecessary();
+          connectIfNecessary(true);
 
+          reconnected = true;
           reconnecting = false;
 
         } catch (Exception e) {
@@ -641,10 +713,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
           log.debug("TryReconnectingMaxTime={}", tryReconnectingMaxTime);
           log.debug("maxTimeReconnecting={}", maxTimeReconnecting);
           log.debug("currentTime={}", System.currentTimeMillis());
-          log.debug("Parar de reconectar={}", System.currentTimeMillis() > maxTimeReconnecting);
 
-          if (!tryReconnectingForever && (tryReconnectingMaxTime == 0
-              || System.currentTimeMillis() > maxTimeReconnecting)) {
+          if (isReconnectionTimeExpired()) {
 
             log.warn("{} Exception trying to reconnect to server {}. Notifying disconnection",
                 label, uri, e);
@@ -653,17 +723,27 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
           } else {
 
+            long delay = reconnectPolicy.getDelay(uri, ++reconnectAttempts);
+
             log.warn("{} Exception trying to reconnect to server {}. Retrying in {} millis", label,
-                uri, RECONNECT_DELAY_TIME_MILLIS, e);
+                uri, delay, e);
 
-            reconnect(closeReason, RECONNECT_DELAY_TIME_MILLIS, false);
+            reconnect(closeReason, delay, false);
           }
+
+        } finally {
+          reconnectPolicy.finishAttempt(uri, reconnected);
         }
       }
 
     }, delayMillis, TimeUnit.MILLISECONDS);
   }
 
+  private boolean isReconnectionTimeExpired() {
+    return !tryReconnectingForever
+        && (tryReconnectingMaxTime == 0 || System.currentTimeMillis() > maxTimeReconnecting);
+  }
+
   @Override
   protected void closeWithReconnection() {
     log.debug("{} Closing websocket session to force reconnection", label);
@@ -671,9 +751,15 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     handleReconnectDisconnection(999, "ping timeout");
   }
 
+  @Override
+  protected boolean isConnectionEstablished() {
+    return connected;
+  }
+
   @Override
   public void connect() throws IOException {
     this.closedByClient = false;
+    registerInPolicy();
     connectIfNecessary();
   }
 
@@ -682,6 +768,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     this.startSessionWhenConnected = true;
 
     this.closedByClient = false;
+    registerInPolicy();
 
     connectIfNecessary();
 
@@ -836,25 +923,140 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     };
   }
 
+  /**
+   * Ensures that the client is connected to the server. When the connection is healthy, this method
+   * only reads the connection flag. Otherwise, the first thread arriving here establishes the
+   * connection and the rest of threads wait for it to finish, sharing its result.
+   *
+   * <p>
+   * Connections established from application threads are subject to the {@link ReconnectPolicy}
+   * like reconnections: they fail fast while a reconnection is waiting for its delay, while the
+   * circuit breaker of the server is open or when too many attempts are in progress in the JVM.
+   * </p>
+   */
   protected void connectIfNecessary() throws IOException {
+    connectIfNecessary(false);
+  }
 
-    try {
+  /**
+   * @param attemptStarted
+   *          true if the caller has already started an attempt in the reconnect policy
+   */
+  private void connectIfNecessary(boolean attemptStarted) throws IOException {
 
-      lock.tryLockTimeout("connectIfNecessary()");
-      try {
+    if (connected) {
+      return;
+    }
+
+    while (true) {
+
+      ConnectionAttempt attempt = connectionAttempt.get();
+
+      if (attempt == null) {
+
+        ConnectionAttempt newAttempt = new ConnectionAttempt();
+        if (connectionAttempt.compareAndSet(null, newAttempt)) {
+          establishConnection(newAttempt, attemptStarted);
+          return;
+        }
+
+      } else if (attempt.thread == Thread.currentThread()) {
 
+        // Request sent while establishing the connection (e.g. connect protocol)
         internalConnectIfNecessary();
+        return;
+
+      } else {
+
+        waitConnection(attempt);
+        return;
+      }
+    }
+  }
+
+  private void establishConnection(ConnectionAttempt attempt, boolean attemptStarted)
+      throws IOException {
+
+    boolean policyAttempt = false;
+    boolean success = false;
+
+    try {
+
+      if (!attemptStarted && !isNativeClientConnected() && !isClosedByUser()) {
+        startPolicyAttempt();
+        policyAttempt = true;
+      }
+
+      internalConnectIfNecessary();
 
-      } finally {
-        lock.unlock();
+      connected = true;
+
+      // A disconnection could be notified before setting the flag
+      if (!isNativeClientConnected()) {
+        connected = false;
+      }
+
+      success = true;
+      attempt.future.set(null);
+
+    } catch (IOException | RuntimeException e) {
+      attempt.future.setException(e);
+      throw e;
+    } finally {
+      if (policyAttempt) {
+        reconnectPolicy.finishAttempt(uri, success);
+      }
+      connectionAttempt.compareAndSet(attempt, null);
+    }
+  }
+
+  private void startPolicyAttempt() {
+
+    if (reconnecting) {
+      long delay = nextReconnectionTime - System.currentTimeMillis();
+      if (delay > 0) {
+        throw new JsonRpcException(label + " Connection to server " + uri
+            + " lost. Next reconnection attempt in " + delay + " millis");
       }
+    }
+
+    if (!reconnectPolicy.tryStartAttempt(uri)) {
+      throw new JsonRpcException(label + " Connection to server " + uri
+          + " not attempted: the server is failing or too many connections are in progress");
+    }
+  }
 
-    } catch (TimeoutRuntimeException e) {
+  private void waitConnection(ConnectionAttempt attempt) throws IOException {
+
+    try {
+
+      attempt.future.get(connectionWaitTimeout, TimeUnit.MILLISECONDS);
+
+    } catch (ExecutionException e) {
+
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new JsonRpcException(label + " Exception connecting to WebSocket server " + uri,
+            cause);
+      }
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      throw new JsonRpcException(label + " Interrupted while waiting to connect to server " + uri,
+          e);
+
+    } catch (TimeoutException e) {
 
       this.closeClient("Closed by exception: " + e.getMessage());
 
-      throw new TimeoutRuntimeException(
-          label + " Timeout trying to connect to websocket server " + uri, e);
+      throw new TimeoutRuntimeException(label + " Timeout of " + connectionWaitTimeout
+          + " millis waiting to connect to websocket server " + uri + ". The connection is being "
+          + "established by thread " + attempt.thread.getName(), e);
     }
   }
 
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.TimerTask;
+
+/**
+ * {@link TimerService} based on a hashed wheel timer, that keeps track of any number of timeouts
+ * with a single thread. When a timeout expires, its task is executed in a separate executor, so
+ * tasks that block (like reconnections) don't delay the rest of timeouts.
+ */
+public class HashedWheelTimerService implements TimerService {
+
+  private static final Logger log = LoggerFactory.getLogger(HashedWheelTimerService.class);
+
+  private static final long DEFAULT_TICK_DURATION =
+      PropertiesManager.getProperty("jsonRpcClient.timer.tickDuration", 100L);
+
+  private static final int DEFAULT_TICKS_PER_WHEEL =
+      PropertiesManager.getProperty("jsonRpcClient.timer.ticksPerWheel", 512);
+
+  private static class WheelTimeout implements Timeout {
+
+    private final io.netty.util.Timeout timeout;
+
+    public WheelTimeout(io.netty.util.Timeout timeout) {
+      this.timeout = timeout;
+    }
+
+    @Override
+    public boolean cancel() {
+      return timeout.cancel();
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return timeout.isCancelled();
+    }
+  }
+
+  private final HashedWheelTimer timer;
+  private final Executor taskExecutor;
+
+  public HashedWheelTimerService() {
+    this(DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL,
+        Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("JsonRpcClient-timerTaskExec-t%d").setDaemon(true).build()));
+  }
+
+  public HashedWheelTimerService(long tickDurationMillis, int ticksPerWheel,
+      Executor taskExecutor) {
+    this.timer = new HashedWheelTimer(new ThreadFactoryBuilder()
+        .setNameFormat("JsonRpcClient-timer-t%d").setDaemon(true).build(), tickDurationMillis,
+        TimeUnit.MILLISECONDS, ticksPerWheel);
+    this.taskExecutor = taskExecutor;
+  }
+
+  @Override
+  public Timeout schedule(final Runnable task, long delay, TimeUnit unit) {
+    return new WheelTimeout(timer.newTimeout(new TimerTask() {
+      @Override
+      public void run(io.netty.util.Timeout timeout) throws Exception {
+        taskExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              task.run();
+            } catch (Exception e) {
+              log.warn("Exception executing timer task {}", task, e);
+            }
+          }
+        });
+      }
+    }, delay, unit));
+  }
+
+  public void stop() {
+    timer.stop();
+  }
+}
@@ -24,14 +24,12 @@ import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kurento.commons.PropertiesManager;
-import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSender;
@@ -90,9 +88,34 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
   protected boolean closedByClient;
   private volatile PingParams pingParams;
 
-  private ScheduledExecutorService hearbeatExec = createScheduler();
+  private static volatile TimerService timerService;
 
-  private Future<?> heartbeat;
+  private TimerService.Timeout heartbeat;
+
+  private final AtomicBoolean pingInProgress = new AtomicBoolean();
+
+  /**
+   * Returns the timer service shared by all the clients in the JVM. By default, a
+   * {@link HashedWheelTimerService} is used.
+   */
+  public static TimerService getTimerService() {
+    if (timerService == null) {
+      synchronized (JsonRpcClient.class) {
+        if (timerService == null) {
+          timerService = new HashedWheelTimerService();
+        }
+      }
+    }
+    return timerService;
+  }
+
+  /**
+   * Replaces the timer service used by all the clients in the JVM. Tasks already scheduled are
+   * kept in the previous timer service.
+   */
+  public static void setTimerService(TimerService timerService) {
+    JsonRpcClient.timerService = timerService;
+  }
 
   public void setServerRequestHandler(JsonRpcHandler<?> handler) {
     this.handlerManager.setJsonRpcHandler(handler);
@@ -254,33 +277,67 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
       this.heartbeating = true;
       this.heartbeatInterval = interval;
 
-      if (hearbeatExec.isShutdown()) {
-        hearbeatExec = createScheduler();
+      scheduleHeartbeat(0);
+    }
+  }
+
+  private synchronized void scheduleHeartbeat(long delay) {
+
+    heartbeat = getTimerService().schedule(new Runnable() {
+      @Override
+      public void run() {
+
+        synchronized (JsonRpcClient.this) {
+          if (!heartbeating) {
+            return;
+          }
+          scheduleHeartbeat(heartbeatInterval);
+        }
+
+        sendPing();
       }
+    }, delay, MILLISECONDS);
+  }
+
+  private void sendPing() {
 
-      heartbeat = hearbeatExec.scheduleAtFixedRate(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            JsonObject response = sendRequest(METHOD_PING, pingParams).getAsJsonObject();
+    if (!isConnectionEstablished()) {
+      log.trace("{} Heartbeat not sent because connection has not been established", label);
+      return;
+    }
+
+    // A ping without response will fail with the request timeout
+    if (!pingInProgress.compareAndSet(false, true)) {
+      log.debug("{} Previous heartbeat has not been answered yet", label);
+      return;
+    }
+
+    PingParams params = pingParams;
+
+    sendRequest(METHOD_PING, params != null ? JsonUtils.toJsonObject(params) : null,
+        new Continuation<JsonElement>() {
+
+          @Override
+          public void onSuccess(JsonElement result) {
 
+            pingInProgress.set(false);
             pingParams = null;
 
-            if (!PONG.equals(response.get(PONG_PAYLOAD).getAsString())) {
+            if (!PONG.equals(result.getAsJsonObject().get(PONG_PAYLOAD).getAsString())) {
               closeHeartbeatOnFailure();
             }
-          } catch (Exception e) {
-            log.warn("{} Error sending heartbeat to server. Exception: {}", label, e.getMessage());
-            closeHeartbeatOnFailure();
           }
-        }
-      }, 0, heartbeatInterval, MILLISECONDS);
-    }
-  }
 
-  private ScheduledExecutorService createScheduler() {
-    return Executors.newSingleThreadScheduledExecutor(
-        ThreadFactoryCreator.create("JsonRpcClient-hearbeatExec"));
+          @Override
+          public void onError(Throwable cause) {
+
+            pingInProgress.set(false);
+
+            log.warn("{} Error sending heartbeat to server. Exception: {}", label,
+                cause.getMessage());
+            closeHeartbeatOnFailure();
+          }
+        });
   }
 
   /**
@@ -289,9 +346,12 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
   private final void closeHeartbeatOnFailure() {
     log.warn("{} Stopping heartbeat and closing client: failure during heartbeat mechanism", label);
 
-    heartbeat.cancel(false);
-    heartbeat = null;
-    hearbeatExec.shutdownNow();
+    synchronized (this) {
+      if (heartbeat != null) {
+        heartbeat.cancel();
+        heartbeat = null;
+      }
+    }
 
     try {
       closeWithReconnection();
@@ -301,34 +361,41 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
   }
 
   /**
-   * Disables the heratbeat mechanism. The scheduler running the task will be shut down after the
-   * task has been cancelled. This method DOES NOT cancel the task if it's already running
+   * Disables the heratbeat mechanism. This method DOES NOT cancel the task if it's already running
    */
   public void disableHeartbeat() {
     disableHeartbeat(false);
   }
 
   /**
-   * Disables the heratbeat mechanism. The scheduler running the task will be shut down after the
-   * task has been cancelled.
+   * Disables the heratbeat mechanism. Heartbeats are sent asynchronously, so there is no running
+   * task to interrupt.
    *
    * @param mayInterruptIfRunning
-   *          Signals the task to interrupt even if it is already running
+   *          kept for compatibility
    */
-  public void disableHeartbeat(boolean mayInterruptIfRunning) {
+  public synchronized void disableHeartbeat(boolean mayInterruptIfRunning) {
     if (heartbeating) {
-      log.debug("Disabling heartbeat. Interrupt if running is {}", mayInterruptIfRunning);
+      log.debug("Disabling heartbeat");
       this.heartbeating = false;
       if (heartbeat != null) {
-        heartbeat.cancel(mayInterruptIfRunning);
+        heartbeat.cancel();
         heartbeat = null;
       }
-      hearbeatExec.shutdownNow();
+      pingInProgress.set(false);
     }
   }
 
   public abstract void connect() throws IOException;
 
+  /**
+   * Returns true if the connection with the server has been established. Heartbeats are not sent
+   * while there is no connection, so they don't establish it.
+   */
+  protected boolean isConnectionEstablished() {
+    return true;
+  }
+
   /**
    * Closes this client. This method disables the heartbeat mechanism
    *
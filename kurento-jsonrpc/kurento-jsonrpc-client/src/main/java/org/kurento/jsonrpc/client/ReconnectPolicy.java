@@ -0,0 +1,243 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.commons.PropertiesManager;
+
+/**
+ * Policy used by websocket clients to reconnect to the server. The delay between attempts grows
+ * exponentially up to a maximum, and a random value between zero and that delay is used (full
+ * jitter), so clients disconnected at the same time don't reconnect in lockstep.
+ *
+ * <p>
+ * Two limits are shared by all the clients in the JVM:
+ * <ul>
+ * <li>The number of concurrent reconnection attempts
+ * ({@code jsonRpcClientWebSocket.reconnect.maxConcurrentAttempts}, unlimited by default).</li>
+ * <li>A circuit breaker per server URI. After {@code failureThreshold} consecutive failed attempts
+ * to the same server, no client tries to reconnect to it during {@code openTime} millis. Then, only
+ * one client probes the server, and the rest wait until it succeeds.</li>
+ * </ul>
+ *
+ * <p>
+ * Circuit breakers are kept while there are clients of the server (see
+ * {@link #registerClient(URI)}) or the breaker is not closed, so they don't pile up for servers
+ * that are no longer used.
+ */
+public class ReconnectPolicy {
+
+  private static final Semaphore attemptsSemaphore = createAttemptsSemaphore();
+
+  private static final ConcurrentMap<String, CircuitBreaker> circuitBreakers =
+      new ConcurrentHashMap<>();
+
+  private static class CircuitBreaker {
+
+    // Guarded by circuitBreakers
+    private int clients;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile long openUntil;
+
+    private boolean isClosed(int failureThreshold) {
+      return consecutiveFailures.get() < failureThreshold;
+    }
+
+    private long getRemainingOpenTime(int failureThreshold) {
+      if (isClosed(failureThreshold)) {
+        return 0;
+      }
+      return Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    private boolean tryAttempt(int failureThreshold) {
+      if (isClosed(failureThreshold)) {
+        return true;
+      }
+      if (System.currentTimeMillis() < openUntil) {
+        return false;
+      }
+      // Half open: only one client probes the server
+      return probing.compareAndSet(false, true);
+    }
+
+    private void onSuccess() {
+      consecutiveFailures.set(0);
+      probing.set(false);
+    }
+
+    private void onFailure(int failureThreshold, long openTime) {
+      if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+        openUntil = System.currentTimeMillis() + openTime;
+      }
+      probing.set(false);
+    }
+  }
+
+  private final long initialDelay;
+  private final long maxDelay;
+  private final int failureThreshold;
+  private final long openTime;
+
+  public ReconnectPolicy(long initialDelay, long maxDelay, int failureThreshold, long openTime) {
+    if (initialDelay <= 0 || maxDelay < initialDelay) {
+      throw new IllegalArgumentException(
+          "Initial delay must be positive and not greater than max delay");
+    }
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.failureThreshold = failureThreshold;
+    this.openTime = openTime;
+  }
+
+  public static ReconnectPolicy createDefault() {
+    return new ReconnectPolicy(
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.initialDelay", 1000L),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.maxDelay", 5000L),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.failureThreshold", 5),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.openTime", 5000L));
+  }
+
+  private static Semaphore createAttemptsSemaphore() {
+    int maxConcurrentAttempts =
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.maxConcurrentAttempts", 0);
+    return maxConcurrentAttempts > 0 ? new Semaphore(maxConcurrentAttempts) : null;
+  }
+
+  public long getInitialDelay() {
+    return initialDelay;
+  }
+
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Returns the delay before the given reconnection attempt (starting at 0). It is never shorter
+   * than the time the circuit breaker of the server will remain open.
+   */
+  public long getDelay(URI uri, int attempt) {
+
+    long delayCap = maxDelay;
+    if (attempt < Long.numberOfLeadingZeros(initialDelay) - 1) {
+      delayCap = Math.min(maxDelay, initialDelay << attempt);
+    }
+
+    long delay = ThreadLocalRandom.current().nextLong(delayCap + 1);
+
+    CircuitBreaker circuitBreaker = circuitBreakers.get(uri.toString());
+    if (circuitBreaker == null) {
+      return delay;
+    }
+    return Math.max(delay, circuitBreaker.getRemainingOpenTime(failureThreshold));
+  }
+
+  /**
+   * Tries to start a reconnection attempt to the server. It returns false if the circuit breaker of
+   * the server is open or too many attempts are in progress in the JVM. In that case, the attempt
+   * must be delayed. If it returns true, {@link #finishAttempt(URI, boolean)} has to be invoked
+   * when the attempt finishes.
+   */
+  public boolean tryStartAttempt(URI uri) {
+
+    // Breakers are only created when an attempt fails, so a missing one is closed
+    CircuitBreaker circuitBreaker = circuitBreakers.get(uri.toString());
+    if (circuitBreaker != null && !circuitBreaker.tryAttempt(failureThreshold)) {
+      return false;
+    }
+
+    if (attemptsSemaphore != null && !attemptsSemaphore.tryAcquire()) {
+      // Let other client probe the server
+      if (circuitBreaker != null) {
+        circuitBreaker.probing.set(false);
+      }
+      return false;
+    }
+
+    return true;
+  }
+
+  public void finishAttempt(URI uri, boolean success) {
+
+    if (attemptsSemaphore != null) {
+      attemptsSemaphore.release();
+    }
+
+    if (success) {
+      CircuitBreaker circuitBreaker = circuitBreakers.get(uri.toString());
+      if (circuitBreaker != null) {
+        circuitBreaker.onSuccess();
+        removeIfUnused(uri.toString(), circuitBreaker);
+      }
+    } else {
+      getCircuitBreaker(uri).onFailure(failureThreshold, openTime);
+    }
+  }
+
+  /**
+   * Registers a client of the server, so its circuit breaker is kept until
+   * {@link #unregisterClient(URI)} is invoked for the last client.
+   */
+  public static void registerClient(URI uri) {
+    synchronized (circuitBreakers) {
+      getCircuitBreaker(uri).clients++;
+    }
+  }
+
+  public static void unregisterClient(URI uri) {
+    String key = uri.toString();
+    synchronized (circuitBreakers) {
+      CircuitBreaker circuitBreaker = circuitBreakers.get(key);
+      if (circuitBreaker != null && --circuitBreaker.clients <= 0) {
+        circuitBreakers.remove(key);
+      }
+    }
+  }
+
+  private static void removeIfUnused(String key, CircuitBreaker circuitBreaker) {
+    synchronized (circuitBreakers) {
+      if (circuitBreaker.clients <= 0 && circuitBreaker.consecutiveFailures.get() == 0) {
+        circuitBreakers.remove(key, circuitBreaker);
+      }
+    }
+  }
+
+  private static CircuitBreaker getCircuitBreaker(URI uri) {
+    String key = uri.toString();
+    CircuitBreaker circuitBreaker = circuitBreakers.get(key);
+    if (circuitBreaker == null) {
+      synchronized (circuitBreakers) {
+        circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+          circuitBreaker = new CircuitBreaker();
+          circuitBreakers.put(key, circuitBreaker);
+        }
+      }
+    }
+    return circuitBreaker;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service used by clients to schedule heartbeats, reconnections and request timeouts. The same
+ * service is shared by all the clients in the JVM (see
+ * {@link JsonRpcClient#setTimerService(TimerService)}).
+ */
+public interface TimerService {
+
+  public interface Timeout {
+
+    /**
+     * Cancels the task if it has not been executed yet.
+     *
+     * @return true if the task has been cancelled
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+  }
+
+  Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+}
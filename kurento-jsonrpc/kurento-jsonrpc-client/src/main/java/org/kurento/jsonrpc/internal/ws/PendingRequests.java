@@ -64,6 +64,17 @@ public class PendingRequests {
     return responseFuture;
   }
 
+  /**
+   * Completes with an error a request that is waiting for its response (e.g. because it timed
+   * out). If the response is received later, it will be discarded.
+   */
+  public void cancelResponse(Integer id, Throwable cause) {
+    SettableFuture<Response<JsonElement>> responseFuture = pendingRequests.remove(id);
+    if (responseFuture != null) {
+      responseFuture.setException(cause);
+    }
+  }
+
   public void closeAllPendingRequests() {
     log.debug("Sending error to all pending requests");
     for (SettableFuture<Response<JsonElement>> responseFuture : pendingRequests.values()) {
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.client.HashedWheelTimerService;
+import org.kurento.jsonrpc.client.TimerService;
+
+public class HashedWheelTimerServiceTest {
+
+  @Test
+  public void blockingTasksDontDelayOtherTimeouts() throws InterruptedException {
+
+    HashedWheelTimerService timer =
+        new HashedWheelTimerService(10, 64, Executors.newCachedThreadPool());
+
+    final CountDownLatch blockingTaskStarted = new CountDownLatch(1);
+    final CountDownLatch taskExecuted = new CountDownLatch(1);
+
+    try {
+
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          blockingTaskStarted.countDown();
+          try {
+            Thread.sleep(5000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, 10, TimeUnit.MILLISECONDS);
+
+      assertTrue(blockingTaskStarted.await(1, TimeUnit.SECONDS));
+
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          taskExecuted.countDown();
+        }
+      }, 10, TimeUnit.MILLISECONDS);
+
+      assertTrue(taskExecuted.await(1, TimeUnit.SECONDS));
+
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void cancelledTasksAreNotExecuted() throws InterruptedException {
+
+    HashedWheelTimerService timer =
+        new HashedWheelTimerService(10, 64, Executors.newCachedThreadPool());
+
+    final AtomicInteger executions = new AtomicInteger();
+
+    try {
+
+      TimerService.Timeout timeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          executions.incrementAndGet();
+        }
+      }, 100, TimeUnit.MILLISECONDS);
+
+      assertTrue(timeout.cancel());
+
+      Thread.sleep(300);
+
+      assertEquals(0, executions.get());
+
+    } finally {
+      timer.stop();
+    }
+  }
+}
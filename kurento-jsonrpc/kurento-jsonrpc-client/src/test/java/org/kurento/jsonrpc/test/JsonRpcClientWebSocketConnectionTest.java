@@ -0,0 +1,259 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.commons.TimeoutRuntimeException;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.client.AbstractJsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.ReconnectPolicy;
+
+public class JsonRpcClientWebSocketConnectionTest {
+
+  /**
+   * Client whose native connection is simulated.
+   */
+  private static class FakeClientWebSocket extends AbstractJsonRpcClientWebSocket {
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final CountDownLatch connectStarted = new CountDownLatch(1);
+    private final CountDownLatch connectReleased = new CountDownLatch(1);
+
+    private volatile boolean nativeConnected;
+    private volatile boolean blockConnect;
+    private volatile Exception connectException;
+
+    public FakeClientWebSocket(String url) {
+      super(url, null);
+    }
+
+    public void setConnectionWaitTimeout(int connectionWaitTimeout) {
+      this.connectionWaitTimeout = connectionWaitTimeout;
+    }
+
+    @Override
+    protected void sendTextMessage(String jsonMessage) throws IOException {
+    }
+
+    @Override
+    protected void closeNativeClient() {
+      nativeConnected = false;
+    }
+
+    @Override
+    protected boolean isNativeClientConnected() {
+      return nativeConnected;
+    }
+
+    @Override
+    protected void connectNativeClient() throws Exception {
+      connections.incrementAndGet();
+      connectStarted.countDown();
+      if (blockConnect) {
+        connectReleased.await();
+      }
+      if (connectException != null) {
+        throw connectException;
+      }
+      nativeConnected = true;
+    }
+  }
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void concurrentCallersShareTheConnection() throws Exception {
+
+    FakeClientWebSocket client =
+        new FakeClientWebSocket("ws://concurrent-connect-test:8888/kurento");
+    client.blockConnect = true;
+
+    try {
+
+      List<Future<Void>> callers = connectConcurrently(client, 10);
+
+      assertTrue(client.connectStarted.await(10, TimeUnit.SECONDS));
+      // Let the rest of callers wait for the connection in progress
+      Thread.sleep(200);
+      client.connectReleased.countDown();
+
+      for (Future<Void> caller : callers) {
+        caller.get(10, TimeUnit.SECONDS);
+      }
+      assertEquals(1, client.connections.get());
+
+      // Connected clients don't connect again
+      client.connect();
+      assertEquals(1, client.connections.get());
+
+    } finally {
+      client.connectReleased.countDown();
+      client.close();
+    }
+  }
+
+  @Test
+  public void waitForConnectionInProgressTimesOut() throws Exception {
+
+    FakeClientWebSocket client = new FakeClientWebSocket("ws://wait-connect-test:8888/kurento");
+    client.setConnectionWaitTimeout(500);
+    client.blockConnect = true;
+
+    try {
+
+      Future<Void> connecting = connectConcurrently(client, 1).get(0);
+      assertTrue(client.connectStarted.await(10, TimeUnit.SECONDS));
+
+      long start = System.currentTimeMillis();
+      try {
+        client.connect();
+        fail("Waiting for the connection should time out");
+      } catch (TimeoutRuntimeException e) {
+        assertTrue(System.currentTimeMillis() - start >= 500);
+      }
+      assertEquals(1, client.connections.get());
+
+      client.connectReleased.countDown();
+      connecting.get(10, TimeUnit.SECONDS);
+
+    } finally {
+      client.connectReleased.countDown();
+      client.close();
+    }
+  }
+
+  @Test
+  public void failureInConnectionIsSharedAndNextCallerRetries() throws Exception {
+
+    FakeClientWebSocket client = new FakeClientWebSocket("ws://failed-connect-test:8888/kurento");
+    client.blockConnect = true;
+    client.connectException = new ConnectException("Connection refused");
+
+    try {
+
+      List<Future<Void>> callers = connectConcurrently(client, 5);
+
+      assertTrue(client.connectStarted.await(10, TimeUnit.SECONDS));
+      Thread.sleep(200);
+      client.connectReleased.countDown();
+
+      // All the callers waiting for the connection receive the same failure
+      Throwable failure = null;
+      for (Future<Void> caller : callers) {
+        try {
+          caller.get(10, TimeUnit.SECONDS);
+          fail("Connection to server should fail");
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          assertSame(failure, e.getCause());
+        }
+      }
+      assertSame(client.connectException, failure.getCause());
+      assertEquals(1, client.connections.get());
+
+      // The failed attempt is discarded and a new one connects
+      client.connectException = null;
+      client.connect();
+      assertEquals(2, client.connections.get());
+
+    } finally {
+      client.connectReleased.countDown();
+      client.close();
+    }
+  }
+
+  @Test
+  public void connectionFailsFastWhileCircuitBreakerIsOpen() throws IOException {
+
+    FakeClientWebSocket client = new FakeClientWebSocket("ws://breaker-connect-test:8888/kurento");
+    client.setReconnectPolicy(new ReconnectPolicy(100, 1000, 2, 60000));
+    client.connectException = new ConnectException("Connection refused");
+
+    try {
+
+      for (int i = 0; i < 2; i++) {
+        try {
+          client.connect();
+          fail("Connection to server should fail");
+        } catch (JsonRpcException e) {
+          assertEquals(client.connectException, e.getCause());
+        }
+      }
+      assertEquals(2, client.connections.get());
+
+      // Requests from application threads don't try to connect while the breaker is open
+      try {
+        client.connect();
+        fail("Connection to server should be rejected");
+      } catch (JsonRpcException e) {
+        assertEquals(2, client.connections.get());
+      }
+
+    } finally {
+      client.close();
+    }
+  }
+
+  private List<Future<Void>> connectConcurrently(final FakeClientWebSocket client, int callers) {
+
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < callers; i++) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          client.connect();
+          return null;
+        }
+      }));
+    }
+    return futures;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.client.ReconnectPolicy;
+
+public class ReconnectPolicyTest {
+
+  @Test
+  public void delayGrowsUpToMaxDelay() {
+
+    ReconnectPolicy policy = new ReconnectPolicy(100, 1000, 5, 1000);
+    URI uri = URI.create("ws://delay-test:8888/kurento");
+
+    for (int attempt = 0; attempt < 100; attempt++) {
+      long delay = policy.getDelay(uri, attempt);
+      assertTrue(delay >= 0);
+      assertTrue(delay <= Math.min(1000, 100L << Math.min(attempt, 10)));
+    }
+  }
+
+  @Test
+  public void circuitBreakerIsSharedByClientsToTheSameServer() throws InterruptedException {
+
+    ReconnectPolicy policy1 = new ReconnectPolicy(100, 1000, 2, 200);
+    ReconnectPolicy policy2 = new ReconnectPolicy(100, 1000, 2, 200);
+    URI uri = URI.create("ws://breaker-test:8888/kurento");
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(policy1.tryStartAttempt(uri));
+      policy1.finishAttempt(uri, false);
+    }
+
+    // Circuit breaker is open
+    assertFalse(policy2.tryStartAttempt(uri));
+    assertTrue(policy2.getDelay(uri, 0) > 100);
+
+    Thread.sleep(300);
+
+    // Only one client probes the server
+    assertTrue(policy2.tryStartAttempt(uri));
+    assertFalse(policy1.tryStartAttempt(uri));
+
+    policy2.finishAttempt(uri, true);
+
+    assertTrue(policy1.tryStartAttempt(uri));
+    policy1.finishAttempt(uri, true);
+  }
+
+  @Test
+  public void circuitBreakerIsForgottenWhenLastClientIsUnregistered() {
+
+    ReconnectPolicy policy = new ReconnectPolicy(100, 1000, 2, 60000);
+    URI uri = URI.create("ws://unregister-test:8888/kurento");
+
+    ReconnectPolicy.registerClient(uri);
+    ReconnectPolicy.registerClient(uri);
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(policy.tryStartAttempt(uri));
+      policy.finishAttempt(uri, false);
+    }
+    assertFalse(policy.tryStartAttempt(uri));
+
+    // Another client of the server remains
+    ReconnectPolicy.unregisterClient(uri);
+    assertFalse(policy.tryStartAttempt(uri));
+
+    ReconnectPolicy.unregisterClient(uri);
+    assertTrue(policy.tryStartAttempt(uri));
+    assertTrue(policy.getDelay(uri, 0) <= 100);
+    policy.finishAttempt(uri, true);
+  }
+}
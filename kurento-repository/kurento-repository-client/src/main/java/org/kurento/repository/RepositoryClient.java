@@ -19,6 +19,7 @@ package org.kurento.repository;
 import java.util.Map;
 import java.util.Set;
 
+import org.kurento.repository.service.pojo.RepositoryItemIdsPage;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
 
@@ -29,6 +30,7 @@ import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.PUT;
 import retrofit.http.Path;
+import retrofit.http.Query;
 
 /**
  * Client API for the Kurento repository server application. It uses REST as means of communicating
@@ -92,6 +94,39 @@ public interface RepositoryClient {
   @POST("/repo/item/find/regex")
   Set<String> regexFindItems(@Body Map<String, String> searchValues);
 
+  /**
+   * Searches for a page of repository items by each pair of attributes and their expected values.
+   *
+   * @param searchValues
+   *          pairs of attributes and their values
+   * @param limit
+   *          maximum number of identifiers in the page
+   * @param continuation
+   *          continuation token of the previous page, or null to obtain the first page
+   * @return a {@link RepositoryItemIdsPage} with the identifiers of the repository items found,
+   *         sorted, and the continuation token of the next page (null if there are no more)
+   */
+  @POST("/repo/item/find/page")
+  RepositoryItemIdsPage simpleFindItemsPage(@Body Map<String, String> searchValues,
+      @Query("limit") int limit, @Query("continuation") String continuation);
+
+  /**
+   * Searches for a page of repository items by each pair of attributes whose values can be regex
+   * Strings.
+   *
+   * @param searchValues
+   *          pairs of attributes and their values
+   * @param limit
+   *          maximum number of identifiers in the page
+   * @param continuation
+   *          continuation token of the previous page, or null to obtain the first page
+   * @return a {@link RepositoryItemIdsPage} with the identifiers of the repository items found,
+   *         sorted, and the continuation token of the next page (null if there are no more)
+   */
+  @POST("/repo/item/find/regex/page")
+  RepositoryItemIdsPage regexFindItemsPage(@Body Map<String, String> searchValues,
+      @Query("limit") int limit, @Query("continuation") String continuation);
+
   /**
    * Returns the metadata from a repository item.
    *
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <em>POJO</em> representing a page of the identifiers of the repository items found in a search,
+ * sorted in ascending order. The continuation token has to be sent to obtain the next page, and it
+ * is null in the last page.
+ */
+public class RepositoryItemIdsPage {
+
+  private List<String> ids = new ArrayList<>();
+  private String continuation;
+
+  public List<String> getIds() {
+    return ids;
+  }
+
+  public void setIds(List<String> ids) {
+    this.ids = ids;
+  }
+
+  public String getContinuation() {
+    return continuation;
+  }
+
+  public void setContinuation(String continuation) {
+    this.continuation = continuation;
+  }
+
+  @Override
+  public String toString() {
+    return "[ids=" + ids + ", continuation=" + continuation + "]";
+  }
+}
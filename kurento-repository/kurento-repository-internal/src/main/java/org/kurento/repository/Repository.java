@@ -87,6 +87,71 @@ public interface Repository {
    */
   List<RepositoryItem> findRepositoryItemsByAttRegex(String attribute, String regex);
 
+  /**
+   * Returns a page of the ids of the repository items with the specified value in the specified
+   * attribute of metadata's repository item. Ids are sorted in ascending order, and only the ids
+   * greater than {@code afterId} are returned, so the next page is obtained passing the last id of
+   * the previous one. Repository items are not loaded.
+   *
+   * @param attribute
+   *          attribute name of the metadata
+   * @param value
+   *          expected value in the attribute
+   * @param afterId
+   *          last id of the previous page, or null to obtain the first page
+   * @param limit
+   *          maximum number of ids to return
+   * @return ids of the repository items with the specified value in the attribute
+   */
+  List<String> findRepositoryItemIdsByAttValue(String attribute, String value, String afterId,
+      int limit);
+
+  /**
+   * Returns a page of the ids of the repository items with value that matches the specified
+   * regular expression in the specified attribute of metadata's repository item. Ids are sorted and
+   * paginated as in {@link #findRepositoryItemIdsByAttValue(String, String, String, int)}.
+   *
+   * @param attribute
+   *          attribute name of the metadata
+   * @param regex
+   *          regular expression to match the attribute's value
+   * @param afterId
+   *          last id of the previous page, or null to obtain the first page
+   * @param limit
+   *          maximum number of ids to return
+   * @return ids of the repository items with an attribute's value that matches the regular
+   *         expression
+   */
+  List<String> findRepositoryItemIdsByAttRegex(String attribute, String regex, String afterId,
+      int limit);
+
+  /**
+   * Returns the ids of all the repository items with the specified value in the specified attribute
+   * of metadata's repository item, in ascending order. The search is done once, and the ids are
+   * read as the cursor advances. Repository items are not loaded.
+   *
+   * @param attribute
+   *          attribute name of the metadata
+   * @param value
+   *          expected value in the attribute
+   * @return a cursor over the ids of the repository items, which must be closed
+   */
+  RepositoryItemIdCursor findAllRepositoryItemIdsByAttValue(String attribute, String value);
+
+  /**
+   * Returns the ids of all the repository items with value that matches the specified regular
+   * expression in the specified attribute of metadata's repository item, in ascending order. The
+   * search is done once, and the ids are read as the cursor advances. Repository items are not
+   * loaded.
+   *
+   * @param attribute
+   *          attribute name of the metadata
+   * @param regex
+   *          regular expression to match the attribute's value
+   * @return a cursor over the ids of the repository items, which must be closed
+   */
+  RepositoryItemIdCursor findAllRepositoryItemIdsByAttRegex(String attribute, String regex);
+
   /**
    * Removes the specified repository item.
    *
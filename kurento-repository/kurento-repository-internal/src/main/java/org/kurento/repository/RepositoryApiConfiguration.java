@@ -17,11 +17,16 @@
 
 package org.kurento.repository;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class RepositoryApiConfiguration {
 
   private static final String DEFAULT_MONGO_URL = "mongodb://localhost";
   private static final String DEFAULT_MONGO_GRIDFS = "fs";
   private static final String DEFAULT_MONGO_DBNAME = "kurento-repository";
+  private static final int DEFAULT_MONGO_CHUNK_SIZE = 255 * 1024;
+  private static final int DEFAULT_MONGO_READ_AHEAD_CHUNKS = 4;
   public static final String DEFAULT_FILESYSTEM_LOC = "repository";
 
   public enum RepoType {
@@ -58,9 +63,15 @@ public class RepositoryApiConfiguration {
   private String webappPublicUrl = "";
   private RepoType repositoryType = RepoType.FILESYSTEM;
   private String fileSystemFolder = DEFAULT_FILESYSTEM_LOC;
+  private boolean fileSystemSharded = true;
   private String mongoDatabaseName = DEFAULT_MONGO_DBNAME;
   private String mongoGridFSCollectionName = DEFAULT_MONGO_GRIDFS;
   private String mongoUrlConnection = DEFAULT_MONGO_URL;
+  private int mongoChunkSize = DEFAULT_MONGO_CHUNK_SIZE;
+  private int mongoReadAheadChunks = DEFAULT_MONGO_READ_AHEAD_CHUNKS;
+  private boolean asyncIo = false;
+  private long segmentCacheSize = 0;
+  private List<String> indexedAttributes = new ArrayList<>();
 
   /**
    * Returns the repository public URL. The default value is "" and can be changed using
@@ -127,6 +138,29 @@ public class RepositoryApiConfiguration {
     this.fileSystemFolder = fileSystemFolder;
   }
 
+  /**
+   * Returns whether new filesystem repositories distribute their items among hashed subfolders.
+   * The default value is true and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setFileSystemSharded(boolean)}.
+   *
+   * @return true if new filesystem repositories are sharded.
+   */
+  public boolean isFileSystemSharded() {
+    return fileSystemSharded;
+  }
+
+  /**
+   * Sets whether new filesystem repositories distribute their items among hashed subfolders. It
+   * is ignored for existing repositories, which keep their layout until they are migrated with
+   * {@code FileSystemRepositoryMigrator}.
+   *
+   * @param fileSystemSharded
+   *          true to shard new filesystem repositories
+   */
+  public void setFileSystemSharded(boolean fileSystemSharded) {
+    this.fileSystemSharded = fileSystemSharded;
+  }
+
   /**
    * Returns the database name used for the repository. The default value is "kurento-repository"
    * and can be changed with a properties file or with the method
@@ -196,4 +230,120 @@ public class RepositoryApiConfiguration {
   public void setMongoUrlConnection(String mongoUrlConnection) {
     this.mongoUrlConnection = mongoUrlConnection;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the size in bytes of the gridfs chunks of new items. The default value is 261120 (255
+   * KiB, the gridfs default) and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMongoChunkSize(int)}. This property is only used when the
+   * repository type is "mongodb".
+   *
+   * @return the size of the gridfs chunks.
+   */
+  public int getMongoChunkSize() {
+    return mongoChunkSize;
+  }
+
+  /**
+   * Sets the size in bytes of the gridfs chunks of new items. Bigger chunks need fewer queries to
+   * read an item. Existing items keep the size they were stored with. This property is only used
+   * when the repository type is "mongodb".
+   *
+   * @param mongoChunkSize
+   *          size of the chunks in bytes
+   */
+  public void setMongoChunkSize(int mongoChunkSize) {
+    this.mongoChunkSize = mongoChunkSize;
+  }
+
+  /**
+   * Returns the number of gridfs chunks fetched together when an item is read. The default value
+   * is 4 and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMongoReadAheadChunks(int)}. This property is only used
+   * when the repository type is "mongodb".
+   *
+   * @return the number of chunks read ahead.
+   */
+  public int getMongoReadAheadChunks() {
+    return mongoReadAheadChunks;
+  }
+
+  /**
+   * Sets the number of gridfs chunks fetched together when an item is read. When an item is read
+   * sequentially, the next group of chunks is fetched in background while the current one is
+   * being sent. This property is only used when the repository type is "mongodb".
+   *
+   * @param mongoReadAheadChunks
+   *          number of chunks fetched in each query
+   */
+  public void setMongoReadAheadChunks(int mongoReadAheadChunks) {
+    this.mongoReadAheadChunks = mongoReadAheadChunks;
+  }
+
+  /**
+   * Returns whether the repository servlet uploads and downloads the contents of the items with
+   * non-blocking I/O. The default value is false and can be changed with a properties file or with
+   * the method {@link RepositoryApiConfiguration#setAsyncIo(boolean)}.
+   *
+   * @return true if non-blocking I/O is used.
+   */
+  public boolean isAsyncIo() {
+    return asyncIo;
+  }
+
+  /**
+   * Sets whether the repository servlet uses non-blocking I/O (Servlet 3.1). In that case, a
+   * container thread is not held by each upload or download while waiting for the client.
+   *
+   * @param asyncIo
+   *          true to use non-blocking I/O
+   */
+  public void setAsyncIo(boolean asyncIo) {
+    this.asyncIo = asyncIo;
+  }
+
+  /**
+   * Returns the maximum size in bytes of the cache of item segments served by the repository
+   * servlet. The default value is 0 (no cache) and can be changed with a properties file or with
+   * the method {@link RepositoryApiConfiguration#setSegmentCacheSize(long)}.
+   *
+   * @return the maximum size of the segment cache.
+   */
+  public long getSegmentCacheSize() {
+    return segmentCacheSize;
+  }
+
+  /**
+   * Sets the maximum size in bytes of the cache of item segments. The most frequently played items
+   * are served from memory instead of being read again from the storage for each session. Items
+   * of filesystem repositories are not cached, as the operating system already caches them.
+   *
+   * @param segmentCacheSize
+   *          maximum size in bytes, or 0 to disable the cache
+   */
+  public void setSegmentCacheSize(long segmentCacheSize) {
+    this.segmentCacheSize = segmentCacheSize;
+  }
+
+  /**
+   * Returns the metadata attributes indexed by the repository. The default value is an empty list
+   * and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setIndexedAttributes(List)}.
+   *
+   * @return the names of the indexed attributes.
+   */
+  public List<String> getIndexedAttributes() {
+    return indexedAttributes;
+  }
+
+  /**
+   * Sets the metadata attributes indexed by the repository. Searches of items by the value of
+   * these attributes, or by regular expressions starting with a literal prefix, don't need to scan
+   * all the items.
+   *
+   * @param indexedAttributes
+   *          the names of the attributes
+   */
+  public void setIndexedAttributes(List<String> indexedAttributes) {
+    this.indexedAttributes = indexedAttributes;
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Ids of the repository items found by a search, in ascending order. They are read from the
+ * repository in a single pass as the cursor advances, so it must be closed when it is not needed
+ * anymore, even if it has not been consumed entirely.
+ */
+public interface RepositoryItemIdCursor extends Iterator<String>, Closeable {
+
+  @Override
+  void close();
+
+}
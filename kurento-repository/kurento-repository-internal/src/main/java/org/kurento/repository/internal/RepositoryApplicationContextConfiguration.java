@@ -18,6 +18,9 @@
 package org.kurento.repository.internal;
 
 import static org.kurento.commons.PropertiesManager.getProperty;
+import static org.kurento.commons.PropertiesManager.getPropertyJson;
+
+import java.util.List;
 
 import javax.servlet.MultipartConfigElement;
 
@@ -35,6 +38,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+import com.google.gson.reflect.TypeToken;
+
 @Configuration
 public class RepositoryApplicationContextConfiguration {
 
@@ -45,10 +50,18 @@ public class RepositoryApplicationContextConfiguration {
   public static final String KEY_REPO_TYPE = "repository.type";
 
   public static final String KEY_FS_FOLDER = "repository.filesystem.folder";
+  public static final String KEY_FS_SHARDED = "repository.filesystem.sharded";
 
   public static final String KEY_MG_DB = "repository.mongodb.dbName";
   public static final String KEY_MG_GRID = "repository.mongodb.gridName";
   public static final String KEY_MG_URL = "repository.mongodb.urlConn";
+  public static final String KEY_MG_CHUNK_SIZE = "repository.mongodb.chunkSize";
+  public static final String KEY_MG_READ_AHEAD_CHUNKS = "repository.mongodb.readAheadChunks";
+
+  public static final String KEY_HTTP_ASYNC_IO = "repository.http.asyncIo";
+  public static final String KEY_HTTP_SEGMENT_CACHE_SIZE = "repository.http.segmentCacheSize";
+
+  public static final String KEY_INDEXED_ATTRIBUTES = "repository.indexedAttributes";
 
   static {
     ConfigFileManager.loadConfigFile(KEY_CONFIG_FILENAME);
@@ -101,6 +114,9 @@ public class RepositoryApplicationContextConfiguration {
       String filesFolder = getProperty(KEY_FS_FOLDER, config.getFileSystemFolder());
       config.setFileSystemFolder(filesFolder);
       sb.append("\n\t").append("folder : ").append(filesFolder);
+      boolean sharded = getProperty(KEY_FS_SHARDED, config.isFileSystemSharded());
+      config.setFileSystemSharded(sharded);
+      sb.append("\n\t").append("sharded : ").append(sharded);
 
     } else if (type.isMongoDB()) {
 
@@ -113,8 +129,28 @@ public class RepositoryApplicationContextConfiguration {
       String url = getProperty(KEY_MG_URL, config.getMongoUrlConnection());
       config.setMongoUrlConnection(url);
       sb.append("\n\t").append("urlConn : ").append(url);
+      int chunkSize = getProperty(KEY_MG_CHUNK_SIZE, config.getMongoChunkSize());
+      config.setMongoChunkSize(chunkSize);
+      sb.append("\n\t").append("chunkSize : ").append(chunkSize);
+      int readAheadChunks = getProperty(KEY_MG_READ_AHEAD_CHUNKS, config.getMongoReadAheadChunks());
+      config.setMongoReadAheadChunks(readAheadChunks);
+      sb.append("\n\t").append("readAheadChunks : ").append(readAheadChunks);
     }
 
+    boolean asyncIo = getProperty(KEY_HTTP_ASYNC_IO, config.isAsyncIo());
+    config.setAsyncIo(asyncIo);
+    sb.append("\n\t").append("asyncIo : ").append(asyncIo);
+
+    long segmentCacheSize = getProperty(KEY_HTTP_SEGMENT_CACHE_SIZE, config.getSegmentCacheSize());
+    config.setSegmentCacheSize(segmentCacheSize);
+    sb.append("\n\t").append("segmentCacheSize : ").append(segmentCacheSize);
+
+    List<String> indexedAttributes = getPropertyJson(KEY_INDEXED_ATTRIBUTES, "[]",
+        new TypeToken<List<String>>() {
+        }.getType());
+    config.setIndexedAttributes(indexedAttributes);
+    sb.append("\n\t").append("indexedAttributes : ").append(indexedAttributes);
+
     log.debug("Repository config: {}", sb.toString());
     return config;
   }
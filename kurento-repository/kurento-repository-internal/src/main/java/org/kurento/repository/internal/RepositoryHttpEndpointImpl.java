@@ -20,8 +20,7 @@ package org.kurento.repository.internal;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Date;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.output.ProxyOutputStream;
 import org.kurento.commons.exception.KurentoException;
@@ -47,8 +46,10 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
 
   private long disconnectionTimeoutInMillis = 5000;
 
-  @SuppressWarnings("rawtypes")
-  private volatile ScheduledFuture lastStartedTimerFuture;
+  /**
+   * Time when the endpoint is stopped if no request arrives, or 0 if no timeout is pending.
+   */
+  private final AtomicLong expirationTime = new AtomicLong();
 
   private boolean startedEventFired;
 
@@ -126,7 +127,7 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
 
   @Override
   public InputStream createRepoItemInputStream() {
-    return repositoryItem.createInputStreamToRead();
+    return httpManager.createItemInputStream(repositoryItem);
   }
 
   @Override
@@ -162,22 +163,31 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
     return writtenBytes;
   }
 
-  // TODO Review for potentially race conditions if the timer is cancelled at
-  // the same time it is executing
   public void stopInTimeout() {
-
-    lastStartedTimerFuture = httpManager.getScheduler().schedule(new Runnable() {
-      @Override
-      public void run() {
-        stop();
-      }
-    }, new Date(System.currentTimeMillis() + disconnectionTimeoutInMillis));
+    expirationTime.set(System.currentTimeMillis() + disconnectionTimeoutInMillis);
+    httpManager.scheduleExpiration(this);
   }
 
   public void stopCurrentTimer() {
-    if (lastStartedTimerFuture != null) {
-      lastStartedTimerFuture.cancel(false);
+    expirationTime.set(0);
+  }
+
+  public long getExpirationTime() {
+    return expirationTime.get();
+  }
+
+  /**
+   * Stops the endpoint if its expiration time has not changed since it was read.
+   *
+   * @return true if the endpoint has been stopped
+   */
+  public boolean expire(long expectedExpirationTime) {
+    if (expectedExpirationTime != 0
+        && expirationTime.compareAndSet(expectedExpirationTime, 0)) {
+      stop();
+      return true;
     }
+    return false;
   }
 
   public String getSessionId() {
@@ -193,8 +203,6 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
     listeners.fireEvent(new HttpSessionErrorEvent(this, message));
   }
 
-  // TODO Review for potentially race conditions if the timer is cancelled at
-  // the same time it is executing
   // TODO Investigate how to "lock" the item when is been served to a client.
   // If we don't do, we can obtain a closed stream exception
   @Override
@@ -206,10 +214,7 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
   }
 
   private void stopTimerAndCloseOS() {
-    if (lastStartedTimerFuture != null) {
-      lastStartedTimerFuture.cancel(false);
-      lastStartedTimerFuture = null;
-    }
+    expirationTime.set(0);
 
     if (os != null) {
       try {
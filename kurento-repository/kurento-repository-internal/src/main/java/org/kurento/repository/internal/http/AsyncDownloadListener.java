@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the content of an item with non-blocking writes, so no container thread waits for the
+ * client while the content is being sent. It sends {@code length} bytes from {@code start} (or
+ * until the end of the item if {@code length} is -1). File items are read with positional reads
+ * from a channel, and other items from their input stream.
+ */
+class AsyncDownloadListener implements WriteListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncDownloadListener.class);
+
+  private final AsyncContext asyncContext;
+  private final RepositoryHttpEndpointImpl elem;
+  private final ServletOutputStream ostream;
+  private final BufferPool bufferPool;
+
+  private byte[] buffer;
+  private FileChannel channel;
+  private InputStream istream;
+  private long position;
+  private long remBytes;
+
+  AsyncDownloadListener(AsyncContext asyncContext, RepositoryHttpEndpointImpl elem,
+      ServletOutputStream ostream, BufferPool bufferPool, long start, long length) {
+    this.asyncContext = asyncContext;
+    this.elem = elem;
+    this.ostream = ostream;
+    this.bufferPool = bufferPool;
+    this.buffer = bufferPool.acquire();
+    this.position = start;
+    this.remBytes = length >= 0 ? length : Long.MAX_VALUE;
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+
+    try {
+
+      openSource();
+
+      while (ostream.isReady()) {
+
+        int len = remBytes > 0 ? read((int) Math.min(buffer.length, remBytes)) : -1;
+        if (len == -1) {
+          finish();
+          return;
+        }
+
+        ostream.write(buffer, 0, len);
+        position += len;
+        remBytes -= len;
+      }
+
+    } catch (RuntimeException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    log.warn("Exception when serving content", t);
+    finish();
+  }
+
+  private void openSource() throws IOException {
+
+    if (channel != null || istream != null) {
+      return;
+    }
+
+    RepositoryItem repositoryItem = elem.getRepositoryItem();
+
+    if (repositoryItem instanceof FileRepositoryItem) {
+      channel = ((FileRepositoryItem) repositoryItem).createChannelToRead();
+    } else {
+      istream = elem.createRepoItemInputStream();
+      long skipped = istream.skip(position);
+      if (skipped < position) {
+        throw new IOException("Has been skiped " + skipped + " when " + position + " is required");
+      }
+    }
+  }
+
+  private int read(int len) throws IOException {
+    if (channel != null) {
+      return channel.read(ByteBuffer.wrap(buffer, 0, len), position);
+    } else {
+      return istream.read(buffer, 0, len);
+    }
+  }
+
+  private synchronized void finish() {
+
+    if (buffer == null) {
+      return;
+    }
+
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+      if (istream != null) {
+        istream.close();
+      }
+    } catch (IOException e) {
+      log.warn("Exception closing item being served", e);
+    }
+
+    bufferPool.release(buffer);
+    buffer = null;
+    elem.stopInTimeout();
+    asyncContext.complete();
+  }
+}
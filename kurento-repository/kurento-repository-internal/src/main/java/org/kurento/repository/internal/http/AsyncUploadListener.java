@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the body of an upload with non-blocking reads, so no container thread waits for the
+ * client while the content is being received. The first {@code skipBytes} bytes of the body are
+ * discarded, and at most {@code maxBytes} bytes are written to the output stream of the item (-1
+ * for no limit).
+ */
+class AsyncUploadListener implements ReadListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncUploadListener.class);
+
+  private final AsyncContext asyncContext;
+  private final RepositoryHttpEndpointImpl elem;
+  private final ServletInputStream istream;
+  private final OutputStream ostream;
+  private final BufferPool bufferPool;
+
+  private byte[] buffer;
+  private long skipBytes;
+  private long remBytes;
+  private long receivedBytes;
+
+  AsyncUploadListener(AsyncContext asyncContext, RepositoryHttpEndpointImpl elem,
+      ServletInputStream istream, OutputStream ostream, BufferPool bufferPool, long skipBytes,
+      long maxBytes) {
+    this.asyncContext = asyncContext;
+    this.elem = elem;
+    this.istream = istream;
+    this.ostream = ostream;
+    this.bufferPool = bufferPool;
+    this.buffer = bufferPool.acquire();
+    this.skipBytes = skipBytes;
+    this.remBytes = maxBytes;
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+
+    try {
+
+      while (istream.isReady()) {
+
+        int len = istream.read(buffer);
+        if (len == -1) {
+          return;
+        }
+
+        int offset = (int) Math.min(skipBytes, len);
+        skipBytes -= offset;
+
+        int count = len - offset;
+        if (remBytes >= 0) {
+          count = (int) Math.min(count, remBytes);
+          remBytes -= count;
+        }
+
+        // Bytes beyond the range are read but discarded
+        if (count > 0) {
+          ostream.write(buffer, offset, count);
+          receivedBytes += count;
+        }
+      }
+
+    } catch (RuntimeException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void onAllDataRead() throws IOException {
+    log.debug("Bytes received: {}", receivedBytes);
+    ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_OK);
+    finish();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+
+    log.warn("Exception when uploading content", t);
+
+    elem.fireSessionErrorEvent(t instanceof Exception ? (Exception) t : new KurentoException(t));
+    ((HttpServletResponse) asyncContext.getResponse())
+        .setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    finish();
+  }
+
+  private synchronized void finish() {
+    if (buffer != null) {
+      bufferPool.release(buffer);
+      buffer = null;
+      elem.stopInTimeout();
+      asyncContext.complete();
+    }
+  }
+}
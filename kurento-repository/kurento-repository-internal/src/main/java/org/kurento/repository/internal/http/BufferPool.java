@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the buffers used by asynchronous transfers, so thousands of concurrent uploads and
+ * downloads don't allocate a new buffer each. At most {@code maxBuffers} free buffers are kept.
+ */
+class BufferPool {
+
+  private final int bufferSize;
+  private final int maxBuffers;
+
+  private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger numBuffers = new AtomicInteger();
+
+  BufferPool(int bufferSize, int maxBuffers) {
+    this.bufferSize = bufferSize;
+    this.maxBuffers = maxBuffers;
+  }
+
+  byte[] acquire() {
+    byte[] buffer = buffers.poll();
+    if (buffer == null) {
+      return new byte[bufferSize];
+    }
+    numBuffers.decrementAndGet();
+    return buffer;
+  }
+
+  void release(byte[] buffer) {
+    if (numBuffers.incrementAndGet() <= maxBuffers) {
+      buffers.offer(buffer);
+    } else {
+      numBuffers.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coarse timer wheel that stops the HTTP endpoints whose expiration time has passed. Requests only
+ * update the expiration time of their endpoint. The endpoint is placed in the slot of that time the
+ * first time, and it is moved to a later slot when the slot is processed if the time was extended.
+ * No task is scheduled or cancelled for each request. Endpoints are stopped at most one tick after
+ * their expiration time.
+ */
+class ExpirationWheel {
+
+  private static final Logger log = LoggerFactory.getLogger(ExpirationWheel.class);
+
+  private final long tickMillis;
+  private final List<Queue<RepositoryHttpEndpointImpl>> slots;
+
+  private final Set<RepositoryHttpEndpointImpl> scheduled =
+      Collections.newSetFromMap(new ConcurrentHashMap<RepositoryHttpEndpointImpl, Boolean>());
+
+  private volatile long nextTick;
+
+  ExpirationWheel(long tickMillis, int numSlots) {
+    this.tickMillis = tickMillis;
+    this.slots = new ArrayList<>(numSlots);
+    for (int i = 0; i < numSlots; i++) {
+      slots.add(new ConcurrentLinkedQueue<RepositoryHttpEndpointImpl>());
+    }
+    this.nextTick = System.currentTimeMillis() / tickMillis;
+  }
+
+  /**
+   * Schedules the expiration of the endpoint at its current expiration time, if it is not already
+   * in the wheel.
+   */
+  void schedule(RepositoryHttpEndpointImpl elem) {
+    if (scheduled.add(elem)) {
+      addToSlot(elem);
+    }
+  }
+
+  /**
+   * Processes the slots of the ticks passed since the last invocation. It is invoked periodically
+   * from a single thread.
+   */
+  void advance() {
+
+    long now = System.currentTimeMillis();
+    long currentTick = now / tickMillis;
+
+    // After a long pause, each slot needs to be processed only once
+    long firstTick = Math.max(nextTick, currentTick - slots.size() + 1);
+
+    for (long tick = firstTick; tick <= currentTick; tick++) {
+
+      // Published before draining the slot, so endpoints added to it later are moved (addToSlot)
+      nextTick = tick + 1;
+
+      Queue<RepositoryHttpEndpointImpl> slot = getSlot(tick);
+      List<RepositoryHttpEndpointImpl> elems = new ArrayList<>();
+      RepositoryHttpEndpointImpl elem;
+      while ((elem = slot.poll()) != null) {
+        elems.add(elem);
+      }
+
+      for (RepositoryHttpEndpointImpl expiringElem : elems) {
+        process(expiringElem, now);
+      }
+    }
+  }
+
+  private void process(RepositoryHttpEndpointImpl elem, long now) {
+
+    scheduled.remove(elem);
+
+    long expirationTime = elem.getExpirationTime();
+
+    if (expirationTime == 0) {
+      // A request is in progress or the endpoint was stopped. It is scheduled again when needed.
+      return;
+    }
+
+    if (expirationTime > now) {
+      schedule(elem);
+      return;
+    }
+
+    try {
+      if (elem.expire(expirationTime)) {
+        log.debug("Http endpoint {} stopped after its auto termination timeout",
+            elem.getSessionId());
+      }
+    } catch (Exception e) {
+      log.warn("Exception stopping http endpoint {}", elem.getSessionId(), e);
+    }
+  }
+
+  private void addToSlot(RepositoryHttpEndpointImpl elem) {
+    // Rounded up, so endpoints are never stopped before their expiration time
+    long tick = Math.max(elem.getExpirationTime() / tickMillis + 1, nextTick);
+
+    while (true) {
+      Queue<RepositoryHttpEndpointImpl> slot = getSlot(tick);
+      slot.offer(elem);
+
+      // If the slot has been drained meanwhile, the endpoint is moved to the next tick to be
+      // processed, unless the drain already took it. Otherwise, it would wait a whole revolution.
+      long currentNextTick = nextTick;
+      if (tick >= currentNextTick || !slot.remove(elem)) {
+        return;
+      }
+      tick = currentNextTick;
+    }
+  }
+
+  private Queue<RepositoryHttpEndpointImpl> getSlot(long tick) {
+    return slots.get((int) (tick % slots.size()));
+  }
+}
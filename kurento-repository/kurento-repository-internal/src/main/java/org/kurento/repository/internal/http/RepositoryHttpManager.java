@@ -17,10 +17,17 @@
 
 package org.kurento.repository.internal.http;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.kurento.commons.SecretGenerator;
 import org.kurento.repository.RepositoryApiConfiguration;
@@ -31,6 +38,7 @@ import org.kurento.repository.RepositoryItem;
 import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
 import org.kurento.repository.internal.RepositoryHttpPlayerImpl;
 import org.kurento.repository.internal.RepositoryHttpRecorderImpl;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.TaskScheduler;
@@ -39,6 +47,10 @@ import org.springframework.stereotype.Component;
 @Component
 public class RepositoryHttpManager {
 
+  private static final long EXPIRATION_TICK_MILLIS = 250;
+
+  private static final int EXPIRATION_WHEEL_SLOTS = 512;
+
   @Autowired
   private RepositoryApiConfiguration config;
 
@@ -49,12 +61,48 @@ public class RepositoryHttpManager {
   private final ConcurrentMap<String, RepositoryHttpEndpointImpl> sessions =
       new ConcurrentHashMap<>();
 
+  /**
+   * Sessions of each repository item. Each set is guarded by itself, and it is removed from the
+   * map when it becomes empty.
+   */
+  private final ConcurrentMap<String, Set<RepositoryHttpEndpointImpl>> sessionsByItemId =
+      new ConcurrentHashMap<>();
+
+  private final ExpirationWheel expirationWheel =
+      new ExpirationWheel(EXPIRATION_TICK_MILLIS, EXPIRATION_WHEEL_SLOTS);
+
+  @SuppressWarnings("rawtypes")
+  private ScheduledFuture expirationFuture;
+
   private final SecretGenerator generator = new SecretGenerator();
 
   @Autowired
   @Qualifier("repositoryTaskScheduler")
   private TaskScheduler scheduler;
 
+  private SegmentCache segmentCache;
+
+  @PostConstruct
+  public void init() {
+    if (config.getSegmentCacheSize() > 0) {
+      segmentCache = new SegmentCache(config.getSegmentCacheSize());
+    }
+
+    expirationFuture = scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        expirationWheel.advance();
+      }
+    }, EXPIRATION_TICK_MILLIS);
+  }
+
+  @PreDestroy
+  public void close() {
+    if (expirationFuture != null) {
+      expirationFuture.cancel(false);
+    }
+  }
+
   public RepositoryHttpPlayer createRepositoryHttpPlayer(RepositoryItem repositoryItem) {
     return (RepositoryHttpPlayer) createRepositoryHttpElem(repositoryItem,
         RepositoryHttpPlayer.class, null);
@@ -92,9 +140,14 @@ public class RepositoryHttpManager {
       elem = new RepositoryHttpPlayerImpl(repositoryItem, sessionIdInUrl, url, this);
     } else {
       elem = new RepositoryHttpRecorderImpl(repositoryItem, sessionIdInUrl, url, this);
+      invalidateSegments(repositoryItem);
     }
 
-    sessions.put(sessionIdInUrl, elem);
+    RepositoryHttpEndpointImpl oldElem = sessions.put(sessionIdInUrl, elem);
+    if (oldElem != null) {
+      removeFromItemIndex(oldElem);
+    }
+    addToItemIndex(elem);
 
     return elem;
   }
@@ -115,31 +168,98 @@ public class RepositoryHttpManager {
     return sessionId == null ? null : sessions.get(sessionId);
   }
 
+  /**
+   * Creates a stream to read the content of the item. Stored items are read through the segment
+   * cache, if it is enabled. File items are not cached, as the operating system already caches
+   * their pages.
+   */
+  public InputStream createItemInputStream(RepositoryItem repositoryItem) {
+    if (segmentCache != null && !(repositoryItem instanceof FileRepositoryItem)
+        && segmentCache.isCacheable(repositoryItem)) {
+      return segmentCache.createInputStream(repositoryItem);
+    }
+    return repositoryItem.createInputStreamToRead();
+  }
+
+  private void invalidateSegments(RepositoryItem repositoryItem) {
+    if (segmentCache != null) {
+      segmentCache.invalidate(repositoryItem.getId());
+    }
+  }
+
   public TaskScheduler getScheduler() {
     return scheduler;
   }
 
+  /**
+   * Schedules the stop of the endpoint at its expiration time, unless it changes before.
+   */
+  public void scheduleExpiration(RepositoryHttpEndpointImpl elem) {
+    expirationWheel.schedule(elem);
+  }
+
   public void disposeHttpRepoItemElem(String sessionId) {
-    sessions.remove(sessionId);
+    RepositoryHttpEndpointImpl elem = sessions.remove(sessionId);
+    if (elem != null) {
+      removeFromItemIndex(elem);
+    }
   }
 
   public void disposeHttpRepoItemElemByItemId(RepositoryItem item, String message) {
 
-    // We don't use another map indexed by RepositoryItemIds for several
-    // reasons:
-    // * Memory consumption
-    // * More complex code (development time, difficult to maintain and
-    // test)
-    // * It is very unlike this operation is called in a reasonable use case
-
-    Iterator<Entry<String, RepositoryHttpEndpointImpl>> it = sessions.entrySet().iterator();
-
-    while (it.hasNext()) {
-      Entry<String, RepositoryHttpEndpointImpl> entry = it.next();
-      RepositoryHttpEndpointImpl elem = entry.getValue();
-      if (elem.getRepositoryItem().getId().equals(item.getId())) {
-        elem.forceStopHttpManager(message);
-        it.remove();
+    invalidateSegments(item);
+
+    Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.remove(item.getId());
+    if (itemSessions == null) {
+      return;
+    }
+
+    List<RepositoryHttpEndpointImpl> elems;
+    synchronized (itemSessions) {
+      elems = new ArrayList<>(itemSessions);
+      itemSessions.clear();
+    }
+
+    for (RepositoryHttpEndpointImpl elem : elems) {
+      sessions.remove(elem.getSessionId(), elem);
+      elem.forceStopHttpManager(message);
+    }
+  }
+
+  private void addToItemIndex(RepositoryHttpEndpointImpl elem) {
+
+    String itemId = elem.getRepositoryItem().getId();
+
+    while (true) {
+      Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.get(itemId);
+      if (itemSessions == null) {
+        Set<RepositoryHttpEndpointImpl> newItemSessions = new HashSet<>();
+        itemSessions = sessionsByItemId.putIfAbsent(itemId, newItemSessions);
+        if (itemSessions == null) {
+          itemSessions = newItemSessions;
+        }
+      }
+      synchronized (itemSessions) {
+        // The set could have been removed from the map while it was empty
+        if (sessionsByItemId.get(itemId) == itemSessions) {
+          itemSessions.add(elem);
+          return;
+        }
+      }
+    }
+  }
+
+  private void removeFromItemIndex(RepositoryHttpEndpointImpl elem) {
+
+    String itemId = elem.getRepositoryItem().getId();
+
+    Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.get(itemId);
+    if (itemSessions != null) {
+      synchronized (itemSessions) {
+        itemSessions.remove(elem);
+        if (itemSessions.isEmpty()) {
+          sessionsByItemId.remove(itemId, itemSessions);
+        }
       }
     }
   }
@@ -26,25 +26,27 @@ import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
 import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
 
 import java.io.BufferedInputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
-import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileItemStream;
@@ -57,11 +59,12 @@ import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
 import org.kurento.repository.RepositoryItemAttributes;
 import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-@WebServlet(value = "/repository_servlet/*", loadOnStartup = 1)
+@WebServlet(value = "/repository_servlet/*", loadOnStartup = 1, asyncSupported = true)
 public class RepositoryHttpServlet extends HttpServlet {
 
   protected static class Range {
@@ -135,6 +138,32 @@ public class RepositoryHttpServlet extends HttpServlet {
    */
   private static final int OUTPUT_BUFFER_SIZE = 2048;
 
+  /**
+   * The buffer size to use when serving file items through a channel.
+   */
+  private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Minimum length of the content to be sent with sendfile. Smaller contents are copied to the
+   * response, as the container would do otherwise.
+   */
+  private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+  private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+  /**
+   * The buffer size to use in asynchronous transfers.
+   */
+  private static final int ASYNC_BUFFER_SIZE = 32 * 1024;
+
+  /**
+   * Maximum number of free buffers kept for asynchronous transfers.
+   */
+  private static final int MAX_POOLED_BUFFERS = 1024;
+
   /**
    * The debugging detail level for this servlet.
    */
@@ -149,6 +178,14 @@ public class RepositoryHttpServlet extends HttpServlet {
   @Autowired
   private RepositoryApiConfiguration config;
 
+  /**
+   * Whether uploads and downloads are done with non-blocking I/O.
+   */
+  protected boolean asyncIo;
+
+  private final transient BufferPool bufferPool =
+      new BufferPool(ASYNC_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
   /**
    * Finalize this servlet.
    */
@@ -168,6 +205,8 @@ public class RepositoryHttpServlet extends HttpServlet {
     configureServletMapping(servletConfig);
     configureWebappPublicUrl(servletConfig);
 
+    asyncIo = config.isAsyncIo();
+
     if (servletConfig.getInitParameter("debug") != null) {
       debug = Integer.parseInt(getServletConfig().getInitParameter("debug"));
     }
@@ -334,13 +373,33 @@ public class RepositoryHttpServlet extends HttpServlet {
     elem.stopCurrentTimer();
     elem.fireStartedEventIfFirstTime();
 
+    Range range = parseContentRange(req, resp);
+
+    if (asyncIo && req.isAsyncSupported() && !resp.isCommitted()
+        && startAsyncUpload(req, elem, range)) {
+      // The upload listener restarts the timer when the upload finishes
+      return;
+    }
+
     try (InputStream requestInputStream = req.getInputStream()) {
 
       OutputStream repoItemOutputStream = elem.getRepoItemOutputStream();
 
-      Range range = parseContentRange(req, resp);
+      if (range != null && elem.getRepositoryItem() instanceof FileRepositoryItem) {
+
+        OutputStream rangeOutputStream =
+            ((FileRepositoryItem) elem.getRepositoryItem()).createOutputStreamToWrite(range.start);
+
+        IOException exception = copyStreamsRange(requestInputStream, rangeOutputStream,
+            Range.createWithEnd(0, range.end - range.start));
+
+        if (exception != null) {
+          throw exception;
+        }
+
+        resp.setStatus(SC_OK);
 
-      if (range != null) {
+      } else if (range != null) {
 
         if (range.start > elem.getWrittenBytes()) {
           resp.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
@@ -404,6 +463,56 @@ public class RepositoryHttpServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Start receiving the request body with non-blocking reads.
+   *
+   * @return false if the request has no body to be written to the item (or it is multipart, which
+   *         can only be parsed with blocking reads), so it has to be processed synchronously
+   */
+  private boolean startAsyncUpload(HttpServletRequest req, RepositoryHttpEndpointImpl elem,
+      Range range) throws IOException {
+
+    OutputStream ostream = elem.getRepoItemOutputStream();
+    long skipBytes = 0;
+    long maxBytes = -1;
+
+    if (range != null && elem.getRepositoryItem() instanceof FileRepositoryItem) {
+
+      // Ranges of file items are written in place
+      ostream =
+          ((FileRepositoryItem) elem.getRepositoryItem()).createOutputStreamToWrite(range.start);
+      maxBytes = range.end - range.start + 1;
+
+    } else if (range != null) {
+
+      long writtenBytes = elem.getWrittenBytes();
+
+      if (range.end == writtenBytes) {
+        return false;
+      } else if (range.start < writtenBytes && range.end > writtenBytes) {
+        skipBytes = writtenBytes - range.start;
+        maxBytes = range.end - writtenBytes + 1;
+      } else if (range.start != writtenBytes) {
+        return false;
+      }
+
+    } else if (ServletFileUpload.isMultipartContent(req)) {
+      return false;
+    }
+
+    log.debug("Start to receive bytes asynchronously (estimated {} bytes)",
+        req.getContentLength());
+
+    AsyncContext asyncContext = req.startAsync();
+    asyncContext.setTimeout(0);
+
+    ServletInputStream istream = req.getInputStream();
+    istream.setReadListener(new AsyncUploadListener(asyncContext, elem, istream, ostream,
+        bufferPool, skipBytes, maxBytes));
+
+    return true;
+  }
+
   private void uploadMultipart(HttpServletRequest req, HttpServletResponse resp,
       OutputStream repoItemOutputStrem) throws IOException {
 
@@ -486,73 +595,6 @@ public class RepositoryHttpServlet extends HttpServlet {
 
   }
 
-  /**
-   * Handle a partial PUT. New content specified in request is appended to existing content in
-   * oldRevisionContent (if present). This code does not support simultaneous partial updates to the
-   * same resource.
-   */
-  protected File executePartialPut(HttpServletRequest req, Range range, String sessionId)
-      throws IOException {
-
-    // TODO: Change this implementation to avoid Files. Try to
-    // make the work on the repository implementation.
-
-    // Append data specified in ranges to existing content for this
-    // resource - create a temp. file on the local filesystem to
-    // perform this operation
-    // Assume just one range is specified for now
-
-    File tempDir = (File) getServletContext().getAttribute(ServletContext.TEMPDIR);
-
-    // Convert all '/' characters to '.' in resourcePath
-    String convertedResourcePath = sessionId.replace('/', '.');
-
-    File contentFile = new File(tempDir, convertedResourcePath);
-
-    if (contentFile.createNewFile()) {
-      // Clean up contentFile when Tomcat is terminated
-      contentFile.deleteOnExit();
-    }
-
-    try (RandomAccessFile randAccessContentFile = new RandomAccessFile(contentFile, "rw")) {
-
-      RepositoryHttpEndpointImpl repoItemHttpElem = repoHttpManager.getHttpRepoItemElem(sessionId);
-
-      // Copy data in oldRevisionContent to contentFile
-      if (repoItemHttpElem != null) {
-
-        try (BufferedInputStream bufOldRevStream = new BufferedInputStream(
-            repoItemHttpElem.createRepoItemInputStream(), FILE_BUFFER_SIZE)) {
-
-          int numBytesRead;
-          byte[] copyBuffer = new byte[FILE_BUFFER_SIZE];
-          while ((numBytesRead = bufOldRevStream.read(copyBuffer)) != -1) {
-            randAccessContentFile.write(copyBuffer, 0, numBytesRead);
-          }
-        }
-      }
-
-      randAccessContentFile.setLength(range.length);
-
-      // Append data in request input stream to contentFile
-      randAccessContentFile.seek(range.start);
-
-      int numBytesRead;
-
-      byte[] transferBuffer = new byte[FILE_BUFFER_SIZE];
-
-      try (BufferedInputStream requestBufInStream =
-          new BufferedInputStream(req.getInputStream(), FILE_BUFFER_SIZE)) {
-
-        while ((numBytesRead = requestBufInStream.read(transferBuffer)) != -1) {
-          randAccessContentFile.write(transferBuffer, 0, numBytesRead);
-        }
-      }
-    }
-
-    return contentFile;
-  }
-
   /**
    * Check if the conditions specified in the optional If headers are satisfied.
    *
@@ -680,7 +722,10 @@ public class RepositoryHttpServlet extends HttpServlet {
       }
 
       // Copy the input stream to our output stream (if requested)
-      if (serveContent) {
+      if (serveContent && !sendfile(request, response, elem, 0, contentLength - 1)) {
+        if (startAsyncDownload(request, response, elem, 0, contentLength)) {
+          return;
+        }
         copy(elem, response);
       }
 
@@ -705,7 +750,10 @@ public class RepositoryHttpServlet extends HttpServlet {
         setContentLength(response, length);
         setContentType(response, contentType);
 
-        if (serveContent) {
+        if (serveContent && !sendfile(request, response, elem, range.start, range.end)) {
+          if (startAsyncDownload(request, response, elem, range.start, length)) {
+            return;
+          }
           copy(elem, response, range);
         }
 
@@ -723,6 +771,29 @@ public class RepositoryHttpServlet extends HttpServlet {
 
   }
 
+  /**
+   * Start sending the content with non-blocking writes, if enabled. The download listener restarts
+   * the timer of the session when all the content has been sent.
+   *
+   * @return true if the content is being sent asynchronously
+   */
+  private boolean startAsyncDownload(HttpServletRequest request, HttpServletResponse response,
+      RepositoryHttpEndpointImpl elem, long start, long length) throws IOException {
+
+    if (!asyncIo || !request.isAsyncSupported()) {
+      return false;
+    }
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0);
+
+    ServletOutputStream ostream = response.getOutputStream();
+    ostream.setWriteListener(
+        new AsyncDownloadListener(asyncContext, elem, ostream, bufferPool, start, length));
+
+    return true;
+  }
+
   private String getContentType(RepositoryHttpEndpointImpl repoItemHttpElem,
       RepositoryItemAttributes attributes) {
 
@@ -1168,15 +1239,32 @@ public class RepositoryHttpServlet extends HttpServlet {
     IOException exception;
 
     try (ServletOutputStream ostream = response.getOutputStream()) {
-      try (InputStream istream = new BufferedInputStream(
-          repoItemHttpElem.createRepoItemInputStream(), INPUT_BUFFER_SIZE)) {
 
-        if (range != null) {
-          exception = copyStreamsRange(istream, ostream, range);
-        } else {
-          exception = copyStreams(istream, ostream);
+      RepositoryItem repositoryItem = repoItemHttpElem.getRepositoryItem();
+
+      if (repositoryItem instanceof FileRepositoryItem) {
+
+        try (FileChannel channel = ((FileRepositoryItem) repositoryItem).createChannelToRead()) {
+
+          Range channelRange = range;
+          if (channelRange == null) {
+            channelRange = Range.createWithEnd(0, channel.size() - 1);
+          }
+
+          exception = copyChannelRange(channel, ostream, channelRange);
         }
 
+      } else {
+
+        try (InputStream istream = new BufferedInputStream(
+            repoItemHttpElem.createRepoItemInputStream(), INPUT_BUFFER_SIZE)) {
+
+          if (range != null) {
+            exception = copyStreamsRange(istream, ostream, range);
+          } else {
+            exception = copyStreams(istream, ostream);
+          }
+        }
       }
     }
 
@@ -1213,10 +1301,17 @@ public class RepositoryHttpServlet extends HttpServlet {
     IOException exception = null;
     try (ServletOutputStream ostream = response.getOutputStream()) {
 
-      for (Range currentRange : ranges) {
+      RepositoryItem repositoryItem = repoItemHttpElem.getRepositoryItem();
 
-        try (InputStream istream = new BufferedInputStream(
-            repoItemHttpElem.createRepoItemInputStream(), INPUT_BUFFER_SIZE)) {
+      // All ranges of file items are read from the same channel
+      FileChannel channel = null;
+      if (repositoryItem instanceof FileRepositoryItem) {
+        channel = ((FileRepositoryItem) repositoryItem).createChannelToRead();
+      }
+
+      try {
+
+        for (Range currentRange : ranges) {
 
           // Writing MIME header.
           ostream.println();
@@ -1230,12 +1325,24 @@ public class RepositoryHttpServlet extends HttpServlet {
               + "/" + currentRange.length);
           ostream.println();
 
-          exception = copyStreamsRange(istream, ostream, currentRange);
+          if (channel != null) {
+            exception = copyChannelRange(channel, ostream, currentRange);
+          } else {
+            try (InputStream istream = new BufferedInputStream(
+                repoItemHttpElem.createRepoItemInputStream(), INPUT_BUFFER_SIZE)) {
+              exception = copyStreamsRange(istream, ostream, currentRange);
+            }
+          }
 
           if (exception != null) {
             break;
           }
         }
+
+      } finally {
+        if (channel != null) {
+          channel.close();
+        }
       }
 
       ostream.println();
@@ -1344,4 +1451,100 @@ public class RepositoryHttpServlet extends HttpServlet {
     return exception;
   }
 
+  /**
+   * Copy the specified range of a file channel to the specified output stream. Bytes are read with
+   * positional reads, so the file is not read from the beginning to reach the range.
+   *
+   * @param channel
+   *          The file channel to read from
+   * @param ostream
+   *          The output stream to write to
+   * @param range
+   *          Range we are copying
+   *
+   * @return Exception which occurred during processing
+   */
+  protected IOException copyChannelRange(FileChannel channel, OutputStream ostream, Range range) {
+
+    if (debug > 10) {
+      log("Serving bytes:" + range.start + "-" + range.end);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+
+    long position = range.start;
+    long remBytes = range.end - range.start + 1;
+
+    while (remBytes > 0) {
+      try {
+        buffer.clear();
+        if (remBytes < buffer.capacity()) {
+          buffer.limit((int) remBytes);
+        }
+        int readBytes = channel.read(buffer, position);
+        if (readBytes == -1) {
+          break;
+        }
+        ostream.write(buffer.array(), 0, readBytes);
+        position += readBytes;
+        remBytes -= readBytes;
+      } catch (IOException e) {
+        return e;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Delegate the sending of a range of a file item to the container, if it supports sendfile. In
+   * that case, the container transfers the bytes from the file to the socket without copying them
+   * to the servlet, once the request has been processed.
+   *
+   * @param request
+   *          The servlet request we are processing
+   * @param response
+   *          The servlet response we are creating
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param start
+   *          First byte to send
+   * @param end
+   *          Last byte to send
+   * @return true if the container will send the content, false if it has to be copied
+   */
+  protected boolean sendfile(HttpServletRequest request, HttpServletResponse response,
+      RepositoryHttpEndpointImpl repoItemHttpElem, long start, long end) {
+
+    RepositoryItem repositoryItem = repoItemHttpElem.getRepositoryItem();
+
+    // Wrapped responses may need to process the content
+    if (end - start + 1 < SENDFILE_MIN_SIZE || response.isCommitted()
+        || response instanceof HttpServletResponseWrapper
+        || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))
+        || !(repositoryItem instanceof FileRepositoryItem)
+        || repositoryItem.getState() != RepositoryItem.State.STORED) {
+      return false;
+    }
+
+    String fileName;
+    try {
+      fileName = ((FileRepositoryItem) repositoryItem).getFile().getCanonicalPath();
+    } catch (IOException e) {
+      log.warn("Exception obtaining path of item {}. It will not be sent with sendfile",
+          repositoryItem.getId(), e);
+      return false;
+    }
+
+    if (debug > 10) {
+      log("Serving bytes with sendfile:" + start + "-" + end);
+    }
+
+    request.setAttribute(SENDFILE_FILENAME_ATTR, fileName);
+    request.setAttribute(SENDFILE_START_ATTR, start);
+    request.setAttribute(SENDFILE_END_ATTR, end + 1);
+
+    return true;
+  }
+
 }
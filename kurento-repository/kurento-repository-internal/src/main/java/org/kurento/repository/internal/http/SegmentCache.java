@@ -0,0 +1,288 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.kurento.repository.RepositoryItem;
+
+/**
+ * Cache of the segments most recently read from the content of repository items, so popular
+ * items are not read again from the storage for each session playing them. Segments are keyed by
+ * item id, ETag and index, so a modified item never returns stale segments.
+ *
+ * <p>
+ * The total size of the segments is bounded and the least recently used ones are evicted first. A
+ * segment is only admitted the second time it is missed in a short period, so one-off downloads of
+ * big items don't evict the segments of the popular ones.
+ * </p>
+ */
+class SegmentCache {
+
+  static final int SEGMENT_SIZE = 256 * 1024;
+
+  private static final int MISSED_SEGMENTS_FACTOR = 4;
+
+  private static class SegmentKey {
+
+    private final String itemId;
+    private final String eTag;
+    private final long index;
+
+    SegmentKey(String itemId, String eTag, long index) {
+      this.itemId = itemId;
+      this.eTag = eTag;
+      this.index = index;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = itemId.hashCode();
+      result = 31 * result + eTag.hashCode();
+      result = 31 * result + (int) (index ^ (index >>> 32));
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof SegmentKey)) {
+        return false;
+      }
+      SegmentKey other = (SegmentKey) obj;
+      return index == other.index && itemId.equals(other.itemId) && eTag.equals(other.eTag);
+    }
+  }
+
+  private final long maxSize;
+
+  // Guarded by segments
+  private long size;
+  private final LinkedHashMap<SegmentKey, byte[]> segments = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<SegmentKey> missedSegments;
+
+  SegmentCache(long maxSize) {
+    this.maxSize = maxSize;
+
+    final int maxMissedSegments = (int) Math.min(Integer.MAX_VALUE,
+        MISSED_SEGMENTS_FACTOR * Math.max(1, maxSize / SEGMENT_SIZE));
+
+    this.missedSegments = Collections.newSetFromMap(new LinkedHashMap<SegmentKey, Boolean>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SegmentKey, Boolean> eldest) {
+        return size() > maxMissedSegments;
+      }
+    });
+  }
+
+  /**
+   * Returns whether the content of the item can be read through the cache. Items being stored and
+   * items without length or ETag can't.
+   */
+  boolean isCacheable(RepositoryItem item) {
+    return item.getState() == RepositoryItem.State.STORED
+        && item.getAttributes().getContentLength() >= 0 && item.getAttributes().getETag() != null;
+  }
+
+  /**
+   * Returns a stream with the content of the item. Segments are served from the cache, and the
+   * missed ones are read from the item. Skipping bytes doesn't read the skipped segments.
+   */
+  InputStream createInputStream(RepositoryItem item) {
+    return new CachedItemInputStream(item);
+  }
+
+  void invalidate(String itemId) {
+    synchronized (segments) {
+      Iterator<Entry<SegmentKey, byte[]>> it = segments.entrySet().iterator();
+      while (it.hasNext()) {
+        Entry<SegmentKey, byte[]> entry = it.next();
+        if (entry.getKey().itemId.equals(itemId)) {
+          size -= entry.getValue().length;
+          it.remove();
+        }
+      }
+      Iterator<SegmentKey> missedIt = missedSegments.iterator();
+      while (missedIt.hasNext()) {
+        if (missedIt.next().itemId.equals(itemId)) {
+          missedIt.remove();
+        }
+      }
+    }
+  }
+
+  long getSize() {
+    synchronized (segments) {
+      return size;
+    }
+  }
+
+  private byte[] get(SegmentKey key) {
+    synchronized (segments) {
+      return segments.get(key);
+    }
+  }
+
+  private void put(SegmentKey key, byte[] segment) {
+
+    if (segment.length > maxSize) {
+      return;
+    }
+
+    synchronized (segments) {
+
+      if (!missedSegments.remove(key)) {
+        missedSegments.add(key);
+        return;
+      }
+
+      byte[] oldSegment = segments.put(key, segment);
+      if (oldSegment != null) {
+        size -= oldSegment.length;
+      }
+      size += segment.length;
+
+      Iterator<byte[]> it = segments.values().iterator();
+      while (size > maxSize && it.hasNext()) {
+        size -= it.next().length;
+        it.remove();
+      }
+    }
+  }
+
+  private class CachedItemInputStream extends InputStream {
+
+    private final RepositoryItem item;
+    private final String eTag;
+    private final long length;
+
+    private long position;
+
+    private InputStream source;
+    private long sourcePosition;
+
+    CachedItemInputStream(RepositoryItem item) {
+      this.item = item;
+      this.eTag = item.getAttributes().getETag();
+      this.length = item.getAttributes().getContentLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+      if (len == 0) {
+        return 0;
+      }
+
+      if (position >= length) {
+        return -1;
+      }
+
+      byte[] segment = getSegment(position / SEGMENT_SIZE);
+      int segmentOffset = (int) (position % SEGMENT_SIZE);
+      int readBytes = Math.min(len, segment.length - segmentOffset);
+
+      System.arraycopy(segment, segmentOffset, b, off, readBytes);
+      position += readBytes;
+
+      return readBytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = Math.max(0, Math.min(n, length - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (source != null) {
+        source.close();
+        source = null;
+      }
+    }
+
+    private byte[] getSegment(long index) throws IOException {
+      SegmentKey key = new SegmentKey(item.getId(), eTag, index);
+      byte[] segment = get(key);
+      if (segment == null) {
+        segment = loadSegment(index);
+        put(key, segment);
+      }
+      return segment;
+    }
+
+    private byte[] loadSegment(long index) throws IOException {
+
+      long start = index * SEGMENT_SIZE;
+      byte[] segment = new byte[(int) Math.min(SEGMENT_SIZE, length - start)];
+
+      // Consecutive missed segments are read from the same stream
+      if (source == null || sourcePosition > start) {
+        close();
+        source = item.createInputStreamToRead();
+        sourcePosition = 0;
+      }
+
+      while (sourcePosition < start) {
+        long skipped = source.skip(start - sourcePosition);
+        if (skipped <= 0) {
+          throw new IOException("Has been skiped " + sourcePosition + " when " + start
+              + " is required");
+        }
+        sourcePosition += skipped;
+      }
+
+      int readBytes = 0;
+      while (readBytes < segment.length) {
+        int len = source.read(segment, readBytes, segment.length - readBytes);
+        if (len == -1) {
+          throw new IOException("Unexpected end of item " + item.getId() + " at byte "
+              + (start + readBytes) + " of " + length);
+        }
+        readBytes += len;
+      }
+      sourcePosition += readBytes;
+
+      return segment;
+    }
+  }
+}
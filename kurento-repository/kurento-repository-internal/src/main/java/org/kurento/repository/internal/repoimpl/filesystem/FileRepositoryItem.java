@@ -21,11 +21,13 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 
 import org.kurento.commons.exception.KurentoException;
@@ -39,6 +41,44 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
   private static final Logger log = LoggerFactory.getLogger(FileRepositoryItem.class);
   private final File file;
   private OutputStream storingOutputStream;
+  private FileChannel storingChannel;
+  private final WrittenRanges writtenRanges = new WrittenRanges();
+
+  /**
+   * Writes to the file being stored from a position, or appending to the bytes written without
+   * gaps from the beginning if the position is -1.
+   */
+  private class RangeOutputStream extends OutputStream {
+
+    private long position;
+
+    private RangeOutputStream(long position) {
+      this.position = position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+      long start = position >= 0 ? position : writtenRanges.getContiguousLength();
+
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      long end = start;
+      while (buffer.hasRemaining()) {
+        end += storingChannel.write(buffer, end);
+      }
+
+      writtenRanges.add(start, end);
+
+      if (position >= 0) {
+        position = end;
+      }
+    }
+  }
 
   public FileRepositoryItem(FileSystemRepository repository, File file, String id,
       Map<String, String> metadata) {
@@ -86,6 +126,22 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
     }
   }
 
+  /**
+   * Opens a channel to read the stored file. It allows reading any position without reading the
+   * previous bytes, and transferring bytes directly to other channels.
+   */
+  public FileChannel createChannelToRead() {
+
+    checkState(State.STORED);
+
+    try {
+      return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new KurentoException(
+          "The file storing this repositoty item was deleted before creation", e);
+    }
+  }
+
   @Override
   public OutputStream createOutputStreamToWrite() {
 
@@ -93,24 +149,50 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
 
     try {
 
+      storingChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
       this.state = State.STORING;
 
-      storingOutputStream = new FilterOutputStream(new FileOutputStream(file)) {
+      storingOutputStream = new RangeOutputStream(-1) {
         @Override
-        public void close() throws java.io.IOException {
+        public void close() throws IOException {
+          storingChannel.close();
           refreshAttributesOnClose();
         }
       };
 
       return storingOutputStream;
 
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       throw new KurentoException("There is a problem opening the output stream to the file "
           + "that will store the contents of the repositoty item", e);
     }
   }
 
+  /**
+   * Creates an output stream that writes the content from the given position, so ranges of the
+   * content can be uploaded in any order, or resumed, without copying the bytes already written.
+   * The item has to be being stored, and it is stored when the stream returned by
+   * {@link #createOutputStreamToWrite()} is closed.
+   */
+  public OutputStream createOutputStreamToWrite(long position) {
+    checkState(State.STORING);
+    return new RangeOutputStream(position);
+  }
+
+  /**
+   * Returns the number of bytes written without gaps from the beginning of the content.
+   */
+  public long getContiguousLength() {
+    return writtenRanges.getContiguousLength();
+  }
+
   private void refreshAttributesOnClose() {
+    if (writtenRanges.hasGaps()) {
+      log.warn("Item {} stored with gaps in its content. Written ranges: {}", getId(),
+          writtenRanges);
+    }
     state = State.STORED;
     attributes.setContentLength(file.length());
   }
@@ -124,4 +206,10 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
     super.setMetadata(metadata);
     ((FileSystemRepository) repository).setMetadataForItem(this, metadata);
   }
+
+  @Override
+  public void putMetadataEntry(String key, String value) {
+    super.putMetadataEntry(key, value);
+    ((FileSystemRepository) repository).saveMetadataForItem(this);
+  }
 }
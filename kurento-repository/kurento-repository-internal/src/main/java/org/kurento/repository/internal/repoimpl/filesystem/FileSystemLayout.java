@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Layout of the item files in the folder of a {@link FileSystemRepository}. The layout of a
+ * repository is stored in the file {@code metadata/layout}. Repositories without it are flat, as
+ * they were created before the sharded layout existed.
+ */
+public enum FileSystemLayout {
+
+  /**
+   * All the items are stored in the base folder.
+   */
+  FLAT {
+    @Override
+    public File getFileForId(File baseFolder, String id) {
+      return new File(baseFolder, id);
+    }
+  },
+
+  /**
+   * Items are distributed in two levels of 256 folders, named after the hash of their id, so
+   * folders stay small with millions of items.
+   */
+  SHARDED {
+    @Override
+    public File getFileForId(File baseFolder, String id) {
+      int hash = hash(id);
+      return new File(baseFolder, String.format("%02x%s%02x%s%s", (hash >>> 24) & 0xff,
+          File.separator, (hash >>> 16) & 0xff, File.separator, id));
+    }
+  };
+
+  static final String LAYOUT_FILE_PATH = "metadata/layout";
+
+  public abstract File getFileForId(File baseFolder, String id);
+
+  /**
+   * Hash of the id (String.hashCode, stable between JVMs) mixed with the MurmurHash3 finalizer, so
+   * consecutive ids are spread among the folders.
+   */
+  private static int hash(String id) {
+    int h = id.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  public static FileSystemLayout load(File baseFolder) throws IOException {
+    File layoutFile = new File(baseFolder, LAYOUT_FILE_PATH);
+    if (!layoutFile.exists()) {
+      return null;
+    }
+    String layout = new String(Files.readAllBytes(layoutFile.toPath()), StandardCharsets.UTF_8);
+    return valueOf(layout.trim().toUpperCase());
+  }
+
+  public void save(File baseFolder) throws IOException {
+    File layoutFile = new File(baseFolder, LAYOUT_FILE_PATH);
+    layoutFile.getParentFile().mkdirs();
+    File tempFile = new File(layoutFile.getPath() + ".tmp");
+    Files.write(tempFile.toPath(), name().toLowerCase().getBytes(StandardCharsets.UTF_8));
+    Files.move(tempFile.toPath(), layoutFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    ItemsMetadata.syncDirectory(layoutFile.getParentFile());
+  }
+}
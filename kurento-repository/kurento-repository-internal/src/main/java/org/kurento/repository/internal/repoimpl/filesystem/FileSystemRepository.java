@@ -18,11 +18,20 @@
 package org.kurento.repository.internal.repoimpl.filesystem;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -31,6 +40,7 @@ import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.DuplicateItemException;
 import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemIdCursor;
 import org.kurento.repository.internal.http.RepositoryHttpManager;
 import org.kurento.repository.internal.repoimpl.RepositoryWithHttp;
 import org.slf4j.Logger;
@@ -41,58 +51,166 @@ public class FileSystemRepository implements RepositoryWithHttp {
 
   private static final Logger log = LoggerFactory.getLogger(FileSystemRepository.class);
 
-  private static final String ITEMS_METADATA_FILE_PATH = "metadata/metadata.json";
+  private static final String ITEMS_METADATA_FOLDER = "metadata";
+
+  private static final String RESERVED_ID_FILE_NAME = "reserved.id";
+
+  private static final int ID_BLOCK_SIZE = 1000;
 
   @Autowired
   private RepositoryApiConfiguration config;
 
   private File baseFolder;
 
-  private int nextFreeFileNumber = 1;
-  private boolean firstIdRequest = true;
+  private FileSystemLayout layout;
+
+  private final AtomicLong lastId = new AtomicLong();
+  private volatile long reservedId;
+  private File reservedIdFile;
 
   private ItemsMetadata metadata;
 
   @Autowired
   private RepositoryHttpManager httpManager;
 
+  public FileSystemRepository() {
+  }
+
+  FileSystemRepository(RepositoryApiConfiguration config) {
+    this.config = config;
+  }
+
   @PostConstruct
   public void init() {
     log.debug("Invoked post construct init method");
 
     baseFolder = new File(config.getFileSystemFolder());
     checkFolder(baseFolder);
-    calculateNextId(true);
-    metadata = new ItemsMetadata(new File(baseFolder, ITEMS_METADATA_FILE_PATH));
+    layout = loadLayout();
+    log.debug("Repository {} has a {} layout", baseFolder, layout);
+
+    File metadataFolder = new File(baseFolder, ITEMS_METADATA_FOLDER);
+    reservedIdFile = new File(metadataFolder, RESERVED_ID_FILE_NAME);
+    reservedId = loadReservedId();
+    lastId.set(reservedId);
+
+    metadata = new ItemsMetadata(metadataFolder, config.getIndexedAttributes());
   }
 
   @PreDestroy
   public void close() {
     log.debug("Closing file system repository");
-    this.metadata.save();
-  }
-
-  private synchronized String calculateNextId(boolean init) {
-    // Very naive unique identifier system
-    if (firstIdRequest) {
-      firstIdRequest = false;
-      while (true) {
-        File file = getFileForId(Integer.toString(nextFreeFileNumber));
-        if (file.exists()) {
-          log.debug("File with id {} already exists, trying next value", nextFreeFileNumber);
-          nextFreeFileNumber++;
+    this.metadata.close();
+  }
+
+  /**
+   * Returns a new id without taking any lock. Ids are reserved in blocks, persisting the highest
+   * reserved id, so ids are never reused after a restart and the disk is only written once per
+   * block.
+   */
+  private String calculateNextId() {
+    while (true) {
+      long id = lastId.incrementAndGet();
+      if (id > reservedId) {
+        reserveIds(id);
+      }
+      String stringId = Long.toString(id);
+      // The id could have been used explicitly with createRepositoryItem(id)
+      if (!getFileForId(stringId).exists()) {
+        return stringId;
+      }
+      log.debug("File with id {} already exists, trying next value", stringId);
+    }
+  }
+
+  private synchronized void reserveIds(long id) {
+    if (id <= reservedId) {
+      return;
+    }
+    long newReservedId = id + ID_BLOCK_SIZE;
+    try {
+      File tempFile = new File(reservedIdFile.getPath() + ".tmp");
+      Files.write(tempFile.toPath(),
+          Long.toString(newReservedId).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+      Files.move(tempFile.toPath(), reservedIdFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      // The reservation must survive a crash before its ids are used
+      ItemsMetadata.syncDirectory(reservedIdFile.getParentFile());
+    } catch (IOException e) {
+      throw new KurentoException("Exception saving reserved ids in " + reservedIdFile, e);
+    }
+    reservedId = newReservedId;
+  }
+
+  private long loadReservedId() {
+    try {
+      if (reservedIdFile.exists()) {
+        String value =
+            new String(Files.readAllBytes(reservedIdFile.toPath()), StandardCharsets.UTF_8);
+        return Long.parseLong(value.trim());
+      }
+      // Repository created before ids were reserved. Its items are scanned only once.
+      return findMaxNumericId(baseFolder);
+    } catch (IOException | NumberFormatException e) {
+      throw new KurentoException("Exception loading reserved ids from " + reservedIdFile, e);
+    }
+  }
+
+  private long findMaxNumericId(File folder) throws IOException {
+    long maxId = 0;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder.toPath())) {
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        if (Files.isDirectory(entry)) {
+          if (layout == FileSystemLayout.SHARDED && !ITEMS_METADATA_FOLDER.equals(name)) {
+            maxId = Math.max(maxId, findMaxNumericId(entry.toFile()));
+          }
         } else {
-          if (init) {
-            nextFreeFileNumber--;
+          try {
+            maxId = Math.max(maxId, Long.parseLong(name));
+          } catch (NumberFormatException e) {
+            // Not a generated id
           }
-          break;
         }
       }
-    } else {
-      nextFreeFileNumber++;
     }
-    log.debug("Returning next free ID {}", nextFreeFileNumber);
-    return Integer.toString(nextFreeFileNumber);
+    return maxId;
+  }
+
+  private FileSystemLayout loadLayout() {
+    try {
+      FileSystemLayout loadedLayout = FileSystemLayout.load(baseFolder);
+      if (loadedLayout != null) {
+        return loadedLayout;
+      }
+
+      FileSystemLayout newLayout = FileSystemLayout.FLAT;
+      if (containsItems(baseFolder)) {
+        if (config.isFileSystemSharded()) {
+          log.warn("Repository {} has a flat layout. Use {} to migrate it to the sharded layout",
+              baseFolder, FileSystemRepositoryMigrator.class.getName());
+        }
+      } else if (config.isFileSystemSharded()) {
+        newLayout = FileSystemLayout.SHARDED;
+      }
+      newLayout.save(baseFolder);
+      return newLayout;
+
+    } catch (IOException | IllegalArgumentException e) {
+      throw new KurentoException("Exception loading layout of repository " + baseFolder, e);
+    }
+  }
+
+  private static boolean containsItems(File folder) throws IOException {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder.toPath())) {
+      for (Path entry : entries) {
+        if (Files.isRegularFile(entry)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   private void checkFolder(File folder) {
@@ -124,8 +242,10 @@ public class FileSystemRepository implements RepositoryWithHttp {
 
   @Override
   public RepositoryItem createRepositoryItem() {
-    String id = calculateNextId(false);
-    return new FileRepositoryItem(this, getFileForId(id), id, metadata.loadMetadata(id));
+    String id = calculateNextId();
+    File file = getFileForId(id);
+    file.getParentFile().mkdirs();
+    return new FileRepositoryItem(this, file, id, metadata.loadMetadata(id));
   }
 
   @Override
@@ -137,6 +257,8 @@ public class FileSystemRepository implements RepositoryWithHttp {
       throw new DuplicateItemException(id);
     }
 
+    file.getParentFile().mkdirs();
+
     return new FileRepositoryItem(this, file, id, metadata.loadMetadata(id));
   }
 
@@ -150,6 +272,60 @@ public class FileSystemRepository implements RepositoryWithHttp {
     return createItemsForIds(metadata.findByAttRegex(attributeName, regex));
   }
 
+  @Override
+  public List<String> findRepositoryItemIdsByAttValue(String attributeName, String value,
+      String afterId, int limit) {
+    return metadata.findIdsByAttValue(attributeName, value, afterId, limit);
+  }
+
+  @Override
+  public List<String> findRepositoryItemIdsByAttRegex(String attributeName, String regex,
+      String afterId, int limit) {
+    return metadata.findIdsByAttRegex(attributeName, regex, afterId, limit);
+  }
+
+  @Override
+  public RepositoryItemIdCursor findAllRepositoryItemIdsByAttValue(String attributeName,
+      String value) {
+    return createIdCursor(metadata.findAllIdsByAttValue(attributeName, value));
+  }
+
+  @Override
+  public RepositoryItemIdCursor findAllRepositoryItemIdsByAttRegex(String attributeName,
+      String regex) {
+    return createIdCursor(metadata.findAllIdsByAttRegex(attributeName, regex));
+  }
+
+  /**
+   * The metadata is in memory, so the ids are found at once and the cursor doesn't hold resources.
+   */
+  private static RepositoryItemIdCursor createIdCursor(List<String> ids) {
+
+    final Iterator<String> iterator = ids.iterator();
+
+    return new RepositoryItemIdCursor() {
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public String next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
   private List<RepositoryItem> createItemsForIds(
       List<Entry<String, Map<String, String>>> itemsInfo) {
     List<RepositoryItem> items = new ArrayList<>();
@@ -161,7 +337,7 @@ public class FileSystemRepository implements RepositoryWithHttp {
   }
 
   private File getFileForId(String id) {
-    return new File(baseFolder, id);
+    return layout.getFileForId(baseFolder, id);
   }
 
   @Override
@@ -178,10 +354,15 @@ public class FileSystemRepository implements RepositoryWithHttp {
     if (!success) {
       throw new KurentoException("The file can't be deleted");
     }
+    metadata.removeMetadataForId(item.getId());
   }
 
   public void setMetadataForItem(FileRepositoryItem fileRepositoryItem,
       Map<String, String> metadata) {
     this.metadata.setMetadataForId(fileRepositoryItem.getId(), metadata);
   }
+
+  public void saveMetadataForItem(FileRepositoryItem fileRepositoryItem) {
+    this.metadata.saveMetadataForId(fileRepositoryItem.getId());
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tool to migrate the folder of a flat {@link FileSystemRepository} to the sharded layout. The
+ * repository must be stopped while it is migrated. If the migration is interrupted, it can be run
+ * again, and it continues with the items not moved yet.
+ *
+ * <pre>
+ * java -cp kurento-repository-server.jar \
+ *     org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepositoryMigrator \
+ *     &lt;folder&gt;
+ * </pre>
+ */
+public class FileSystemRepositoryMigrator {
+
+  private static final Logger log = LoggerFactory.getLogger(FileSystemRepositoryMigrator.class);
+
+  private static final int LOG_INTERVAL = 10000;
+
+  public static long migrateToShardedLayout(File baseFolder) throws IOException {
+
+    FileSystemLayout layout = FileSystemLayout.load(baseFolder);
+    if (layout == FileSystemLayout.SHARDED) {
+      log.info("Repository {} already has a sharded layout", baseFolder);
+      return 0;
+    }
+
+    long movedItems = 0;
+
+    // Folders whose entries have changed, synced before saving the layout
+    Set<File> changedFolders = new LinkedHashSet<>();
+    changedFolders.add(baseFolder);
+
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(baseFolder.toPath())) {
+      for (Path entry : entries) {
+
+        // Only item files are in the base folder, apart from the metadata folder
+        if (!Files.isRegularFile(entry)) {
+          continue;
+        }
+
+        String id = entry.getFileName().toString();
+        File shardedFile = FileSystemLayout.SHARDED.getFileForId(baseFolder, id);
+        shardedFile.getParentFile().mkdirs();
+        Files.move(entry, shardedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        changedFolders.add(shardedFile.getParentFile().getParentFile());
+        changedFolders.add(shardedFile.getParentFile());
+
+        movedItems++;
+        if (movedItems % LOG_INTERVAL == 0) {
+          log.info("{} items moved", movedItems);
+        }
+      }
+    }
+
+    // Otherwise, a crash could persist the layout but not the moves of the items
+    for (File folder : changedFolders) {
+      ItemsMetadata.syncDirectory(folder);
+    }
+
+    FileSystemLayout.SHARDED.save(baseFolder);
+
+    log.info("Repository {} migrated to sharded layout. {} items moved", baseFolder, movedItems);
+
+    return movedItems;
+  }
+
+  public static void main(String[] args) throws IOException {
+
+    if (args.length != 1) {
+      System.err.println("Usage: FileSystemRepositoryMigrator <repository folder>");
+      System.exit(1);
+    }
+
+    migrateToShardedLayout(new File(args[0]));
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Page of the ids of the items found in a search. It keeps only the lowest {@code limit} ids
+ * greater than {@code afterId} offered to it, so searches need memory for one page only.
+ */
+class IdPage {
+
+  private final String afterId;
+  private final int limit;
+
+  // The greatest id is the head, to be replaced by lower ones
+  private final PriorityQueue<String> ids;
+
+  IdPage(String afterId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("The limit of a page must be positive");
+    }
+    this.afterId = afterId;
+    this.limit = limit;
+    this.ids = new PriorityQueue<>(Math.min(limit, 1024), Collections.<String> reverseOrder());
+  }
+
+  void offer(String id) {
+
+    if (afterId != null && id.compareTo(afterId) <= 0) {
+      return;
+    }
+
+    if (ids.size() < limit) {
+      ids.offer(id);
+    } else if (id.compareTo(ids.peek()) < 0) {
+      ids.poll();
+      ids.offer(id);
+    }
+  }
+
+  List<String> getIds() {
+    List<String> sortedIds = new ArrayList<>(ids);
+    Collections.sort(sortedIds);
+    return sortedIds;
+  }
+}
@@ -18,55 +18,167 @@
 package org.kurento.repository.internal.repoimpl.filesystem;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
+import org.kurento.commons.ThreadFactoryCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.util.JSON;
 
+/**
+ * Metadata of the items of a {@link FileSystemRepository}. It is kept in memory and persisted in
+ * the metadata folder:
+ * <ul>
+ * <li>{@code metadata.journal}: each change of the metadata of an item is appended to it and
+ * synced, so an update costs the size of the changed metadata.</li>
+ * <li>{@code metadata.snapshot}: metadata of all the items. When the journal has more records than
+ * items, a new snapshot is written in background to a temporary file, synced and renamed over the
+ * previous one, and the records included in it are dropped from the journal.</li>
+ * </ul>
+ * Each line of both files is a JSON record preceded by its CRC32, so records partially written in
+ * a crash are detected and discarded. The metadata file of previous versions
+ * ({@code metadata.json}) is migrated to a snapshot the first time.
+ *
+ * <p>
+ * Searches by the indexed attributes use a {@link MetadataIndex}, and searches by other attributes
+ * scan the metadata of all the items.
+ * </p>
+ */
 public class ItemsMetadata {
 
   private final Logger log = LoggerFactory.getLogger(ItemsMetadata.class);
 
+  private static final String SNAPSHOT_FILE_NAME = "metadata.snapshot";
+  private static final String JOURNAL_FILE_NAME = "metadata.journal";
+  private static final String LEGACY_FILE_NAME = "metadata.json";
+
+  private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+  /**
+   * Minimum number of records in the journal to compact it into a snapshot.
+   */
+  private static final int MIN_COMPACTION_RECORDS = 10000;
+
   // TODO Avoid potential memory leaks using Google's MapMaker
   private ConcurrentMap<String, Map<String, String>> itemsMetadata;
 
-  private final File itemsMetadataFile;
+  private final File snapshotFile;
+  private final File journalFile;
+
+  private FileChannel journal;
+  private int journalRecords;
+  private boolean compactionScheduled;
+
+  // Serializes the snapshots, which are written without holding the lock of the metadata
+  private final Object snapshotLock = new Object();
+
+  private final ThreadPoolExecutor compactionExecutor = new ThreadPoolExecutor(1, 1, 60,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      ThreadFactoryCreator.create("ItemsMetadata-compaction"));
+
+  private final Map<String, MetadataIndex> indexes = new HashMap<>();
+
+  public ItemsMetadata(File metadataFolder, Collection<String> indexedAttributes) {
+
+    this.snapshotFile = new File(metadataFolder, SNAPSHOT_FILE_NAME);
+    this.journalFile = new File(metadataFolder, JOURNAL_FILE_NAME);
+
+    for (String attributeName : indexedAttributes) {
+      indexes.put(attributeName, new MetadataIndex(attributeName));
+    }
+
+    itemsMetadata = new ConcurrentHashMap<>();
+
+    compactionExecutor.allowCoreThreadTimeOut(true);
 
-  public ItemsMetadata(File itemsMetadataFile) {
-    this.itemsMetadataFile = itemsMetadataFile;
     try {
-      loadItemsMetadata();
+      metadataFolder.mkdirs();
+      loadItemsMetadata(new File(metadataFolder, LEGACY_FILE_NAME));
     } catch (IOException e) {
       log.warn("Exception while loading items metadata", e);
     }
   }
 
-  private void loadItemsMetadata() throws IOException {
-    itemsMetadata = new ConcurrentHashMap<>();
-    DBObject contents = (DBObject) JSON.parse(loadFileAsString());
+  private void loadItemsMetadata(File legacyFile) throws IOException {
+
+    boolean migrateLegacyFile = !snapshotFile.exists() && legacyFile.exists();
+
+    if (migrateLegacyFile) {
+      loadLegacyFile(legacyFile);
+    } else {
+      readRecords(snapshotFile);
+    }
+
+    long validLength = readRecords(journalFile);
+
+    journal = openJournal();
+
+    if (journal.size() > validLength) {
+      log.warn("Discarding {} bytes at the end of metadata journal",
+          journal.size() - validLength);
+      journal.truncate(validLength);
+    }
+    journal.position(validLength);
+
+    if (migrateLegacyFile) {
+      save();
+      if (legacyFile.renameTo(new File(legacyFile.getPath() + ".migrated"))) {
+        log.info("Metadata file {} migrated to {}", legacyFile, snapshotFile);
+      }
+    }
+  }
+
+  private void loadLegacyFile(File legacyFile) throws IOException {
+
+    StringBuilder sb = new StringBuilder();
+    try (FileReader metadataFile = new FileReader(legacyFile)) {
+      try (BufferedReader br = new BufferedReader(metadataFile)) {
+        String line;
+        while ((line = br.readLine()) != null) {
+          sb.append(line).append("\n");
+        }
+      }
+    }
+
+    DBObject contents = (DBObject) JSON.parse(sb.toString());
     if (contents != null) {
       for (String key : contents.keySet()) {
         try {
-          DBObject metadata = (DBObject) contents.get(key);
-          Map<String, String> map = new HashMap<>();
-          for (String metadataKey : metadata.keySet()) {
-            map.put(metadataKey, metadata.get(metadataKey).toString());
-          }
-          itemsMetadata.put(key, map);
+          putMetadata(key, toMetadataMap((DBObject) contents.get(key)));
         } catch (ClassCastException e) {
           log.warn("Attribute '{}' should be an object", key);
         }
@@ -74,26 +186,127 @@ public class ItemsMetadata {
     }
   }
 
-  private String loadFileAsString() throws IOException {
+  /**
+   * Applies the records of the file to the metadata of the items. Reading stops at the first record
+   * with a wrong checksum.
+   *
+   * @return the length of the file up to the last valid record
+   */
+  private long readRecords(File file) throws IOException {
 
-    if (!itemsMetadataFile.exists()) {
-      return "";
+    if (!file.exists()) {
+      return 0;
     }
 
-    StringBuilder sb = new StringBuilder();
-    try (FileReader metadataFile = new FileReader(itemsMetadataFile)) {
-      try (BufferedReader br = new BufferedReader(metadataFile)) {
-        String line;
-        while ((line = br.readLine()) != null) {
-          sb.append(line).append("\n");
+    long validLength = 0;
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+
+        int separatorPos = line.indexOf(' ');
+        if (separatorPos == -1) {
+          log.warn("Invalid record found in metadata file {}", file);
+          break;
+        }
+
+        String json = line.substring(separatorPos + 1);
+        if (!line.substring(0, separatorPos).equals(checksum(json))) {
+          log.warn("Record with wrong checksum found in metadata file {}", file);
+          break;
+        }
+
+        try {
+          applyRecord((DBObject) JSON.parse(json));
+        } catch (RuntimeException e) {
+          log.warn("Invalid record found in metadata file {}", file, e);
+          break;
+        }
+
+        validLength += line.getBytes(CHARSET).length + 1;
+        if (file.equals(journalFile)) {
+          journalRecords++;
         }
       }
     }
-    return sb.toString();
+
+    return validLength;
   }
 
-  public synchronized void setMetadataForId(String id, Map<String, String> metadata) {
+  private void applyRecord(DBObject record) {
+    String id = record.get("id").toString();
+    DBObject metadata = (DBObject) record.get("metadata");
+    if (metadata != null) {
+      putMetadata(id, toMetadataMap(metadata));
+    } else {
+      removeMetadata(id);
+    }
+  }
+
+  private void putMetadata(String id, Map<String, String> metadata) {
     itemsMetadata.put(id, metadata);
+    updateIndexes(id, metadata);
+  }
+
+  private boolean removeMetadata(String id) {
+    boolean removed = itemsMetadata.remove(id) != null;
+    updateIndexes(id, null);
+    return removed;
+  }
+
+  private void updateIndexes(String id, Map<String, String> metadata) {
+    for (MetadataIndex index : indexes.values()) {
+      index.update(id, metadata);
+    }
+  }
+
+  private static Map<String, String> toMetadataMap(DBObject metadata) {
+    Map<String, String> map = new HashMap<>();
+    for (String metadataKey : metadata.keySet()) {
+      map.put(metadataKey, metadata.get(metadataKey).toString());
+    }
+    return map;
+  }
+
+  private static String createRecord(String id, Map<String, String> metadata) {
+    BasicDBObject record = new BasicDBObject("id", id);
+    if (metadata != null) {
+      record.append("metadata", metadata);
+    }
+    String json = JSON.serialize(record);
+    return checksum(json) + " " + json + "\n";
+  }
+
+  private static String checksum(String json) {
+    CRC32 crc = new CRC32();
+    crc.update(json.getBytes(CHARSET));
+    return String.format("%08x", crc.getValue());
+  }
+
+  public synchronized void setMetadataForId(String id, Map<String, String> metadata) {
+    if (itemsMetadata.get(id) != metadata) {
+      putMetadata(id, metadata);
+      appendToJournal(id, metadata);
+    }
+  }
+
+  /**
+   * Persists the metadata of the item, after it has been modified in place.
+   */
+  public synchronized void saveMetadataForId(String id) {
+    Map<String, String> metadata = itemsMetadata.get(id);
+    if (metadata != null) {
+      updateIndexes(id, metadata);
+      appendToJournal(id, metadata);
+    }
+  }
+
+  public synchronized void removeMetadataForId(String id) {
+    if (removeMetadata(id)) {
+      appendToJournal(id, null);
+    }
   }
 
   public synchronized Map<String, String> loadMetadata(String id) {
@@ -108,6 +321,11 @@ public class ItemsMetadata {
   public List<Entry<String, Map<String, String>>> findByAttValue(String attributeName,
       String value) {
 
+    MetadataIndex index = indexes.get(attributeName);
+    if (index != null) {
+      return getEntries(index.findByValue(value));
+    }
+
     List<Entry<String, Map<String, String>>> list = new ArrayList<>();
 
     for (Entry<String, Map<String, String>> item : itemsMetadata.entrySet()) {
@@ -123,6 +341,11 @@ public class ItemsMetadata {
   public List<Entry<String, Map<String, String>>> findByAttRegex(String attributeName,
       String regex) {
 
+    MetadataIndex index = indexes.get(attributeName);
+    if (index != null) {
+      return getEntries(index.findByRegex(regex));
+    }
+
     Pattern pattern = Pattern.compile(regex);
 
     List<Entry<String, Map<String, String>>> list = new ArrayList<>();
@@ -137,19 +360,270 @@ public class ItemsMetadata {
     return list;
   }
 
-  public void save() {
+  /**
+   * Returns, in ascending order, up to {@code limit} ids greater than {@code afterId} (or from the
+   * first one if it is null) of the items with the value in the attribute.
+   */
+  public List<String> findIdsByAttValue(String attributeName, String value, String afterId,
+      int limit) {
+
+    IdPage page = new IdPage(afterId, limit);
+
+    MetadataIndex index = indexes.get(attributeName);
+    if (index != null) {
+      index.findByValue(value, page);
+    } else {
+      for (Entry<String, Map<String, String>> item : itemsMetadata.entrySet()) {
+        String attValue = item.getValue().get(attributeName);
+        if (attValue != null && attValue.equals(value)) {
+          page.offer(item.getKey());
+        }
+      }
+    }
+
+    return page.getIds();
+  }
+
+  /**
+   * Returns, in ascending order, up to {@code limit} ids greater than {@code afterId} (or from the
+   * first one if it is null) of the items with a value matching the regex in the attribute.
+   */
+  public List<String> findIdsByAttRegex(String attributeName, String regex, String afterId,
+      int limit) {
+
+    IdPage page = new IdPage(afterId, limit);
+
+    MetadataIndex index = indexes.get(attributeName);
+    if (index != null) {
+      index.findByRegex(regex, page);
+    } else {
+      Pattern pattern = Pattern.compile(regex);
+      for (Entry<String, Map<String, String>> item : itemsMetadata.entrySet()) {
+        String value = item.getValue().get(attributeName);
+        if (value != null && pattern.matcher(value).matches()) {
+          page.offer(item.getKey());
+        }
+      }
+    }
+
+    return page.getIds();
+  }
+
+  /**
+   * Returns, in ascending order, the ids of all the items with the value in the attribute.
+   */
+  public List<String> findAllIdsByAttValue(String attributeName, String value) {
+    List<String> ids = new ArrayList<>();
+    for (Entry<String, Map<String, String>> item : findByAttValue(attributeName, value)) {
+      ids.add(item.getKey());
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Returns, in ascending order, the ids of all the items with a value matching the regex in the
+   * attribute.
+   */
+  public List<String> findAllIdsByAttRegex(String attributeName, String regex) {
+    List<String> ids = new ArrayList<>();
+    for (Entry<String, Map<String, String>> item : findByAttRegex(attributeName, regex)) {
+      ids.add(item.getKey());
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private List<Entry<String, Map<String, String>>> getEntries(Set<String> ids) {
+
+    List<Entry<String, Map<String, String>>> list = new ArrayList<>(ids.size());
+
+    for (String id : ids) {
+      Map<String, String> metadata = itemsMetadata.get(id);
+      if (metadata != null) {
+        list.add(new SimpleImmutableEntry<String, Map<String, String>>(id, metadata));
+      }
+    }
+
+    return list;
+  }
+
+  private void appendToJournal(String id, Map<String, String> metadata) {
+
+    if (journal == null) {
+      return;
+    }
 
     try {
-      if (!itemsMetadataFile.exists()) {
-        itemsMetadataFile.getParentFile().mkdirs();
-        itemsMetadataFile.createNewFile();
+
+      ByteBuffer record = ByteBuffer.wrap(createRecord(id, metadata).getBytes(CHARSET));
+      while (record.hasRemaining()) {
+        journal.write(record);
+      }
+      journal.force(false);
+
+      journalRecords++;
+      if (!compactionScheduled
+          && journalRecords >= Math.max(MIN_COMPACTION_RECORDS, itemsMetadata.size())) {
+        compactionScheduled = true;
+        compactionExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            save();
+          }
+        });
+      }
+
+    } catch (IOException e) {
+      log.error("Exception writing metadata journal", e);
+    }
+  }
+
+  /**
+   * Writes a snapshot with the metadata of all the items and drops from the journal the records
+   * included in it. Only copying the metadata blocks the updates: the snapshot is written while
+   * new records are appended to the journal.
+   */
+  public void save() {
+
+    synchronized (snapshotLock) {
+
+      Map<String, Map<String, String>> items;
+      long snapshotJournalLength;
+      int snapshotJournalRecords;
+
+      synchronized (this) {
+        compactionScheduled = false;
+        items = new HashMap<>(itemsMetadata.size());
+        for (Entry<String, Map<String, String>> item : itemsMetadata.entrySet()) {
+          items.put(item.getKey(), new HashMap<>(item.getValue()));
+        }
+        try {
+          snapshotJournalLength = journal != null ? journal.position() : 0;
+        } catch (IOException e) {
+          log.error("Exception reading metadata journal", e);
+          return;
+        }
+        snapshotJournalRecords = journalRecords;
       }
-      try (PrintWriter writer = new PrintWriter(itemsMetadataFile)) {
-        String content = JSON.serialize(itemsMetadata);
-        writer.print(content);
+
+      try {
+
+        writeSnapshot(items);
+
+        // Replaying the whole journal over the new snapshot gives the same metadata, so a crash
+        // before the journal is replaced is harmless
+        synchronized (this) {
+          if (journal != null) {
+            dropJournalHead(snapshotJournalLength);
+          }
+          journalRecords -= snapshotJournalRecords;
+        }
+
+      } catch (IOException e) {
+        log.error("Exception writing metadata snapshot", e);
       }
+    }
+  }
+
+  private void writeSnapshot(Map<String, Map<String, String>> items) throws IOException {
+
+    File tempFile = new File(snapshotFile.getPath() + ".tmp");
+
+    try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(fos, CHARSET));
+      for (Entry<String, Map<String, String>> item : items.entrySet()) {
+        writer.write(createRecord(item.getKey(), item.getValue()));
+      }
+      writer.flush();
+      fos.getFD().sync();
+    }
+
+    Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+
+    // The rename is only durable once the directory is synced
+    syncDirectory(snapshotFile.getParentFile());
+  }
+
+  /**
+   * Removes the first bytes of the journal, keeping the records appended after them.
+   */
+  private void dropJournalHead(long length) throws IOException {
+
+    long journalLength = journal.position();
+
+    if (length == journalLength) {
+      journal.truncate(0);
+      journal.force(true);
+      return;
+    }
+
+    ByteBuffer tail = ByteBuffer.allocate((int) (journalLength - length));
+    while (tail.hasRemaining()) {
+      if (journal.read(tail, length + tail.position()) == -1) {
+        throw new IOException("Unexpected end of metadata journal");
+      }
+    }
+    tail.flip();
+
+    File tempFile = new File(journalFile.getPath() + ".tmp");
+    try (FileChannel tempJournal = FileChannel.open(tempFile.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (tail.hasRemaining()) {
+        tempJournal.write(tail);
+      }
+      tempJournal.force(true);
+    }
+
+    Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    syncDirectory(journalFile.getParentFile());
+
+    journal.close();
+    journal = openJournal();
+    journal.position(journal.size());
+  }
+
+  private FileChannel openJournal() throws IOException {
+    return FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Syncs the directory, so the files created or renamed in it survive a crash. Some platforms
+   * (like Windows) don't allow opening directories, and there it is skipped.
+   */
+  static void syncDirectory(File directory) {
+    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
     } catch (IOException e) {
-      log.error("Exception writing metadata file", e);
+      LoggerFactory.getLogger(ItemsMetadata.class).debug("Unable to sync directory {}",
+          directory, e);
+    }
+  }
+
+  public void close() {
+
+    compactionExecutor.shutdown();
+    try {
+      compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    save();
+
+    synchronized (this) {
+      if (journal != null) {
+        try {
+          journal.close();
+        } catch (IOException e) {
+          log.warn("Exception closing metadata journal", e);
+        }
+        journal = null;
+      }
     }
   }
 }
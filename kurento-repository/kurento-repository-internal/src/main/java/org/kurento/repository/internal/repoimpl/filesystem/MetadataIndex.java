@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the items by the value of a metadata attribute. Values are sorted, so it resolves exact
+ * matches with a lookup, and regular expressions with a literal prefix with a range scan of the
+ * values starting with it. Other regular expressions are matched against the distinct values
+ * instead of the metadata of every item.
+ */
+class MetadataIndex {
+
+  private static final String REGEX_METACHARS = "\\.[]{}()<>*+-=!?^$|";
+
+  private final String attributeName;
+
+  private final ConcurrentSkipListMap<String, Set<String>> valueToIds =
+      new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, String> idToValue = new ConcurrentHashMap<>();
+
+  MetadataIndex(String attributeName) {
+    this.attributeName = attributeName;
+  }
+
+  String getAttributeName() {
+    return attributeName;
+  }
+
+  /**
+   * Updates the index with the metadata of the item, or removes it from the index if the metadata
+   * is null. Updates of the same item must not be concurrent.
+   */
+  void update(String id, Map<String, String> metadata) {
+
+    String value = metadata != null ? metadata.get(attributeName) : null;
+    String oldValue = value != null ? idToValue.put(id, value) : idToValue.remove(id);
+
+    if (value != null && value.equals(oldValue)) {
+      return;
+    }
+
+    if (oldValue != null) {
+      Set<String> ids = valueToIds.get(oldValue);
+      if (ids != null) {
+        ids.remove(id);
+        if (ids.isEmpty()) {
+          valueToIds.remove(oldValue, ids);
+        }
+      }
+    }
+
+    if (value != null) {
+      while (true) {
+        Set<String> ids = valueToIds.get(value);
+        if (ids == null) {
+          Set<String> newIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+          ids = valueToIds.putIfAbsent(value, newIds);
+          if (ids == null) {
+            ids = newIds;
+          }
+        }
+        ids.add(id);
+        // Retry if the set was removed from the index while adding the id
+        if (valueToIds.get(value) == ids) {
+          break;
+        }
+      }
+    }
+  }
+
+  Set<String> findByValue(String value) {
+    Set<String> ids = valueToIds.get(value);
+    return ids != null ? new HashSet<>(ids) : Collections.<String> emptySet();
+  }
+
+  void findByValue(String value, IdPage page) {
+    Set<String> ids = valueToIds.get(value);
+    if (ids != null) {
+      for (String id : ids) {
+        page.offer(id);
+      }
+    }
+  }
+
+  Set<String> findByRegex(String regex) {
+    Set<String> result = new HashSet<>();
+    for (Set<String> ids : findValuesByRegex(regex)) {
+      result.addAll(ids);
+    }
+    return result;
+  }
+
+  void findByRegex(String regex, IdPage page) {
+    for (Set<String> ids : findValuesByRegex(regex)) {
+      for (String id : ids) {
+        page.offer(id);
+      }
+    }
+  }
+
+  private List<Set<String>> findValuesByRegex(String regex) {
+
+    Pattern pattern = Pattern.compile(regex);
+    String prefix = getLiteralPrefix(regex);
+
+    NavigableMap<String, Set<String>> candidates = valueToIds;
+    if (!prefix.isEmpty()) {
+      candidates = valueToIds.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    List<Set<String>> result = new ArrayList<>();
+    for (Entry<String, Set<String>> entry : candidates.entrySet()) {
+      if (pattern.matcher(entry.getKey()).matches()) {
+        result.add(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the literal characters every value matching the regular expression starts with. It is
+   * conservative: an empty prefix is returned if the expression has alternatives.
+   */
+  static String getLiteralPrefix(String regex) {
+
+    if (regex.indexOf('|') != -1) {
+      return "";
+    }
+
+    int start = regex.startsWith("^") ? 1 : 0;
+    int end = start;
+    while (end < regex.length() && REGEX_METACHARS.indexOf(regex.charAt(end)) == -1) {
+      end++;
+    }
+
+    // A quantifier makes the previous character optional or repeatable
+    if (end < regex.length() && end > start && "*?{".indexOf(regex.charAt(end)) != -1) {
+      end--;
+    }
+
+    return regex.substring(start, end);
+  }
+}
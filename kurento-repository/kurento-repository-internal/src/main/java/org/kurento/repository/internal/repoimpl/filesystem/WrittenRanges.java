@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Ranges of the content of an item that have been written while it is being stored. Overlapping
+ * and adjacent ranges are merged, so only one range is kept when the content has no gaps.
+ */
+class WrittenRanges {
+
+  // Start of each range to its end (exclusive)
+  private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+  synchronized void add(long start, long end) {
+
+    if (start >= end) {
+      return;
+    }
+
+    Entry<Long, Long> previous = ranges.floorEntry(start);
+    if (previous != null && previous.getValue() >= start) {
+      start = previous.getKey();
+    }
+
+    Entry<Long, Long> next;
+    while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+      end = Math.max(end, next.getValue());
+      ranges.remove(next.getKey());
+    }
+
+    ranges.put(start, end);
+  }
+
+  /**
+   * Number of bytes written without gaps from the beginning of the content.
+   */
+  synchronized long getContiguousLength() {
+    Entry<Long, Long> first = ranges.firstEntry();
+    return first != null && first.getKey() == 0 ? first.getValue() : 0;
+  }
+
+  synchronized boolean hasGaps() {
+    return ranges.size() > 1 || !ranges.isEmpty() && ranges.firstKey() != 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return ranges.toString();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.mongo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * Stream to read the content of a gridfs file. Chunks are addressed directly by their number, so
+ * skipping bytes doesn't read the skipped chunks. Chunks are fetched in groups of
+ * {@code readAheadChunks} with one query, and when the file is read sequentially the next group is
+ * fetched in background while the current one is being consumed.
+ */
+class GridFSChunkInputStream extends InputStream {
+
+  private final DBCollection chunksCollection;
+  private final Object fileId;
+  private final long length;
+  private final int chunkSize;
+  private final int numChunks;
+  private final int readAheadChunks;
+  private final ExecutorService readAheadExecutor;
+
+  private long position;
+
+  private int groupStart;
+  private List<byte[]> group = Collections.emptyList();
+
+  private int nextGroupStart;
+  private Future<List<byte[]>> nextGroup;
+
+  GridFSChunkInputStream(DBCollection chunksCollection, Object fileId, long length, int chunkSize,
+      int readAheadChunks, ExecutorService readAheadExecutor) {
+    this.chunksCollection = chunksCollection;
+    this.fileId = fileId;
+    this.length = length;
+    this.chunkSize = chunkSize;
+    this.numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+    this.readAheadChunks = Math.max(1, readAheadChunks);
+    this.readAheadExecutor = readAheadExecutor;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (position >= length) {
+      return -1;
+    }
+
+    int chunkNumber = (int) (position / chunkSize);
+    byte[] chunk = getChunk(chunkNumber);
+    int chunkOffset = (int) (position % chunkSize);
+    int readBytes = Math.min(len, chunk.length - chunkOffset);
+
+    if (readBytes <= 0) {
+      throw new IOException("Chunk " + chunkNumber + " of file " + fileId + " is too short");
+    }
+
+    System.arraycopy(chunk, chunkOffset, b, off, readBytes);
+    position += readBytes;
+
+    return readBytes;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = Math.max(0, Math.min(n, length - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public void close() throws IOException {
+    cancelReadAhead();
+  }
+
+  private void cancelReadAhead() {
+    if (nextGroup != null) {
+      // Interrupting a query in progress could break the connection of the driver, so it is left
+      // to finish and its result is discarded
+      nextGroup.cancel(false);
+      nextGroup = null;
+    }
+  }
+
+  private byte[] getChunk(int chunkNumber) throws IOException {
+
+    if (chunkNumber >= groupStart && chunkNumber < groupStart + group.size()) {
+      return group.get(chunkNumber - groupStart);
+    }
+
+    boolean sequential = chunkNumber == 0 || chunkNumber == groupStart + group.size();
+
+    if (nextGroup != null && chunkNumber == nextGroupStart) {
+      group = waitForGroup(nextGroup);
+    } else {
+      cancelReadAhead();
+      group = fetchGroup(chunkNumber);
+    }
+    nextGroup = null;
+    groupStart = chunkNumber;
+
+    if (group.isEmpty()) {
+      throw new IOException("Chunk " + chunkNumber + " of file " + fileId + " not found");
+    }
+
+    final int followingGroupStart = groupStart + group.size();
+    if (sequential && followingGroupStart < numChunks) {
+      nextGroupStart = followingGroupStart;
+      nextGroup = readAheadExecutor.submit(new Callable<List<byte[]>>() {
+        @Override
+        public List<byte[]> call() throws Exception {
+          return fetchGroup(followingGroupStart);
+        }
+      });
+    }
+
+    return group.get(0);
+  }
+
+  private List<byte[]> waitForGroup(Future<List<byte[]>> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading file " + fileId);
+    } catch (ExecutionException e) {
+      throw new IOException("Exception reading file " + fileId, e.getCause());
+    }
+  }
+
+  /**
+   * Fetches consecutive chunks from the given one. Only the chunks that exist without gaps are
+   * returned.
+   */
+  private List<byte[]> fetchGroup(int firstChunk) throws IOException {
+
+    int lastChunk = Math.min(firstChunk + readAheadChunks, numChunks);
+
+    DBObject query = new BasicDBObject("files_id", fileId).append("n",
+        new BasicDBObject("$gte", firstChunk).append("$lt", lastChunk));
+
+    List<byte[]> chunks = new ArrayList<>(lastChunk - firstChunk);
+
+    try (DBCursor cursor = chunksCollection.find(query).sort(new BasicDBObject("n", 1))) {
+      while (cursor.hasNext()) {
+        DBObject chunk = cursor.next();
+        if (((Number) chunk.get("n")).intValue() != firstChunk + chunks.size()) {
+          break;
+        }
+        chunks.add((byte[]) chunk.get("data"));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Exception reading chunks of file " + fileId, e);
+    }
+
+    return chunks;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.mongo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.gridfs.GridFSInputFile;
+
+/**
+ * Stream to write the content of a new gridfs file. Chunks are inserted in batches of
+ * {@code batchChunks} with one request, instead of one request per chunk. As with the gridfs output
+ * stream, the file document is saved when the stream is closed, so the file can't be found until
+ * then.
+ */
+class GridFSChunkOutputStream extends OutputStream {
+
+  private final DBCollection chunksCollection;
+  private final DBCollection filesCollection;
+  private final GridFSInputFile file;
+  private final int chunkSize;
+  private final int batchChunks;
+
+  private final MessageDigest md5;
+  private final List<DBObject> pendingChunks = new ArrayList<>();
+
+  private byte[] buffer;
+  private int bufferPosition;
+  private int chunkNumber;
+  private long length;
+  private boolean closed;
+
+  GridFSChunkOutputStream(DBCollection chunksCollection, DBCollection filesCollection,
+      GridFSInputFile file, int batchChunks) {
+    this.chunksCollection = chunksCollection;
+    this.filesCollection = filesCollection;
+    this.file = file;
+    this.chunkSize = (int) file.getChunkSize();
+    this.batchChunks = batchChunks;
+    this.buffer = new byte[chunkSize];
+    try {
+      this.md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 algorithm not available", e);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+
+    if (closed) {
+      throw new IOException("The stream of file " + file.getId() + " is closed");
+    }
+
+    while (len > 0) {
+      int copiedBytes = Math.min(len, chunkSize - bufferPosition);
+      System.arraycopy(b, off, buffer, bufferPosition, copiedBytes);
+      bufferPosition += copiedBytes;
+      off += copiedBytes;
+      len -= copiedBytes;
+
+      if (bufferPosition == chunkSize) {
+        addChunk();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    if (bufferPosition > 0) {
+      addChunk();
+    }
+    insertPendingChunks();
+
+    file.put("length", length);
+    file.put("md5", String.format("%032x", new BigInteger(1, md5.digest())));
+
+    try {
+      filesCollection.save(file);
+    } catch (MongoException e) {
+      throw new IOException("Exception saving file " + file.getId(), e);
+    }
+  }
+
+  private void addChunk() throws IOException {
+
+    byte[] data = bufferPosition == chunkSize ? buffer : Arrays.copyOf(buffer, bufferPosition);
+    md5.update(data);
+
+    pendingChunks.add(new BasicDBObject("files_id", file.getId()).append("n", chunkNumber)
+        .append("data", data));
+
+    chunkNumber++;
+    length += data.length;
+    buffer = new byte[chunkSize];
+    bufferPosition = 0;
+
+    if (pendingChunks.size() >= batchChunks) {
+      insertPendingChunks();
+    }
+  }
+
+  private void insertPendingChunks() throws IOException {
+
+    if (pendingChunks.isEmpty()) {
+      return;
+    }
+
+    try {
+      chunksCollection.insert(pendingChunks);
+    } catch (MongoException e) {
+      throw new IOException("Exception saving chunks of file " + file.getId(), e);
+    }
+    pendingChunks.clear();
+  }
+}
@@ -17,16 +17,25 @@
 
 package org.kurento.repository.internal.repoimpl.mongo;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.repository.DuplicateItemException;
+import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemIdCursor;
 import org.kurento.repository.internal.http.RepositoryHttpManager;
 import org.kurento.repository.internal.repoimpl.RepositoryWithHttp;
 import org.slf4j.Logger;
@@ -34,27 +43,89 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSFile;
 import com.mongodb.gridfs.GridFSInputFile;
-import com.mongodb.util.JSON;
 
 public class MongoRepository implements RepositoryWithHttp {
 
   private final Logger log = LoggerFactory.getLogger(MongoRepository.class);
 
+  private static final int WRITE_BATCH_CHUNKS = 8;
+
+  private static final int READ_AHEAD_THREADS =
+      Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  // When there are more pending read-aheads, the reader fetches the chunks itself
+  private static final int READ_AHEAD_QUEUE_SIZE = 16 * READ_AHEAD_THREADS;
+
   @Autowired
   private MongoTemplate mongoTemplate;
 
+  @Autowired
+  private RepositoryApiConfiguration config;
+
   private GridFS gridFS;
 
   @Autowired
   private RepositoryHttpManager httpManager;
 
+  private ThreadPoolExecutor readAheadExecutor;
+
   @PostConstruct
   private void postConstruct() {
     gridFS = new GridFS(mongoTemplate.getDb());
+    createIndexes();
+
+    readAheadExecutor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS, 60,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(READ_AHEAD_QUEUE_SIZE),
+        ThreadFactoryCreator.create("MongoRepository-readAheadExec"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    readAheadExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @PreDestroy
+  public void close() {
+    log.debug("Closing mongo repository");
+    readAheadExecutor.shutdownNow();
+  }
+
+  private DBCollection getFilesCollection() {
+    return mongoTemplate.getDb().getCollection(gridFS.getBucketName() + ".files");
+  }
+
+  private DBCollection getChunksCollection() {
+    return mongoTemplate.getDb().getCollection(gridFS.getBucketName() + ".chunks");
+  }
+
+  /**
+   * Creates a stream to read the file. Chunks are addressed directly, so ranges don't read the
+   * file from the beginning, and sequential reads fetch the following chunks in background.
+   */
+  InputStream createInputStream(GridFSFile dbFile) {
+    return new GridFSChunkInputStream(getChunksCollection(), dbFile.getId(), dbFile.getLength(),
+        (int) dbFile.getChunkSize(), config.getMongoReadAheadChunks(), readAheadExecutor);
+  }
+
+  /**
+   * Creates a stream to write the content of a new file, inserting its chunks in batches.
+   */
+  OutputStream createOutputStream(GridFSInputFile dbFile) {
+    return new GridFSChunkOutputStream(getChunksCollection(), getFilesCollection(), dbFile,
+        WRITE_BATCH_CHUNKS);
+  }
+
+  private void createIndexes() {
+    DBCollection filesCollection = getFilesCollection();
+    for (String attributeName : config.getIndexedAttributes()) {
+      log.debug("Creating index for metadata attribute {}", attributeName);
+      filesCollection.createIndex(new BasicDBObject("metadata." + attributeName, 1));
+    }
   }
 
   // TODO Define ways to let users access to low level mongo backend. I prefer
@@ -67,15 +138,10 @@ public class MongoRepository implements RepositoryWithHttp {
   @Override
   public RepositoryItem findRepositoryItemById(String id) {
 
-    List<GridFSDBFile> dbFiles = gridFS.find(id);
-
-    if (dbFiles.size() > 0) {
-
-      if (dbFiles.size() > 1) {
-        log.warn("There are several files with the same " + "filename and should be only one");
-      }
+    GridFSDBFile dbFile = gridFS.findOne(id);
 
-      return createRepositoryItem(dbFiles.get(0));
+    if (dbFile != null) {
+      return createRepositoryItem(dbFile);
     }
 
     throw new NoSuchElementException("The repository item with id \"" + id + "\" does not exist");
@@ -106,6 +172,7 @@ public class MongoRepository implements RepositoryWithHttp {
   public RepositoryItem createRepositoryItem() {
     GridFSInputFile dbFile = gridFS.createFile();
     dbFile.setFilename(dbFile.getId().toString());
+    dbFile.setChunkSize(config.getMongoChunkSize());
     return createRepositoryItem(dbFile);
   }
 
@@ -114,12 +181,13 @@ public class MongoRepository implements RepositoryWithHttp {
 
     // TODO The file is not written until outputstream is closed. There is a
     // potentially data race with this unique test
-    if (!gridFS.find(id).isEmpty()) {
+    if (gridFS.findOne(id) != null) {
       throw new DuplicateItemException(id);
     }
 
     GridFSInputFile dbFile = gridFS.createFile(id);
     dbFile.setId(id);
+    dbFile.setChunkSize(config.getMongoChunkSize());
     return createRepositoryItem(dbFile);
   }
 
@@ -137,7 +205,7 @@ public class MongoRepository implements RepositoryWithHttp {
   @Override
   public List<RepositoryItem> findRepositoryItemsByAttValue(String attributeName, String value) {
 
-    String query = "{'metadata." + attributeName + "':'" + value + "'}";
+    DBObject query = new BasicDBObject("metadata." + attributeName, value);
 
     return findRepositoryItemsByQuery(query);
   }
@@ -145,13 +213,103 @@ public class MongoRepository implements RepositoryWithHttp {
   @Override
   public List<RepositoryItem> findRepositoryItemsByAttRegex(String attributeName, String regex) {
 
-    String query = "{'metadata." + attributeName + "': { $regex : '" + regex + "'}}";
+    // Regular expressions starting with ^ and a literal prefix use the index of the attribute
+    DBObject query =
+        new BasicDBObject("metadata." + attributeName, new BasicDBObject("$regex", regex));
 
     return findRepositoryItemsByQuery(query);
   }
 
-  private List<RepositoryItem> findRepositoryItemsByQuery(String query) {
-    List<GridFSDBFile> files = gridFS.find((DBObject) JSON.parse(query));
+  @Override
+  public List<String> findRepositoryItemIdsByAttValue(String attributeName, String value,
+      String afterId, int limit) {
+
+    BasicDBObject query = new BasicDBObject("metadata." + attributeName, value);
+
+    return findRepositoryItemIdsByQuery(query, afterId, limit);
+  }
+
+  @Override
+  public List<String> findRepositoryItemIdsByAttRegex(String attributeName, String regex,
+      String afterId, int limit) {
+
+    BasicDBObject query =
+        new BasicDBObject("metadata." + attributeName, new BasicDBObject("$regex", regex));
+
+    return findRepositoryItemIdsByQuery(query, afterId, limit);
+  }
+
+  /**
+   * Returns the ids of the files matching the query. The id of an item is the name of its file, so
+   * only that field is read from the files collection, sorted with the default GridFS index.
+   */
+  private List<String> findRepositoryItemIdsByQuery(BasicDBObject query, String afterId,
+      int limit) {
+
+    if (afterId != null) {
+      query.append("filename", new BasicDBObject("$gt", afterId));
+    }
+
+    List<String> ids = new ArrayList<>();
+
+    try (DBCursor cursor = getFilesCollection().find(query, new BasicDBObject("filename", 1))
+        .sort(new BasicDBObject("filename", 1)).limit(limit)) {
+      while (cursor.hasNext()) {
+        ids.add(cursor.next().get("filename").toString());
+      }
+    }
+
+    return ids;
+  }
+
+  @Override
+  public RepositoryItemIdCursor findAllRepositoryItemIdsByAttValue(String attributeName,
+      String value) {
+    return findAllRepositoryItemIdsByQuery(new BasicDBObject("metadata." + attributeName, value));
+  }
+
+  @Override
+  public RepositoryItemIdCursor findAllRepositoryItemIdsByAttRegex(String attributeName,
+      String regex) {
+    return findAllRepositoryItemIdsByQuery(
+        new BasicDBObject("metadata." + attributeName, new BasicDBObject("$regex", regex)));
+  }
+
+  /**
+   * Returns the ids of all the files matching the query, read from a single cursor as they are
+   * consumed.
+   */
+  private RepositoryItemIdCursor findAllRepositoryItemIdsByQuery(BasicDBObject query) {
+
+    final DBCursor cursor = getFilesCollection().find(query, new BasicDBObject("filename", 1))
+        .sort(new BasicDBObject("filename", 1));
+
+    return new RepositoryItemIdCursor() {
+
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public String next() {
+        return cursor.next().get("filename").toString();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void close() {
+        cursor.close();
+      }
+    };
+  }
+
+  private List<RepositoryItem> findRepositoryItemsByQuery(DBObject query) {
+    List<GridFSDBFile> files = gridFS.find(query);
 
     List<RepositoryItem> repositoryItems = new ArrayList<>();
     for (GridFSDBFile file : files) {
@@ -71,14 +71,21 @@ public class MongoRepositoryItem extends AbstractRepositoryItem {
   @Override
   public InputStream createInputStreamToRead() {
     checkState(State.STORED);
-    return ((GridFSDBFile) dbFile).getInputStream();
+    return ((MongoRepository) repository).createInputStream(dbFile);
   }
 
   @Override
   public OutputStream createOutputStreamToWrite() {
     checkState(State.NEW);
 
-    storingOutputStream = new FilterOutputStream(((GridFSInputFile) dbFile).getOutputStream()) {
+    storingOutputStream = new FilterOutputStream(
+        ((MongoRepository) repository).createOutputStream((GridFSInputFile) dbFile)) {
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream would write byte by byte
+        out.write(b, off, len);
+      }
 
       @Override
       public void close() throws IOException {
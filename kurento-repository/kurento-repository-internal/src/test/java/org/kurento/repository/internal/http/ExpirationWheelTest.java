@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.RepositoryHttpPlayerImpl;
+
+public class ExpirationWheelTest {
+
+  private static final long TICK_MILLIS = 10;
+  private static final int SLOTS = 4;
+  private static final String SESSION_ID = "session";
+
+  private ExpirationWheel wheel;
+  private RepositoryHttpManager httpManager;
+  private RepositoryHttpEndpointImpl elem;
+
+  @Before
+  public void setUp() {
+    wheel = new ExpirationWheel(TICK_MILLIS, SLOTS);
+    // The endpoint removes itself from this manager when it is stopped
+    httpManager = mock(RepositoryHttpManager.class);
+    elem = new RepositoryHttpPlayerImpl(mock(RepositoryItem.class), SESSION_ID,
+        "http://localhost/" + SESSION_ID, httpManager);
+  }
+
+  @Test
+  public void endpointIsStoppedAfterItsTimeout() throws InterruptedException {
+
+    startTimeout(50);
+    long expirationTime = elem.getExpirationTime();
+
+    advanceUntil(expirationTime - TICK_MILLIS);
+    verify(httpManager, never()).disposeHttpRepoItemElem(SESSION_ID);
+
+    advanceUntil(expirationTime + 2 * TICK_MILLIS);
+    verify(httpManager).disposeHttpRepoItemElem(SESSION_ID);
+  }
+
+  @Test
+  public void extendedTimeoutIsNotStoppedAtThePreviousTime() throws InterruptedException {
+
+    startTimeout(50);
+    long firstExpirationTime = elem.getExpirationTime();
+
+    advanceUntil(firstExpirationTime - 30);
+    // A new request extends the timeout. The endpoint stays in its slot.
+    startTimeout(100);
+    long secondExpirationTime = elem.getExpirationTime();
+
+    advanceUntil(firstExpirationTime + 2 * TICK_MILLIS);
+    verify(httpManager, never()).disposeHttpRepoItemElem(SESSION_ID);
+
+    advanceUntil(secondExpirationTime + 2 * TICK_MILLIS);
+    verify(httpManager).disposeHttpRepoItemElem(SESSION_ID);
+  }
+
+  @Test
+  public void timeoutLongerThanOneRevolutionIsRespected() throws InterruptedException {
+
+    // Four revolutions of the wheel
+    startTimeout(4 * SLOTS * TICK_MILLIS);
+    long expirationTime = elem.getExpirationTime();
+
+    advanceUntil(expirationTime - TICK_MILLIS);
+    verify(httpManager, never()).disposeHttpRepoItemElem(SESSION_ID);
+
+    advanceUntil(expirationTime + 2 * TICK_MILLIS);
+    verify(httpManager).disposeHttpRepoItemElem(SESSION_ID);
+  }
+
+  @Test
+  public void endpointWithRequestInProgressIsNotStopped() throws InterruptedException {
+
+    startTimeout(20);
+    long expirationTime = elem.getExpirationTime();
+    elem.stopCurrentTimer();
+
+    advanceUntil(expirationTime + 2 * SLOTS * TICK_MILLIS);
+    verify(httpManager, never()).disposeHttpRepoItemElem(SESSION_ID);
+
+    // The timeout starts again when the request finishes
+    startTimeout(20);
+    advanceUntil(elem.getExpirationTime() + 2 * TICK_MILLIS);
+    verify(httpManager, times(1)).disposeHttpRepoItemElem(SESSION_ID);
+  }
+
+  private void startTimeout(long timeoutMillis) {
+    elem.setAutoTerminationTimeout(timeoutMillis);
+    elem.stopInTimeout();
+    wheel.schedule(elem);
+  }
+
+  /**
+   * Advances the wheel periodically, as the scheduler of the manager does, until the given time.
+   */
+  private void advanceUntil(long time) throws InterruptedException {
+    while (System.currentTimeMillis() < time) {
+      wheel.advance();
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.HttpSessionErrorEvent;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryHttpEndpoint;
+import org.kurento.repository.RepositoryHttpEventListener;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.SegmentCacheTest.ItemContent;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.TaskScheduler;
+
+public class RepositoryHttpManagerTest {
+
+  private static final int SEGMENT_SIZE = SegmentCache.SEGMENT_SIZE;
+
+  @Mock
+  private RepositoryApiConfiguration config;
+
+  @Mock
+  private TaskScheduler scheduler;
+
+  @InjectMocks
+  private RepositoryHttpManager httpManager;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(config.getSegmentCacheSize()).thenReturn(4L * SEGMENT_SIZE);
+    httpManager.setWebappPublicUrl("http://localhost:7676");
+    httpManager.setServletPath("/repository_servlet/");
+    httpManager.init();
+  }
+
+  @After
+  public void tearDown() {
+    httpManager.close();
+  }
+
+  @Test
+  public void segmentsAreInvalidatedWhenItemIsRewritten() throws IOException {
+
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    readAll(content);
+    readAll(content);
+    readAll(content);
+    assertEquals(2, content.opens);
+
+    httpManager.createRepositoryHttpRecorder(content.item);
+
+    assertArrayEquals(content.bytes, readAll(content));
+    assertEquals(3, content.opens);
+  }
+
+  @Test
+  public void segmentsAreInvalidatedWhenItemIsRemoved() throws IOException {
+
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    readAll(content);
+    readAll(content);
+
+    httpManager.disposeHttpRepoItemElemByItemId(content.item, "Repository Item removed");
+
+    assertArrayEquals(content.bytes, readAll(content));
+    assertEquals(3, content.opens);
+  }
+
+  @Test
+  public void allSessionsOfRemovedItemAreStopped() {
+
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    ItemContent otherContent = new ItemContent("b", SEGMENT_SIZE, "\"1\"");
+
+    List<RepositoryHttpEndpoint> elems = new ArrayList<>();
+    elems.add(httpManager.createRepositoryHttpPlayer(content.item));
+    elems.add(httpManager.createRepositoryHttpPlayer(content.item));
+    elems.add(httpManager.createRepositoryHttpRecorder(content.item));
+    RepositoryHttpEndpoint otherElem = httpManager.createRepositoryHttpPlayer(otherContent.item);
+
+    List<RepositoryHttpEndpoint> stoppedElems = new ArrayList<>();
+    for (RepositoryHttpEndpoint elem : elems) {
+      addErrorListener(elem, stoppedElems);
+    }
+    addErrorListener(otherElem, stoppedElems);
+
+    httpManager.disposeHttpRepoItemElemByItemId(content.item, "Repository Item removed");
+
+    assertEquals(new HashSet<>(elems), new HashSet<>(stoppedElems));
+    assertEquals(elems.size(), stoppedElems.size());
+    for (RepositoryHttpEndpoint elem : elems) {
+      assertNull(httpManager.getHttpRepoItemElem(getSessionId(elem)));
+    }
+    assertSame(otherElem, httpManager.getHttpRepoItemElem(getSessionId(otherElem)));
+
+    // The sessions are not stopped twice
+    httpManager.disposeHttpRepoItemElemByItemId(content.item, "Repository Item removed");
+    assertEquals(elems.size(), stoppedElems.size());
+  }
+
+  @Test
+  public void disposedSessionIsNotStoppedWithItsItem() {
+
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+
+    RepositoryHttpEndpoint disposedElem = httpManager.createRepositoryHttpPlayer(content.item);
+    RepositoryHttpEndpoint elem = httpManager.createRepositoryHttpPlayer(content.item);
+
+    List<RepositoryHttpEndpoint> stoppedElems = new ArrayList<>();
+    addErrorListener(disposedElem, stoppedElems);
+    addErrorListener(elem, stoppedElems);
+
+    httpManager.disposeHttpRepoItemElem(getSessionId(disposedElem));
+    httpManager.disposeHttpRepoItemElemByItemId(content.item, "Repository Item removed");
+
+    assertEquals(1, stoppedElems.size());
+    assertSame(elem, stoppedElems.get(0));
+  }
+
+  @Test
+  public void sessionReplacedWithSameIdIsNotStoppedWithItsItem() {
+
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    ItemContent otherContent = new ItemContent("b", SEGMENT_SIZE, "\"1\"");
+
+    RepositoryHttpEndpoint replacedElem =
+        httpManager.createRepositoryHttpPlayer(content.item, "session");
+    RepositoryHttpEndpoint elem = httpManager.createRepositoryHttpPlayer(otherContent.item,
+        "session");
+
+    List<RepositoryHttpEndpoint> stoppedElems = new ArrayList<>();
+    addErrorListener(replacedElem, stoppedElems);
+    addErrorListener(elem, stoppedElems);
+
+    httpManager.disposeHttpRepoItemElemByItemId(content.item, "Repository Item removed");
+
+    assertEquals(0, stoppedElems.size());
+    assertSame(elem, httpManager.getHttpRepoItemElem("session"));
+  }
+
+  private static void addErrorListener(final RepositoryHttpEndpoint elem,
+      final List<RepositoryHttpEndpoint> stoppedElems) {
+    elem.addSessionErrorListener(new RepositoryHttpEventListener<HttpSessionErrorEvent>() {
+      @Override
+      public void onEvent(HttpSessionErrorEvent event) {
+        stoppedElems.add(elem);
+      }
+    });
+  }
+
+  private static String getSessionId(RepositoryHttpEndpoint elem) {
+    return ((RepositoryHttpEndpointImpl) elem).getSessionId();
+  }
+
+  private byte[] readAll(ItemContent content) throws IOException {
+    try (InputStream is = httpManager.createItemInputStream(content.item)) {
+      return IOUtils.toByteArray(is);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemAttributes;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class SegmentCacheTest {
+
+  private static final int SEGMENT_SIZE = SegmentCache.SEGMENT_SIZE;
+
+  /**
+   * Content of a mocked item, counting how many times it is read from the storage.
+   */
+  static class ItemContent {
+
+    final RepositoryItem item;
+    final RepositoryItemAttributes attributes = new RepositoryItemAttributes();
+    byte[] bytes;
+    int opens;
+
+    ItemContent(String id, int length, String eTag) {
+      item = mock(RepositoryItem.class);
+      when(item.getId()).thenReturn(id);
+      when(item.getState()).thenReturn(RepositoryItem.State.STORED);
+      when(item.getAttributes()).thenReturn(attributes);
+      when(item.createInputStreamToRead()).thenAnswer(new Answer<InputStream>() {
+        @Override
+        public InputStream answer(InvocationOnMock invocation) throws Throwable {
+          opens++;
+          return new ByteArrayInputStream(bytes);
+        }
+      });
+      rewrite(length, eTag);
+    }
+
+    void rewrite(int length, String eTag) {
+      bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte) (i * 31 + eTag.hashCode());
+      }
+      attributes.setContentLength(length);
+      attributes.setETag(eTag);
+    }
+  }
+
+  static byte[] readAll(SegmentCache cache, ItemContent content) throws IOException {
+    try (InputStream is = cache.createInputStream(content.item)) {
+      return IOUtils.toByteArray(is);
+    }
+  }
+
+  @Test
+  public void segmentIsAdmittedOnSecondMiss() throws IOException {
+
+    SegmentCache cache = new SegmentCache(4 * SEGMENT_SIZE);
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+
+    assertArrayEquals(content.bytes, readAll(cache, content));
+    assertEquals(1, content.opens);
+    assertEquals(0, cache.getSize());
+
+    assertArrayEquals(content.bytes, readAll(cache, content));
+    assertEquals(2, content.opens);
+    assertEquals(SEGMENT_SIZE, cache.getSize());
+
+    assertArrayEquals(content.bytes, readAll(cache, content));
+    assertEquals(2, content.opens);
+  }
+
+  @Test
+  public void leastRecentlyUsedSegmentsAreEvictedBySize() throws IOException {
+
+    SegmentCache cache = new SegmentCache(2 * SEGMENT_SIZE);
+    ItemContent a = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    ItemContent b = new ItemContent("b", SEGMENT_SIZE, "\"1\"");
+    ItemContent c = new ItemContent("c", SEGMENT_SIZE, "\"1\"");
+
+    readAll(cache, a);
+    readAll(cache, a);
+    readAll(cache, b);
+    readAll(cache, b);
+    assertEquals(2 * SEGMENT_SIZE, cache.getSize());
+
+    // b becomes the least recently used segment
+    readAll(cache, a);
+
+    readAll(cache, c);
+    readAll(cache, c);
+    assertEquals(2 * SEGMENT_SIZE, cache.getSize());
+    assertEquals(2, a.opens);
+    assertEquals(2, b.opens);
+    assertEquals(2, c.opens);
+
+    assertArrayEquals(a.bytes, readAll(cache, a));
+    assertArrayEquals(c.bytes, readAll(cache, c));
+    assertEquals(2, a.opens);
+    assertEquals(2, c.opens);
+
+    assertArrayEquals(b.bytes, readAll(cache, b));
+    assertEquals(3, b.opens);
+  }
+
+  @Test
+  public void partialSegmentsCountTheirOwnSize() throws IOException {
+
+    SegmentCache cache = new SegmentCache(4 * SEGMENT_SIZE);
+    ItemContent content = new ItemContent("a", 2 * SEGMENT_SIZE + 10, "\"1\"");
+
+    readAll(cache, content);
+    assertArrayEquals(content.bytes, readAll(cache, content));
+    assertEquals(2 * SEGMENT_SIZE + 10, cache.getSize());
+  }
+
+  @Test
+  public void segmentsOfPreviousETagAreNotReturned() throws IOException {
+
+    SegmentCache cache = new SegmentCache(4 * SEGMENT_SIZE);
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+
+    readAll(cache, content);
+    readAll(cache, content);
+    assertEquals(2, content.opens);
+
+    content.rewrite(SEGMENT_SIZE, "\"2\"");
+
+    assertArrayEquals(content.bytes, readAll(cache, content));
+    assertEquals(3, content.opens);
+  }
+
+  @Test
+  public void invalidatedItemIsReadAgain() throws IOException {
+
+    SegmentCache cache = new SegmentCache(4 * SEGMENT_SIZE);
+    ItemContent a = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+    ItemContent b = new ItemContent("b", SEGMENT_SIZE, "\"1\"");
+
+    readAll(cache, a);
+    readAll(cache, a);
+    readAll(cache, b);
+    readAll(cache, b);
+
+    cache.invalidate("a");
+    assertEquals(SEGMENT_SIZE, cache.getSize());
+
+    assertArrayEquals(a.bytes, readAll(cache, a));
+    assertEquals(3, a.opens);
+
+    assertArrayEquals(b.bytes, readAll(cache, b));
+    assertEquals(2, b.opens);
+  }
+
+  @Test
+  public void invalidationForgetsMissedSegments() throws IOException {
+
+    SegmentCache cache = new SegmentCache(4 * SEGMENT_SIZE);
+    ItemContent content = new ItemContent("a", SEGMENT_SIZE, "\"1\"");
+
+    readAll(cache, content);
+    cache.invalidate("a");
+
+    // The item needs to be missed twice again to be admitted
+    readAll(cache, content);
+    assertEquals(0, cache.getSize());
+    readAll(cache, content);
+    assertEquals(SEGMENT_SIZE, cache.getSize());
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class FileSystemRepositoryMigratorTest {
+
+  private static final int ITEMS = 20;
+
+  private static void createFile(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String readFile(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void interruptedMigrationIsResumed() throws IOException {
+
+    File folder = Files.createTempDirectory("repository").toFile();
+
+    for (int i = 0; i < ITEMS; i++) {
+      createFile(new File(folder, "item" + i), "content" + i);
+    }
+    createFile(new File(folder, "metadata/metadata.snapshot"), "metadata");
+
+    // The first half of the items were moved before the migration was interrupted
+    for (int i = 0; i < ITEMS / 2; i++) {
+      File shardedFile = FileSystemLayout.SHARDED.getFileForId(folder, "item" + i);
+      shardedFile.getParentFile().mkdirs();
+      Files.move(new File(folder, "item" + i).toPath(), shardedFile.toPath());
+    }
+    assertNull(FileSystemLayout.load(folder));
+
+    assertEquals(ITEMS / 2, FileSystemRepositoryMigrator.migrateToShardedLayout(folder));
+
+    assertEquals(FileSystemLayout.SHARDED, FileSystemLayout.load(folder));
+    for (int i = 0; i < ITEMS; i++) {
+      assertFalse(new File(folder, "item" + i).exists());
+      assertEquals("content" + i,
+          readFile(FileSystemLayout.SHARDED.getFileForId(folder, "item" + i)));
+    }
+    assertEquals("metadata", readFile(new File(folder, "metadata/metadata.snapshot")));
+
+    // Migrating again has no effect
+    assertEquals(0, FileSystemRepositoryMigrator.migrateToShardedLayout(folder));
+  }
+}
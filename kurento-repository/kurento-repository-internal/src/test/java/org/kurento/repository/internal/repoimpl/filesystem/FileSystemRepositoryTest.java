@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+
+public class FileSystemRepositoryTest {
+
+  private static FileSystemRepository open(File folder, boolean sharded) {
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getPath());
+    config.setFileSystemSharded(sharded);
+    FileSystemRepository repository = new FileSystemRepository(config);
+    repository.init();
+    return repository;
+  }
+
+  private static long createItem(FileSystemRepository repository) {
+    return Long.parseLong(repository.createRepositoryItem().getId());
+  }
+
+  private static void createFile(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void idsAreNotReusedAfterRestart() throws IOException {
+
+    File folder = Files.createTempDirectory("repository").toFile();
+
+    // Items whose content is never written don't have a file
+    FileSystemRepository repository = open(folder, true);
+    assertEquals(1, createItem(repository));
+    assertEquals(2, createItem(repository));
+    assertEquals(3, createItem(repository));
+    repository.close();
+
+    repository = open(folder, true);
+    long id = createItem(repository);
+    assertTrue("Id " + id + " was already used", id > 3);
+    assertEquals(id + 1, createItem(repository));
+    repository.close();
+  }
+
+  @Test
+  public void maxIdIsFoundInFlatRepositoryOnFirstStart() throws IOException {
+
+    File folder = Files.createTempDirectory("repository").toFile();
+    createFile(new File(folder, "7"));
+    createFile(new File(folder, "42"));
+    createFile(new File(folder, "video.webm"));
+
+    FileSystemRepository repository = open(folder, true);
+    assertEquals(43, createItem(repository));
+    repository.close();
+
+    assertEquals(FileSystemLayout.FLAT, FileSystemLayout.load(folder));
+  }
+
+  @Test
+  public void maxIdIsFoundInShardedRepositoryOnFirstStart() throws IOException {
+
+    File folder = Files.createTempDirectory("repository").toFile();
+
+    FileSystemRepository repository = open(folder, true);
+    repository.close();
+    assertEquals(FileSystemLayout.SHARDED, FileSystemLayout.load(folder));
+
+    // Items created by a version that didn't reserve ids
+    createFile(FileSystemLayout.SHARDED.getFileForId(folder, "25"));
+    createFile(FileSystemLayout.SHARDED.getFileForId(folder, "100"));
+    createFile(FileSystemLayout.SHARDED.getFileForId(folder, "video.webm"));
+
+    repository = open(folder, true);
+    assertEquals(101, createItem(repository));
+    repository.close();
+  }
+}
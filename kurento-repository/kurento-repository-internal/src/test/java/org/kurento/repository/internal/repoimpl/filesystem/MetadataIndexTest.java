@@ -0,0 +1,178 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class MetadataIndexTest {
+
+  private static final String ATTRIBUTE = "type";
+
+  private static Map<String, String> metadata(String value) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("other", "x");
+    if (value != null) {
+      metadata.put(ATTRIBUTE, value);
+    }
+    return metadata;
+  }
+
+  private static String sorted(Set<String> ids) {
+    return new TreeSet<>(ids).toString();
+  }
+
+  @Test
+  public void valueChangeMovesTheItem() {
+
+    MetadataIndex index = new MetadataIndex(ATTRIBUTE);
+
+    index.update("1", metadata("video"));
+    index.update("2", metadata("video"));
+    index.update("3", metadata("audio"));
+
+    assertEquals("[1, 2]", sorted(index.findByValue("video")));
+    assertEquals("[3]", sorted(index.findByValue("audio")));
+
+    index.update("1", metadata("audio"));
+    assertEquals("[2]", sorted(index.findByValue("video")));
+    assertEquals("[1, 3]", sorted(index.findByValue("audio")));
+
+    // Updating other attributes doesn't change the index
+    Map<String, String> metadata = metadata("audio");
+    metadata.put("other", "y");
+    index.update("1", metadata);
+    assertEquals("[1, 3]", sorted(index.findByValue("audio")));
+
+    index.update("2", metadata("audio"));
+    assertTrue(index.findByValue("video").isEmpty());
+    assertEquals("[1, 2, 3]", sorted(index.findByRegex(".*")));
+  }
+
+  @Test
+  public void removedItemIsNotFound() {
+
+    MetadataIndex index = new MetadataIndex(ATTRIBUTE);
+
+    index.update("1", metadata("video"));
+    index.update("2", metadata("video"));
+
+    // Removing the attribute or the item removes it from the index
+    index.update("1", metadata(null));
+    assertEquals("[2]", sorted(index.findByValue("video")));
+
+    index.update("2", null);
+    assertTrue(index.findByValue("video").isEmpty());
+    assertTrue(index.findByRegex(".*").isEmpty());
+
+    // Removing an item not indexed has no effect
+    index.update("3", null);
+    assertTrue(index.findByRegex(".*").isEmpty());
+
+    index.update("2", metadata("video"));
+    assertEquals("[2]", sorted(index.findByValue("video")));
+  }
+
+  @Test
+  public void literalPrefixOfRegex() {
+
+    assertEquals("video", MetadataIndex.getLiteralPrefix("video"));
+    assertEquals("video", MetadataIndex.getLiteralPrefix("video.*"));
+    assertEquals("video", MetadataIndex.getLiteralPrefix("^video.*"));
+    assertEquals("video", MetadataIndex.getLiteralPrefix("video\\d+"));
+    assertEquals("video", MetadataIndex.getLiteralPrefix("video[0-9]"));
+    assertEquals("video", MetadataIndex.getLiteralPrefix("video+"));
+
+    // The character before an optional quantifier is not part of the prefix
+    assertEquals("vide", MetadataIndex.getLiteralPrefix("video*"));
+    assertEquals("vide", MetadataIndex.getLiteralPrefix("video?"));
+    assertEquals("vide", MetadataIndex.getLiteralPrefix("video{0,2}"));
+
+    assertEquals("", MetadataIndex.getLiteralPrefix("v*ideo"));
+    assertEquals("", MetadataIndex.getLiteralPrefix(".*video"));
+    assertEquals("", MetadataIndex.getLiteralPrefix("video|audio"));
+    assertEquals("", MetadataIndex.getLiteralPrefix("(?i)video"));
+    assertEquals("", MetadataIndex.getLiteralPrefix("\\Qvideo\\E"));
+    assertEquals("", MetadataIndex.getLiteralPrefix(""));
+  }
+
+  @Test
+  public void regexSearchIsEquivalentToFullScan() {
+
+    String[] words = { "video", "videos", "vid", "audio", "aud", "", "v", "video.mp4",
+        "Video", "v\u00eddeo", "a|b", "x*y" };
+
+    MetadataIndex index = new MetadataIndex(ATTRIBUTE);
+    Map<String, String> values = new HashMap<>();
+    Random random = new Random(1234);
+
+    for (int i = 0; i < 500; i++) {
+      String id = String.format("%04d", i);
+      String value = words[random.nextInt(words.length)] + (random.nextBoolean() ? i % 7 : "");
+      values.put(id, value);
+      index.update(id, metadata(value));
+    }
+
+    // Some items are changed and removed
+    for (int i = 0; i < 100; i++) {
+      String id = String.format("%04d", random.nextInt(500));
+      if (random.nextBoolean()) {
+        values.remove(id);
+        index.update(id, null);
+      } else {
+        String value = words[random.nextInt(words.length)];
+        values.put(id, value);
+        index.update(id, metadata(value));
+      }
+    }
+
+    String[] regexes = { "video", "video.*", "^video.*", "video\\d", "video*", "video?\\d*",
+        "vide{0,1}o.*", "vid.+", ".*dio.*", "audio|video", "(?i)video.*", "v", "v.*", "",
+        "\\Qvideo.\\E.*", "x\\*y.*", "a\\|b\\d", "[av].*", "v\u00eddeo\\d?", "nothing.*" };
+
+    for (String regex : regexes) {
+
+      Pattern pattern = Pattern.compile(regex);
+      Set<String> expected = new TreeSet<>();
+      for (Entry<String, String> entry : values.entrySet()) {
+        if (pattern.matcher(entry.getValue()).matches()) {
+          expected.add(entry.getKey());
+        }
+      }
+
+      assertEquals(regex, expected.toString(), sorted(index.findByRegex(regex)));
+
+      IdPage page = new IdPage(null, Integer.MAX_VALUE);
+      index.findByRegex(regex, page);
+      assertEquals(regex, expected.toString(), page.getIds().toString());
+    }
+
+    assertEquals(Collections.emptySet(), index.findByRegex("nothing.*"));
+  }
+}
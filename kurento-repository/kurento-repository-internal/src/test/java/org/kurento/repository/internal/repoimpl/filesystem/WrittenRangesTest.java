@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WrittenRangesTest {
+
+  @Test
+  public void sequentialRangesAreMerged() {
+
+    WrittenRanges ranges = new WrittenRanges();
+    assertEquals(0, ranges.getContiguousLength());
+    assertFalse(ranges.hasGaps());
+
+    ranges.add(0, 100);
+    ranges.add(100, 250);
+    ranges.add(250, 300);
+
+    assertEquals(300, ranges.getContiguousLength());
+    assertFalse(ranges.hasGaps());
+    assertEquals("{0=300}", ranges.toString());
+  }
+
+  @Test
+  public void overlappingAndRepeatedRangesAreMerged() {
+
+    WrittenRanges ranges = new WrittenRanges();
+
+    ranges.add(0, 100);
+    ranges.add(50, 150);
+    ranges.add(0, 100);
+    ranges.add(20, 30);
+
+    assertEquals(150, ranges.getContiguousLength());
+    assertEquals("{0=150}", ranges.toString());
+  }
+
+  @Test
+  public void gapsAreKeptUntilFilled() {
+
+    WrittenRanges ranges = new WrittenRanges();
+
+    ranges.add(200, 300);
+    assertEquals(0, ranges.getContiguousLength());
+    assertTrue(ranges.hasGaps());
+
+    ranges.add(0, 100);
+    assertEquals(100, ranges.getContiguousLength());
+    assertTrue(ranges.hasGaps());
+    assertEquals("{0=100, 200=300}", ranges.toString());
+
+    // Fills the gap and joins both ranges
+    ranges.add(90, 210);
+    assertEquals(300, ranges.getContiguousLength());
+    assertFalse(ranges.hasGaps());
+    assertEquals("{0=300}", ranges.toString());
+  }
+
+  @Test
+  public void rangeCoveringSeveralRangesIsMerged() {
+
+    WrittenRanges ranges = new WrittenRanges();
+
+    ranges.add(10, 20);
+    ranges.add(30, 40);
+    ranges.add(50, 60);
+    ranges.add(100, 110);
+
+    ranges.add(5, 55);
+
+    assertEquals("{5=60, 100=110}", ranges.toString());
+    assertEquals(0, ranges.getContiguousLength());
+  }
+
+  @Test
+  public void emptyRangesAreIgnored() {
+
+    WrittenRanges ranges = new WrittenRanges();
+
+    ranges.add(10, 10);
+    ranges.add(20, 5);
+
+    assertFalse(ranges.hasGaps());
+    assertEquals("{}", ranges.toString());
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.mongo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+public class GridFSChunkInputStreamTest {
+
+  private static final String FILE_ID = "file";
+  private static final int CHUNK_SIZE = 10;
+  private static final int READ_AHEAD_CHUNKS = 3;
+
+  private ExecutorService executor;
+  private DBCollection chunksCollection;
+
+  private final List<DBObject> chunks = new ArrayList<>();
+  private final List<Integer> fetchedGroups = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    chunksCollection = mock(DBCollection.class);
+    when(chunksCollection.find(any(DBObject.class))).thenAnswer(new Answer<DBCursor>() {
+      @Override
+      public DBCursor answer(InvocationOnMock invocation) throws Throwable {
+        return find((DBObject) invocation.getArguments()[0]);
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void wholeFileIsReadInGroups() throws IOException {
+
+    byte[] content = createContent(105);
+
+    try (GridFSChunkInputStream in = createStream(content.length)) {
+      assertArrayEquals(content, readAll(in));
+    }
+
+    // 11 chunks, fetched 3 by 3
+    assertEquals("[0, 3, 6, 9]", fetchedGroups.toString());
+  }
+
+  @Test
+  public void skippedChunksAreNotFetched() throws IOException {
+
+    byte[] content = createContent(105);
+
+    try (GridFSChunkInputStream in = createStream(content.length)) {
+
+      assertEquals(55, in.skip(55));
+      assertEquals(content[55], (byte) in.read());
+      assertEquals(content[56], (byte) in.read());
+
+      // Skipping inside the current group doesn't fetch it again
+      assertEquals(3, in.skip(3));
+      assertEquals(content[59], (byte) in.read());
+
+      // Skipping past the end stops at the end
+      assertEquals(45, in.skip(1000));
+      assertEquals(-1, in.read());
+    }
+
+    assertEquals("[5]", fetchedGroups.toString());
+  }
+
+  @Test
+  public void lastChunkCanBeShorter() throws IOException {
+
+    byte[] content = createContent(25);
+
+    try (GridFSChunkInputStream in = createStream(content.length)) {
+      in.skip(21);
+      byte[] b = new byte[10];
+      assertEquals(4, in.read(b, 0, b.length));
+      assertEquals(content[24], b[3]);
+      assertEquals(-1, in.read(b, 0, b.length));
+    }
+  }
+
+  @Test
+  public void missingChunkIsReported() throws IOException {
+
+    createContent(105);
+    chunks.remove(4);
+
+    try (GridFSChunkInputStream in = createStream(105)) {
+      in.skip(40);
+      in.read();
+      fail("Reading a missing chunk should fail");
+    } catch (IOException e) {
+      assertEquals("Chunk 4 of file " + FILE_ID + " not found", e.getMessage());
+    }
+  }
+
+  private GridFSChunkInputStream createStream(long length) {
+    return new GridFSChunkInputStream(chunksCollection, FILE_ID, length, CHUNK_SIZE,
+        READ_AHEAD_CHUNKS, executor);
+  }
+
+  private byte[] createContent(int length) {
+
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) (i % 251);
+    }
+
+    for (int n = 0; n * CHUNK_SIZE < length; n++) {
+      byte[] data = new byte[Math.min(CHUNK_SIZE, length - n * CHUNK_SIZE)];
+      System.arraycopy(content, n * CHUNK_SIZE, data, 0, data.length);
+      chunks.add(new BasicDBObject("files_id", FILE_ID).append("n", n).append("data", data));
+    }
+
+    return content;
+  }
+
+  private byte[] readAll(GridFSChunkInputStream in) throws IOException {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[7];
+    int read;
+    while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private DBCursor find(DBObject query) {
+
+    DBObject range = (DBObject) query.get("n");
+    int first = (Integer) range.get("$gte");
+    int last = (Integer) range.get("$lt");
+    fetchedGroups.add(first);
+
+    List<DBObject> result = new ArrayList<>();
+    for (DBObject chunk : chunks) {
+      int n = (Integer) chunk.get("n");
+      if (FILE_ID.equals(chunk.get("files_id")) && n >= first && n < last) {
+        result.add(chunk);
+      }
+    }
+
+    final Iterator<DBObject> it = result.iterator();
+
+    DBCursor cursor = mock(DBCursor.class);
+    when(cursor.sort(any(DBObject.class))).thenReturn(cursor);
+    when(cursor.hasNext()).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        return it.hasNext();
+      }
+    });
+    when(cursor.next()).thenAnswer(new Answer<DBObject>() {
+      @Override
+      public DBObject answer(InvocationOnMock invocation) throws Throwable {
+        return it.next();
+      }
+    });
+    return cursor;
+  }
+}
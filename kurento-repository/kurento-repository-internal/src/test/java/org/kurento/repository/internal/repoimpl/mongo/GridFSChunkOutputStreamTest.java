@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.mongo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSInputFile;
+
+public class GridFSChunkOutputStreamTest {
+
+  private static final String FILE_ID = "file";
+  private static final int CHUNK_SIZE = 10;
+  private static final int BATCH_CHUNKS = 3;
+
+  private DBCollection chunksCollection;
+  private DBCollection filesCollection;
+  private GridFSInputFile file;
+
+  private final List<List<DBObject>> insertedBatches = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+
+    chunksCollection = mock(DBCollection.class);
+    filesCollection = mock(DBCollection.class);
+    file = mock(GridFSInputFile.class);
+    when(file.getId()).thenReturn(FILE_ID);
+    when(file.getChunkSize()).thenReturn((long) CHUNK_SIZE);
+
+    // The stream reuses its list of pending chunks, so it is copied when inserted
+    doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        insertedBatches.add(new ArrayList<>((List<DBObject>) invocation.getArguments()[0]));
+        return null;
+      }
+    }).when(chunksCollection).insert(anyListOf(DBObject.class));
+  }
+
+  @Test
+  public void chunksAreInsertedInBatches() throws Exception {
+
+    byte[] content = new byte[75];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+
+    GridFSChunkOutputStream out = createStream();
+
+    // Writes not aligned with the chunks
+    out.write(content, 0, 7);
+    out.write(content[7]);
+    out.write(content, 8, 41);
+    assertEquals(1, insertedBatches.size());
+
+    out.write(content, 49, 26);
+    assertEquals(2, insertedBatches.size());
+    verify(filesCollection, never()).save(file);
+
+    out.close();
+
+    // 7 full chunks and a partial one, the last batch is inserted when closing
+    assertEquals(3, insertedBatches.size());
+    assertEquals(3, insertedBatches.get(0).size());
+    assertEquals(3, insertedBatches.get(1).size());
+    assertEquals(2, insertedBatches.get(2).size());
+
+    int n = 0;
+    for (List<DBObject> batch : insertedBatches) {
+      for (DBObject chunk : batch) {
+        assertEquals(FILE_ID, chunk.get("files_id"));
+        assertEquals(n, chunk.get("n"));
+
+        byte[] data = (byte[]) chunk.get("data");
+        int start = n * CHUNK_SIZE;
+        byte[] expected = new byte[Math.min(CHUNK_SIZE, content.length - start)];
+        System.arraycopy(content, start, expected, 0, expected.length);
+        assertArrayEquals(expected, data);
+        n++;
+      }
+    }
+
+    String md5 = String.format("%032x",
+        new BigInteger(1, MessageDigest.getInstance("MD5").digest(content)));
+
+    verify(file).put("length", 75L);
+    verify(file).put("md5", md5);
+    verify(filesCollection).save(file);
+  }
+
+  @Test
+  public void emptyFileIsSavedWithoutChunks() throws Exception {
+
+    GridFSChunkOutputStream out = createStream();
+    out.close();
+    out.close();
+
+    assertEquals(0, insertedBatches.size());
+    verify(file).put("length", 0L);
+    verify(file).put("md5", "d41d8cd98f00b204e9800998ecf8427e");
+    verify(filesCollection).save(file);
+  }
+
+  @Test
+  public void writeAfterCloseFails() throws IOException {
+
+    GridFSChunkOutputStream out = createStream();
+    out.close();
+
+    try {
+      out.write(1);
+      fail("Writing to a closed stream should fail");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  private GridFSChunkOutputStream createStream() {
+    return new GridFSChunkOutputStream(chunksCollection, filesCollection, file, BATCH_CHUNKS);
+  }
+}
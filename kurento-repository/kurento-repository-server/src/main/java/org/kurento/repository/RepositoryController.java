@@ -19,11 +19,11 @@ package org.kurento.repository;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Set;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.service.pojo.RepositoryItemIdsPage;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,8 +32,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Controller for the REST API of Kurento Repository.
  *
@@ -43,6 +47,18 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping(value = "/repo/item", produces = "application/json")
 public class RepositoryController {
 
+  /**
+   * Maximum number of ids in a page of search results.
+   */
+  private static final int MAX_PAGE_SIZE = 10000;
+
+  /**
+   * Number of ids written between flushes of the response while streaming all the search results.
+   */
+  private static final int STREAMING_FLUSH_IDS = 1000;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
   @Autowired
   private RepositoryService repoService;
 
@@ -84,15 +100,61 @@ public class RepositoryController {
   }
 
   @RequestMapping(method = RequestMethod.POST, value = "/find")
-  public Set<String> simpleFindItems(
-      @RequestBody(required = true) Map<String, String> searchValues) {
-    return repoService.findItems(searchValues, false);
+  public void simpleFindItems(@RequestBody(required = true) Map<String, String> searchValues,
+      HttpServletResponse response) throws IOException {
+    writeItemIds(searchValues, false, response);
   }
 
   @RequestMapping(method = RequestMethod.POST, value = "/find/regex")
-  public Set<String> regexFindItems(
-      @RequestBody(required = true) Map<String, String> searchValues) {
-    return repoService.findItems(searchValues, true);
+  public void regexFindItems(@RequestBody(required = true) Map<String, String> searchValues,
+      HttpServletResponse response) throws IOException {
+    writeItemIds(searchValues, true, response);
+  }
+
+  @RequestMapping(method = RequestMethod.POST, value = "/find/page")
+  public RepositoryItemIdsPage simpleFindItemsPage(
+      @RequestBody(required = true) Map<String, String> searchValues,
+      @RequestParam(value = "limit", defaultValue = "1000") int limit,
+      @RequestParam(value = "continuation", required = false) String continuation) {
+    return repoService.findItemIds(searchValues, false, continuation, getPageSize(limit));
+  }
+
+  @RequestMapping(method = RequestMethod.POST, value = "/find/regex/page")
+  public RepositoryItemIdsPage regexFindItemsPage(
+      @RequestBody(required = true) Map<String, String> searchValues,
+      @RequestParam(value = "limit", defaultValue = "1000") int limit,
+      @RequestParam(value = "continuation", required = false) String continuation) {
+    return repoService.findItemIds(searchValues, true, continuation, getPageSize(limit));
+  }
+
+  private static int getPageSize(int limit) {
+    return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+  }
+
+  /**
+   * Writes the ids of all the items found as a JSON array. They are written as they are read from
+   * the cursor of the search, so the first ids are sent before the search finishes.
+   */
+  private void writeItemIds(Map<String, String> searchValues, boolean regex,
+      HttpServletResponse response) throws IOException {
+
+    response.setContentType("application/json");
+
+    try (RepositoryItemIdCursor ids = repoService.findAllItemIds(searchValues, regex);
+        JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+
+      generator.writeStartArray();
+
+      int written = 0;
+      while (ids.hasNext()) {
+        generator.writeString(ids.next());
+        if (++written % STREAMING_FLUSH_IDS == 0) {
+          generator.flush();
+        }
+      }
+
+      generator.writeEndArray();
+    }
   }
 
   @RequestMapping(method = RequestMethod.GET, value = "/{itemId}/metadata")
@@ -17,13 +17,16 @@
 
 package org.kurento.repository;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeSet;
 
+import org.kurento.repository.service.pojo.RepositoryItemIdsPage;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
 import org.slf4j.Logger;
@@ -119,6 +122,152 @@ public class RepositoryService {
     return itemIds;
   }
 
+  /**
+   * Searches for a page of repository items by each pair of attributes and their values, as
+   * {@link #findItems(Map, boolean)}. Only the ids of the items are read from the repository, and
+   * at most {@code limit} ids per attribute.
+   *
+   * @param metadata
+   *          pairs of attributes and their values (can be regexes)
+   * @param regex
+   *          if true, will activate search by attribute regex
+   * @param continuation
+   *          continuation token of the previous page, or null to obtain the first page
+   * @param limit
+   *          maximum number of ids in the page
+   * @return a {@link RepositoryItemIdsPage} with the ids of the page, sorted in ascending order,
+   *         and the continuation token of the next page (null if there are no more)
+   */
+  public RepositoryItemIdsPage findItemIds(Map<String, String> metadata, boolean regex,
+      String continuation, int limit) {
+
+    // The first ids of the union are among the first ids found by each attribute
+    TreeSet<String> foundIds = new TreeSet<>();
+    for (Entry<String, String> data : metadata.entrySet()) {
+      if (regex) {
+        foundIds.addAll(repository.findRepositoryItemIdsByAttRegex(data.getKey(), data.getValue(),
+            continuation, limit));
+      } else {
+        foundIds.addAll(repository.findRepositoryItemIdsByAttValue(data.getKey(), data.getValue(),
+            continuation, limit));
+      }
+    }
+
+    List<String> ids = new ArrayList<>(Math.min(limit, foundIds.size()));
+    for (String id : foundIds) {
+      if (ids.size() == limit) {
+        break;
+      }
+      ids.add(id);
+    }
+
+    RepositoryItemIdsPage page = new RepositoryItemIdsPage();
+    page.setIds(ids);
+    page.setContinuation(ids.size() == limit ? ids.get(limit - 1) : null);
+    return page;
+  }
+
+  /**
+   * Searches for repository items by each pair of attributes and their values, as
+   * {@link #findItems(Map, boolean)}. Each attribute is searched once, and the ids are read from
+   * the repository as the cursor advances, in ascending order and without duplicates.
+   *
+   * @param metadata
+   *          pairs of attributes and their values (can be regexes)
+   * @param regex
+   *          if true, will activate search by attribute regex
+   * @return a cursor over the ids of the repository items found, which must be closed
+   */
+  public RepositoryItemIdCursor findAllItemIds(Map<String, String> metadata, boolean regex) {
+
+    List<RepositoryItemIdCursor> cursors = new ArrayList<>(metadata.size());
+    try {
+      for (Entry<String, String> data : metadata.entrySet()) {
+        if (regex) {
+          cursors.add(
+              repository.findAllRepositoryItemIdsByAttRegex(data.getKey(), data.getValue()));
+        } else {
+          cursors.add(
+              repository.findAllRepositoryItemIdsByAttValue(data.getKey(), data.getValue()));
+        }
+      }
+    } catch (RuntimeException e) {
+      for (RepositoryItemIdCursor cursor : cursors) {
+        cursor.close();
+      }
+      throw e;
+    }
+
+    return new UnionIdCursor(cursors);
+  }
+
+  /**
+   * Merges the sorted ids of several cursors, skipping the ids found by more than one.
+   */
+  private static class UnionIdCursor implements RepositoryItemIdCursor {
+
+    private final List<RepositoryItemIdCursor> cursors;
+    private final String[] heads;
+
+    UnionIdCursor(List<RepositoryItemIdCursor> cursors) {
+      this.cursors = cursors;
+      this.heads = new String[cursors.size()];
+      for (int i = 0; i < heads.length; i++) {
+        advance(i);
+      }
+    }
+
+    private void advance(int i) {
+      RepositoryItemIdCursor cursor = cursors.get(i);
+      heads[i] = cursor.hasNext() ? cursor.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      for (String head : heads) {
+        if (head != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String next() {
+
+      String min = null;
+      for (String head : heads) {
+        if (head != null && (min == null || head.compareTo(min) < 0)) {
+          min = head;
+        }
+      }
+
+      if (min == null) {
+        throw new NoSuchElementException();
+      }
+
+      for (int i = 0; i < heads.length; i++) {
+        if (min.equals(heads[i])) {
+          advance(i);
+        }
+      }
+
+      return min;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      for (RepositoryItemIdCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
   /**
    * Returns the metadata from a repository item.
    *